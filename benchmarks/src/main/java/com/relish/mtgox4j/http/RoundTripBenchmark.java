@@ -0,0 +1,143 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.relish.mtgox4j.json.TickerFastDecoder;
+import com.relish.mtgox4j.model.MutableTickerFast;
+import com.relish.mtgox4j.model.json.TickerFast;
+import com.sun.jersey.api.client.Client;
+
+/**
+ * GETting and decoding a ticker_fast response from a local
+ * {@link StubServer} through a {@link PooledTransport}: blocking through
+ * Jersey and non-blocking through the async client, each with databinding
+ * and with {@link TickerFastDecoder}. The *Contended variants run on eight
+ * threads sharing the transport.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+// the stub writes headers and body separately; without TCP_NODELAY each
+// response waits out the client's delayed ACK
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class RoundTripBenchmark {
+    private static final TickerFastDecoder DECODER = new TickerFastDecoder();
+    private static final ResponseDecoder<TickerFast> TICKER_FAST_JSON = ResponseDecoders
+            .json(new ObjectMapper(), TickerFast.class);
+
+    private StubServer server;
+    private PooledTransport transport;
+    private Client restClient;
+    private String url;
+
+    /**
+     * Each thread's own holder.
+     */
+    @State(Scope.Thread)
+    public static class Holder {
+        final MutableTickerFast ticker = new MutableTickerFast();
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        server = new StubServer();
+        transport = new PooledTransport(new TransportConfig.Builder()
+                .maxConnectionsPerRoute(64).build());
+        restClient = transport.getRestClient();
+        url = server.getBaseUrl() + "BTCUSD/money/ticker_fast";
+    }
+
+    @TearDown
+    public void teardown() {
+        transport.close();
+        server.close();
+    }
+
+    @Benchmark
+    public TickerFast blockingDatabind() {
+        return restClient.resource(url).get(TickerFast.class);
+    }
+
+    @Benchmark
+    public MutableTickerFast blockingStreaming(final Holder holder)
+            throws IOException {
+        final InputStream in = restClient.resource(url).get(InputStream.class);
+        try {
+            return DECODER.decode(in, holder.ticker);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Benchmark
+    public TickerFast asyncDatabind() throws InterruptedException,
+            ExecutionException {
+        return AsyncResponses.execute(
+                transport.getAsyncClient().prepareGet(url),
+                TICKER_FAST_JSON).get();
+    }
+
+    @Benchmark
+    public MutableTickerFast asyncStreaming(final Holder holder)
+            throws InterruptedException, ExecutionException {
+        return AsyncResponses.execute(
+                transport.getAsyncClient().prepareGet(url),
+                new ResponseDecoder<MutableTickerFast>() {
+                    @Override
+                    public MutableTickerFast decode(final InputStream body)
+                            throws IOException {
+                        return DECODER.decode(body, holder.ticker);
+                    }
+                }).get();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public MutableTickerFast blockingStreamingContended(final Holder holder)
+            throws IOException {
+        return blockingStreaming(holder);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public MutableTickerFast asyncStreamingContended(final Holder holder)
+            throws InterruptedException, ExecutionException {
+        return asyncStreaming(holder);
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.Resources;
+import com.relish.mtgox4j.model.ETickerPrice;
+import com.relish.mtgox4j.model.MutableTickerFast;
+import com.relish.mtgox4j.model.TickerFastView;
+import com.relish.mtgox4j.model.json.TickerFast;
+
+/**
+ * Decoding a ticker_fast response: Jackson databinding into
+ * {@link TickerFast}, {@link TickerFastDecoder} into a reused holder, and a
+ * {@link TickerFastView} over the raw bytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TickerFastDecodeBenchmark {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final TickerFastDecoder decoder = new TickerFastDecoder();
+    private final MutableTickerFast holder = new MutableTickerFast();
+    private final TickerFastView view = new TickerFastView();
+    private byte[] json;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() throws IOException {
+        json = Resources.toByteArray(Resources.getResource("TickerFast.json"));
+        buffer = ByteBuffer.wrap(json);
+    }
+
+    @Benchmark
+    public TickerFast databind() throws IOException {
+        return objectMapper.readValue(json, TickerFast.class);
+    }
+
+    /**
+     * Databinding from a stream, as the Jersey and async clients do.
+     */
+    @Benchmark
+    public TickerFast databindStream() throws IOException {
+        return objectMapper.readValue(new ByteArrayInputStream(json),
+                TickerFast.class);
+    }
+
+    @Benchmark
+    public MutableTickerFast streaming() throws IOException {
+        return decoder.decode(json, 0, json.length, holder);
+    }
+
+    @Benchmark
+    public MutableTickerFast streamingStream() throws IOException {
+        return decoder.decode(new ByteArrayInputStream(json), holder);
+    }
+
+    /**
+     * Indexing the response and reading one price, the least a caller of
+     * the view can do.
+     */
+    @Benchmark
+    public long view() {
+        return view.wrapResponse(buffer, 0, json.length).getValueInt(
+                ETickerPrice.BUY);
+    }
+}
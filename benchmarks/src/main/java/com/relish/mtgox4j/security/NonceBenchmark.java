@@ -0,0 +1,89 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.security;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Taking nonces from {@link MonotonicNonceSource} and
+ * {@link PersistentNonceSource}, alone and with four threads sharing the
+ * source.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NonceBenchmark {
+    private final MonotonicNonceSource monotonic = new MonotonicNonceSource();
+    private File file;
+    private PersistentNonceSource persistent;
+
+    @Setup
+    public void setup() throws IOException {
+        file = File.createTempFile("nonce", ".benchmark");
+        // start from a missing file rather than an empty one
+        file.delete();
+        persistent = new PersistentNonceSource(file);
+    }
+
+    @TearDown
+    public void teardown() {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public long monotonic() {
+        return monotonic.nextNonce();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long monotonicContended() {
+        return monotonic.nextNonce();
+    }
+
+    @Benchmark
+    public long persistent() {
+        return persistent.nextNonce();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long persistentContended() {
+        return persistent.nextNonce();
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.security;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Optional;
+import com.relish.mtgox4j.http.AsyncResponses;
+import com.relish.mtgox4j.http.PooledTransport;
+import com.relish.mtgox4j.http.ResponseDecoders;
+import com.relish.mtgox4j.http.StubServer;
+import com.relish.mtgox4j.http.TransportConfig;
+
+/**
+ * Signing, sending and reading secured POSTs against a local
+ * {@link StubServer}: each signed and sent straight away, and through a
+ * {@link SecuredPipeline}. The *Contended variants run on eight threads
+ * sharing the transport and pipeline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+// the stub writes headers and body separately; without TCP_NODELAY each
+// response waits out the client's delayed ACK
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class SecuredRoundTripBenchmark {
+    private static final String SECRET = "dGhpcyBpcyBub3QgYSByZWFsIE10R294IGFwaSBzZWNyZXQ=";
+    private static final String PATH = "BTCUSD/money/info";
+
+    private StubServer server;
+    private PooledTransport transport;
+    private MtGoxSecurity security;
+    private SecuredEndpoint endpoint;
+    private SecuredPipeline pipeline;
+
+    @Setup
+    public void setup() throws IOException {
+        server = new StubServer();
+        transport = new PooledTransport(new TransportConfig.Builder()
+                .baseUrl(server.getBaseUrl()).maxConnectionsPerRoute(64)
+                .build());
+        security = new MtGoxSecurity("key", SECRET, new MonotonicNonceSource());
+        endpoint = security.endpoint(transport, PATH);
+        pipeline = new SecuredPipeline.Builder().build(security, transport);
+    }
+
+    @TearDown
+    public void teardown() {
+        pipeline.close();
+        transport.close();
+        server.close();
+    }
+
+    @Benchmark
+    public String direct() throws InterruptedException, ExecutionException {
+        return AsyncResponses.execute(
+                security.prepareSecurePost(transport.getAsyncClient(),
+                        server.getBaseUrl(), PATH, Optional.<String> absent()),
+                ResponseDecoders.string()).get();
+    }
+
+    @Benchmark
+    public String pipelined() throws InterruptedException,
+            ExecutionException {
+        return pipeline.submit(endpoint, ResponseDecoders.string(),
+                Optional.<String> absent()).get();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String directContended() throws InterruptedException,
+            ExecutionException {
+        return direct();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String pipelinedContended() throws InterruptedException,
+            ExecutionException {
+        return pipelined();
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.security;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.io.BaseEncoding;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClient.BoundRequestBuilder;
+import com.relish.mtgox4j.MtGoxClient;
+
+/**
+ * Signing secured requests: the raw HMAC, the String-concatenating scheme
+ * {@link MtGoxSecurity} used before {@link RequestSigner}, the signer itself,
+ * with a prepared path and a {@link PostForm} as order entry signs, and the
+ * whole path from taking a nonce to a prepared request. The
+ * *Contended variants run on four threads sharing one signer and nonce
+ * source.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SigningBenchmark {
+    private static final String ALGORITHM = "HmacSHA512";
+    private static final String SECRET = "dGhpcyBpcyBub3QgYSByZWFsIE10R294IGFwaSBzZWNyZXQ=";
+    private static final String PATH = "BTCUSD/money/order/add";
+    private static final Optional<String> POST_DATA = Optional
+            .of("type=bid&amount_int=100000000&price_int=10000000");
+    private static final byte[] MESSAGE = (PATH + "\0" + POST_DATA.get() + "&nonce=1367550485692271")
+            .getBytes(Charsets.UTF_8);
+
+    private static final PostForm ORDER_FORM = new PostForm() {
+        @Override
+        public void writeTo(final SignedRequest request) {
+            request.appendParam("type", "bid");
+            request.appendParam("amount_int", 100000000L);
+            request.appendParam("price_int", 10000000L);
+        }
+    };
+
+    private final AtomicLong nonce = new AtomicLong(1367550485692271L);
+    private HmacUtility hmacUtility;
+    private RequestSigner signer;
+    private SigningPath signingPath;
+    private MtGoxSecurity security;
+    private AsyncHttpClient asyncClient;
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException, InvalidKeyException {
+        hmacUtility = new HmacUtility(ALGORITHM, BaseEncoding.base64().decode(
+                SECRET));
+        signer = new RequestSigner(hmacUtility);
+        signingPath = signer.signingPath(PATH);
+        security = new MtGoxSecurity("key", SECRET, new MonotonicNonceSource());
+        asyncClient = new AsyncHttpClient();
+    }
+
+    @TearDown
+    public void teardown() {
+        asyncClient.close();
+    }
+
+    @Benchmark
+    public byte[] createHmac() {
+        return hmacUtility.createHmac(MESSAGE);
+    }
+
+    /**
+     * Concatenate, hash the String's bytes and base-64 encode, as
+     * sendSecurePost originally did.
+     */
+    @Benchmark
+    public String legacySign() {
+        final String body = POST_DATA.get() + "&nonce="
+                + nonce.incrementAndGet();
+        final byte[] hash = hmacUtility.createHmac(PATH + "\0" + body);
+        return BaseEncoding.base64().encode(hash);
+    }
+
+    @Benchmark
+    public String sign() {
+        final SignedRequest request = signer.sign(PATH, POST_DATA,
+                nonce.incrementAndGet());
+        final String signature = request.getSignature();
+        signer.release(request);
+        return signature;
+    }
+
+    /**
+     * Sign the same body with the path prepared up front and the arguments
+     * written straight into the body buffer.
+     */
+    @Benchmark
+    public String signForm() {
+        final SignedRequest request = signer.sign(signingPath, ORDER_FORM,
+                nonce.incrementAndGet());
+        final String signature = request.getSignature();
+        signer.release(request);
+        return signature;
+    }
+
+    /**
+     * Take a nonce, sign and build the request, everything
+     * sendSecurePostAsync does before handing it to the client.
+     */
+    @Benchmark
+    public BoundRequestBuilder prepareSecurePost() {
+        return security.prepareSecurePost(asyncClient, MtGoxClient.BASE_URL,
+                PATH, POST_DATA);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String legacySignContended() {
+        return legacySign();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String signContended() {
+        return sign();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public BoundRequestBuilder prepareSecurePostContended() {
+        return prepareSecurePost();
+    }
+}
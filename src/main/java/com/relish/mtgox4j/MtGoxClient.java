@@ -17,31 +17,116 @@
  */
 package com.relish.mtgox4j;
 
-import org.codehaus.jackson.jaxrs.JacksonJsonProvider;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.codehaus.jackson.map.ObjectMapper;
+
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.ning.http.client.AsyncHttpClient;
+import com.relish.mtgox4j.http.AsyncResponses;
+import com.relish.mtgox4j.http.BlockingResponses;
+import com.relish.mtgox4j.http.BoundEndpoint;
+import com.relish.mtgox4j.http.DefaultTransport;
+import com.relish.mtgox4j.http.ERequestPriority;
+import com.relish.mtgox4j.http.EndpointRegistry;
+import com.relish.mtgox4j.http.RequestHedger;
+import com.relish.mtgox4j.http.RequestScheduler;
+import com.relish.mtgox4j.http.ResponseDecoder;
+import com.relish.mtgox4j.http.ResponseDecoders;
+import com.relish.mtgox4j.http.Transport;
+import com.relish.mtgox4j.json.DepthDecoder;
+import com.relish.mtgox4j.json.MoneyInfoDecoder;
+import com.relish.mtgox4j.json.OrderDecoder;
+import com.relish.mtgox4j.json.TickerFastDecoder;
+import com.relish.mtgox4j.metrics.EPhase;
+import com.relish.mtgox4j.metrics.EndpointRecorder;
 import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.EOrderType;
+import com.relish.mtgox4j.model.FixedPoint;
+import com.relish.mtgox4j.model.MoneyInfo;
+import com.relish.mtgox4j.model.OpenOrders;
+import com.relish.mtgox4j.model.MutableTickerFast;
+import com.relish.mtgox4j.model.OrderBook;
 import com.relish.mtgox4j.model.json.TickerFast;
 import com.relish.mtgox4j.security.MtGoxSecurity;
-import com.sun.jersey.api.client.Client;
-import com.sun.jersey.api.client.config.ClientConfig;
-import com.sun.jersey.api.client.config.DefaultClientConfig;
+import com.relish.mtgox4j.security.PostForm;
+import com.relish.mtgox4j.security.SecuredEndpoint;
+import com.relish.mtgox4j.security.SignedRequest;
+import com.sun.jersey.api.client.ClientHandlerException;
 
 /**
  * Provides access to MtGox's v2 API.
+ * 
+ * <p>
+ * Each resource has a blocking method and a non-blocking *Async variant.
+ * Requests go through a {@link Transport}, either one passed to the
+ * constructor, e.g. a {@link com.relish.mtgox4j.http.PooledTransport}, or a
+ * {@link DefaultTransport} created and released by {@link #close()}. If the
+ * transport has a {@link RequestScheduler}, public resources are requested
+ * with {@link ERequestPriority#PUBLIC}, orders are added and cancelled with
+ * {@link ERequestPriority#TRADING} and other secured resources are requested
+ * with {@link ERequestPriority#ACCOUNT}. If it has a {@link RequestHedger}, the
+ * public resources decoded into new objects are hedged; those decoded into a
+ * caller's holder or book, and secured resources, never are. If it has a
+ * {@link Transport#getBlockingExecutor() blocking executor}, the *Async
+ * variants run the blocking client on it rather than the async one. Every call
+ * is reported to the transport's {@link Transport#getMetrics() metrics}.
+ * </p>
  */
-public class MtGoxClient {
+public class MtGoxClient implements Closeable {
     public static final String BASE_URL = "https://data.mtgox.com/api/2/";
 
     private static final String MONEY_TICKER_FAST_PATH = "money/ticker_fast";
     private static final String MONEY_INFO_PATH = "money/info";
+    private static final String MONEY_DEPTH_FETCH_PATH = "money/depth/fetch";
+    private static final String MONEY_ORDER_ADD_PATH = "money/order/add";
+    private static final String MONEY_ORDER_CANCEL_PATH = "money/order/cancel";
+    private static final String MONEY_ORDERS_PATH = "money/orders";
+
+    private static final String TYPE_PARAM = "type";
+    private static final String AMOUNT_INT_PARAM = "amount_int";
+    private static final String PRICE_INT_PARAM = "price_int";
+    private static final String OID_PARAM = "oid";
 
-    private final Client restClient;
+    private static final TickerFastDecoder TICKER_FAST_DECODER = new TickerFastDecoder();
+    private static final DepthDecoder DEPTH_DECODER = new DepthDecoder();
+    private static final MoneyInfoDecoder MONEY_INFO_DECODER = new MoneyInfoDecoder();
+    private static final OrderDecoder ORDER_DECODER = new OrderDecoder();
+    private static final ResponseDecoder<String> ORDER_ADD_DECODER = oidDecoder(MONEY_ORDER_ADD_PATH);
+    private static final ResponseDecoder<String> ORDER_CANCEL_DECODER = oidDecoder(MONEY_ORDER_CANCEL_PATH);
+    /**
+     * Databinds ticker_fast responses; shared with {@link TickerCache} and
+     * {@link MultiCurrencyClient}.
+     */
+    static final ResponseDecoder<TickerFast> TICKER_FAST_JSON = ResponseDecoders
+            .json(new ObjectMapper(), TickerFast.class);
+
+    private final Transport transport;
+    private final boolean ownsTransport;
+    private final ECurrency currency;
     private final String currencyPath;
     private final Optional<MtGoxSecurity> security;
+    private final Optional<TickerCache> tickerCache;
+    private final BoundEndpoint tickerFastEndpoint;
+    private final BoundEndpoint depthEndpoint;
+    // null without a security context
+    private final SecuredEndpoint moneyInfoEndpoint;
+    private final SecuredEndpoint orderAddEndpoint;
+    private final SecuredEndpoint orderCancelEndpoint;
+    private final SecuredEndpoint ordersEndpoint;
 
     /**
      * Provides access to secured MtGox resources as well as unsecured if apiKey
@@ -60,17 +145,134 @@ public class MtGoxClient {
      */
     public MtGoxClient(final ECurrency currency, final Optional<String> apiKey,
             final Optional<String> apiSecret) {
-        final ClientConfig cc = new DefaultClientConfig();
-        cc.getClasses().add(JacksonJsonProvider.class);
-        restClient = Client.create(cc);
+        this(currency, apiKey.isPresent() && apiSecret.isPresent() ? Optional
+                .of(new MtGoxSecurity(apiKey.get(), apiSecret.get()))
+                : Optional.<MtGoxSecurity> absent());
+    }
+
+    /**
+     * Provides access to secured MtGox resources as well as unsecured if a
+     * security context is provided, e.g. one built with a custom
+     * {@link com.relish.mtgox4j.security.NonceSource}. If it is not provided
+     * then only unsecured resources will be available.
+     * 
+     * @param currency
+     *            the currency to convert BTC to
+     * @param security
+     *            the security context for secured resources
+     * @throws NullPointerException
+     *             if currency is null
+     */
+    public MtGoxClient(final ECurrency currency,
+            final Optional<MtGoxSecurity> security) {
+        // check the arguments first; a failure would leak the transport
+        this(checkNotNull(currency), checkNotNull(security),
+                new DefaultTransport(), true);
+    }
+
+    /**
+     * As {@link #MtGoxClient(ECurrency, Optional)}, running the async variants
+     * on a shared {@link AsyncHttpClient}. The caller keeps ownership of
+     * asyncClient; {@link #close()} does not close it.
+     * 
+     * @param currency
+     *            the currency to convert BTC to
+     * @param security
+     *            the security context for secured resources
+     * @param asyncClient
+     *            the client for non-blocking requests
+     * @throws NullPointerException
+     *             if currency or asyncClient is null
+     */
+    public MtGoxClient(final ECurrency currency,
+            final Optional<MtGoxSecurity> security,
+            final AsyncHttpClient asyncClient) {
+        this(checkNotNull(currency), checkNotNull(security),
+                new DefaultTransport(asyncClient), true);
+    }
+
+    /**
+     * As {@link #MtGoxClient(ECurrency, Optional)}, sending requests through a
+     * shared {@link Transport}. The caller keeps ownership of transport;
+     * {@link #close()} does not close it.
+     * 
+     * @param currency
+     *            the currency to convert BTC to
+     * @param security
+     *            the security context for secured resources
+     * @param transport
+     *            the HTTP clients to send requests with
+     * @throws NullPointerException
+     *             if currency or transport is null
+     */
+    public MtGoxClient(final ECurrency currency,
+            final Optional<MtGoxSecurity> security, final Transport transport) {
+        this(currency, security, checkNotNull(transport), false, Optional
+                .<TickerCache> absent());
+    }
+
+    /**
+     * As {@link #MtGoxClient(ECurrency, Optional, Transport)}, answering
+     * {@link #getTickerFast()} and {@link #getTickerFastAsync()} from a shared
+     * {@link TickerCache}. The caller keeps ownership of transport and
+     * tickerCache.
+     * 
+     * @param currency
+     *            the currency to convert BTC to
+     * @param security
+     *            the security context for secured resources
+     * @param transport
+     *            the HTTP clients to send uncached requests with
+     * @param tickerCache
+     *            the cache of tickers
+     * @throws NullPointerException
+     *             if currency, transport or tickerCache is null
+     */
+    public MtGoxClient(final ECurrency currency,
+            final Optional<MtGoxSecurity> security, final Transport transport,
+            final TickerCache tickerCache) {
+        this(currency, security, checkNotNull(transport), false, Optional
+                .of(tickerCache));
+    }
+
+    private MtGoxClient(final ECurrency currency,
+            final Optional<MtGoxSecurity> security, final Transport transport,
+            final boolean ownsTransport) {
+        this(currency, security, transport, ownsTransport, Optional
+                .<TickerCache> absent());
+    }
+
+    private MtGoxClient(final ECurrency currency,
+            final Optional<MtGoxSecurity> security, final Transport transport,
+            final boolean ownsTransport, final Optional<TickerCache> tickerCache) {
+        this.transport = transport;
+        this.ownsTransport = ownsTransport;
 
-        currencyPath = "BTC" + checkNotNull(currency).name() + "/";
+        this.currency = checkNotNull(currency);
+        currencyPath = pathOf(currency);
+        this.security = checkNotNull(security);
+        this.tickerCache = tickerCache;
 
-        if (apiKey.isPresent() && apiSecret.isPresent()) {
-            security = Optional.of(new MtGoxSecurity(apiKey.get(), apiSecret
-                    .get()));
+        // resolve every path once; requests reuse the URL, resource and
+        // recorder, and secured ones the signing midstate
+        final EndpointRegistry endpoints = transport.getEndpoints();
+        tickerFastEndpoint = endpoints.get(currencyPath
+                + MONEY_TICKER_FAST_PATH);
+        depthEndpoint = endpoints.get(currencyPath + MONEY_DEPTH_FETCH_PATH);
+        if (security.isPresent()) {
+            moneyInfoEndpoint = security.get().endpoint(transport,
+                    currencyPath + MONEY_INFO_PATH);
+            orderAddEndpoint = security.get().endpoint(transport,
+                    currencyPath + MONEY_ORDER_ADD_PATH);
+            orderCancelEndpoint = security.get().endpoint(transport,
+                    currencyPath + MONEY_ORDER_CANCEL_PATH);
+            ordersEndpoint = security.get().endpoint(transport,
+                    currencyPath + MONEY_ORDERS_PATH);
         } else {
-            security = Optional.absent();
+            moneyInfoEndpoint = null;
+            orderAddEndpoint = null;
+            orderCancelEndpoint = null;
+            ordersEndpoint = null;
         }
     }
 
@@ -79,37 +281,697 @@ public class MtGoxClient {
      * GET[https://data.mtgox.com/api/2/BTC{currency}/money/ticker_fast]
      * Get the most recent information for a currency pair. 
      * 
+     * If this client has a {@link TickerCache}, the ticker may come from it.
+     * Otherwise, if the transport has a {@link RequestHedger}, the request is
+     * hedged and a non-2xx status is thrown as an HttpStatusException.
+     * 
      * @return the JSON response
      * @see TickerFast
      */
 //@formatter:on
     public TickerFast getTickerFast() {
-        return restClient.resource(
-                BASE_URL + currencyPath + MONEY_TICKER_FAST_PATH).get(
-                TickerFast.class);
+        if (tickerCache.isPresent()) {
+            return tickerCache.get().get(currency);
+        }
+        if (transport.getHedger().isPresent()) {
+            return await(getTickerFastAsync());
+        }
+
+        return get(tickerFastEndpoint, TICKER_FAST_JSON);
+    }
+
+//@formatter:off
+    /**
+     * GET[https://data.mtgox.com/api/2/BTC{currency}/money/ticker_fast]
+     * Get the most recent information for a currency pair, decoded without 
+     * databinding straight into the given holder. Prefer this over 
+     * {@link #getTickerFast()} when polling in a tight loop and reusing the
+     * holder between calls. Always sends a request, bypassing any 
+     * {@link TickerCache}.
+     * 
+     * @param holder
+     *            the holder to decode the response into
+     * @return holder
+     * @throws ClientHandlerException
+     *             if the response could not be read or decoded
+     * @see TickerFastDecoder
+     */
+//@formatter:on
+    public MutableTickerFast getTickerFast(final MutableTickerFast holder) {
+        checkNotNull(holder);
+
+        return get(tickerFastEndpoint,
+                new ResponseDecoder<MutableTickerFast>() {
+                    @Override
+                    public MutableTickerFast decode(final InputStream body)
+                            throws IOException {
+                        return TICKER_FAST_DECODER.decode(body, holder);
+                    }
+                });
+    }
+
+//@formatter:off
+    /**
+     * GET[https://data.mtgox.com/api/2/BTC{currency}/money/ticker_fast]
+     * Non-blocking variant of {@link #getTickerFast()}.
+     * 
+     * @return the future JSON response
+     * @see TickerFast
+     */
+//@formatter:on
+    public ListenableFuture<TickerFast> getTickerFastAsync() {
+        if (tickerCache.isPresent()) {
+            return tickerCache.get().getAsync(currency);
+        }
+
+        return getAsync(tickerFastEndpoint, true, TICKER_FAST_JSON);
+    }
+
+//@formatter:off
+    /**
+     * GET[https://data.mtgox.com/api/2/BTC{currency}/money/ticker_fast]
+     * Non-blocking variant of {@link #getTickerFast(MutableTickerFast)}. The 
+     * holder is written on an I/O thread, so don't read it until the future 
+     * has completed and don't reuse it for another request before then.
+     * 
+     * @param holder
+     *            the holder to decode the response into
+     * @return the future holder
+     * @see TickerFastDecoder
+     */
+//@formatter:on
+    public ListenableFuture<MutableTickerFast> getTickerFastAsync(
+            final MutableTickerFast holder) {
+        checkNotNull(holder);
+
+        return getAsync(tickerFastEndpoint, false,
+                new ResponseDecoder<MutableTickerFast>() {
+                    @Override
+                    public MutableTickerFast decode(final InputStream body)
+                            throws IOException {
+                        return TICKER_FAST_DECODER.decode(body, holder);
+                    }
+                });
+    }
+
+//@formatter:off
+    /**
+     * GET[https://data.mtgox.com/api/2/BTC{currency}/money/depth/fetch]
+     * Get a snapshot of the order book for a currency pair.
+     * 
+     * If the transport has a {@link RequestHedger}, the request is hedged 
+     * and a non-2xx status is thrown as an HttpStatusException.
+     * 
+     * @return a new book loaded with the snapshot
+     * @throws ClientHandlerException
+     *             if the response could not be read or decoded
+     * @see #getDepth(OrderBook)
+     */
+//@formatter:on
+    public OrderBook getDepth() {
+        if (transport.getHedger().isPresent()) {
+            // each copy decodes into a book of its own
+            return await(getAsync(depthEndpoint, true,
+                    new ResponseDecoder<OrderBook>() {
+                        @Override
+                        public OrderBook decode(final InputStream body)
+                                throws IOException {
+                            return decodeDepth(body, new OrderBook(currency));
+                        }
+                    }));
+        }
+
+        return getDepth(new OrderBook(currency));
+    }
+
+//@formatter:off
+    /**
+     * GET[https://data.mtgox.com/api/2/BTC{currency}/money/depth/fetch]
+     * Get a snapshot of the order book for a currency pair, decoded without 
+     * databinding straight into the given book. Apply streamed depth updates
+     * to the book afterwards to keep it current rather than fetching again.
+     * 
+     * @param book
+     *            the book to load, cleared first; its currency must be this
+     *            client's
+     * @return book
+     * @throws IllegalArgumentException
+     *             if book is for another currency
+     * @throws ClientHandlerException
+     *             if the response could not be read or decoded, or MtGox did
+     *             not report success
+     * @see DepthDecoder
+     */
+//@formatter:on
+    public OrderBook getDepth(final OrderBook book) {
+        checkBook(book);
+
+        return get(depthEndpoint, new ResponseDecoder<OrderBook>() {
+            @Override
+            public OrderBook decode(final InputStream body) throws IOException {
+                return decodeDepth(body, book);
+            }
+        });
     }
 
 //@formatter:off
     /**
-     * TODO: Create JSON model objects
+     * GET[https://data.mtgox.com/api/2/BTC{currency}/money/depth/fetch]
+     * Non-blocking variant of {@link #getDepth(OrderBook)}. The book is 
+     * written on an I/O thread, so don't touch it until the future has 
+     * completed.
      * 
+     * @param book
+     *            the book to load, cleared first; its currency must be this
+     *            client's
+     * @return the future book
+     * @throws IllegalArgumentException
+     *             if book is for another currency
+     */
+//@formatter:on
+    public ListenableFuture<OrderBook> getDepthAsync(final OrderBook book) {
+        checkBook(book);
+
+        return getAsync(depthEndpoint, false,
+                new ResponseDecoder<OrderBook>() {
+                    @Override
+                    public OrderBook decode(final InputStream body)
+                            throws IOException {
+                        return decodeDepth(body, book);
+                    }
+                });
+    }
+
+//@formatter:off
+    /**
      * POST[https://data.mtgox.com/api/2/BTC{currency}/money/info]
      * Get up-to-date information regarding your finances on MtGox.
      * 
      * @return the JSON response
+     * @see #getMoneyInfo(MoneyInfo)
      * @throws IllegalStateException 
      *              if this {@link MtGoxClient} was initialized without a 
      *              security context (apiKey and apiSecret)
      */
 //@formatter:on
     public String getMoneyInfo() {
+        return security().sendSecurePost(moneyInfoEndpoint,
+                ERequestPriority.ACCOUNT, PostForm.EMPTY, String.class);
+    }
+
+//@formatter:off
+    /**
+     * POST[https://data.mtgox.com/api/2/BTC{currency}/money/info]
+     * Non-blocking variant of {@link #getMoneyInfo()}.
+     * 
+     * @return the future JSON response
+     * @throws IllegalStateException 
+     *              if this {@link MtGoxClient} was initialized without a 
+     *              security context (apiKey and apiSecret)
+     */
+//@formatter:on
+    public ListenableFuture<String> getMoneyInfoAsync() {
+        return security().sendSecurePostAsync(moneyInfoEndpoint,
+                ERequestPriority.ACCOUNT, PostForm.EMPTY,
+                ResponseDecoders.string());
+    }
+
+//@formatter:off
+    /**
+     * POST[https://data.mtgox.com/api/2/BTC{currency}/money/info]
+     * Get up-to-date information regarding your finances on MtGox, decoded 
+     * without databinding straight into the given holder. Balances are read 
+     * from it by currency without parsing, so prefer this over 
+     * {@link #getMoneyInfo()} when polling them and reusing the holder 
+     * between calls.
+     * 
+     * @param holder
+     *            the holder to decode the response into
+     * @return holder
+     * @throws IllegalStateException 
+     *              if this {@link MtGoxClient} was initialized without a 
+     *              security context (apiKey and apiSecret)
+     * @throws ClientHandlerException
+     *             if the response could not be read or decoded, or MtGox did
+     *             not report success
+     * @see MoneyInfoDecoder
+     */
+//@formatter:on
+    public MoneyInfo getMoneyInfo(final MoneyInfo holder) {
+        checkNotNull(holder);
+
+        return security().sendSecurePost(moneyInfoEndpoint,
+                ERequestPriority.ACCOUNT, PostForm.EMPTY,
+                moneyInfoDecoder(holder));
+    }
+
+//@formatter:off
+    /**
+     * POST[https://data.mtgox.com/api/2/BTC{currency}/money/info]
+     * Non-blocking variant of {@link #getMoneyInfo(MoneyInfo)}. The holder is 
+     * written on an I/O thread, so don't read it until the future has 
+     * completed and don't reuse it for another request before then.
+     * 
+     * @param holder
+     *            the holder to decode the response into
+     * @return the future holder
+     * @throws IllegalStateException 
+     *              if this {@link MtGoxClient} was initialized without a 
+     *              security context (apiKey and apiSecret)
+     * @see MoneyInfoDecoder
+     */
+//@formatter:on
+    public ListenableFuture<MoneyInfo> getMoneyInfoAsync(
+            final MoneyInfo holder) {
+        checkNotNull(holder);
+
+        return security().sendSecurePostAsync(moneyInfoEndpoint,
+                ERequestPriority.ACCOUNT, PostForm.EMPTY,
+                moneyInfoDecoder(holder));
+    }
+
+//@formatter:off
+    /**
+     * POST[https://data.mtgox.com/api/2/BTC{currency}/money/order/add]
+     * Place a limit order. The form is written straight into the signed body
+     * and the response decoded without databinding, through an endpoint 
+     * bound when this client was created.
+     * 
+     * @param type
+     *            whether to buy or sell BTC
+     * @param amountInt
+     *            the amount of BTC in divisions (1e8)
+     * @param priceInt
+     *            the limit price in divisions of this client's currency
+     * @return the oid of the new order
+     * @throws IllegalArgumentException 
+     *              if amountInt or priceInt is not positive
+     * @throws IllegalStateException 
+     *              if this {@link MtGoxClient} was initialized without a 
+     *              security context (apiKey and apiSecret)
+     * @throws ClientHandlerException
+     *             if the response could not be read or decoded, or MtGox did
+     *             not report success
+     * @see FixedPoint
+     */
+//@formatter:on
+    public String addOrder(final EOrderType type, final long amountInt,
+            final long priceInt) {
+        checkArgument(priceInt > 0, "priceInt must be positive");
+
+        return security().sendSecurePost(orderAddEndpoint,
+                ERequestPriority.TRADING, orderForm(type, amountInt, priceInt),
+                ORDER_ADD_DECODER);
+    }
+
+//@formatter:off
+    /**
+     * POST[https://data.mtgox.com/api/2/BTC{currency}/money/order/add]
+     * Place a market order, filled at the best prices available.
+     * 
+     * @param type
+     *            whether to buy or sell BTC
+     * @param amountInt
+     *            the amount of BTC in divisions (1e8)
+     * @return the oid of the new order
+     * @throws IllegalArgumentException 
+     *              if amountInt is not positive
+     * @throws IllegalStateException 
+     *              if this {@link MtGoxClient} was initialized without a 
+     *              security context (apiKey and apiSecret)
+     * @throws ClientHandlerException
+     *             if the response could not be read or decoded, or MtGox did
+     *             not report success
+     * @see #addOrder(EOrderType, long, long)
+     */
+//@formatter:on
+    public String addMarketOrder(final EOrderType type, final long amountInt) {
+        return security().sendSecurePost(orderAddEndpoint,
+                ERequestPriority.TRADING, orderForm(type, amountInt, 0L),
+                ORDER_ADD_DECODER);
+    }
+
+//@formatter:off
+    /**
+     * POST[https://data.mtgox.com/api/2/BTC{currency}/money/order/add]
+     * Non-blocking variant of {@link #addOrder(EOrderType, long, long)}.
+     * 
+     * @return the future oid of the new order
+     */
+//@formatter:on
+    public ListenableFuture<String> addOrderAsync(final EOrderType type,
+            final long amountInt, final long priceInt) {
+        checkArgument(priceInt > 0, "priceInt must be positive");
+
+        return security().sendSecurePostAsync(orderAddEndpoint,
+                ERequestPriority.TRADING, orderForm(type, amountInt, priceInt),
+                ORDER_ADD_DECODER);
+    }
+
+//@formatter:off
+    /**
+     * POST[https://data.mtgox.com/api/2/BTC{currency}/money/order/add]
+     * Non-blocking variant of {@link #addMarketOrder(EOrderType, long)}.
+     * 
+     * @return the future oid of the new order
+     */
+//@formatter:on
+    public ListenableFuture<String> addMarketOrderAsync(final EOrderType type,
+            final long amountInt) {
+        return security().sendSecurePostAsync(orderAddEndpoint,
+                ERequestPriority.TRADING, orderForm(type, amountInt, 0L),
+                ORDER_ADD_DECODER);
+    }
+
+//@formatter:off
+    /**
+     * POST[https://data.mtgox.com/api/2/BTC{currency}/money/order/cancel]
+     * Cancel an order.
+     * 
+     * @param oid
+     *            the oid of the order
+     * @return the oid of the cancelled order
+     * @throws IllegalStateException 
+     *              if this {@link MtGoxClient} was initialized without a 
+     *              security context (apiKey and apiSecret)
+     * @throws ClientHandlerException
+     *             if the response could not be read or decoded, or MtGox did
+     *             not report success
+     */
+//@formatter:on
+    public String cancelOrder(final String oid) {
+        return security().sendSecurePost(orderCancelEndpoint,
+                ERequestPriority.TRADING, cancelForm(oid),
+                ORDER_CANCEL_DECODER);
+    }
+
+//@formatter:off
+    /**
+     * POST[https://data.mtgox.com/api/2/BTC{currency}/money/order/cancel]
+     * Non-blocking variant of {@link #cancelOrder(String)}.
+     * 
+     * @return the future oid of the cancelled order
+     */
+//@formatter:on
+    public ListenableFuture<String> cancelOrderAsync(final String oid) {
+        return security().sendSecurePostAsync(orderCancelEndpoint,
+                ERequestPriority.TRADING, cancelForm(oid),
+                ORDER_CANCEL_DECODER);
+    }
+
+//@formatter:off
+    /**
+     * POST[https://data.mtgox.com/api/2/BTC{currency}/money/orders]
+     * Get the account's orders, decoded without databinding straight into 
+     * the given holder.
+     * 
+     * @param holder
+     *            the holder to decode the response into
+     * @return holder
+     * @throws IllegalStateException 
+     *              if this {@link MtGoxClient} was initialized without a 
+     *              security context (apiKey and apiSecret)
+     * @throws ClientHandlerException
+     *             if the response could not be read or decoded, or MtGox did
+     *             not report success
+     * @see OrderDecoder
+     */
+//@formatter:on
+    public OpenOrders getOrders(final OpenOrders holder) {
+        checkNotNull(holder);
+
+        return security().sendSecurePost(ordersEndpoint,
+                ERequestPriority.ACCOUNT, PostForm.EMPTY, ordersDecoder(holder));
+    }
+
+//@formatter:off
+    /**
+     * POST[https://data.mtgox.com/api/2/BTC{currency}/money/orders]
+     * Non-blocking variant of {@link #getOrders(OpenOrders)}. The holder is 
+     * written on an I/O thread, so don't read it until the future has 
+     * completed and don't reuse it for another request before then.
+     * 
+     * @param holder
+     *            the holder to decode the response into
+     * @return the future holder
+     */
+//@formatter:on
+    public ListenableFuture<OpenOrders> getOrdersAsync(final OpenOrders holder) {
+        checkNotNull(holder);
+
+        return security().sendSecurePostAsync(ordersEndpoint,
+                ERequestPriority.ACCOUNT, PostForm.EMPTY, ordersDecoder(holder));
+    }
+
+    /**
+     * Send a GET for a public endpoint through the blocking client
+     * once the transport's {@link RequestScheduler}, if any, lets it through,
+     * and decode the response.
+     * 
+     * @see BlockingResponses#decode
+     * 
+     * @throws ClientHandlerException
+     *             if the response could not be read or decoded
+     */
+    private <T> T get(final BoundEndpoint endpoint,
+            final ResponseDecoder<T> decoder) {
+        final EndpointRecorder recorder = endpoint.getRecorder();
+        final boolean timed = recorder.isEnabled()
+                && transport.getScheduler().isPresent();
+
+        final long queued = timed ? System.nanoTime() : 0L;
+        RequestScheduler.acquire(transport.getScheduler(),
+                ERequestPriority.PUBLIC, endpoint.getName());
+        if (timed) {
+            recorder.record(EPhase.QUEUE, System.nanoTime() - queued);
+        }
+
+        return send(endpoint, decoder);
+    }
+
+    /**
+     * Send a GET for a public endpoint through the blocking client right away
+     * and decode the response.
+     * 
+     * @throws ClientHandlerException
+     *             if the response could not be read or decoded
+     */
+    private static <T> T send(final BoundEndpoint endpoint,
+            final ResponseDecoder<T> decoder) {
+        final EndpointRecorder recorder = endpoint.getRecorder();
+        final boolean enabled = recorder.isEnabled();
+
+        final long start = enabled ? System.nanoTime() : 0L;
+        try {
+            final InputStream in = endpoint.getResource().get(
+                    InputStream.class);
+            if (enabled) {
+                recorder.record(EPhase.WAIT, System.nanoTime() - start);
+            }
+            return BlockingResponses.decode(in, decoder, recorder);
+        } catch (RuntimeException e) {
+            if (enabled) {
+                recorder.recordError(e);
+            }
+            throw e;
+        } finally {
+            if (enabled) {
+                recorder.record(EPhase.TOTAL, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Send a GET for a public endpoint once its transport's
+     * {@link RequestScheduler}, if any, lets it through, on the transport's
+     * blocking executor if it has one, reporting to the endpoint's recorder.
+     * It is hedged only once let through, so time spent queued does not count
+     * towards the hedge delay. {@link TickerCache} and
+     * {@link MultiCurrencyClient} load tickers through here too.
+     * 
+     * @param hedged
+     *            whether the transport's {@link RequestHedger}, if any, may
+     *            send it twice; only if decoder writes to no shared state
+     */
+    static <T> ListenableFuture<T> getAsync(final BoundEndpoint endpoint,
+            final boolean hedged, final ResponseDecoder<T> decoder) {
+        final Transport transport = endpoint.getTransport();
+        final EndpointRecorder recorder = endpoint.getRecorder();
+        final Optional<Executor> executor = transport.getBlockingExecutor();
+        final AtomicBoolean first = new AtomicBoolean(true);
+        final boolean timed = recorder.isEnabled()
+                && transport.getScheduler().isPresent();
+        final long queued = timed ? System.nanoTime() : 0L;
+        final Callable<ListenableFuture<T>> send = new Callable<ListenableFuture<T>>() {
+            @Override
+            public ListenableFuture<T> call() {
+                // a hedge copy's wait is not the call's
+                if (first.getAndSet(false) && timed) {
+                    recorder.record(EPhase.QUEUE, System.nanoTime() - queued);
+                }
+
+                if (executor.isPresent()) {
+                    return BlockingResponses.submit(executor.get(),
+                            new Callable<T>() {
+                                @Override
+                                public T call() {
+                                    return send(endpoint, decoder);
+                                }
+                            });
+                }
+                return AsyncResponses.execute(transport.getAsyncClient()
+                        .prepareGet(endpoint.getUrl()), decoder, recorder);
+            }
+        };
+
+        return RequestHedger.hedge(transport.getScheduler(),
+                hedged ? transport.getHedger() : Optional
+                        .<RequestHedger> absent(), ERequestPriority.PUBLIC,
+                endpoint.getName(), send);
+    }
+
+    /**
+     * Bind the ticker_fast endpoint of every BTC{currency} pair to transport,
+     * for clients that fetch tickers of several pairs.
+     * 
+     * @return the endpoints, indexed by {@link ECurrency#ordinal()}
+     */
+    static BoundEndpoint[] tickerFastEndpoints(final Transport transport) {
+        final EndpointRegistry endpoints = transport.getEndpoints();
+        final ECurrency[] currencies = ECurrency.values();
+        final BoundEndpoint[] bound = new BoundEndpoint[currencies.length];
+        for (ECurrency currency : currencies) {
+            bound[currency.ordinal()] = endpoints.get(pathOf(currency)
+                    + MONEY_TICKER_FAST_PATH);
+        }
+        return bound;
+    }
+
+    /**
+     * @return the path prefix of the BTC{currency} pair, e.g. BTCUSD/
+     */
+    private static String pathOf(final ECurrency currency) {
+        return "BTC" + currency.name() + "/";
+    }
+
+    /**
+     * Wait for a non-blocking request on behalf of a blocking method.
+     */
+    private static <T> T await(final ListenableFuture<T> future) {
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause());
+            throw new ClientHandlerException(e.getCause());
+        }
+    }
+
+    private MtGoxSecurity security() {
         checkState(
                 security.isPresent(),
                 "Secured resource was requested without a security context available. "
                         + "Please initialize the MtGoxClient with a security context for secured resource access.");
 
-        return security.get().sendSecurePost(restClient,
-                currencyPath + MONEY_INFO_PATH, String.class,
-                Optional.<String> absent());
+        return security.get();
+    }
+
+    private void checkBook(final OrderBook book) {
+        checkArgument(checkNotNull(book).getCurrency() == currency,
+                "The book is for %s but this client is for %s",
+                book.getCurrency().name(), currency.name());
+    }
+
+    private static OrderBook decodeDepth(final InputStream in,
+            final OrderBook book) throws IOException {
+        if (!DEPTH_DECODER.decode(in, book)) {
+            throw new IOException("MtGox did not report success for "
+                    + MONEY_DEPTH_FETCH_PATH);
+        }
+        return book;
+    }
+
+    private static ResponseDecoder<MoneyInfo> moneyInfoDecoder(
+            final MoneyInfo holder) {
+        return new ResponseDecoder<MoneyInfo>() {
+            @Override
+            public MoneyInfo decode(final InputStream body) throws IOException {
+                if (!MONEY_INFO_DECODER.decode(body, holder).isSuccess()) {
+                    throw new IOException("MtGox did not report success for "
+                            + MONEY_INFO_PATH);
+                }
+                return holder;
+            }
+        };
+    }
+
+    /**
+     * @param priceInt
+     *            the limit price, 0 for a market order
+     */
+    private static PostForm orderForm(final EOrderType type,
+            final long amountInt, final long priceInt) {
+        checkNotNull(type);
+        checkArgument(amountInt > 0, "amountInt must be positive");
+
+        return new PostForm() {
+            @Override
+            public void writeTo(final SignedRequest request) {
+                request.appendParam(TYPE_PARAM, type.getCode());
+                request.appendParam(AMOUNT_INT_PARAM, amountInt);
+                if (priceInt > 0) {
+                    request.appendParam(PRICE_INT_PARAM, priceInt);
+                }
+            }
+        };
+    }
+
+    private static PostForm cancelForm(final String oid) {
+        checkNotNull(oid);
+
+        return new PostForm() {
+            @Override
+            public void writeTo(final SignedRequest request) {
+                request.appendParam(OID_PARAM, oid);
+            }
+        };
+    }
+
+    private static ResponseDecoder<String> oidDecoder(final String path) {
+        return new ResponseDecoder<String>() {
+            @Override
+            public String decode(final InputStream body) throws IOException {
+                final String oid = ORDER_DECODER.decodeOid(body);
+                if (null == oid) {
+                    throw new IOException("MtGox did not report success for "
+                            + path);
+                }
+                return oid;
+            }
+        };
+    }
+
+    private static ResponseDecoder<OpenOrders> ordersDecoder(
+            final OpenOrders holder) {
+        return new ResponseDecoder<OpenOrders>() {
+            @Override
+            public OpenOrders decode(final InputStream body)
+                    throws IOException {
+                if (!ORDER_DECODER.decode(body, holder).isSuccess()) {
+                    throw new IOException("MtGox did not report success for "
+                            + MONEY_ORDERS_PATH);
+                }
+                return holder;
+            }
+        };
+    }
+
+    /**
+     * Release the {@link Transport} if this instance created it.
+     */
+    @Override
+    public void close() {
+        if (ownsTransport) {
+            transport.close();
+        }
     }
 }
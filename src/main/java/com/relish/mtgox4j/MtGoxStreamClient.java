@@ -0,0 +1,422 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.MapMaker;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.websocket.WebSocket;
+import com.ning.http.client.websocket.WebSocketTextListener;
+import com.ning.http.client.websocket.WebSocketUpgradeHandler;
+import com.relish.mtgox4j.http.Transport;
+import com.relish.mtgox4j.json.StreamMessageDecoder;
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.EStreamChannel;
+
+/**
+ * Streams ticker, trade and depth messages from MtGox over one persistent
+ * WebSocket connection, beside the request/response {@link MtGoxClient}.
+ * 
+ * <p>
+ * Subscriptions are kept by the client: they are sent as soon as the
+ * connection is open and sent again after every reconnect. A lost connection
+ * is re-established with exponential backoff and jitter until
+ * {@link #close()}. Each message is decoded in a single streaming pass on the
+ * I/O thread, into holders that are reused for every message of the
+ * connection.
+ * </p>
+ * 
+ * <p>
+ * Instances are thread-safe.
+ * </p>
+ */
+public final class MtGoxStreamClient implements Closeable {
+    public static final String DEFAULT_URL = "wss://websocket.mtgox.com/mtgox";
+
+    private static final String SUBSCRIBE = "{\"op\":\"mtgox.subscribe\",\"channel\":\"";
+    private static final String UNSUBSCRIBE = "{\"op\":\"mtgox.unsubscribe\",\"channel\":\"";
+    private static final String END = "\"}";
+
+    private final AsyncHttpClient asyncClient;
+    private final String url;
+    private final long minBackoffNanos;
+    private final long maxBackoffNanos;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private final ConcurrentMap<String, Boolean> subscriptions = new MapMaker()
+            .makeMap();
+    private final CopyOnWriteArrayList<StreamListener> listeners = new CopyOnWriteArrayList<StreamListener>();
+    private final AtomicReference<WebSocket> webSocket = new AtomicReference<WebSocket>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicLong backoffNanos = new AtomicLong();
+    private volatile boolean closed;
+
+    private MtGoxStreamClient(final Builder builder,
+            final AsyncHttpClient asyncClient) {
+        this.asyncClient = checkNotNull(asyncClient);
+        url = builder.url;
+        minBackoffNanos = builder.minBackoffNanos;
+        maxBackoffNanos = builder.maxBackoffNanos;
+
+        if (builder.scheduler.isPresent()) {
+            scheduler = builder.scheduler.get();
+            ownsScheduler = false;
+        } else {
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+            ownsScheduler = true;
+        }
+    }
+
+    /**
+     * @param listener
+     *            the listener to notify of messages and connection events
+     */
+    public void addListener(final StreamListener listener) {
+        listeners.add(checkNotNull(listener));
+    }
+
+    /**
+     * @param listener
+     *            the listener to stop notifying
+     */
+    public void removeListener(final StreamListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Subscribe to channel of the BTC{currency} pair, now if connected and
+     * again on every reconnect.
+     * 
+     * @param channel
+     *            the channel type
+     * @param currency
+     *            the currency of the pair
+     */
+    public void subscribe(final EStreamChannel channel, final ECurrency currency) {
+        final String name = channel.channelName(currency);
+        if (null == subscriptions.putIfAbsent(name, Boolean.TRUE)) {
+            send(SUBSCRIBE + name + END);
+        }
+    }
+
+    /**
+     * Subscribe to channel of each of currencies.
+     * 
+     * @param channel
+     *            the channel type
+     * @param currencies
+     *            the currencies of the pairs
+     */
+    public void subscribe(final EStreamChannel channel,
+            final Set<ECurrency> currencies) {
+        for (ECurrency currency : currencies) {
+            subscribe(channel, currency);
+        }
+    }
+
+    /**
+     * @param channel
+     *            the channel type
+     * @param currency
+     *            the currency of the pair
+     */
+    public void unsubscribe(final EStreamChannel channel,
+            final ECurrency currency) {
+        final String name = channel.channelName(currency);
+        if (null != subscriptions.remove(name)) {
+            send(UNSUBSCRIBE + name + END);
+        }
+    }
+
+    /**
+     * Open the connection; failures are retried like a lost connection.
+     * 
+     * @throws IllegalStateException
+     *             if already started or closed
+     */
+    public void start() {
+        checkState(!closed && started.compareAndSet(false, true),
+                "MtGoxStreamClient can only be started once");
+        connect();
+    }
+
+    /**
+     * @return true if the connection is currently open
+     */
+    public boolean isConnected() {
+        final WebSocket current = webSocket.get();
+        return null != current && current.isOpen();
+    }
+
+    /**
+     * Close the connection and stop reconnecting.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        final WebSocket current = webSocket.getAndSet(null);
+        if (null != current) {
+            current.close();
+        }
+        if (ownsScheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void connect() {
+        if (closed) {
+            return;
+        }
+
+        try {
+            asyncClient.prepareGet(url).execute(
+                    new WebSocketUpgradeHandler.Builder().addWebSocketListener(
+                            new Connection()).build());
+        } catch (IOException e) {
+            reconnect(e);
+        }
+    }
+
+    /**
+     * Schedule the next connection attempt with exponential backoff and
+     * jitter. Only called once per connection attempt, and attempts never
+     * overlap, so the backoff needs no CAS.
+     */
+    private void reconnect(final Throwable cause) {
+        notifyDisconnected(cause);
+        if (closed) {
+            return;
+        }
+
+        final long previous = backoffNanos.get();
+        final long backoff = 0 == previous ? minBackoffNanos : Math.min(
+                maxBackoffNanos, previous * 2);
+        backoffNanos.set(backoff);
+        final long delay = backoff / 2
+                + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        try {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    connect();
+                }
+            }, delay, TimeUnit.NANOSECONDS);
+        } catch (RuntimeException e) {
+            // the scheduler was shut down by close()
+        }
+    }
+
+    private void send(final String text) {
+        final WebSocket current = webSocket.get();
+        if (null != current && current.isOpen()) {
+            current.sendTextMessage(text);
+        }
+    }
+
+    private void notifyDisconnected(final Throwable cause) {
+        for (StreamListener listener : listeners) {
+            try {
+                listener.onDisconnected(cause);
+            } catch (RuntimeException e) {
+                // TODO: Log listener failure
+            }
+        }
+    }
+
+    /**
+     * The callbacks of one connection attempt. Netty delivers them one at a
+     * time, so the decoder needs no locking.
+     */
+    private final class Connection implements WebSocketTextListener {
+        private final StreamMessageDecoder decoder = new StreamMessageDecoder();
+        private final AtomicBoolean ended = new AtomicBoolean();
+
+        @Override
+        public void onOpen(final WebSocket opened) {
+            if (closed) {
+                opened.close();
+                return;
+            }
+
+            webSocket.set(opened);
+            backoffNanos.set(0L);
+            for (String name : subscriptions.keySet()) {
+                opened.sendTextMessage(SUBSCRIBE + name + END);
+            }
+
+            for (StreamListener listener : listeners) {
+                try {
+                    listener.onConnected();
+                } catch (RuntimeException e) {
+                    // TODO: Log listener failure
+                }
+            }
+        }
+
+        @Override
+        public void onMessage(final String message) {
+            dispatch(message);
+        }
+
+        @Override
+        public void onFragment(final String fragment, final boolean last) {
+            // the provider reassembles fragments and calls onMessage
+        }
+
+        @Override
+        public void onClose(final WebSocket closedSocket) {
+            end(null);
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+            end(t);
+        }
+
+        private void end(final Throwable cause) {
+            if (ended.compareAndSet(false, true)) {
+                final WebSocket current = webSocket.get();
+                if (null != current && !current.isOpen()) {
+                    webSocket.compareAndSet(current, null);
+                }
+                reconnect(cause);
+            }
+        }
+
+        private void dispatch(final String message) {
+            final EStreamChannel channel;
+            try {
+                channel = decoder.decode(message);
+            } catch (IOException e) {
+                // TODO: Log undecodable message
+                return;
+            }
+            if (null == channel || null == decoder.getCurrency()) {
+                return;
+            }
+
+            final ECurrency currency = decoder.getCurrency();
+            for (StreamListener listener : listeners) {
+                try {
+                    switch (channel) {
+                    case TICKER:
+                        listener.onTicker(currency, decoder.getTicker());
+                        break;
+                    case TRADE:
+                        listener.onTrade(currency, decoder.getTrade());
+                        break;
+                    case DEPTH:
+                        listener.onDepth(currency, decoder.getDepth());
+                        break;
+                    }
+                } catch (RuntimeException e) {
+                    // TODO: Log listener failure
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds {@link MtGoxStreamClient}s. By default they connect to
+     * {@link #DEFAULT_URL} and back off from half a second up to 30 seconds.
+     */
+    public static final class Builder {
+        private String url = DEFAULT_URL;
+        private long minBackoffNanos = TimeUnit.MILLISECONDS.toNanos(500);
+        private long maxBackoffNanos = TimeUnit.SECONDS.toNanos(30);
+        private Optional<ScheduledExecutorService> scheduler = Optional
+                .absent();
+
+        /**
+         * @param url
+         *            the ws:// or wss:// URL to connect to, e.g. of a local
+         *            stand-in server
+         * @return this builder
+         */
+        public Builder url(final String url) {
+            this.url = checkNotNull(url);
+            return this;
+        }
+
+        /**
+         * @param min
+         *            the delay before the first reconnect attempt
+         * @param max
+         *            the longest delay between reconnect attempts
+         * @param unit
+         *            the unit of min and max
+         * @return this builder
+         */
+        public Builder reconnectBackoff(final long min, final long max,
+                final TimeUnit unit) {
+            checkArgument(min > 0 && min <= max, "need 0 < min <= max");
+            minBackoffNanos = unit.toNanos(min);
+            maxBackoffNanos = unit.toNanos(max);
+            return this;
+        }
+
+        /**
+         * @param scheduler
+         *            the executor to schedule reconnects on; the caller keeps
+         *            ownership
+         * @return this builder
+         */
+        public Builder scheduler(final ScheduledExecutorService scheduler) {
+            this.scheduler = Optional.of(scheduler);
+            return this;
+        }
+
+        /**
+         * @param transport
+         *            the transport whose non-blocking client opens the
+         *            connection; the caller keeps ownership
+         * @return a client, not yet started
+         */
+        public MtGoxStreamClient build(final Transport transport) {
+            return build(transport.getAsyncClient());
+        }
+
+        /**
+         * @param asyncClient
+         *            the client that opens the connection; the caller keeps
+         *            ownership
+         * @return a client, not yet started
+         */
+        public MtGoxStreamClient build(final AsyncHttpClient asyncClient) {
+            return new MtGoxStreamClient(this, asyncClient);
+        }
+    }
+}
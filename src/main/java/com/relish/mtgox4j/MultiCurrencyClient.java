@@ -0,0 +1,323 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.EnumSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.ning.http.client.AsyncHttpClient;
+import com.relish.mtgox4j.http.BoundEndpoint;
+import com.relish.mtgox4j.http.DefaultTransport;
+import com.relish.mtgox4j.http.ERequestPriority;
+import com.relish.mtgox4j.http.RequestHedger;
+import com.relish.mtgox4j.http.RequestScheduler;
+import com.relish.mtgox4j.http.Transport;
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.json.TickerFast;
+
+/**
+ * Fetches the tickers of any set of BTC{currency} pairs concurrently through
+ * one {@link Transport}.
+ * 
+ * <p>
+ * At most maxParallel ticker requests are in flight per instance, across all
+ * concurrent calls; the rest queue and start as earlier requests complete. A
+ * pair that fails is recorded in the {@link TickerSnapshot} rather than
+ * failing the others.
+ * </p>
+ * 
+ * <p>
+ * Instances are thread-safe and should be shared.
+ * </p>
+ */
+public class MultiCurrencyClient implements Closeable {
+    public static final int DEFAULT_MAX_PARALLEL = 4;
+
+    /**
+     * Every currency MtGox quotes BTC in.
+     */
+    public static final Set<ECurrency> ALL_PAIRS = EnumSet.complementOf(EnumSet
+            .of(ECurrency.BTC));
+
+    private final Transport transport;
+    private final boolean ownsTransport;
+    private final BoundEndpoint[] tickerEndpoints;
+    private final int maxParallel;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Queue<Fetch> pending = new ConcurrentLinkedQueue<Fetch>();
+    /** drain() calls not yet served; only the caller raising it from 0 drains */
+    private final AtomicInteger drains = new AtomicInteger();
+
+    /**
+     * Creates its own {@link DefaultTransport}, released by {@link #close()},
+     * and allows {@link #DEFAULT_MAX_PARALLEL} requests in flight.
+     */
+    public MultiCurrencyClient() {
+        this(DEFAULT_MAX_PARALLEL, new DefaultTransport(), true);
+    }
+
+    /**
+     * @param asyncClient
+     *            the shared client to request tickers with; the caller keeps
+     *            ownership
+     * @param maxParallel
+     *            the maximum number of ticker requests in flight at once
+     * @throws IllegalArgumentException
+     *             if maxParallel is not positive
+     */
+    public MultiCurrencyClient(final AsyncHttpClient asyncClient,
+            final int maxParallel) {
+        this(checkMaxParallel(maxParallel), new DefaultTransport(asyncClient),
+                true);
+    }
+
+    /**
+     * @param transport
+     *            the shared transport to request tickers with, as
+     *            {@link MtGoxClient#getTickerFastAsync()} sends them:
+     *            through its {@link RequestScheduler} at
+     *            {@link ERequestPriority#PUBLIC} and its
+     *            {@link RequestHedger} if it has them, and reported to its
+     *            metrics; the caller keeps ownership
+     * @param maxParallel
+     *            the maximum number of ticker requests in flight at once
+     * @throws IllegalArgumentException
+     *             if maxParallel is not positive
+     */
+    public MultiCurrencyClient(final Transport transport, final int maxParallel) {
+        this(checkMaxParallel(maxParallel), checkNotNull(transport), false);
+    }
+
+    /**
+     * maxParallel comes first so that it is checked before a transport is
+     * created for it.
+     */
+    private MultiCurrencyClient(final int maxParallel,
+            final Transport transport, final boolean ownsTransport) {
+        this.transport = transport;
+        this.ownsTransport = ownsTransport;
+        this.maxParallel = maxParallel;
+        tickerEndpoints = MtGoxClient.tickerFastEndpoints(transport);
+    }
+
+//@formatter:off
+    /**
+     * GET[https://data.mtgox.com/api/2/BTC{currency}/money/ticker_fast]
+     * for each of currencies, without blocking.
+     * 
+     * <p>
+     * The future completes once every pair has succeeded or failed and never
+     * fails itself. Cancelling it aborts the pairs still outstanding.
+     * </p>
+     * 
+     * @param currencies
+     *            the currencies of the BTC{currency} pairs to fetch
+     * @return the future snapshot
+     */
+//@formatter:on
+    public ListenableFuture<TickerSnapshot> getTickerFastAsync(
+            final Set<ECurrency> currencies) {
+        final Batch batch = new Batch(checkNotNull(currencies));
+        if (currencies.isEmpty()) {
+            batch.result.set(batch.snapshot);
+            return batch.result;
+        }
+
+        for (ECurrency currency : currencies) {
+            pending.add(new Fetch(batch, currency));
+        }
+        drain();
+
+        return batch.result;
+    }
+
+    /**
+     * Blocking variant of {@link #getTickerFastAsync(Set)}.
+     * 
+     * @param currencies
+     *            the currencies of the BTC{currency} pairs to fetch
+     * @return the snapshot
+     */
+    public TickerSnapshot getTickerFast(final Set<ECurrency> currencies) {
+        return Futures.getUnchecked(getTickerFastAsync(currencies));
+    }
+
+    /**
+     * @return the number of ticker requests currently in flight
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Release the transport if this instance created it, and with it the
+     * {@link AsyncHttpClient} if that was created too.
+     */
+    @Override
+    public void close() {
+        if (ownsTransport) {
+            transport.close();
+        }
+    }
+
+    private static int checkMaxParallel(final int maxParallel) {
+        checkArgument(maxParallel > 0, "maxParallel must be positive");
+        return maxParallel;
+    }
+
+    /**
+     * Start queued fetches while fewer than maxParallel are in flight. A fetch
+     * that completes while being started calls back in here; that call only
+     * tells the thread already draining to go round again, so the stack does
+     * not grow with the queue.
+     */
+    private void drain() {
+        if (0 != drains.getAndIncrement()) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            startPending();
+            missed = drains.addAndGet(-missed);
+        } while (0 != missed);
+    }
+
+    private void startPending() {
+        while (true) {
+            final int running = inFlight.get();
+            if (running >= maxParallel) {
+                return;
+            }
+            if (!inFlight.compareAndSet(running, running + 1)) {
+                continue;
+            }
+
+            final Fetch fetch = pending.poll();
+            if (null == fetch) {
+                inFlight.decrementAndGet();
+                // re-check: a fetch may have been queued after the poll
+                if (pending.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            if (!fetch.start()) {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private void finished() {
+        inFlight.decrementAndGet();
+        drain();
+    }
+
+    /**
+     * One call to {@link #getTickerFastAsync(Set)}.
+     */
+    private static final class Batch {
+        private final TickerSnapshot snapshot;
+        private final SettableFuture<TickerSnapshot> result = SettableFuture
+                .create();
+        private final AtomicInteger remaining;
+
+        private Batch(final Set<ECurrency> currencies) {
+            snapshot = new TickerSnapshot(currencies.isEmpty() ? EnumSet
+                    .noneOf(ECurrency.class) : EnumSet.copyOf(currencies));
+            remaining = new AtomicInteger(currencies.size());
+        }
+
+        private void countDown() {
+            // the last decrement happens after every other fetch's write
+            if (0 == remaining.decrementAndGet()) {
+                result.set(snapshot);
+            }
+        }
+    }
+
+    /**
+     * The ticker request of one pair within a {@link Batch}.
+     */
+    private final class Fetch implements Runnable {
+        private final Batch batch;
+        private final ECurrency currency;
+        private ListenableFuture<TickerFast> future;
+
+        private Fetch(final Batch batch, final ECurrency currency) {
+            this.batch = batch;
+            this.currency = currency;
+        }
+
+        /**
+         * @return whether a request was sent and will call
+         *         {@link MultiCurrencyClient#finished()}; if not, the caller
+         *         frees the slot
+         */
+        private boolean start() {
+            if (batch.result.isCancelled()) {
+                return false;
+            }
+
+            future = MtGoxClient.getAsync(tickerEndpoints[currency.ordinal()],
+                    true, MtGoxClient.TICKER_FAST_JSON);
+            future.addListener(this, MoreExecutors.sameThreadExecutor());
+
+            final ListenableFuture<TickerFast> started = future;
+            batch.result.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    if (batch.result.isCancelled()) {
+                        started.cancel(true);
+                    }
+                }
+            }, MoreExecutors.sameThreadExecutor());
+            return true;
+        }
+
+        @Override
+        public void run() {
+            try {
+                batch.snapshot.setTicker(currency,
+                        Uninterruptibles.getUninterruptibly(future));
+            } catch (ExecutionException e) {
+                batch.snapshot.setFailure(currency, e.getCause());
+            } catch (CancellationException e) {
+                batch.snapshot.setFailure(currency, e);
+            } finally {
+                // free the slot first, so it is free once the batch completes
+                finished();
+                batch.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j;
+
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.MutableDepthUpdate;
+import com.relish.mtgox4j.model.MutableTickerFast;
+import com.relish.mtgox4j.model.MutableTrade;
+
+/**
+ * Receives messages and connection events from a {@link MtGoxStreamClient}.
+ * 
+ * <p>
+ * Callbacks run on the connection's I/O thread, one at a time and in the
+ * order the messages arrived, so keep them short and never block in them.
+ * Holders are owned by the client and only valid during the call; copy what
+ * you keep.
+ * </p>
+ */
+public interface StreamListener {
+    /**
+     * @param currency
+     *            the currency of the BTC{currency} pair
+     * @param ticker
+     *            the ticker
+     */
+    void onTicker(ECurrency currency, MutableTickerFast ticker);
+
+    /**
+     * @param currency
+     *            the currency of the BTC{currency} pair
+     * @param trade
+     *            the trade
+     */
+    void onTrade(ECurrency currency, MutableTrade trade);
+
+    /**
+     * @param currency
+     *            the currency of the BTC{currency} pair
+     * @param depth
+     *            the change to one price level
+     */
+    void onDepth(ECurrency currency, MutableDepthUpdate depth);
+
+    /**
+     * The connection was (re-)established and all subscriptions were sent.
+     * Depth updates missed while disconnected are lost, so rebuild order books
+     * from a fresh depth fetch.
+     */
+    void onConnected();
+
+    /**
+     * The connection was lost or could not be opened; the client reconnects
+     * with backoff.
+     * 
+     * @param cause
+     *            the error, or null if the connection was closed cleanly
+     */
+    void onDisconnected(Throwable cause);
+}
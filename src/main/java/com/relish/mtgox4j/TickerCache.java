@@ -0,0 +1,392 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.relish.mtgox4j.http.BoundEndpoint;
+import com.relish.mtgox4j.http.ERequestPriority;
+import com.relish.mtgox4j.http.RequestHedger;
+import com.relish.mtgox4j.http.RequestScheduler;
+import com.relish.mtgox4j.http.Transport;
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.json.TickerFast;
+
+/**
+ * Caches the ticker of each BTC{currency} pair for a per-currency TTL so that
+ * independent callers share responses instead of each sending a request.
+ * 
+ * <ul>
+ * <li>Fresh: younger than the TTL, returned without a request.</li>
+ * <li>Stale: older than the TTL but within the stale-while-revalidate window,
+ * returned immediately while one refresh runs in the background.</li>
+ * <li>Expired or absent: the caller waits for a load.</li>
+ * </ul>
+ * 
+ * <p>
+ * Loads are single-flight: concurrent callers of a pair share one in-flight
+ * request. A failed refresh keeps the previous value (it is still served while
+ * stale) and the next call retries.
+ * </p>
+ * 
+ * <p>
+ * Instances are thread-safe, lock-free and meant to be shared, e.g. by
+ * passing one to several {@link MtGoxClient}s.
+ * </p>
+ */
+public final class TickerCache {
+    private static final Entry EMPTY = new Entry(null, 0L, null);
+
+    private final AsyncFunction<ECurrency, TickerFast> loader;
+    private final Ticker ticker;
+    private final long[] ttlNanos;
+    private final long staleNanos;
+    private final AtomicReferenceArray<Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+
+    private TickerCache(final Builder builder,
+            final AsyncFunction<ECurrency, TickerFast> loader) {
+        this.loader = checkNotNull(loader);
+        ticker = builder.ticker;
+        ttlNanos = builder.ttlNanos.clone();
+        staleNanos = builder.staleNanos;
+
+        final Entry[] empty = new Entry[ECurrency.values().length];
+        Arrays.fill(empty, EMPTY);
+        entries = new AtomicReferenceArray<Entry>(empty);
+    }
+
+    /**
+     * Get the ticker of the BTC{currency} pair, loading it if it is not cached
+     * or has expired.
+     * 
+     * @param currency
+     *            the currency of the pair
+     * @return the future ticker; already done unless the caller has to wait
+     *         for a load. Cancelling it only stops this caller waiting; the
+     *         load still completes for everyone else.
+     */
+    public ListenableFuture<TickerFast> getAsync(final ECurrency currency) {
+        final int i = currency.ordinal();
+        final Entry entry = entries.get(i);
+
+        if (null != entry.value) {
+            final long age = ticker.read() - entry.loadedNanos;
+            if (age < ttlNanos[i]) {
+                hits.incrementAndGet();
+                return Futures.immediateFuture(entry.value);
+            }
+            if (age < ttlNanos[i] + staleNanos) {
+                staleHits.incrementAndGet();
+                load(currency);
+                return Futures.immediateFuture(entry.value);
+            }
+        }
+
+        misses.incrementAndGet();
+        return follow(load(currency));
+    }
+
+    /**
+     * Blocking variant of {@link #getAsync(ECurrency)}.
+     * 
+     * @param currency
+     *            the currency of the pair
+     * @return the ticker
+     * @throws com.google.common.util.concurrent.UncheckedExecutionException
+     *             if the ticker had to be loaded and the load failed
+     */
+    public TickerFast get(final ECurrency currency) {
+        return Futures.getUnchecked(getAsync(currency));
+    }
+
+    /**
+     * Drop the cached ticker of the BTC{currency} pair. A load already in
+     * flight still completes and is cached.
+     * 
+     * @param currency
+     *            the currency of the pair
+     */
+    public void invalidate(final ECurrency currency) {
+        final int i = currency.ordinal();
+        while (true) {
+            final Entry entry = entries.get(i);
+            if (entries.compareAndSet(i, entry, new Entry(null, 0L,
+                    entry.inFlight))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return calls answered with a fresh value
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return calls answered with a stale value while refreshing
+     */
+    public long getStaleHitCount() {
+        return staleHits.get();
+    }
+
+    /**
+     * @return calls that had to wait for a load
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return requests actually sent
+     */
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    /**
+     * Join the in-flight load of currency or start one.
+     * 
+     * @return the load shared by every caller; hand callers a
+     *         {@link #follow(ListenableFuture)} of it
+     */
+    private ListenableFuture<TickerFast> load(final ECurrency currency) {
+        final int i = currency.ordinal();
+        final SettableFuture<TickerFast> result = SettableFuture.create();
+        while (true) {
+            final Entry entry = entries.get(i);
+            if (null != entry.inFlight) {
+                return entry.inFlight;
+            }
+            if (entries.compareAndSet(i, entry, new Entry(entry.value,
+                    entry.loadedNanos, result))) {
+                break;
+            }
+        }
+
+        loads.incrementAndGet();
+        ListenableFuture<TickerFast> request;
+        try {
+            request = loader.apply(currency);
+        } catch (Exception e) {
+            request = Futures.immediateFailedFuture(e);
+        }
+
+        final ListenableFuture<TickerFast> response = request;
+        response.addListener(new Runnable() {
+            @Override
+            public void run() {
+                complete(i, result, response);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+
+        return result;
+    }
+
+    /**
+     * @return a future of the caller's own completing with load, so that
+     *         cancelling it does not cancel load under the other callers
+     */
+    private static ListenableFuture<TickerFast> follow(
+            final ListenableFuture<TickerFast> load) {
+        final SettableFuture<TickerFast> own = SettableFuture.create();
+        Futures.addCallback(load, new FutureCallback<TickerFast>() {
+            @Override
+            public void onSuccess(final TickerFast value) {
+                own.set(value);
+            }
+
+            @Override
+            public void onFailure(final Throwable t) {
+                own.setException(t);
+            }
+        });
+        return own;
+    }
+
+    private void complete(final int i, final SettableFuture<TickerFast> result,
+            final ListenableFuture<TickerFast> response) {
+        TickerFast value = null;
+        Throwable failure = null;
+        try {
+            value = Uninterruptibles.getUninterruptibly(response);
+        } catch (ExecutionException e) {
+            failure = e.getCause();
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        if (null == value && null == failure) {
+            failure = new IllegalStateException("Empty ticker response");
+        }
+
+        final long now = ticker.read();
+        while (true) {
+            final Entry entry = entries.get(i);
+            final Entry next = null != value ? new Entry(value, now, null)
+                    : new Entry(entry.value, entry.loadedNanos, null);
+            if (entries.compareAndSet(i, entry, next)) {
+                break;
+            }
+        }
+
+        if (null != value) {
+            result.set(value);
+        } else {
+            result.setException(failure);
+        }
+    }
+
+    /**
+     * The cached ticker of one pair and its in-flight load, replaced as a
+     * whole.
+     */
+    private static final class Entry {
+        private final TickerFast value;
+        private final long loadedNanos;
+        private final ListenableFuture<TickerFast> inFlight;
+
+        private Entry(final TickerFast value, final long loadedNanos,
+                final ListenableFuture<TickerFast> inFlight) {
+            this.value = value;
+            this.loadedNanos = loadedNanos;
+            this.inFlight = inFlight;
+        }
+    }
+
+    /**
+     * Builds {@link TickerCache}s. By default every pair is fresh for one
+     * second and served stale for up to five more while refreshing.
+     */
+    public static final class Builder {
+        private final long[] ttlNanos = new long[ECurrency.values().length];
+        private long staleNanos = TimeUnit.SECONDS.toNanos(5);
+        private Ticker ticker = Ticker.systemTicker();
+
+        public Builder() {
+            Arrays.fill(ttlNanos, TimeUnit.SECONDS.toNanos(1));
+        }
+
+        /**
+         * @param ttl
+         *            how long every pair without its own TTL stays fresh
+         * @param unit
+         *            the unit of ttl
+         * @return this builder
+         */
+        public Builder defaultTtl(final long ttl, final TimeUnit unit) {
+            checkArgument(ttl >= 0, "ttl must not be negative");
+            Arrays.fill(ttlNanos, unit.toNanos(ttl));
+            return this;
+        }
+
+        /**
+         * @param currency
+         *            the currency of the BTC{currency} pair
+         * @param ttl
+         *            how long the pair stays fresh
+         * @param unit
+         *            the unit of ttl
+         * @return this builder
+         */
+        public Builder ttl(final ECurrency currency, final long ttl,
+                final TimeUnit unit) {
+            checkArgument(ttl >= 0, "ttl must not be negative");
+            ttlNanos[currency.ordinal()] = unit.toNanos(ttl);
+            return this;
+        }
+
+        /**
+         * @param window
+         *            how long after its TTL a value is still served while it
+         *            is refreshed; 0 to always wait for the refresh
+         * @param unit
+         *            the unit of window
+         * @return this builder
+         */
+        public Builder staleWhileRevalidate(final long window,
+                final TimeUnit unit) {
+            checkArgument(window >= 0, "window must not be negative");
+            staleNanos = unit.toNanos(window);
+            return this;
+        }
+
+        /**
+         * @param ticker
+         *            the time source, for testing
+         * @return this builder
+         */
+        public Builder ticker(final Ticker ticker) {
+            this.ticker = checkNotNull(ticker);
+            return this;
+        }
+
+        /**
+         * @param transport
+         *            the transport to load tickers with, as
+         *            {@link MtGoxClient#getTickerFastAsync()} sends them:
+         *            through its {@link RequestScheduler} at
+         *            {@link ERequestPriority#PUBLIC} and its
+         *            {@link RequestHedger} if it has them, and reported to
+         *            its metrics
+         * @return a cache loading from MtGox
+         */
+        public TickerCache build(final Transport transport) {
+            final BoundEndpoint[] endpoints = MtGoxClient
+                    .tickerFastEndpoints(checkNotNull(transport));
+
+            return build(new AsyncFunction<ECurrency, TickerFast>() {
+                @Override
+                public ListenableFuture<TickerFast> apply(
+                        final ECurrency currency) {
+                    return MtGoxClient.getAsync(endpoints[currency.ordinal()],
+                            true, MtGoxClient.TICKER_FAST_JSON);
+                }
+            });
+        }
+
+        /**
+         * @param loader
+         *            loads the ticker of a pair without blocking
+         * @return a cache loading with loader
+         */
+        public TickerCache build(final AsyncFunction<ECurrency, TickerFast> loader) {
+            return new TickerCache(this, loader);
+        }
+    }
+}
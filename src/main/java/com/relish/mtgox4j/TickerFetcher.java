@@ -0,0 +1,36 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j;
+
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.MutableTickerFast;
+
+/**
+ * Fetches a ticker into a holder for {@link TickerPoller}.
+ */
+interface TickerFetcher {
+    /**
+     * @param currency
+     *            the currency of the BTC{currency} pair
+     * @param holder
+     *            the holder to decode into
+     * @throws Exception
+     *             if the ticker could not be fetched
+     */
+    void fetch(ECurrency currency, MutableTickerFast holder) throws Exception;
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j;
+
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.MutableTickerFast;
+
+/**
+ * Receives updates from a {@link TickerPoller}.
+ * 
+ * <p>
+ * Callbacks run on the poller's threads, one at a time per currency, and
+ * delay that currency's next poll, so keep them short.
+ * </p>
+ */
+public interface TickerListener {
+    /**
+     * The ticker of the BTC{currency} pair changed.
+     * 
+     * @param currency
+     *            the currency of the pair
+     * @param ticker
+     *            the new ticker, owned by the poller and only valid during
+     *            this call; copy what you keep, e.g. with
+     *            {@link MutableTickerFast#toTickerFast()}
+     */
+    void onTicker(ECurrency currency, MutableTickerFast ticker);
+
+    /**
+     * Polling the BTC{currency} pair failed; the poller backs off and retries.
+     * 
+     * @param currency
+     *            the currency of the pair
+     * @param failure
+     *            why the poll failed
+     */
+    void onError(ECurrency currency, Throwable failure);
+}
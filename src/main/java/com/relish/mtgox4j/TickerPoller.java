@@ -0,0 +1,402 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.base.Optional;
+import com.relish.mtgox4j.http.Transport;
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.MutableTickerFast;
+import com.relish.mtgox4j.security.MtGoxSecurity;
+
+/**
+ * Polls the tickers of one or more BTC{currency} pairs and pushes changes to
+ * registered {@link TickerListener}s.
+ * 
+ * <p>
+ * Each pair is polled on its own schedule, and a pair's next poll is only
+ * scheduled once the previous one has finished, so polls of a pair never
+ * overlap. Responses are decoded into reusable holders and a response whose
+ * now timestamp and value_int fields all equal the previous one's is dropped,
+ * comparing primitives rather than going through equals().
+ * </p>
+ * 
+ * <ul>
+ * <li>Fixed schedule: poll every period.</li>
+ * <li>Adaptive schedule: halve the delay (down to its minimum) after a change
+ * and double it (up to its maximum) after an unchanged response.</li>
+ * <li>Errors: back off exponentially with jitter, up to a maximum, until a
+ * poll succeeds.</li>
+ * </ul>
+ */
+public final class TickerPoller implements Closeable {
+    private final TickerFetcher fetcher;
+    private final Set<ECurrency> currencies;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final long minBackoffNanos;
+    private final long maxBackoffNanos;
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    private final List<TickerListener> listeners = new CopyOnWriteArrayList<TickerListener>();
+    private final List<Poll> polls = new ArrayList<Poll>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean closed;
+
+    private TickerPoller(final Builder builder, final TickerFetcher fetcher) {
+        checkArgument(!builder.currencies.isEmpty(), "no currencies to poll");
+
+        this.fetcher = fetcher;
+        currencies = EnumSet.copyOf(builder.currencies);
+        minDelayNanos = builder.minDelayNanos;
+        maxDelayNanos = builder.maxDelayNanos;
+        minBackoffNanos = builder.minBackoffNanos;
+        maxBackoffNanos = builder.maxBackoffNanos;
+
+        if (builder.executor.isPresent()) {
+            executor = builder.executor.get();
+            ownsExecutor = false;
+        } else {
+            executor = Executors.newScheduledThreadPool(Math.min(
+                    currencies.size(), 4));
+            ownsExecutor = true;
+        }
+    }
+
+    /**
+     * @param listener
+     *            the listener to notify of changes and errors
+     */
+    public void addListener(final TickerListener listener) {
+        listeners.add(checkNotNull(listener));
+    }
+
+    /**
+     * @param listener
+     *            the listener to stop notifying
+     */
+    public void removeListener(final TickerListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Start polling every pair now.
+     * 
+     * @throws IllegalStateException
+     *             if already started or closed
+     */
+    public void start() {
+        checkState(!closed && started.compareAndSet(false, true),
+                "TickerPoller can only be started once");
+
+        synchronized (polls) {
+            for (ECurrency currency : currencies) {
+                final Poll poll = new Poll(currency);
+                polls.add(poll);
+                poll.schedule(0L);
+            }
+        }
+    }
+
+    /**
+     * Stop polling, and shut down the executor if this poller created it. A
+     * poll already running completes, but its listeners are not notified.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        synchronized (polls) {
+            for (Poll poll : polls) {
+                poll.cancel();
+            }
+        }
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return true if both tickers have the same now timestamp and value_int
+     *         fields
+     */
+    static boolean sameValues(final MutableTickerFast a,
+            final MutableTickerFast b) {
+        return a.getNow() == b.getNow()
+                && a.getLastLocal().getValueInt() == b.getLastLocal()
+                        .getValueInt()
+                && a.getLast().getValueInt() == b.getLast().getValueInt()
+                && a.getLastOrig().getValueInt() == b.getLastOrig()
+                        .getValueInt()
+                && a.getLastAll().getValueInt() == b.getLastAll().getValueInt()
+                && a.getBuy().getValueInt() == b.getBuy().getValueInt()
+                && a.getSell().getValueInt() == b.getSell().getValueInt();
+    }
+
+    /**
+     * The polling state of one pair. Only touched by the running poll, and
+     * polls of a pair never overlap.
+     */
+    private final class Poll implements Runnable {
+        private final ECurrency currency;
+        private MutableTickerFast latest = new MutableTickerFast();
+        private MutableTickerFast scratch = new MutableTickerFast();
+        private boolean hasLatest;
+        private long delayNanos = minDelayNanos;
+        private long backoffNanos;
+        private volatile ScheduledFuture<?> next;
+
+        private Poll(final ECurrency currency) {
+            this.currency = currency;
+        }
+
+        @Override
+        public void run() {
+            if (closed) {
+                return;
+            }
+
+            final Throwable failure = fetch();
+            if (null != failure) {
+                backoffNanos = 0 == backoffNanos ? minBackoffNanos : Math.min(
+                        maxBackoffNanos, backoffNanos * 2);
+                // jitter so pollers that failed together don't retry together
+                final long retryNanos = backoffNanos / 2
+                        + ThreadLocalRandom.current().nextLong(
+                                backoffNanos / 2 + 1);
+                try {
+                    notifyError(failure);
+                } finally {
+                    schedule(retryNanos);
+                }
+                return;
+            }
+            backoffNanos = 0;
+
+            if (hasLatest && sameValues(latest, scratch)) {
+                delayNanos = Math.min(maxDelayNanos, delayNanos * 2);
+                schedule(delayNanos);
+                return;
+            }
+
+            final MutableTickerFast swap = latest;
+            latest = scratch;
+            scratch = swap;
+            hasLatest = true;
+            delayNanos = Math.max(minDelayNanos, delayNanos / 2);
+            try {
+                notifyTicker();
+            } finally {
+                // even an Error from a listener must not end the polling
+                schedule(delayNanos);
+            }
+        }
+
+        /**
+         * Fetch into scratch.
+         * 
+         * @return why the fetch failed, or null if it succeeded
+         */
+        private Throwable fetch() {
+            try {
+                scratch.reset();
+                fetcher.fetch(currency, scratch);
+                if (!scratch.isSuccess()) {
+                    return new IllegalStateException("MtGox returned an error");
+                }
+                return null;
+            } catch (Throwable t) {
+                return t;
+            }
+        }
+
+        private void schedule(final long nanos) {
+            if (closed) {
+                return;
+            }
+            try {
+                next = executor.schedule(this, nanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // the caller's executor was shut down under the poller
+                // TODO: Log that polling stopped
+            }
+        }
+
+        private void cancel() {
+            final ScheduledFuture<?> scheduled = next;
+            if (null != scheduled) {
+                scheduled.cancel(false);
+            }
+        }
+
+        private void notifyTicker() {
+            for (TickerListener listener : listeners) {
+                if (closed) {
+                    return;
+                }
+                try {
+                    listener.onTicker(currency, latest);
+                } catch (RuntimeException e) {
+                    // TODO: Log listener failure
+                }
+            }
+        }
+
+        private void notifyError(final Throwable failure) {
+            for (TickerListener listener : listeners) {
+                if (closed) {
+                    return;
+                }
+                try {
+                    listener.onError(currency, failure);
+                } catch (RuntimeException e) {
+                    // TODO: Log listener failure
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds {@link TickerPoller}s. By default pairs are polled every second
+     * and errors back off from one second up to a minute.
+     */
+    public static final class Builder {
+        private final Set<ECurrency> currencies = EnumSet
+                .noneOf(ECurrency.class);
+        private long minDelayNanos = TimeUnit.SECONDS.toNanos(1);
+        private long maxDelayNanos = TimeUnit.SECONDS.toNanos(1);
+        private long minBackoffNanos = TimeUnit.SECONDS.toNanos(1);
+        private long maxBackoffNanos = TimeUnit.MINUTES.toNanos(1);
+        private Optional<ScheduledExecutorService> executor = Optional.absent();
+
+        /**
+         * @param currencies
+         *            the currencies of the BTC{currency} pairs to poll
+         * @return this builder
+         */
+        public Builder currencies(final Set<ECurrency> currencies) {
+            this.currencies.addAll(currencies);
+            return this;
+        }
+
+        /**
+         * Poll every period.
+         * 
+         * @param period
+         *            the delay between the end of a poll and the next
+         * @param unit
+         *            the unit of period
+         * @return this builder
+         */
+        public Builder fixedDelay(final long period, final TimeUnit unit) {
+            return adaptiveDelay(period, period, unit);
+        }
+
+        /**
+         * Poll faster while the ticker changes and slower while it doesn't.
+         * 
+         * @param min
+         *            the shortest delay between polls
+         * @param max
+         *            the longest delay between polls
+         * @param unit
+         *            the unit of min and max
+         * @return this builder
+         */
+        public Builder adaptiveDelay(final long min, final long max,
+                final TimeUnit unit) {
+            checkArgument(min > 0 && min <= max, "need 0 < min <= max");
+            minDelayNanos = unit.toNanos(min);
+            maxDelayNanos = unit.toNanos(max);
+            return this;
+        }
+
+        /**
+         * @param min
+         *            the delay after the first consecutive error
+         * @param max
+         *            the longest delay after consecutive errors
+         * @param unit
+         *            the unit of min and max
+         * @return this builder
+         */
+        public Builder errorBackoff(final long min, final long max,
+                final TimeUnit unit) {
+            checkArgument(min > 0 && min <= max, "need 0 < min <= max");
+            minBackoffNanos = unit.toNanos(min);
+            maxBackoffNanos = unit.toNanos(max);
+            return this;
+        }
+
+        /**
+         * @param executor
+         *            the executor to poll on; the caller keeps ownership
+         * @return this builder
+         */
+        public Builder executor(final ScheduledExecutorService executor) {
+            this.executor = Optional.of(executor);
+            return this;
+        }
+
+        /**
+         * @param transport
+         *            the transport to poll with; the caller keeps ownership
+         * @return a poller of MtGox, not yet started
+         */
+        public TickerPoller build(final Transport transport) {
+            checkNotNull(transport);
+            final Map<ECurrency, MtGoxClient> clients = new EnumMap<ECurrency, MtGoxClient>(
+                    ECurrency.class);
+            for (ECurrency currency : currencies) {
+                clients.put(currency, new MtGoxClient(currency, Optional
+                        .<MtGoxSecurity> absent(), transport));
+            }
+
+            return build(new TickerFetcher() {
+                @Override
+                public void fetch(final ECurrency currency,
+                        final MutableTickerFast holder) {
+                    clients.get(currency).getTickerFast(holder);
+                }
+            });
+        }
+
+        TickerPoller build(final TickerFetcher fetcher) {
+            return new TickerPoller(this, checkNotNull(fetcher));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.collect.Sets;
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.json.TickerFast;
+
+/**
+ * The tickers of several BTC{currency} pairs fetched together by
+ * {@link MultiCurrencyClient}, indexed by {@link ECurrency}.
+ * 
+ * <p>
+ * A pair that could not be fetched does not fail the whole snapshot; its
+ * failure is recorded instead, so a dashboard can show every pair that did
+ * arrive. Every requested currency has either a ticker or a failure.
+ * </p>
+ * 
+ * <p>
+ * Instances are effectively immutable once handed out and are thread-safe.
+ * </p>
+ */
+public final class TickerSnapshot {
+    private static final ECurrency[] CURRENCIES = ECurrency.values();
+
+    private final Set<ECurrency> requested;
+    private final TickerFast[] tickers = new TickerFast[CURRENCIES.length];
+    private final Throwable[] failures = new Throwable[CURRENCIES.length];
+
+    TickerSnapshot(final Set<ECurrency> requested) {
+        this.requested = Sets.immutableEnumSet(requested);
+    }
+
+    /**
+     * Record the ticker of currency. Only called before the snapshot is
+     * published, at most once per currency.
+     */
+    void setTicker(final ECurrency currency, final TickerFast ticker) {
+        tickers[currency.ordinal()] = ticker;
+    }
+
+    /**
+     * Record why currency could not be fetched. Only called before the
+     * snapshot is published, at most once per currency.
+     */
+    void setFailure(final ECurrency currency, final Throwable failure) {
+        failures[currency.ordinal()] = failure;
+    }
+
+    /**
+     * @return the currencies that were requested
+     */
+    public Set<ECurrency> getRequested() {
+        return requested;
+    }
+
+    /**
+     * @param currency
+     *            the currency of the BTC{currency} pair
+     * @return the ticker, absent if it was not requested or failed
+     */
+    public Optional<TickerFast> getTicker(final ECurrency currency) {
+        return Optional.fromNullable(tickers[currency.ordinal()]);
+    }
+
+    /**
+     * @param currency
+     *            the currency of the BTC{currency} pair
+     * @return why the ticker could not be fetched, absent if it was not
+     *         requested or succeeded
+     */
+    public Optional<Throwable> getFailure(final ECurrency currency) {
+        return Optional.fromNullable(failures[currency.ordinal()]);
+    }
+
+    /**
+     * @return the currencies whose ticker was fetched
+     */
+    public Set<ECurrency> getSucceeded() {
+        return collect(tickers);
+    }
+
+    /**
+     * @return the currencies whose ticker could not be fetched
+     */
+    public Set<ECurrency> getFailed() {
+        return collect(failures);
+    }
+
+    /**
+     * @return true if every requested ticker was fetched
+     */
+    public boolean isComplete() {
+        for (ECurrency currency : requested) {
+            if (null == tickers[currency.ordinal()]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Set<ECurrency> collect(final Object[] byOrdinal) {
+        final EnumSet<ECurrency> set = EnumSet.noneOf(ECurrency.class);
+        for (int i = 0; i < byOrdinal.length; i++) {
+            if (null != byOrdinal[i]) {
+                set.add(CURRENCIES[i]);
+            }
+        }
+        return Sets.immutableEnumSet(set);
+    }
+
+//@formatter:off
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("requested", requested)
+                .add("succeeded", getSucceeded())
+                .add("failed", getFailed())
+                .toString();
+    }
+}
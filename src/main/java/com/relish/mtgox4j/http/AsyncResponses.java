@@ -0,0 +1,349 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.ning.http.client.AsyncCompletionHandler;
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.AsyncHttpClient.BoundRequestBuilder;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.Response;
+import com.relish.mtgox4j.metrics.EPhase;
+import com.relish.mtgox4j.metrics.EndpointRecorder;
+import com.relish.mtgox4j.metrics.NoOpMetrics;
+
+/**
+ * Executes requests on a non-blocking {@link com.ning.http.client.AsyncHttpClient}
+ * and exposes the decoded result as a Guava {@link ListenableFuture}.
+ * 
+ * <p>
+ * No thread waits on the socket: the request is written and the response
+ * decoded on the client's I/O threads, which then complete the future.
+ * Listeners added with a same-thread executor therefore also run on an I/O
+ * thread and must not block.
+ * </p>
+ */
+public final class AsyncResponses {
+    private static final Runnable NOTHING = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private AsyncResponses() {
+    }
+
+    /**
+     * Execute request and decode its body once it has fully arrived.
+     * 
+     * <p>
+     * The returned future fails with {@link HttpStatusException} on a non-2xx
+     * status, with the decoder's exception if decoding fails, or with the
+     * transport's exception if the request could not be completed. Cancelling
+     * it aborts the request.
+     * </p>
+     * 
+     * @param request
+     *            the prepared request
+     * @param decoder
+     *            decodes a successful response body
+     * @return the future result
+     */
+    public static <T> ListenableFuture<T> execute(
+            final BoundRequestBuilder request, final ResponseDecoder<T> decoder) {
+        return execute(request, decoder, NOTHING);
+    }
+
+    /**
+     * Execute request as {@link #execute(BoundRequestBuilder, ResponseDecoder)}
+     * does, reporting its phases to recorder.
+     * 
+     * @param request
+     *            the prepared request
+     * @param decoder
+     *            decodes a successful response body
+     * @param recorder
+     *            where the call reports its phases
+     * @return the future result
+     * @see #execute(BoundRequestBuilder, ResponseDecoder, Runnable,
+     *      EndpointRecorder)
+     */
+    public static <T> ListenableFuture<T> execute(
+            final BoundRequestBuilder request,
+            final ResponseDecoder<T> decoder, final EndpointRecorder recorder) {
+        return execute(request, decoder, NOTHING, recorder);
+    }
+
+    /**
+     * Execute request and decode its body once it has fully arrived, running
+     * written as soon as the request has been written to the connection.
+     * 
+     * <p>
+     * written runs exactly once, on an I/O thread or the calling thread: when
+     * the request has been written, or when it failed or was aborted before
+     * that. Requests with a streamed body count as written once their
+     * headers are. It lets a caller hold back its next request until this one is on
+     * the wire without waiting for the response.
+     * </p>
+     * 
+     * @param request
+     *            the prepared request
+     * @param decoder
+     *            decodes a successful response body
+     * @param written
+     *            runs once the request is written or has failed
+     * @return the future result
+     * @see #execute(BoundRequestBuilder, ResponseDecoder)
+     */
+    public static <T> ListenableFuture<T> execute(
+            final BoundRequestBuilder request,
+            final ResponseDecoder<T> decoder, final Runnable written) {
+        return execute(request, decoder, written, NoOpMetrics.INSTANCE);
+    }
+
+    /**
+     * Execute request as {@link #execute(BoundRequestBuilder, ResponseDecoder, Runnable)}
+     * does, reporting its phases to recorder.
+     * 
+     * <p>
+     * {@link EPhase#SEND} runs from the call until the request is written,
+     * including any wait for a connection; {@link EPhase#WAIT} until the
+     * status line arrives; {@link EPhase#RECEIVE} until the last byte of the
+     * body has; then {@link EPhase#DECODE}. {@link EPhase#TOTAL} and the
+     * bytes received are recorded for every response, and TOTAL and an
+     * error for every failure other than cancellation. Nothing is timed if
+     * the recorder is not enabled.
+     * </p>
+     * 
+     * @param request
+     *            the prepared request
+     * @param decoder
+     *            decodes a successful response body
+     * @param written
+     *            runs once the request is written or has failed
+     * @param recorder
+     *            where the call reports its phases
+     * @return the future result
+     */
+    public static <T> ListenableFuture<T> execute(
+            final BoundRequestBuilder request,
+            final ResponseDecoder<T> decoder, final Runnable written,
+            final EndpointRecorder recorder) {
+        checkNotNull(decoder);
+        checkNotNull(written);
+        checkNotNull(recorder);
+
+        final Timeline timeline = recorder.isEnabled() ? new Timeline(
+                recorder) : null;
+        final AtomicBoolean notified = new AtomicBoolean();
+        final Runnable notifyWritten = new Runnable() {
+            @Override
+            public void run() {
+                if (notified.compareAndSet(false, true)) {
+                    if (null != timeline) {
+                        timeline.written();
+                    }
+                    written.run();
+                }
+            }
+        };
+
+        final SettableFuture<T> result = SettableFuture.create();
+        final com.ning.http.client.ListenableFuture<Response> pending;
+        try {
+            pending = request.execute(new AsyncCompletionHandler<Response>() {
+                /**
+                 * Netty writes an in-memory body together with the headers,
+                 * and only reports that write.
+                 */
+                @Override
+                public AsyncHandler.STATE onHeaderWriteCompleted() {
+                    notifyWritten.run();
+                    return AsyncHandler.STATE.CONTINUE;
+                }
+
+                @Override
+                public AsyncHandler.STATE onContentWriteCompleted() {
+                    notifyWritten.run();
+                    return AsyncHandler.STATE.CONTINUE;
+                }
+
+                @Override
+                public AsyncHandler.STATE onStatusReceived(
+                        final HttpResponseStatus status) throws Exception {
+                    if (null != timeline) {
+                        timeline.status();
+                    }
+                    return super.onStatusReceived(status);
+                }
+
+                @Override
+                public AsyncHandler.STATE onBodyPartReceived(
+                        final HttpResponseBodyPart content) throws Exception {
+                    if (null != timeline) {
+                        timeline.received(content.getBodyByteBuffer()
+                                .remaining());
+                    }
+                    return super.onBodyPartReceived(content);
+                }
+
+                @Override
+                public Response onCompleted(final Response response) {
+                    notifyWritten.run();
+                    complete(result, response, decoder, timeline);
+                    return response;
+                }
+
+                @Override
+                public void onThrowable(final Throwable t) {
+                    notifyWritten.run();
+                    if (null != timeline) {
+                        timeline.failed(t);
+                    }
+                    result.setException(t);
+                }
+            });
+        } catch (IOException e) {
+            notifyWritten.run();
+            if (null != timeline) {
+                timeline.failed(e);
+            }
+            result.setException(e);
+            return result;
+        }
+
+        result.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (result.isCancelled()) {
+                    pending.cancel(true);
+                }
+                notifyWritten.run();
+            }
+        }, MoreExecutors.sameThreadExecutor());
+
+        return result;
+    }
+
+    private static String errorBody(final Response response) {
+        try {
+            return response.getResponseBody(Charsets.UTF_8.name());
+        } catch (IOException e) {
+            // TODO: Log ignored read failure
+            return "";
+        }
+    }
+
+    private static <T> void complete(final SettableFuture<T> result,
+            final Response response, final ResponseDecoder<T> decoder,
+            final Timeline timeline) {
+        if (null != timeline) {
+            timeline.completed();
+        }
+
+        final int status = response.getStatusCode();
+        if (status < 200 || status >= 300) {
+            final HttpStatusException e = new HttpStatusException(status,
+                    response.getStatusText(), errorBody(response));
+            if (null != timeline) {
+                timeline.failed(e);
+            }
+            result.setException(e);
+            return;
+        }
+
+        try {
+            final InputStream body = response.getResponseBodyAsStream();
+            final T decoded;
+            try {
+                decoded = decoder.decode(body);
+            } finally {
+                body.close();
+            }
+            if (null != timeline) {
+                timeline.decoded();
+            }
+            result.set(decoded);
+        } catch (Throwable t) {
+            if (null != timeline) {
+                timeline.failed(t);
+            }
+            result.setException(t);
+        }
+    }
+
+    /**
+     * The instants a call passed each phase boundary. Callbacks for one
+     * request arrive in order on the I/O threads, but not necessarily on the
+     * same one.
+     */
+    private static final class Timeline {
+        private final EndpointRecorder recorder;
+        private final long start = System.nanoTime();
+        private volatile long written;
+        private volatile long status;
+        private volatile long completed;
+        private volatile long bytes;
+
+        Timeline(final EndpointRecorder recorder) {
+            this.recorder = recorder;
+        }
+
+        void written() {
+            written = System.nanoTime();
+            recorder.record(EPhase.SEND, written - start);
+        }
+
+        void status() {
+            status = System.nanoTime();
+            // the status can beat the write notification on a fast server
+            recorder.record(EPhase.WAIT, status - Math.max(start, written));
+        }
+
+        void received(final int count) {
+            bytes += count;
+        }
+
+        void completed() {
+            completed = System.nanoTime();
+            recorder.record(EPhase.RECEIVE, completed - Math.max(start, status));
+            recorder.recordBytesReceived(bytes);
+        }
+
+        void decoded() {
+            final long now = System.nanoTime();
+            recorder.record(EPhase.DECODE, now - completed);
+            recorder.record(EPhase.TOTAL, now - start);
+        }
+
+        void failed(final Throwable cause) {
+            recorder.recordError(cause);
+            recorder.record(EPhase.TOTAL, System.nanoTime() - start);
+        }
+    }
+}
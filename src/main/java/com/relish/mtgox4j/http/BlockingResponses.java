@@ -0,0 +1,112 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.relish.mtgox4j.metrics.EPhase;
+import com.relish.mtgox4j.metrics.EndpointRecorder;
+import com.sun.jersey.api.client.ClientHandlerException;
+
+/**
+ * Decodes response bodies read through the blocking Jersey
+ * {@link com.sun.jersey.api.client.Client}, the counterpart of
+ * {@link AsyncResponses}.
+ */
+public final class BlockingResponses {
+    private BlockingResponses() {
+    }
+
+    /**
+     * Run a blocking call on executor, e.g. one of a transport's
+     * {@link Transport#getBlockingExecutor() blocking executor}. Cancelling
+     * the returned future interrupts the call if it has started.
+     * 
+     * @param executor
+     *            runs the call
+     * @param call
+     *            the blocking call
+     * @return the future result, failed if executor rejected the call
+     */
+    public static <T> ListenableFuture<T> submit(final Executor executor,
+            final Callable<T> call) {
+        final ListenableFutureTask<T> task = ListenableFutureTask
+                .create(checkNotNull(call));
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+        return task;
+    }
+
+    /**
+     * Decode a response body streamed from the blocking client and close it.
+     * The body is read while decoding, so {@link EPhase#RECEIVE} is reported
+     * as part of {@link EPhase#DECODE}, along with the number of bytes read.
+     * Errors and {@link EPhase#TOTAL} are left to the caller.
+     * 
+     * @param body
+     *            the response body, e.g. from get(InputStream.class)
+     * @param decoder
+     *            decodes the body
+     * @param recorder
+     *            where to report the decoding
+     * @return the decoded result
+     * @throws ClientHandlerException
+     *             if the body could not be read or decoded
+     */
+    public static <T> T decode(final InputStream body,
+            final ResponseDecoder<T> decoder, final EndpointRecorder recorder) {
+        checkNotNull(body);
+        checkNotNull(decoder);
+
+        final boolean enabled = recorder.isEnabled();
+        final long start = enabled ? System.nanoTime() : 0L;
+        final CountingInputStream counted = enabled ? new CountingInputStream(
+                body) : null;
+        try {
+            final T decoded = decoder.decode(null == counted ? body : counted);
+            if (enabled) {
+                recorder.record(EPhase.DECODE, System.nanoTime() - start);
+            }
+            return decoded;
+        } catch (IOException e) {
+            throw new ClientHandlerException(e);
+        } finally {
+            if (null != counted) {
+                recorder.recordBytesReceived(counted.getCount());
+            }
+            try {
+                body.close();
+            } catch (IOException e) {
+                // TODO: Log ignored close failure
+            }
+        }
+    }
+}
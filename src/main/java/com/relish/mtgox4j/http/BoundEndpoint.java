@@ -0,0 +1,123 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import java.net.URI;
+
+import com.google.common.base.Objects;
+import com.relish.mtgox4j.metrics.EndpointRecorder;
+import com.sun.jersey.api.client.WebResource;
+
+/**
+ * A resource path bound to a {@link Transport}: everything about it that
+ * would otherwise be rebuilt on every request, i.e. the absolute URL and
+ * {@link URI}, the Jersey {@link WebResource}, the endpoint name used by the
+ * {@link RequestScheduler} and {@link RequestHedger}, and the endpoint's
+ * metrics recorder.
+ * 
+ * <p>
+ * Obtain instances from an {@link EndpointRegistry}. They are immutable and
+ * thread-safe; so is the {@link WebResource} as long as it is not
+ * reconfigured.
+ * </p>
+ */
+public final class BoundEndpoint {
+    private final Transport transport;
+    private final String path;
+    private final String name;
+    private final String url;
+    private final URI uri;
+    private final WebResource resource;
+    private final EndpointRecorder recorder;
+
+    BoundEndpoint(final Transport transport, final String path) {
+        this.transport = transport;
+        this.path = path;
+        name = RequestScheduler.endpointOf(path);
+        url = transport.getBaseUrl() + path;
+        uri = URI.create(url);
+        resource = transport.getRestClient().resource(uri);
+        recorder = transport.getMetrics().endpoint(name);
+    }
+
+    /**
+     * @return the transport the endpoint is bound to
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @return the resource path (without the transport's base URL), e.g.
+     *         BTCUSD/money/info
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the path without a leading BTC{currency}/, as scheduled, hedged
+     *         and recorded, e.g. money/info
+     * @see RequestScheduler#endpointOf(String)
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the absolute URL of the resource
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the absolute URI of the resource
+     */
+    public URI getUri() {
+        return uri;
+    }
+
+    /**
+     * @return the resource on the transport's blocking client
+     */
+    public WebResource getResource() {
+        return resource;
+    }
+
+    /**
+     * @return the recorder of the endpoint in the transport's metrics
+     */
+    public EndpointRecorder getRecorder() {
+        return recorder;
+    }
+
+//@formatter:off
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("url", url)
+                .add("name", name)
+                .toString();
+    }
+}
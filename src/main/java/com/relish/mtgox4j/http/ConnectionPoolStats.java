@@ -0,0 +1,93 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import com.google.common.base.Objects;
+
+/**
+ * A point-in-time view of a connection pool's usage.
+ */
+public final class ConnectionPoolStats {
+    private final int leased;
+    private final int pending;
+    private final int available;
+    private final int max;
+
+    /**
+     * @param leased
+     *            connections currently serving a request
+     * @param pending
+     *            requests waiting for a connection
+     * @param available
+     *            idle, kept-alive connections ready for reuse
+     * @param max
+     *            the maximum number of connections
+     */
+    public ConnectionPoolStats(final int leased, final int pending,
+            final int available, final int max) {
+        this.leased = leased;
+        this.pending = pending;
+        this.available = available;
+        this.max = max;
+    }
+
+    /**
+     * @return connections currently serving a request
+     */
+    public int getLeased() {
+        return leased;
+    }
+
+    /**
+     * @return requests waiting for a connection; non-zero values mean the
+     *         pool limits are too tight for the load
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * @return idle, kept-alive connections ready for reuse
+     */
+    public int getAvailable() {
+        return available;
+    }
+
+    /**
+     * @return the maximum number of connections
+     */
+    public int getMax() {
+        return max;
+    }
+
+//@formatter:off
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("leased", leased)
+                .add("pending", pending)
+                .add("available", available)
+                .add("max", max)
+                .toString();
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.codehaus.jackson.jaxrs.JacksonJsonProvider;
+
+import com.google.common.base.Optional;
+import com.ning.http.client.AsyncHttpClient;
+import com.relish.mtgox4j.MtGoxClient;
+import com.relish.mtgox4j.metrics.MetricsSink;
+import com.relish.mtgox4j.metrics.NoOpMetrics;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.api.client.config.DefaultClientConfig;
+
+/**
+ * The transport used unless one is configured: a default Jersey
+ * {@link Client} on HttpURLConnection and an {@link AsyncHttpClient} with
+ * default settings, created on first use.
+ * 
+ * <p>
+ * Neither client has timeouts or bounded pools; prefer a
+ * {@link PooledTransport} for latency-sensitive use.
+ * </p>
+ */
+public final class DefaultTransport implements Transport {
+    private final Client restClient;
+    private final AtomicReference<AsyncHttpClient> asyncClient;
+    private final boolean ownsAsyncClient;
+    private final EndpointRegistry endpoints = new EndpointRegistry(this);
+
+    /**
+     * Creates its own {@link AsyncHttpClient} on first use.
+     */
+    public DefaultTransport() {
+        this(null, true);
+    }
+
+    /**
+     * @param asyncClient
+     *            the shared client for non-blocking requests; the caller keeps
+     *            ownership and {@link #close()} does not close it
+     */
+    public DefaultTransport(final AsyncHttpClient asyncClient) {
+        this(checkNotNull(asyncClient), false);
+    }
+
+    private DefaultTransport(final AsyncHttpClient asyncClient,
+            final boolean ownsAsyncClient) {
+        final ClientConfig cc = new DefaultClientConfig();
+        cc.getClasses().add(JacksonJsonProvider.class);
+        restClient = Client.create(cc);
+
+        this.asyncClient = new AtomicReference<AsyncHttpClient>(asyncClient);
+        this.ownsAsyncClient = ownsAsyncClient;
+    }
+
+    @Override
+    public Client getRestClient() {
+        return restClient;
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncClient() {
+        final AsyncHttpClient existing = asyncClient.get();
+        if (null != existing) {
+            return existing;
+        }
+
+        final AsyncHttpClient created = new AsyncHttpClient();
+        if (asyncClient.compareAndSet(null, created)) {
+            return created;
+        }
+
+        // another thread created one first
+        created.close();
+        return getAsyncClient();
+    }
+
+    @Override
+    public Optional<ConnectionPoolStats> getPoolStats() {
+        return Optional.absent();
+    }
+
+    @Override
+    public Optional<RequestScheduler> getScheduler() {
+        return Optional.absent();
+    }
+
+    @Override
+    public Optional<RequestHedger> getHedger() {
+        return Optional.absent();
+    }
+
+    @Override
+    public Optional<Executor> getBlockingExecutor() {
+        return Optional.absent();
+    }
+
+    @Override
+    public MetricsSink getMetrics() {
+        return NoOpMetrics.INSTANCE;
+    }
+
+    @Override
+    public String getBaseUrl() {
+        return MtGoxClient.BASE_URL;
+    }
+
+    @Override
+    public EndpointRegistry getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Release the clients, including the {@link AsyncHttpClient} if this
+     * instance created it. Outstanding async requests on an owned client are
+     * aborted.
+     */
+    @Override
+    public void close() {
+        restClient.destroy();
+
+        if (ownsAsyncClient) {
+            final AsyncHttpClient created = asyncClient.getAndSet(null);
+            if (null != created) {
+                created.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+/**
+ * The priority classes of a {@link RequestScheduler}, most urgent first.
+ */
+public enum ERequestPriority {
+//@formatter:off
+    /**
+     * Secured calls that place or cancel orders.
+     */
+    TRADING, 
+    /**
+     * Other secured calls, e.g. money/info.
+     */
+    ACCOUNT, 
+    /**
+     * Unsecured market data, e.g. ticker and depth polls.
+     */
+    PUBLIC;
+//@formatter:on
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Binds resource paths to a {@link Transport} once and hands out the same
+ * {@link BoundEndpoint} for a path from then on, so URLs, URIs and Jersey
+ * resources are not rebuilt per request.
+ * 
+ * <p>
+ * Clients should look their endpoints up once, e.g. when they are created,
+ * and keep them; the lookup itself is a concurrent map get. Instances are
+ * thread-safe and do not lock once a path is bound.
+ * </p>
+ */
+public final class EndpointRegistry {
+    private final Transport transport;
+    private final ConcurrentMap<String, BoundEndpoint> endpoints = new MapMaker()
+            .makeMap();
+
+    /**
+     * @param transport
+     *            the transport to bind paths to
+     */
+    public EndpointRegistry(final Transport transport) {
+        this.transport = checkNotNull(transport);
+    }
+
+    /**
+     * Get the endpoint bound to path, binding it on first use.
+     * 
+     * @param path
+     *            the resource path (don't include the base URL), e.g.
+     *            BTCUSD/money/ticker_fast
+     * @return the cached endpoint
+     */
+    public BoundEndpoint get(final String path) {
+        final BoundEndpoint existing = endpoints.get(checkNotNull(path));
+        if (null != existing) {
+            return existing;
+        }
+
+        final BoundEndpoint created = new BoundEndpoint(transport, path);
+        final BoundEndpoint raced = endpoints.putIfAbsent(path, created);
+        return null == raced ? created : raced;
+    }
+
+    /**
+     * @return the transport paths are bound to
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+}
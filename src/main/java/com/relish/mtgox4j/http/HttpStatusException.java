@@ -0,0 +1,67 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+/**
+ * Thrown (or used to fail a future) when MtGox answers with a non-2xx status.
+ */
+public class HttpStatusException extends RuntimeException {
+    private static final long serialVersionUID = 4761930246271829501L;
+
+    private final int status;
+    private final String body;
+
+    /**
+     * @param status
+     *            the HTTP status code
+     * @param reason
+     *            the HTTP reason phrase
+     */
+    public HttpStatusException(final int status, final String reason) {
+        this(status, reason, "");
+    }
+
+    /**
+     * @param status
+     *            the HTTP status code
+     * @param reason
+     *            the HTTP reason phrase
+     * @param body
+     *            the response body, e.g. MtGox's JSON error
+     */
+    public HttpStatusException(final int status, final String reason,
+            final String body) {
+        super("HTTP " + status + " " + reason);
+        this.status = status;
+        this.body = body;
+    }
+
+    /**
+     * @return the HTTP status code
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the response body, empty if it was not read
+     */
+    public String getBody() {
+        return body;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The most recent latencies of one endpoint and a percentile over them.
+ * 
+ * <p>
+ * Samples go into a fixed ring without locking, and the percentile is
+ * recomputed from a sorted copy of the ring every {@link #REFRESH_EVERY}
+ * samples rather than on every read, so reading it costs a volatile load.
+ * </p>
+ */
+final class LatencyWindow {
+    static final int REFRESH_EVERY = 16;
+
+    private final AtomicLongArray samples;
+    private final AtomicLong count = new AtomicLong();
+    private final double percentile;
+    private volatile long cached = -1L;
+
+    /**
+     * @param size
+     *            the number of recent samples kept
+     * @param percentile
+     *            the percentile reported, between 0 and 1
+     */
+    LatencyWindow(final int size, final double percentile) {
+        samples = new AtomicLongArray(size);
+        this.percentile = percentile;
+    }
+
+    void record(final long nanos) {
+        final long n = count.getAndIncrement();
+        samples.set((int) (n % samples.length()), nanos);
+        if ((n + 1) % REFRESH_EVERY == 0) {
+            refresh(n + 1);
+        }
+    }
+
+    /**
+     * @return the number of samples recorded so far
+     */
+    long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the percentile as of the last refresh, -1 before the first
+     */
+    long getPercentile() {
+        return cached;
+    }
+
+    private void refresh(final long recorded) {
+        final int size = (int) Math.min(recorded, samples.length());
+        final long[] sorted = new long[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        cached = sorted[Math.min(size - 1, (int) (percentile * size))];
+    }
+}
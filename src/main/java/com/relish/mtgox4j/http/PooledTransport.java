@@ -0,0 +1,360 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+import org.codehaus.jackson.jaxrs.JacksonJsonProvider;
+
+import com.google.common.base.Optional;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.relish.mtgox4j.metrics.MetricsSink;
+import com.relish.mtgox4j.metrics.NoOpMetrics;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.client.apache4.ApacheHttpClient4;
+import com.sun.jersey.client.apache4.config.ApacheHttpClient4Config;
+import com.sun.jersey.client.apache4.config.DefaultApacheHttpClient4Config;
+
+/**
+ * A {@link Transport} with persistent, bounded connection pools, timeouts and
+ * TLS session reuse.
+ * 
+ * <p>
+ * Blocking requests run on Apache HttpClient through a
+ * {@link PoolingClientConnectionManager} and non-blocking ones on an
+ * {@link AsyncHttpClient} with connection pooling enabled for both plain and
+ * TLS connections. Both are bounded, time out as configured and share one
+ * {@link SSLContext}, so a connection opened by either client can resume a TLS
+ * session negotiated by the other rather than doing a full handshake.
+ * </p>
+ * 
+ * <p>
+ * Connections are only returned to the pool once their response has been
+ * read, so always consume or close response streams.
+ * </p>
+ * 
+ * <p>
+ * With a {@link Builder#blockingExecutor(Executor) blocking executor}, the
+ * non-blocking variants run the blocking client on it instead, one task per
+ * call. Waits for a pooled connection, the {@link RequestScheduler} and the
+ * socket hold no monitor, so the executor can run each call on a virtual
+ * thread of its own, e.g. one from Executors.newVirtualThreadPerTaskExecutor()
+ * on Java 21 or later, and keep many thousands of account calls in flight
+ * without a platform thread each. Size the route limit for how many of them
+ * should be on the wire at once; the others wait for a connection.
+ * </p>
+ */
+public final class PooledTransport implements Transport {
+    private final TransportConfig config;
+    private final PoolingClientConnectionManager connectionManager;
+    private final ApacheHttpClient4 restClient;
+    private final AsyncHttpClient asyncClient;
+    private final Optional<RequestScheduler> scheduler;
+    private final Optional<RequestHedger> hedger;
+    private final Optional<Executor> blockingExecutor;
+    private final MetricsSink metrics;
+    private final EndpointRegistry endpoints = new EndpointRegistry(this);
+
+    /**
+     * @param config
+     *            the pool, timeout and TLS settings
+     * @throws IllegalStateException
+     *             if no default TLS context is available
+     */
+    public PooledTransport(final TransportConfig config) {
+        this(new Builder(), config);
+    }
+
+    /**
+     * @param config
+     *            the pool, timeout and TLS settings
+     * @param scheduler
+     *            the rate limiter every request waits on; the caller keeps
+     *            ownership and {@link #close()} does not close it
+     * @throws IllegalStateException
+     *             if no default TLS context is available
+     */
+    public PooledTransport(final TransportConfig config,
+            final RequestScheduler scheduler) {
+        this(new Builder().scheduler(scheduler), config);
+    }
+
+    private PooledTransport(final Builder builder, final TransportConfig config) {
+        this.config = checkNotNull(config);
+        scheduler = builder.scheduler;
+        hedger = builder.hedger;
+        blockingExecutor = builder.blockingExecutor;
+        metrics = builder.metrics;
+
+        final SSLContext sslContext = config.getSslContext().isPresent() ? config
+                .getSslContext().get() : defaultSslContext();
+        final SSLSessionContext sessions = sslContext.getClientSessionContext();
+        sessions.setSessionCacheSize(config.getTlsSessionCacheSize());
+        sessions.setSessionTimeout(config.getTlsSessionTimeoutSeconds());
+
+        connectionManager = newConnectionManager(config, sslContext);
+
+        final ClientConfig cc = new DefaultApacheHttpClient4Config();
+        cc.getClasses().add(JacksonJsonProvider.class);
+        cc.getProperties().put(
+                ApacheHttpClient4Config.PROPERTY_CONNECTION_MANAGER,
+                connectionManager);
+        final HttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setConnectionTimeout(params,
+                config.getConnectTimeoutMillis());
+        HttpConnectionParams.setSoTimeout(params, config.getReadTimeoutMillis());
+        HttpClientParams.setConnectionManagerTimeout(params,
+                config.getPoolTimeoutMillis());
+        cc.getProperties().put(ApacheHttpClient4Config.PROPERTY_HTTP_PARAMS,
+                params);
+        restClient = ApacheHttpClient4.create(cc);
+
+        asyncClient = new AsyncHttpClient(new AsyncHttpClientConfig.Builder()
+                .setMaximumConnectionsTotal(config.getMaxConnections())
+                .setMaximumConnectionsPerHost(
+                        config.getMaxConnectionsPerRoute())
+                .setConnectionTimeoutInMs(config.getConnectTimeoutMillis())
+                .setRequestTimeoutInMs(config.getReadTimeoutMillis())
+                .setMaxConnectionLifeTimeInMs(config.getConnectionTtlMillis())
+                .setAllowPoolingConnection(true)
+                .setAllowSslConnectionPool(true).setSSLContext(sslContext)
+                .build());
+    }
+
+    @Override
+    public Client getRestClient() {
+        return restClient;
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncClient() {
+        return asyncClient;
+    }
+
+    /**
+     * @return the usage of the blocking client's pool over all routes
+     */
+    @Override
+    public Optional<ConnectionPoolStats> getPoolStats() {
+        return Optional.of(toStats(connectionManager.getTotalStats()));
+    }
+
+    @Override
+    public Optional<RequestScheduler> getScheduler() {
+        return scheduler;
+    }
+
+    @Override
+    public Optional<RequestHedger> getHedger() {
+        return hedger;
+    }
+
+    @Override
+    public Optional<Executor> getBlockingExecutor() {
+        return blockingExecutor;
+    }
+
+    @Override
+    public MetricsSink getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public String getBaseUrl() {
+        return config.getBaseUrl();
+    }
+
+    @Override
+    public EndpointRegistry getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * @param route
+     *            any URI on the route, e.g. MtGoxClient.BASE_URL
+     * @return the usage of the blocking client's pool for route
+     */
+    public ConnectionPoolStats getPoolStats(final URI route) {
+        return toStats(connectionManager.getStats(toRoute(route)));
+    }
+
+    /**
+     * @return the settings of this transport
+     */
+    public TransportConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Close all pooled connections of both clients. Outstanding async requests
+     * are aborted.
+     */
+    @Override
+    public void close() {
+        restClient.destroy();
+        connectionManager.shutdown();
+        asyncClient.close();
+    }
+
+    private static PoolingClientConnectionManager newConnectionManager(
+            final TransportConfig config, final SSLContext sslContext) {
+        final SchemeRegistry schemes = new SchemeRegistry();
+        schemes.register(new Scheme("http", 80, PlainSocketFactory
+                .getSocketFactory()));
+        schemes.register(new Scheme("https", 443, new SSLSocketFactory(
+                sslContext, SSLSocketFactory.STRICT_HOSTNAME_VERIFIER)));
+
+        final PoolingClientConnectionManager manager = new PoolingClientConnectionManager(
+                schemes, config.getConnectionTtlMillis(), TimeUnit.MILLISECONDS);
+        manager.setMaxTotal(config.getMaxConnections());
+        manager.setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
+        for (Map.Entry<URI, Integer> limit : config.getRouteLimits().entrySet()) {
+            final URI route = limit.getKey();
+            manager.setMaxPerRoute(toRoute(route), limit.getValue());
+            if (route.getPort() < 0) {
+                // also cover requests that name the default port explicitly
+                manager.setMaxPerRoute(
+                        toRoute(route, isSecure(route) ? 443 : 80),
+                        limit.getValue());
+            }
+        }
+        return manager;
+    }
+
+    /**
+     * HttpClient keys routes by the port as written in the request URI, -1 if
+     * it has none.
+     */
+    private static HttpRoute toRoute(final URI uri) {
+        return toRoute(uri, uri.getPort());
+    }
+
+    private static HttpRoute toRoute(final URI uri, final int port) {
+        return new HttpRoute(new HttpHost(uri.getHost(), port, uri.getScheme()),
+                null, isSecure(uri));
+    }
+
+    private static boolean isSecure(final URI uri) {
+        return "https".equalsIgnoreCase(uri.getScheme());
+    }
+
+    private static ConnectionPoolStats toStats(final PoolStats stats) {
+        return new ConnectionPoolStats(stats.getLeased(), stats.getPending(),
+                stats.getAvailable(), stats.getMax());
+    }
+
+    private static SSLContext defaultSslContext() {
+        try {
+            final SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, null, null);
+            return sslContext;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Builds {@link PooledTransport}s with the optional collaborators every
+     * request passes through. The caller keeps ownership of them all;
+     * {@link PooledTransport#close()} closes none.
+     */
+    public static final class Builder {
+        private Optional<RequestScheduler> scheduler = Optional.absent();
+        private Optional<RequestHedger> hedger = Optional.absent();
+        private Optional<Executor> blockingExecutor = Optional.absent();
+        private MetricsSink metrics = NoOpMetrics.INSTANCE;
+
+        /**
+         * @param scheduler
+         *            the rate limiter every request waits on
+         * @return this builder
+         */
+        public Builder scheduler(final RequestScheduler scheduler) {
+            this.scheduler = Optional.of(scheduler);
+            return this;
+        }
+
+        /**
+         * @param hedger
+         *            the hedger for idempotent public GETs
+         * @return this builder
+         */
+        public Builder hedger(final RequestHedger hedger) {
+            this.hedger = Optional.of(hedger);
+            return this;
+        }
+
+        /**
+         * Run the non-blocking variants on the blocking client instead, one
+         * task per call on executor. Their futures then fail with whatever the
+         * blocking variant throws, and cancelling one interrupts its task.
+         * 
+         * @param blockingExecutor
+         *            runs the blocking calls, e.g. on a virtual thread each
+         * @return this builder
+         */
+        public Builder blockingExecutor(final Executor blockingExecutor) {
+            this.blockingExecutor = Optional.of(blockingExecutor);
+            return this;
+        }
+
+        /**
+         * @param metrics
+         *            where calls report their latency, size and failures
+         * @return this builder
+         */
+        public Builder metrics(final MetricsSink metrics) {
+            this.metrics = checkNotNull(metrics);
+            return this;
+        }
+
+        /**
+         * @param config
+         *            the pool, timeout and TLS settings
+         * @return a new transport
+         * @throws IllegalStateException
+         *             if no default TLS context is available
+         */
+        public PooledTransport build(final TransportConfig config) {
+            return new PooledTransport(this, config);
+        }
+    }
+}
@@ -0,0 +1,456 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Cuts the tail latency of idempotent public GETs by sending a second,
+ * hedge request when the first is slower than usual.
+ * 
+ * <p>
+ * The latencies of recent successful requests are kept per endpoint. A
+ * request that has not completed within their configured percentile, e.g.
+ * the 95th, is sent again; whichever copy answers first wins and the other
+ * is cancelled. A failure only fails the call once no other copy is still
+ * outstanding. Until an endpoint has enough samples, and never outside the
+ * configured bounds, the hedge is sent after the maximum delay. The slow
+ * copy a hedge beat is sampled with its time so far when it is cancelled, so
+ * the percentile keeps the tail it would otherwise lose.
+ * </p>
+ * 
+ * <p>
+ * Behind a {@link RequestScheduler}, hedge a request once the scheduler has
+ * let it through, with
+ * {@link #hedge(Optional, Optional, ERequestPriority, String, Callable)}, so
+ * the hedge delay and latencies don't include time spent queued.
+ * </p>
+ * 
+ * <p>
+ * Hedging sends some requests twice, so it must only ever be used for
+ * idempotent GETs. Secured POSTs are never hedged: each carries a nonce
+ * MtGox accepts once, and a duplicate would either be rejected or, worse,
+ * act twice. Only the public resources of
+ * {@link com.relish.mtgox4j.MtGoxClient} use the hedger of their transport.
+ * </p>
+ */
+public final class RequestHedger implements Closeable {
+    public static final double DEFAULT_PERCENTILE = 0.95;
+    public static final int DEFAULT_WINDOW = 256;
+    public static final int DEFAULT_MIN_SAMPLES = 32;
+    public static final long DEFAULT_MIN_DELAY_MILLIS = 20L;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 2000L;
+
+    private final double percentile;
+    private final int window;
+    private final int minSamples;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final Ticker ticker;
+    private final ScheduledExecutorService timer;
+    private final boolean ownsTimer;
+    private final ConcurrentMap<String, LatencyWindow> latencies = new ConcurrentHashMap<String, LatencyWindow>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    private RequestHedger(final Builder builder) {
+        percentile = builder.percentile;
+        window = builder.window;
+        minSamples = builder.minSamples;
+        minDelayNanos = builder.minDelayNanos;
+        maxDelayNanos = builder.maxDelayNanos;
+        ticker = builder.ticker;
+
+        if (builder.timer.isPresent()) {
+            timer = builder.timer.get();
+            ownsTimer = false;
+        } else {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "mtgox4j-request-hedger");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            ownsTimer = true;
+        }
+    }
+
+    /**
+     * Start request, and start it again if it is slow to complete.
+     * 
+     * @param endpoint
+     *            the endpoint, whose latencies decide when to hedge
+     * @param request
+     *            starts an idempotent GET; called once or twice
+     * @return the future result of whichever copy answered first
+     */
+    public <T> ListenableFuture<T> execute(final String endpoint,
+            final Callable<ListenableFuture<T>> request) {
+        checkNotNull(request);
+        final LatencyWindow latency = latencyOf(checkNotNull(endpoint));
+        requests.incrementAndGet();
+
+        final Hedged<T> hedged = new Hedged<T>(latency, request);
+        hedged.attempt(false);
+        if (hedged.result.isDone()) {
+            return hedged.result;
+        }
+
+        try {
+            final ScheduledFuture<?> hedge = timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (!hedged.result.isDone()) {
+                        hedges.incrementAndGet();
+                        hedged.attempt(true);
+                    }
+                }
+            }, getHedgeDelayNanos(latency), TimeUnit.NANOSECONDS);
+            hedged.result.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    hedge.cancel(false);
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        } catch (RejectedExecutionException e) {
+            // TODO: Log that the hedger was closed; the request goes unhedged
+        }
+        return hedged.result;
+    }
+
+    /**
+     * {@link #execute} request through hedger if there is one, otherwise
+     * start it once.
+     */
+    public static <T> ListenableFuture<T> hedge(
+            final Optional<RequestHedger> hedger, final String endpoint,
+            final Callable<ListenableFuture<T>> request) {
+        if (hedger.isPresent()) {
+            return hedger.get().execute(endpoint, request);
+        }
+
+        try {
+            return request.call();
+        } catch (Exception e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /**
+     * {@link RequestScheduler#schedule} send and, once the scheduler lets it
+     * through, {@link #hedge} it. The hedge delay and latency samples start
+     * when the request is sent rather than queued, so a saturated scheduler
+     * does not trigger hedges of its own. A hedge copy waits for the
+     * scheduler like any other request.
+     * 
+     * @param scheduler
+     *            the scheduler every copy waits on, if any
+     * @param hedger
+     *            the hedger, if any
+     * @param priority
+     *            the priority to schedule copies with
+     * @param endpoint
+     *            the endpoint
+     * @param send
+     *            sends an idempotent GET right away; called once or twice
+     * @return the future result of whichever copy answered first
+     */
+    public static <T> ListenableFuture<T> hedge(
+            final Optional<RequestScheduler> scheduler,
+            final Optional<RequestHedger> hedger,
+            final ERequestPriority priority, final String endpoint,
+            final Callable<ListenableFuture<T>> send) {
+        checkNotNull(send);
+
+        return RequestScheduler.schedule(scheduler, priority, endpoint,
+                new Callable<ListenableFuture<T>>() {
+                    @Override
+                    public ListenableFuture<T> call() {
+                        final AtomicBoolean dispatched = new AtomicBoolean(
+                                true);
+                        return hedge(hedger, endpoint,
+                                new Callable<ListenableFuture<T>>() {
+                                    @Override
+                                    public ListenableFuture<T> call()
+                                            throws Exception {
+                                        if (dispatched.getAndSet(false)) {
+                                            return send.call();
+                                        }
+                                        return RequestScheduler.schedule(
+                                                scheduler, priority, endpoint,
+                                                send);
+                                    }
+                                });
+                    }
+                });
+    }
+
+    /**
+     * @param endpoint
+     *            the endpoint
+     * @return how long a request to endpoint is given before it is hedged
+     */
+    public long getHedgeDelayNanos(final String endpoint) {
+        return getHedgeDelayNanos(latencyOf(checkNotNull(endpoint)));
+    }
+
+    /**
+     * @return the number of calls to {@link #execute}
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of hedge requests sent
+     */
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    /**
+     * @return the number of hedge requests that answered first
+     */
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * Shut down the timer if this hedger created it. Later requests are no
+     * longer hedged.
+     */
+    @Override
+    public void close() {
+        if (ownsTimer) {
+            timer.shutdownNow();
+        }
+    }
+
+    private long getHedgeDelayNanos(final LatencyWindow latency) {
+        final long observed = latency.getPercentile();
+        if (latency.getCount() < minSamples || observed < 0) {
+            return maxDelayNanos;
+        }
+        return Math.max(minDelayNanos, Math.min(maxDelayNanos, observed));
+    }
+
+    private LatencyWindow latencyOf(final String endpoint) {
+        final LatencyWindow existing = latencies.get(endpoint);
+        if (null != existing) {
+            return existing;
+        }
+
+        final LatencyWindow created = new LatencyWindow(window, percentile);
+        final LatencyWindow raced = latencies.putIfAbsent(endpoint, created);
+        return null == raced ? created : raced;
+    }
+
+    /**
+     * One call and its copies in flight.
+     */
+    private final class Hedged<T> {
+        private final LatencyWindow latency;
+        private final Callable<ListenableFuture<T>> request;
+        private final SettableFuture<T> result = SettableFuture.create();
+        private final Queue<ListenableFuture<T>> attempts = new ConcurrentLinkedQueue<ListenableFuture<T>>();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicBoolean won = new AtomicBoolean();
+
+        private Hedged(final LatencyWindow latency,
+                final Callable<ListenableFuture<T>> request) {
+            this.latency = latency;
+            this.request = request;
+
+            result.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    // cancel the losers, or every copy if the caller cancelled
+                    for (ListenableFuture<T> attempt : attempts) {
+                        attempt.cancel(true);
+                    }
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
+
+        private void attempt(final boolean hedge) {
+            outstanding.incrementAndGet();
+            final long startNanos = ticker.read();
+
+            ListenableFuture<T> started;
+            try {
+                started = checkNotNull(request.call(), "request returned null");
+            } catch (Throwable t) {
+                started = Futures.immediateFailedFuture(t);
+            }
+
+            final ListenableFuture<T> attempt = started;
+            attempts.add(attempt);
+            if (result.isDone()) {
+                // the other copy won while this one was starting
+                attempt.cancel(true);
+            }
+
+            Futures.addCallback(attempt, new FutureCallback<T>() {
+                @Override
+                public void onSuccess(final T value) {
+                    outstanding.decrementAndGet();
+                    // count the win before the caller can see the result
+                    if (won.compareAndSet(false, true)) {
+                        latency.record(ticker.read() - startNanos);
+                        if (hedge) {
+                            hedgeWins.incrementAndGet();
+                        }
+                        result.set(value);
+                    }
+                }
+
+                @Override
+                public void onFailure(final Throwable t) {
+                    if (!hedge && won.get() && attempt.isCancelled()) {
+                        // a hedge beat this copy; it took at least this long
+                        latency.record(ticker.read() - startNanos);
+                    }
+                    if (0 == outstanding.decrementAndGet()) {
+                        result.setException(t);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Builds {@link RequestHedger}s. By default a request is hedged once it
+     * is slower than {@link RequestHedger#DEFAULT_PERCENTILE} of the last
+     * {@link RequestHedger#DEFAULT_WINDOW} to its endpoint, within
+     * {@link RequestHedger#DEFAULT_MIN_DELAY_MILLIS} and
+     * {@link RequestHedger#DEFAULT_MAX_DELAY_MILLIS} ms.
+     */
+    public static final class Builder {
+        private double percentile = DEFAULT_PERCENTILE;
+        private int window = DEFAULT_WINDOW;
+        private int minSamples = DEFAULT_MIN_SAMPLES;
+        private long minDelayNanos = TimeUnit.MILLISECONDS
+                .toNanos(DEFAULT_MIN_DELAY_MILLIS);
+        private long maxDelayNanos = TimeUnit.MILLISECONDS
+                .toNanos(DEFAULT_MAX_DELAY_MILLIS);
+        private Ticker ticker = Ticker.systemTicker();
+        private Optional<ScheduledExecutorService> timer = Optional.absent();
+
+        /**
+         * @param percentile
+         *            the latency percentile after which to hedge, e.g. 0.95
+         * @return this builder
+         */
+        public Builder percentile(final double percentile) {
+            checkArgument(percentile > 0 && percentile < 1,
+                    "percentile must be between 0 and 1");
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * @param window
+         *            the number of recent latencies kept per endpoint
+         * @param minSamples
+         *            the number of latencies needed before the percentile is
+         *            used
+         * @return this builder
+         */
+        public Builder window(final int window, final int minSamples) {
+            checkArgument(window >= LatencyWindow.REFRESH_EVERY,
+                    "window must be at least %s", LatencyWindow.REFRESH_EVERY);
+            checkArgument(minSamples >= LatencyWindow.REFRESH_EVERY,
+                    "minSamples must be at least %s",
+                    LatencyWindow.REFRESH_EVERY);
+            this.window = window;
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * @param min
+         *            the shortest time a request is given before hedging
+         * @param max
+         *            the longest, also used until enough latencies are known
+         * @param unit
+         *            the unit of min and max
+         * @return this builder
+         */
+        public Builder delay(final long min, final long max,
+                final TimeUnit unit) {
+            checkArgument(min >= 0 && max >= min,
+                    "Expected 0 <= min <= max but were %s and %s", min, max);
+            minDelayNanos = unit.toNanos(min);
+            maxDelayNanos = unit.toNanos(max);
+            return this;
+        }
+
+        /**
+         * @param ticker
+         *            the time source latencies are measured with
+         * @return this builder
+         */
+        public Builder ticker(final Ticker ticker) {
+            this.ticker = checkNotNull(ticker);
+            return this;
+        }
+
+        /**
+         * @param timer
+         *            the executor that sends hedge requests; the caller keeps
+         *            ownership
+         * @return this builder
+         */
+        public Builder timer(final ScheduledExecutorService timer) {
+            this.timer = Optional.of(timer);
+            return this;
+        }
+
+        public RequestHedger build() {
+            return new RequestHedger(this);
+        }
+    }
+}
@@ -0,0 +1,537 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Shared client-side rate limiter that every request to MtGox passes through
+ * when its {@link Transport} has one, so bursts from pollers are smoothed
+ * out before MtGox throttles them.
+ * 
+ * <p>
+ * A request is sent once it can take a token from the global bucket and,
+ * if its endpoint has a budget of its own, from that endpoint's bucket.
+ * Waiting requests are queued per {@link ERequestPriority} and served
+ * strictly in priority order, so a burst of ticker polls never delays a
+ * secured call by more than the time to the next token. A request held back
+ * by its endpoint's budget does not hold back requests to other endpoints.
+ * </p>
+ * 
+ * <p>
+ * Dispatching is lock-free for callers: the thread that submits a request,
+ * or a timer thread once tokens have refilled, sends whatever is ready while
+ * holding a dispatch lock it only ever tries for, never waits on. Queue
+ * depth and time spent queued are available per priority from
+ * {@link #getStats(ERequestPriority)}.
+ * </p>
+ * 
+ * <p>
+ * Endpoints are resource paths without the BTC{currency}/ prefix, e.g.
+ * money/ticker_fast; see {@link #endpointOf(String)}.
+ * </p>
+ */
+public final class RequestScheduler implements Closeable {
+    /**
+     * Requests per second allowed by default.
+     */
+    public static final double DEFAULT_RATE = 5.0;
+
+    /**
+     * Requests that can be sent back to back by default after a quiet spell.
+     */
+    public static final int DEFAULT_BURST = 10;
+
+    private static final ERequestPriority[] PRIORITIES = ERequestPriority
+            .values();
+
+    private final Ticker ticker;
+    private final TokenBucket global;
+    private final Map<String, TokenBucket> endpoints;
+    private final ScheduledExecutorService timer;
+    private final boolean ownsTimer;
+    private final Queue<Pending<?>>[] queues;
+    private final AtomicInteger[] queued;
+    private final AtomicLong[] dispatched;
+    private final AtomicLong[] totalWaitNanos;
+    private final AtomicLong[] maxWaitNanos;
+    private final ReentrantLock dispatchLock = new ReentrantLock();
+    private final AtomicInteger dispatchRequests = new AtomicInteger();
+    private final AtomicLong wakeAtNanos = new AtomicLong(Long.MAX_VALUE);
+    private volatile boolean closed;
+
+    @SuppressWarnings("unchecked")
+    private RequestScheduler(final Builder builder) {
+        ticker = builder.ticker;
+        final long now = ticker.read();
+        global = new TokenBucket(builder.perSecond, builder.burst, now);
+
+        final ImmutableMap.Builder<String, TokenBucket> buckets = ImmutableMap
+                .builder();
+        for (Map.Entry<String, double[]> budget : builder.budgets.entrySet()) {
+            buckets.put(budget.getKey(), new TokenBucket(
+                    budget.getValue()[0], (int) budget.getValue()[1], now));
+        }
+        endpoints = buckets.build();
+
+        if (builder.timer.isPresent()) {
+            timer = builder.timer.get();
+            ownsTimer = false;
+        } else {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "mtgox4j-request-scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            ownsTimer = true;
+        }
+
+        queues = (Queue<Pending<?>>[]) new Queue<?>[PRIORITIES.length];
+        queued = new AtomicInteger[PRIORITIES.length];
+        dispatched = new AtomicLong[PRIORITIES.length];
+        totalWaitNanos = new AtomicLong[PRIORITIES.length];
+        maxWaitNanos = new AtomicLong[PRIORITIES.length];
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            queues[i] = new ConcurrentLinkedQueue<Pending<?>>();
+            queued[i] = new AtomicInteger();
+            dispatched[i] = new AtomicLong();
+            totalWaitNanos[i] = new AtomicLong();
+            maxWaitNanos[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Send a non-blocking request once the rate limits allow it.
+     * 
+     * <p>
+     * request is called on whichever thread dispatches it, so it must only
+     * start the request, not wait for it. Cancelling the returned future
+     * before then removes the request from the queue; cancelling it after
+     * cancels request's future.
+     * </p>
+     * 
+     * @param priority
+     *            the priority class of the request
+     * @param endpoint
+     *            the endpoint, for per-endpoint budgets
+     * @param request
+     *            starts the request
+     * @return the future result of request
+     * @throws IllegalStateException
+     *             if the scheduler is closed
+     */
+    public <T> ListenableFuture<T> submit(final ERequestPriority priority,
+            final String endpoint, final Callable<ListenableFuture<T>> request) {
+        checkNotNull(request);
+        checkState(!closed, "RequestScheduler is closed");
+
+        final Pending<T> pending = new Pending<T>(priority,
+                endpoints.get(checkNotNull(endpoint)), request, ticker.read());
+        queues[priority.ordinal()].add(pending);
+        queued[priority.ordinal()].incrementAndGet();
+        dispatch();
+        return pending.result;
+    }
+
+    /**
+     * Block until the rate limits allow a request, for callers that then
+     * send it with a blocking client. The wait is not interruptible, but the
+     * interrupt status is kept.
+     * 
+     * @param priority
+     *            the priority class of the request
+     * @param endpoint
+     *            the endpoint, for per-endpoint budgets
+     * @throws IllegalStateException
+     *             if the scheduler is or gets closed
+     */
+    public void acquire(final ERequestPriority priority, final String endpoint) {
+        final ListenableFuture<Void> permit = submit(priority, endpoint,
+                new Callable<ListenableFuture<Void>>() {
+                    @Override
+                    public ListenableFuture<Void> call() {
+                        return Futures.immediateFuture(null);
+                    }
+                });
+        try {
+            Uninterruptibles.getUninterruptibly(permit);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (CancellationException e) {
+            throw new IllegalStateException("RequestScheduler was closed", e);
+        }
+    }
+
+    /**
+     * {@link #submit} request to scheduler if there is one, otherwise start it
+     * right away.
+     */
+    public static <T> ListenableFuture<T> schedule(
+            final Optional<RequestScheduler> scheduler,
+            final ERequestPriority priority, final String endpoint,
+            final Callable<ListenableFuture<T>> request) {
+        if (scheduler.isPresent()) {
+            return scheduler.get().submit(priority, endpoint, request);
+        }
+
+        try {
+            return request.call();
+        } catch (Exception e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /**
+     * {@link #acquire} from scheduler if there is one.
+     */
+    public static void acquire(final Optional<RequestScheduler> scheduler,
+            final ERequestPriority priority, final String endpoint) {
+        if (scheduler.isPresent()) {
+            scheduler.get().acquire(priority, endpoint);
+        }
+    }
+
+    /**
+     * @param path
+     *            a resource path, e.g. BTCUSD/money/info
+     * @return path without a leading BTC{currency}/, e.g. money/info
+     */
+    public static String endpointOf(final String path) {
+        return path.length() > 7 && path.startsWith("BTC")
+                && '/' == path.charAt(6) ? path.substring(7) : path;
+    }
+
+    /**
+     * @param priority
+     *            the priority class
+     * @return the queue depth and wait times of priority
+     */
+    public RequestSchedulerStats getStats(final ERequestPriority priority) {
+        final int i = priority.ordinal();
+        return new RequestSchedulerStats(queued[i].get(), dispatched[i].get(),
+                totalWaitNanos[i].get(), maxWaitNanos[i].get());
+    }
+
+    /**
+     * @return the number of requests waiting, over all priorities
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (AtomicInteger count : queued) {
+            depth += count.get();
+        }
+        return depth;
+    }
+
+    /**
+     * Stop accepting requests and cancel the queued ones. Shuts down the
+     * timer if this scheduler created it.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        for (int i = 0; i < queues.length; i++) {
+            Pending<?> pending;
+            while (null != (pending = queues[i].poll())) {
+                queued[i].decrementAndGet();
+                pending.result.cancel(false);
+            }
+        }
+        if (ownsTimer) {
+            timer.shutdownNow();
+        }
+    }
+
+    /**
+     * Send what is ready unless another thread is already at it. A thread
+     * that finds the lock taken leaves a request behind, which the holder
+     * notices after releasing the lock and serves by going round again.
+     */
+    private void dispatch() {
+        dispatchRequests.incrementAndGet();
+        if (dispatchLock.isHeldByCurrentThread()) {
+            // submitted from a callback of a request being started; the
+            // outer dispatch goes round again once it is done
+            return;
+        }
+        while (dispatchLock.tryLock()) {
+            final int seen = dispatchRequests.get();
+            final long waitNanos;
+            try {
+                waitNanos = dispatchReady();
+            } finally {
+                dispatchLock.unlock();
+            }
+
+            if (waitNanos > 0) {
+                wakeIn(waitNanos);
+            }
+            if (dispatchRequests.get() == seen) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return how long until a queued request may be ready, 0 if none is
+     *         waiting for a token
+     */
+    private long dispatchReady() {
+        final long now = ticker.read();
+        global.refill(now);
+
+        long waitNanos = 0L;
+        for (int i = 0; i < queues.length; i++) {
+            for (Iterator<Pending<?>> it = queues[i].iterator(); it.hasNext();) {
+                final Pending<?> pending = it.next();
+                if (pending.result.isDone()) {
+                    // cancelled while queued
+                    it.remove();
+                    queued[i].decrementAndGet();
+                    continue;
+                }
+
+                if (!global.hasToken()) {
+                    return global.nanosUntilToken();
+                }
+
+                final TokenBucket budget = pending.budget;
+                if (null != budget) {
+                    budget.refill(now);
+                    if (!budget.hasToken()) {
+                        final long budgetWait = budget.nanosUntilToken();
+                        waitNanos = 0L == waitNanos ? budgetWait : Math.min(
+                                waitNanos, budgetWait);
+                        continue;
+                    }
+                    budget.take();
+                }
+                global.take();
+
+                it.remove();
+                queued[i].decrementAndGet();
+                record(i, now - pending.queuedNanos);
+                pending.start();
+            }
+        }
+        return waitNanos;
+    }
+
+    private void record(final int priority, final long waitNanos) {
+        dispatched[priority].incrementAndGet();
+        totalWaitNanos[priority].addAndGet(waitNanos);
+
+        final AtomicLong max = maxWaitNanos[priority];
+        long current;
+        while (waitNanos > (current = max.get())
+                && !max.compareAndSet(current, waitNanos)) {
+            // retry
+        }
+    }
+
+    /**
+     * Make sure a dispatch runs within waitNanos, reusing an earlier wake-up
+     * if one is already due by then.
+     */
+    private void wakeIn(final long waitNanos) {
+        if (closed) {
+            return;
+        }
+
+        final long deadline = ticker.read() + waitNanos;
+        while (true) {
+            final long current = wakeAtNanos.get();
+            if (current - deadline <= 0) {
+                return;
+            }
+            if (wakeAtNanos.compareAndSet(current, deadline)) {
+                break;
+            }
+        }
+
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                wakeAtNanos.compareAndSet(deadline, Long.MAX_VALUE);
+                dispatch();
+            }
+        }, waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * A queued request.
+     */
+    private static final class Pending<T> {
+        private final TokenBucket budget;
+        private final Callable<ListenableFuture<T>> request;
+        private final long queuedNanos;
+        private final SettableFuture<T> result = SettableFuture.create();
+
+        private Pending(final ERequestPriority priority,
+                final TokenBucket budget,
+                final Callable<ListenableFuture<T>> request,
+                final long queuedNanos) {
+            checkNotNull(priority);
+            this.budget = budget;
+            this.request = request;
+            this.queuedNanos = queuedNanos;
+        }
+
+        private void start() {
+            final ListenableFuture<T> started;
+            try {
+                started = checkNotNull(request.call(), "request returned null");
+            } catch (Throwable t) {
+                result.setException(t);
+                return;
+            }
+
+            Futures.addCallback(started, new FutureCallback<T>() {
+                @Override
+                public void onSuccess(final T value) {
+                    result.set(value);
+                }
+
+                @Override
+                public void onFailure(final Throwable t) {
+                    if (started.isCancelled()) {
+                        result.cancel(false);
+                    } else {
+                        result.setException(t);
+                    }
+                }
+            });
+            result.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    if (result.isCancelled()) {
+                        started.cancel(true);
+                    }
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
+    }
+
+    /**
+     * Builds {@link RequestScheduler}s. By default requests are limited to
+     * {@link RequestScheduler#DEFAULT_RATE} per second with bursts of
+     * {@link RequestScheduler#DEFAULT_BURST} and no per-endpoint budgets.
+     */
+    public static final class Builder {
+        private double perSecond = DEFAULT_RATE;
+        private int burst = DEFAULT_BURST;
+        private final Map<String, double[]> budgets = new HashMap<String, double[]>();
+        private Ticker ticker = Ticker.systemTicker();
+        private Optional<ScheduledExecutorService> timer = Optional.absent();
+
+        /**
+         * @param perSecond
+         *            the sustained number of requests per second
+         * @param burst
+         *            the number of requests that can go back to back after a
+         *            quiet spell
+         * @return this builder
+         */
+        public Builder rate(final double perSecond, final int burst) {
+            checkArgument(perSecond > 0 && burst > 0,
+                    "perSecond and burst must be positive");
+            this.perSecond = perSecond;
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * Give endpoint a budget of its own, within the global rate.
+         * 
+         * @param endpoint
+         *            the path without BTC{currency}/, e.g. money/ticker_fast
+         * @param perSecond
+         *            the sustained number of requests per second
+         * @param burst
+         *            the number of requests that can go back to back after a
+         *            quiet spell
+         * @return this builder
+         */
+        public Builder endpointRate(final String endpoint,
+                final double perSecond, final int burst) {
+            checkArgument(perSecond > 0 && burst > 0,
+                    "perSecond and burst must be positive");
+            budgets.put(checkNotNull(endpoint), new double[] { perSecond,
+                    burst });
+            return this;
+        }
+
+        /**
+         * @param ticker
+         *            the time source, e.g. a fake one in tests
+         * @return this builder
+         */
+        public Builder ticker(final Ticker ticker) {
+            this.ticker = checkNotNull(ticker);
+            return this;
+        }
+
+        /**
+         * @param timer
+         *            the executor that dispatches requests once tokens have
+         *            refilled; the caller keeps ownership
+         * @return this builder
+         */
+        public Builder timer(final ScheduledExecutorService timer) {
+            this.timer = Optional.of(timer);
+            return this;
+        }
+
+        public RequestScheduler build() {
+            return new RequestScheduler(this);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import com.google.common.base.Objects;
+
+/**
+ * A point-in-time view of one priority class of a {@link RequestScheduler}.
+ */
+public final class RequestSchedulerStats {
+    private final int queued;
+    private final long dispatched;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+
+    /**
+     * @param queued
+     *            requests waiting for a token
+     * @param dispatched
+     *            requests sent so far
+     * @param totalWaitNanos
+     *            the time dispatched requests spent queued, summed
+     * @param maxWaitNanos
+     *            the longest time a dispatched request spent queued
+     */
+    public RequestSchedulerStats(final int queued, final long dispatched,
+            final long totalWaitNanos, final long maxWaitNanos) {
+        this.queued = queued;
+        this.dispatched = dispatched;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    /**
+     * @return requests waiting for a token
+     */
+    public int getQueued() {
+        return queued;
+    }
+
+    /**
+     * @return requests sent so far
+     */
+    public long getDispatched() {
+        return dispatched;
+    }
+
+    /**
+     * @return the time dispatched requests spent queued, summed
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos;
+    }
+
+    /**
+     * @return the longest time a dispatched request spent queued
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    /**
+     * @return the mean time dispatched requests spent queued, 0 if none were
+     */
+    public long getMeanWaitNanos() {
+        return 0 == dispatched ? 0L : totalWaitNanos / dispatched;
+    }
+
+//@formatter:off
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("queued", queued)
+                .add("dispatched", dispatched)
+                .add("mean_wait_nanos", getMeanWaitNanos())
+                .add("max_wait_nanos", maxWaitNanos)
+                .toString();
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Turns a successful response body into a result.
+ * 
+ * @param <T>
+ *            the result type
+ * @see ResponseDecoders
+ */
+public interface ResponseDecoder<T> {
+    /**
+     * @param body
+     *            the response body; closed by the caller
+     * @return the decoded result
+     * @throws IOException
+     *             if the body could not be read or decoded
+     */
+    T decode(InputStream body) throws IOException;
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
+
+/**
+ * Common {@link ResponseDecoder}s.
+ */
+public final class ResponseDecoders {
+    private static final ResponseDecoder<String> UTF_8_STRING = new ResponseDecoder<String>() {
+        @Override
+        public String decode(final InputStream body) throws IOException {
+            return CharStreams.toString(new InputStreamReader(body,
+                    Charsets.UTF_8));
+        }
+    };
+
+    private ResponseDecoders() {
+    }
+
+    /**
+     * @return a decoder reading the whole body as a UTF-8 String
+     */
+    public static ResponseDecoder<String> string() {
+        return UTF_8_STRING;
+    }
+
+    /**
+     * @param mapper
+     *            the (thread-safe, shared) mapper to databind with
+     * @param type
+     *            the JSON model class
+     * @return a decoder databinding the body into type
+     */
+    public static <T> ResponseDecoder<T> json(final ObjectMapper mapper,
+            final Class<T> type) {
+        checkNotNull(mapper);
+        checkNotNull(type);
+
+        return new ResponseDecoder<T>() {
+            @Override
+            public T decode(final InputStream body) throws IOException {
+                return mapper.readValue(body, type);
+            }
+        };
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A token bucket refilled continuously at a fixed rate up to its burst size.
+ * Instances are not thread-safe; {@link RequestScheduler} only touches them
+ * while holding its dispatch lock.
+ */
+final class TokenBucket {
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    private long refilledNanos;
+
+    /**
+     * @param perSecond
+     *            the sustained rate
+     * @param burst
+     *            the most tokens that can be saved up, and the initial
+     *            amount
+     * @param nowNanos
+     *            the current time
+     */
+    TokenBucket(final double perSecond, final int burst, final long nowNanos) {
+        checkArgument(perSecond > 0, "perSecond must be positive");
+        checkArgument(burst > 0, "burst must be positive");
+
+        tokensPerNano = perSecond / 1e9;
+        this.burst = burst;
+        tokens = burst;
+        refilledNanos = nowNanos;
+    }
+
+    void refill(final long nowNanos) {
+        final long elapsed = nowNanos - refilledNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(burst, tokens + elapsed * tokensPerNano);
+            refilledNanos = nowNanos;
+        }
+    }
+
+    boolean hasToken() {
+        return tokens >= 1.0;
+    }
+
+    void take() {
+        tokens -= 1.0;
+    }
+
+    /**
+     * @return the nanoseconds until a token will be available, 0 if one is
+     *         now; only accurate straight after {@link #refill(long)}
+     */
+    long nanosUntilToken() {
+        return hasToken() ? 0L : (long) Math.ceil((1.0 - tokens)
+                / tokensPerNano);
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import java.io.Closeable;
+import java.util.concurrent.Executor;
+
+import com.google.common.base.Optional;
+import com.ning.http.client.AsyncHttpClient;
+import com.relish.mtgox4j.metrics.MetricsSink;
+import com.relish.mtgox4j.metrics.NoOpMetrics;
+import com.sun.jersey.api.client.Client;
+
+/**
+ * The HTTP clients {@link com.relish.mtgox4j.MtGoxClient} and
+ * {@link com.relish.mtgox4j.security.MtGoxSecurity} send requests through.
+ * 
+ * <p>
+ * A transport owns its connections. Share one transport between clients
+ * talking to the same host so they share its connection pool and TLS
+ * sessions, and close it once they are done.
+ * </p>
+ * 
+ * @see DefaultTransport
+ * @see PooledTransport
+ */
+public interface Transport extends Closeable {
+    /**
+     * @return the client for blocking requests
+     */
+    Client getRestClient();
+
+    /**
+     * @return the client for non-blocking requests
+     */
+    AsyncHttpClient getAsyncClient();
+
+    /**
+     * @return the usage of the blocking client's connection pool, absent if
+     *         it does not expose one
+     */
+    Optional<ConnectionPoolStats> getPoolStats();
+
+    /**
+     * @return the scheduler every request sent through this transport waits
+     *         on, absent if requests are sent right away
+     */
+    Optional<RequestScheduler> getScheduler();
+
+    /**
+     * @return the hedger idempotent public GETs sent through this transport
+     *         use, absent if they are sent once
+     */
+    Optional<RequestHedger> getHedger();
+
+    /**
+     * @return the executor the non-blocking variants of
+     *         {@link com.relish.mtgox4j.MtGoxClient} and
+     *         {@link com.relish.mtgox4j.security.MtGoxSecurity} run the
+     *         blocking client on, absent if they use the async client
+     */
+    Optional<Executor> getBlockingExecutor();
+
+    /**
+     * @return where calls sent through this transport report their latency,
+     *         size and failures; {@link NoOpMetrics} if nowhere
+     */
+    MetricsSink getMetrics();
+
+    /**
+     * @return the URL resource paths are relative to, ending with a slash;
+     *         {@link com.relish.mtgox4j.MtGoxClient#BASE_URL} unless the
+     *         transport talks to another server
+     */
+    String getBaseUrl();
+
+    /**
+     * @return the registry binding resource paths to this transport, shared
+     *         by every client sending through it
+     */
+    EndpointRegistry getEndpoints();
+
+    /**
+     * Release the connections of this transport.
+     */
+    @Override
+    void close();
+}
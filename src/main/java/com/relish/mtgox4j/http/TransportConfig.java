@@ -0,0 +1,315 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.net.URI;
+import java.util.Map;
+
+import javax.net.ssl.SSLContext;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.relish.mtgox4j.MtGoxClient;
+
+/**
+ * Settings of a {@link PooledTransport}. Build instances with
+ * {@link Builder}; they are immutable.
+ */
+public final class TransportConfig {
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 10000;
+    public static final int DEFAULT_POOL_TIMEOUT_MILLIS = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    public static final int DEFAULT_CONNECTION_TTL_MILLIS = 300000;
+    public static final int DEFAULT_TLS_SESSION_CACHE_SIZE = 64;
+    public static final int DEFAULT_TLS_SESSION_TIMEOUT_SECONDS = 3600;
+
+    private final String baseUrl;
+    private final int maxConnections;
+    private final int maxConnectionsPerRoute;
+    private final Map<URI, Integer> routeLimits;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final int poolTimeoutMillis;
+    private final int connectionTtlMillis;
+    private final Optional<SSLContext> sslContext;
+    private final int tlsSessionCacheSize;
+    private final int tlsSessionTimeoutSeconds;
+
+    private TransportConfig(final Builder builder) {
+        baseUrl = builder.baseUrl;
+        maxConnections = builder.maxConnections;
+        maxConnectionsPerRoute = builder.maxConnectionsPerRoute;
+        routeLimits = builder.routeLimits.build();
+        connectTimeoutMillis = builder.connectTimeoutMillis;
+        readTimeoutMillis = builder.readTimeoutMillis;
+        poolTimeoutMillis = builder.poolTimeoutMillis;
+        connectionTtlMillis = builder.connectionTtlMillis;
+        sslContext = builder.sslContext;
+        tlsSessionCacheSize = builder.tlsSessionCacheSize;
+        tlsSessionTimeoutSeconds = builder.tlsSessionTimeoutSeconds;
+    }
+
+    /**
+     * @return the default settings
+     */
+    public static TransportConfig defaults() {
+        return new Builder().build();
+    }
+
+    /**
+     * @return the URL resource paths are relative to,
+     *         {@link MtGoxClient#BASE_URL} unless another server, e.g. a local
+     *         stand-in, was configured
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * @return the maximum number of pooled connections over all routes
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @return the maximum number of pooled connections per route (scheme,
+     *         host and port) without its own limit
+     */
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * @return the limits of routes that don't use the per-route default, keyed
+     *         by scheme://host[:port]
+     */
+    public Map<URI, Integer> getRouteLimits() {
+        return routeLimits;
+    }
+
+    /**
+     * @return the connect timeout in milliseconds
+     */
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * @return the read timeout in milliseconds: the longest wait for response
+     *         data of a blocking request, and for the whole response of a
+     *         non-blocking one
+     */
+    public int getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    /**
+     * @return the longest wait of a blocking request for a pooled connection
+     *         in milliseconds, 0 to wait as long as it takes
+     */
+    public int getPoolTimeoutMillis() {
+        return poolTimeoutMillis;
+    }
+
+    /**
+     * @return how long a connection is kept for reuse in milliseconds, counted
+     *         from when it was opened
+     */
+    public int getConnectionTtlMillis() {
+        return connectionTtlMillis;
+    }
+
+    /**
+     * @return the TLS context, absent to create a default one per transport
+     */
+    public Optional<SSLContext> getSslContext() {
+        return sslContext;
+    }
+
+    /**
+     * @return the number of TLS sessions cached for resumption
+     */
+    public int getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+
+    /**
+     * @return how long a cached TLS session may be resumed in seconds
+     */
+    public int getTlsSessionTimeoutSeconds() {
+        return tlsSessionTimeoutSeconds;
+    }
+
+//@formatter:off
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("baseUrl", baseUrl)
+                .add("maxConnections", maxConnections)
+                .add("maxConnectionsPerRoute", maxConnectionsPerRoute)
+                .add("routeLimits", routeLimits)
+                .add("connectTimeoutMillis", connectTimeoutMillis)
+                .add("readTimeoutMillis", readTimeoutMillis)
+                .add("poolTimeoutMillis", poolTimeoutMillis)
+                .add("connectionTtlMillis", connectionTtlMillis)
+                .add("sslContext", sslContext)
+                .add("tlsSessionCacheSize", tlsSessionCacheSize)
+                .add("tlsSessionTimeoutSeconds", tlsSessionTimeoutSeconds)
+                .toString();
+    }
+//@formatter:on
+
+    /**
+     * Builds {@link TransportConfig}s, starting from the defaults.
+     */
+    public static final class Builder {
+        private String baseUrl = MtGoxClient.BASE_URL;
+        private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+        private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+        private final ImmutableMap.Builder<URI, Integer> routeLimits = ImmutableMap
+                .builder();
+        private int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+        private int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+        private int poolTimeoutMillis = DEFAULT_POOL_TIMEOUT_MILLIS;
+        private int connectionTtlMillis = DEFAULT_CONNECTION_TTL_MILLIS;
+        private Optional<SSLContext> sslContext = Optional.absent();
+        private int tlsSessionCacheSize = DEFAULT_TLS_SESSION_CACHE_SIZE;
+        private int tlsSessionTimeoutSeconds = DEFAULT_TLS_SESSION_TIMEOUT_SECONDS;
+
+        /**
+         * @param baseUrl
+         *            the URL resource paths are relative to, ending with a
+         *            slash, e.g. http://127.0.0.1:8080/api/2/
+         * @return this builder
+         */
+        public Builder baseUrl(final String baseUrl) {
+            checkArgument(baseUrl.endsWith("/"), "baseUrl must end with /");
+            this.baseUrl = baseUrl;
+            return this;
+        }
+
+        public Builder maxConnections(final int maxConnections) {
+            checkArgument(maxConnections > 0, "maxConnections must be positive");
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        public Builder maxConnectionsPerRoute(final int maxConnectionsPerRoute) {
+            checkArgument(maxConnectionsPerRoute > 0,
+                    "maxConnectionsPerRoute must be positive");
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
+        /**
+         * @param route
+         *            any URI on the route, e.g. MtGoxClient.BASE_URL; only its
+         *            scheme, host and port are used
+         * @param maxConnections
+         *            the maximum number of pooled connections to the route
+         * @return this builder
+         */
+        public Builder routeLimit(final URI route, final int maxConnections) {
+            checkArgument(maxConnections > 0, "maxConnections must be positive");
+            checkArgument(null != route.getScheme() && null != route.getHost(),
+                    "route must have a scheme and host");
+            routeLimits.put(
+                    URI.create(route.getScheme() + "://" + route.getHost()
+                            + (route.getPort() < 0 ? "" : ":" + route.getPort())),
+                    maxConnections);
+            return this;
+        }
+
+        public Builder connectTimeoutMillis(final int connectTimeoutMillis) {
+            checkArgument(connectTimeoutMillis >= 0,
+                    "connectTimeoutMillis must not be negative");
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            return this;
+        }
+
+        public Builder readTimeoutMillis(final int readTimeoutMillis) {
+            checkArgument(readTimeoutMillis >= 0,
+                    "readTimeoutMillis must not be negative");
+            this.readTimeoutMillis = readTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * @param poolTimeoutMillis
+         *            the longest wait of a blocking request for a pooled
+         *            connection, 0 to wait as long as it takes, e.g. when far
+         *            more calls run on a blocking executor than there are
+         *            connections
+         * @return this builder
+         */
+        public Builder poolTimeoutMillis(final int poolTimeoutMillis) {
+            checkArgument(poolTimeoutMillis >= 0,
+                    "poolTimeoutMillis must not be negative");
+            this.poolTimeoutMillis = poolTimeoutMillis;
+            return this;
+        }
+
+        public Builder connectionTtlMillis(final int connectionTtlMillis) {
+            checkArgument(connectionTtlMillis > 0,
+                    "connectionTtlMillis must be positive");
+            this.connectionTtlMillis = connectionTtlMillis;
+            return this;
+        }
+
+        /**
+         * @param sslContext
+         *            an initialized TLS context, e.g. with a custom trust store;
+         *            its client session cache is configured by the transport
+         * @return this builder
+         */
+        public Builder sslContext(final SSLContext sslContext) {
+            this.sslContext = Optional.of(sslContext);
+            return this;
+        }
+
+        public Builder tlsSessionCacheSize(final int tlsSessionCacheSize) {
+            checkArgument(tlsSessionCacheSize > 0,
+                    "tlsSessionCacheSize must be positive");
+            this.tlsSessionCacheSize = tlsSessionCacheSize;
+            return this;
+        }
+
+        public Builder tlsSessionTimeoutSeconds(
+                final int tlsSessionTimeoutSeconds) {
+            checkArgument(tlsSessionTimeoutSeconds > 0,
+                    "tlsSessionTimeoutSeconds must be positive");
+            this.tlsSessionTimeoutSeconds = tlsSessionTimeoutSeconds;
+            return this;
+        }
+
+        public TransportConfig build() {
+            return new TransportConfig(this);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Charsets;
+import com.google.common.primitives.Longs;
+
+/**
+ * One memory-mapped journal file: a {@link TickRecord#SIZE}-byte header
+ * followed by a fixed number of record slots.
+ * 
+ * <p>
+ * Files are named after the journal-wide index of their first record, zero
+ * padded so that name order is index order. The header holds a magic number,
+ * the format version, the record size, the first index and the slot count.
+ * </p>
+ */
+final class Segment {
+    static final String SUFFIX = ".ticks";
+
+    private static final Pattern NAME = Pattern.compile("\\d{19}\\"
+            + SUFFIX);
+    private static final long MAGIC = Longs.fromByteArray("MTGXTICK"
+            .getBytes(Charsets.US_ASCII));
+    private static final int VERSION = 1;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int RECORD_SIZE_OFFSET = 12;
+    private static final int FIRST_INDEX_OFFSET = 16;
+    private static final int CAPACITY_OFFSET = 24;
+
+    private final File file;
+    private final long firstIndex;
+    private final int capacity;
+    private final MappedByteBuffer buffer;
+
+    private Segment(final File file, final long firstIndex,
+            final int capacity, final MappedByteBuffer buffer) {
+        this.file = file;
+        this.firstIndex = firstIndex;
+        this.capacity = capacity;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Create, size and map a new segment, writing its header.
+     */
+    static Segment create(final File dir, final long firstIndex,
+            final int capacity) throws IOException {
+        final File file = new File(dir, nameOf(firstIndex));
+        final MappedByteBuffer buffer = map(file, FileChannel.MapMode.READ_WRITE,
+                (long) (capacity + 1) * TickRecord.SIZE);
+
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(RECORD_SIZE_OFFSET, TickRecord.SIZE);
+        buffer.putLong(FIRST_INDEX_OFFSET, firstIndex);
+        buffer.putLong(CAPACITY_OFFSET, capacity);
+        // the magic goes last so a half-written header is rejected
+        buffer.putLong(MAGIC_OFFSET, MAGIC);
+        buffer.force();
+
+        return new Segment(file, firstIndex, capacity, buffer);
+    }
+
+    /**
+     * Map an existing segment.
+     * 
+     * @throws IOException
+     *             if the file could not be mapped or its header is invalid
+     */
+    static Segment open(final File file, final FileChannel.MapMode mode)
+            throws IOException {
+        final long length = file.length();
+        if (length < TickRecord.SIZE) {
+            throw new IOException("Truncated journal segment " + file);
+        }
+
+        final MappedByteBuffer buffer = map(file, mode, length);
+        final long firstIndex = buffer.getLong(FIRST_INDEX_OFFSET);
+        final long capacity = buffer.getLong(CAPACITY_OFFSET);
+        if (buffer.getLong(MAGIC_OFFSET) != MAGIC
+                || buffer.getInt(VERSION_OFFSET) != VERSION
+                || buffer.getInt(RECORD_SIZE_OFFSET) != TickRecord.SIZE
+                || capacity <= 0
+                || (capacity + 1) * TickRecord.SIZE != length
+                || !file.getName().equals(nameOf(firstIndex))) {
+            throw new IOException("Invalid journal segment header in " + file);
+        }
+
+        return new Segment(file, firstIndex, (int) capacity, buffer);
+    }
+
+    /**
+     * Whether file was left behind by a crash during {@link #create}, before
+     * its header was complete. No record can have been written to it.
+     */
+    static boolean isUnfinished(final File file) throws IOException {
+        if (file.length() < TickRecord.SIZE) {
+            return true;
+        }
+
+        final ByteBuffer magic = ByteBuffer.allocate(8).order(
+                ByteOrder.LITTLE_ENDIAN);
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.getChannel().read(magic, MAGIC_OFFSET);
+        } finally {
+            raf.close();
+        }
+        return magic.getLong(0) != MAGIC;
+    }
+
+    /**
+     * @return the index of the first record of the segment file
+     */
+    static long firstIndexOf(final File file) {
+        return Long.parseLong(file.getName().substring(0,
+                file.getName().length() - SUFFIX.length()));
+    }
+
+    /**
+     * @return the segment files of dir in index order
+     */
+    static File[] list(final File dir) {
+        final File[] files = dir.listFiles();
+        if (null == files) {
+            return new File[0];
+        }
+
+        int n = 0;
+        for (File file : files) {
+            if (NAME.matcher(file.getName()).matches()) {
+                files[n++] = file;
+            }
+        }
+        final File[] segments = Arrays.copyOf(files, n);
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    static String nameOf(final long firstIndex) {
+        return String.format("%019d%s", firstIndex, SUFFIX);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getFirstIndex() {
+        return firstIndex;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    MappedByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the byte offset of slot
+     */
+    static int offsetOf(final int slot) {
+        return (slot + 1) * TickRecord.SIZE;
+    }
+
+    /**
+     * @return the number of intact records before the first empty or torn
+     *         slot
+     */
+    int countValid() {
+        int slot = 0;
+        while (slot < capacity && TickRecord.isValid(buffer, offsetOf(slot))) {
+            slot++;
+        }
+        return slot;
+    }
+
+    /**
+     * Zero every slot from slot onwards, so records left behind a torn one
+     * cannot be mistaken for data once writing resumes. Only non-zero words
+     * are written, so the usual all-zero tail is not dirtied.
+     */
+    void clearFrom(final int slot) {
+        for (int offset = offsetOf(slot), end = offsetOf(capacity); offset < end; offset += 8) {
+            if (0L != buffer.getLong(offset)) {
+                buffer.putLong(offset, 0L);
+            }
+        }
+    }
+
+    private static MappedByteBuffer map(final File file,
+            final FileChannel.MapMode mode, final long length)
+            throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file,
+                mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw");
+        try {
+            final MappedByteBuffer buffer = raf.getChannel().map(mode, 0,
+                    length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        } finally {
+            // the mapping stays valid after the channel is closed
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,324 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.journal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.MutableTickerFast;
+import com.relish.mtgox4j.model.json.TickerFast;
+
+/**
+ * Append-only journal of tickers as fixed-width binary {@link TickRecord}s,
+ * written through memory-mapped segment files.
+ * 
+ * <p>
+ * A record is 64 bytes instead of the kilobyte or so of JSON or Java
+ * serialization, and appending one is a handful of stores into a mapped page
+ * with no system call. When a segment is full it is forced to disk and the
+ * next one is created, named after the index of its first record. Use
+ * {@link TickJournalReader} to replay.
+ * </p>
+ * 
+ * <H1>Durability and recovery</H1>
+ * 
+ * <p>
+ * Records reach the page cache immediately, so they survive the process
+ * crashing; {@link #flush()} forces them to the device to survive the
+ * machine crashing. Each record carries a checksum written after its fields.
+ * On opening, the last segment is scanned up to the first slot that is empty
+ * or fails its checksum, the slots from there on are cleared and appending
+ * resumes at that point. A segment whose header was never completed is
+ * created again.
+ * </p>
+ * 
+ * <p>
+ * Appends are serialized by a lock, so a journal can be fed from several
+ * {@link com.relish.mtgox4j.TickerListener}s. Only one journal may be open on
+ * a directory at a time: it holds a lock on the directory's
+ * {@value #LOCK_FILE} until closed, so a second one, in this process or
+ * another, fails to open rather than interleaving with it.
+ * </p>
+ */
+public final class TickJournal implements Closeable {
+    /**
+     * 64 MiB segments.
+     */
+    public static final int DEFAULT_SEGMENT_RECORDS = 1 << 20;
+
+    /**
+     * The file in the journal directory locked by the open journal.
+     */
+    public static final String LOCK_FILE = "journal.lock";
+
+    private final File dir;
+    private final FileLock lock;
+    private final int segmentRecords;
+    private final Lock appendLock = new ReentrantLock();
+    private final TickRecord record = new TickRecord();
+    private Segment segment;
+    private int slot;
+    private boolean closed;
+
+    /**
+     * Builds {@link TickJournal}s.
+     */
+    public static final class Builder {
+        private int segmentRecords = DEFAULT_SEGMENT_RECORDS;
+
+        /**
+         * @param segmentRecords
+         *            the number of records per segment file, defaults to
+         *            {@link TickJournal#DEFAULT_SEGMENT_RECORDS}
+         * @return this
+         * @throws IllegalArgumentException
+         *             if segmentRecords is not positive or too large to map
+         */
+        public Builder segmentRecords(final int segmentRecords) {
+            checkArgument(segmentRecords > 0
+                    && segmentRecords < Integer.MAX_VALUE / TickRecord.SIZE,
+                    "segmentRecords must be positive and below %s",
+                    Integer.MAX_VALUE / TickRecord.SIZE);
+            this.segmentRecords = segmentRecords;
+            return this;
+        }
+
+        /**
+         * Open the journal in dir, recovering its last segment, or start a
+         * new one.
+         * 
+         * @param dir
+         *            the journal directory, created if missing
+         * @return the journal
+         * @throws IOException
+         *             if the directory or its last segment could not be
+         *             opened, or another journal is open on the directory
+         */
+        public TickJournal build(final File dir) throws IOException {
+            return new TickJournal(checkNotNull(dir), segmentRecords);
+        }
+    }
+
+    private TickJournal(final File dir, final int segmentRecords)
+            throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create journal directory " + dir);
+        }
+
+        this.dir = dir;
+        this.segmentRecords = segmentRecords;
+
+        lock = lock(dir);
+        try {
+            final File[] files = Segment.list(dir);
+            if (0 == files.length) {
+                segment = Segment.create(dir, 0L, segmentRecords);
+                slot = 0;
+            } else {
+                segment = recover(files[files.length - 1]);
+                slot = segment.countValid();
+                segment.clearFrom(slot);
+            }
+        } catch (IOException e) {
+            release(lock);
+            throw e;
+        } catch (RuntimeException e) {
+            release(lock);
+            throw e;
+        }
+    }
+
+    /**
+     * Append a decoded ticker.
+     * 
+     * @param currency
+     *            the currency the ticker is priced in
+     * @param ticker
+     *            the ticker
+     * @return the journal-wide index of the record
+     * @throws IOException
+     *             if a new segment was needed and could not be created
+     * @throws IllegalStateException
+     *             if the journal has been closed
+     */
+    public long append(final ECurrency currency,
+            final MutableTickerFast ticker) throws IOException {
+        appendLock.lock();
+        try {
+            return append(record.set(currency, ticker));
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Append a databound ticker.
+     * 
+     * @see #append(ECurrency, MutableTickerFast)
+     */
+    public long append(final ECurrency currency, final TickerFast ticker)
+            throws IOException {
+        appendLock.lock();
+        try {
+            return append(record.set(currency, ticker));
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Append a record.
+     * 
+     * @see #append(ECurrency, MutableTickerFast)
+     */
+    public long append(final TickRecord tick) throws IOException {
+        checkNotNull(tick.getCurrency(), "tick has no currency");
+
+        appendLock.lock();
+        try {
+            checkState(!closed, "Journal is closed");
+
+            if (slot == segment.getCapacity()) {
+                roll();
+            }
+            tick.write(segment.getBuffer(), Segment.offsetOf(slot));
+            return segment.getFirstIndex() + slot++;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of records in the journal, i.e. the index the next
+     *         record will get
+     */
+    public long size() {
+        appendLock.lock();
+        try {
+            return segment.getFirstIndex() + slot;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Force the records appended so far to the storage device.
+     */
+    public void flush() {
+        appendLock.lock();
+        try {
+            if (!closed) {
+                segment.getBuffer().force();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Flush, stop accepting records and unlock the directory. The mapping
+     * itself is released when it is garbage collected.
+     */
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            if (!closed) {
+                closed = true;
+                try {
+                    segment.getBuffer().force();
+                } finally {
+                    release(lock);
+                }
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Lock the {@link #LOCK_FILE} of dir, keeping its channel open until
+     * {@link #release(FileLock)}.
+     * 
+     * @throws IOException
+     *             if the file could not be opened, or another journal holds
+     *             the lock
+     */
+    private static FileLock lock(final File dir) throws IOException {
+        final FileChannel channel = new RandomAccessFile(new File(dir,
+                LOCK_FILE), "rw").getChannel();
+        FileLock lock = null;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // held by another journal in this process
+        } finally {
+            if (null == lock) {
+                channel.close();
+            }
+        }
+        if (null == lock) {
+            throw new IOException("Another journal is open on " + dir);
+        }
+        return lock;
+    }
+
+    private static void release(final FileLock lock) {
+        try {
+            // closing the channel releases the lock
+            lock.channel().close();
+        } catch (IOException e) {
+            // TODO: Log ignored close failure
+        }
+    }
+
+    private Segment recover(final File last) throws IOException {
+        if (Segment.isUnfinished(last)) {
+            if (!last.delete()) {
+                throw new IOException("Unable to delete unfinished segment "
+                        + last);
+            }
+            return Segment.create(dir, Segment.firstIndexOf(last),
+                    segmentRecords);
+        }
+        return Segment.open(last, FileChannel.MapMode.READ_WRITE);
+    }
+
+    private void roll() throws IOException {
+        segment.getBuffer().force();
+        segment = Segment.create(dir, segment.getFirstIndex() + slot,
+                segmentRecords);
+        slot = 0;
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.journal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import com.relish.mtgox4j.model.TickerFastView;
+
+/**
+ * Replays a {@link TickJournal} directory from a given record onwards.
+ * 
+ * <p>
+ * Each segment is mapped read-only and records are read with absolute gets
+ * straight into a caller-supplied {@link TickRecord}, or viewed in place
+ * through a {@link TickerFastView}, so replaying creates no objects per
+ * record. A reader stops at the end of what has been written so
+ * far; calling {@link #next(TickRecord)} again later picks up records
+ * appended since, including ones in newly rolled segments, which lets a
+ * reader tail a live journal in the same or another process.
+ * </p>
+ * 
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ */
+public final class TickJournalReader {
+    private final File dir;
+    private Segment segment;
+    private int slot;
+    private long nextIndex;
+
+    /**
+     * Replay dir from its first record.
+     * 
+     * @param dir
+     *            the journal directory
+     */
+    public TickJournalReader(final File dir) {
+        this(dir, 0L);
+    }
+
+    /**
+     * Replay dir from the record with index fromIndex, or from the first one
+     * still present if that is later.
+     * 
+     * @param dir
+     *            the journal directory
+     * @param fromIndex
+     *            the index of the first record to read
+     * @throws IllegalArgumentException
+     *             if fromIndex is negative
+     */
+    public TickJournalReader(final File dir, final long fromIndex) {
+        checkArgument(fromIndex >= 0, "fromIndex must not be negative");
+
+        this.dir = checkNotNull(dir);
+        nextIndex = fromIndex;
+    }
+
+    /**
+     * Read the next record.
+     * 
+     * @param into
+     *            the holder to fill
+     * @return false if there is no further record yet
+     * @throws IOException
+     *             if a segment could not be mapped or is corrupt
+     */
+    public boolean next(final TickRecord into) throws IOException {
+        checkNotNull(into);
+
+        final int offset = advance();
+        if (offset < 0) {
+            return false;
+        }
+        into.load(segment.getBuffer(), offset);
+        return true;
+    }
+
+    /**
+     * Point view at the next record in place, without copying it. The view
+     * stays valid after the reader moves on, since written records never
+     * change.
+     * 
+     * @param into
+     *            the view to wrap the record with
+     * @return false if there is no further record yet
+     * @throws IOException
+     *             if a segment could not be mapped or is corrupt
+     */
+    public boolean next(final TickerFastView into) throws IOException {
+        checkNotNull(into);
+
+        final int offset = advance();
+        if (offset < 0) {
+            return false;
+        }
+        into.wrapRecord(segment.getBuffer(), offset);
+        return true;
+    }
+
+    /**
+     * Move past the next intact record.
+     * 
+     * @return its offset within the current segment, or -1 if there is none
+     *         yet
+     */
+    private int advance() throws IOException {
+        while (true) {
+            if (null == segment && !seek()) {
+                return -1;
+            }
+
+            if (slot < segment.getCapacity()) {
+                final int offset = Segment.offsetOf(slot);
+                if (!TickRecord.isValid(segment.getBuffer(), offset)) {
+                    return -1;
+                }
+                slot++;
+                nextIndex++;
+                return offset;
+            }
+
+            // the segment is exhausted; move on once its successor exists
+            final Segment current = segment;
+            segment = null;
+            if (!seek()) {
+                segment = current;
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * @return the index of the record the next successful
+     *         {@link #next(TickRecord)} will return
+     */
+    public long getNextIndex() {
+        return nextIndex;
+    }
+
+    /**
+     * Map the segment holding nextIndex, or the first one after it if earlier
+     * segments have been deleted.
+     * 
+     * @return false if that segment does not exist yet
+     */
+    private boolean seek() throws IOException {
+        File found = null;
+        for (File file : Segment.list(dir)) {
+            final long firstIndex = Segment.firstIndexOf(file);
+            if (firstIndex <= nextIndex || null == found) {
+                found = file;
+            }
+            if (firstIndex > nextIndex) {
+                break;
+            }
+        }
+        if (null == found || Segment.isUnfinished(found)) {
+            return false;
+        }
+
+        final Segment opened = Segment.open(found,
+                FileChannel.MapMode.READ_ONLY);
+        if (opened.getFirstIndex() + opened.getCapacity() <= nextIndex) {
+            return false;
+        }
+
+        nextIndex = Math.max(nextIndex, opened.getFirstIndex());
+        segment = opened;
+        slot = (int) (nextIndex - opened.getFirstIndex());
+        return true;
+    }
+}
@@ -0,0 +1,302 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.journal;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.base.Objects;
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.MutableTickerFast;
+import com.relish.mtgox4j.model.json.TickerFast;
+import com.relish.mtgox4j.model.json.TickerFastData;
+import com.relish.mtgox4j.model.json.TickerFastInnerData;
+
+//@formatter:off
+/**
+ * Reusable, mutable holder of one ticker as stored by {@link TickJournal}:
+ * the timestamp, the value_int of each price and the currency.
+ * 
+ * <p>
+ * On disk a record is {@link #SIZE} little-endian bytes:
+ * </p>
+ * <table>
+ * <tr><th>Offset</th><th>Type</th><th>Field</th></tr>
+ * <tr><td>0</td><td>long</td><td>now (microseconds)</td></tr>
+ * <tr><td>8</td><td>long</td><td>buy value_int</td></tr>
+ * <tr><td>16</td><td>long</td><td>sell value_int</td></tr>
+ * <tr><td>24</td><td>long</td><td>last value_int</td></tr>
+ * <tr><td>32</td><td>long</td><td>last_local value_int</td></tr>
+ * <tr><td>40</td><td>long</td><td>last_all value_int</td></tr>
+ * <tr><td>48</td><td>long</td><td>last_orig value_int</td></tr>
+ * <tr><td>56</td><td>int</td><td>{@link ECurrency} ordinal</td></tr>
+ * <tr><td>60</td><td>int</td><td>checksum of bytes 0-59</td></tr>
+ * </table>
+ * 
+ * <p>
+ * The checksum is written last, so a record torn by a crash, or the zeroes
+ * of a never-written slot, fail {@link #read(ByteBuffer, int)}. Instances are
+ * not thread-safe.
+ * </p>
+ */
+//@formatter:on
+public final class TickRecord {
+    /**
+     * Bytes per record; a power of two so records never straddle a page.
+     */
+    public static final int SIZE = 64;
+
+    public static final int NOW_OFFSET = 0;
+    public static final int BUY_OFFSET = 8;
+    public static final int SELL_OFFSET = 16;
+    public static final int LAST_OFFSET = 24;
+    public static final int LAST_LOCAL_OFFSET = 32;
+    public static final int LAST_ALL_OFFSET = 40;
+    public static final int LAST_ORIG_OFFSET = 48;
+    public static final int CURRENCY_OFFSET = 56;
+    public static final int CHECKSUM_OFFSET = 60;
+
+    private static final ECurrency[] CURRENCIES = ECurrency.values();
+    private static final long CHECKSUM_SEED = 0x6D74676F78346AL;
+    private static final long CHECKSUM_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private long now;
+    private ECurrency currency;
+    private long buy;
+    private long sell;
+    private long last;
+    private long lastLocal;
+    private long lastAll;
+    private long lastOrig;
+
+    /**
+     * @return the unix timestamp of the ticker with microsecond resolution
+     */
+    public long getNow() {
+        return now;
+    }
+
+    public void setNow(final long now) {
+        this.now = now;
+    }
+
+    public ECurrency getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(final ECurrency currency) {
+        this.currency = checkNotNull(currency);
+    }
+
+    public long getBuy() {
+        return buy;
+    }
+
+    public void setBuy(final long buy) {
+        this.buy = buy;
+    }
+
+    public long getSell() {
+        return sell;
+    }
+
+    public void setSell(final long sell) {
+        this.sell = sell;
+    }
+
+    public long getLast() {
+        return last;
+    }
+
+    public void setLast(final long last) {
+        this.last = last;
+    }
+
+    public long getLastLocal() {
+        return lastLocal;
+    }
+
+    public void setLastLocal(final long lastLocal) {
+        this.lastLocal = lastLocal;
+    }
+
+    public long getLastAll() {
+        return lastAll;
+    }
+
+    public void setLastAll(final long lastAll) {
+        this.lastAll = lastAll;
+    }
+
+    public long getLastOrig() {
+        return lastOrig;
+    }
+
+    public void setLastOrig(final long lastOrig) {
+        this.lastOrig = lastOrig;
+    }
+
+    /**
+     * Copy the prices of a decoded ticker.
+     * 
+     * @param currency
+     *            the currency the ticker is priced in
+     * @param ticker
+     *            the ticker
+     * @return this
+     */
+    public TickRecord set(final ECurrency currency,
+            final MutableTickerFast ticker) {
+        setCurrency(currency);
+        now = ticker.getNow();
+        buy = ticker.getBuy().getValueInt();
+        sell = ticker.getSell().getValueInt();
+        last = ticker.getLast().getValueInt();
+        lastLocal = ticker.getLastLocal().getValueInt();
+        lastAll = ticker.getLastAll().getValueInt();
+        lastOrig = ticker.getLastOrig().getValueInt();
+        return this;
+    }
+
+    /**
+     * Copy the prices of a databound ticker; missing values become 0.
+     * 
+     * @param currency
+     *            the currency the ticker is priced in
+     * @param ticker
+     *            the ticker
+     * @return this
+     */
+    public TickRecord set(final ECurrency currency, final TickerFast ticker) {
+        setCurrency(currency);
+
+        final TickerFastData data = ticker.getData();
+        if (null == data) {
+            now = buy = sell = last = lastLocal = lastAll = lastOrig = 0L;
+            return this;
+        }
+
+        now = null == data.getNow() ? 0L : data.getNow();
+        buy = valueOf(data.getBuy());
+        sell = valueOf(data.getSell());
+        last = valueOf(data.getLast());
+        lastLocal = valueOf(data.getLast_local());
+        lastAll = valueOf(data.getLast_all());
+        lastOrig = valueOf(data.getLast_orig());
+        return this;
+    }
+
+    /**
+     * Write this record, checksum last, at offset of buf. The buffer must be
+     * little-endian.
+     * 
+     * @param buf
+     *            the buffer to write into
+     * @param offset
+     *            the absolute offset of the record
+     */
+    public void write(final ByteBuffer buf, final int offset) {
+        buf.putLong(offset + NOW_OFFSET, now);
+        buf.putLong(offset + BUY_OFFSET, buy);
+        buf.putLong(offset + SELL_OFFSET, sell);
+        buf.putLong(offset + LAST_OFFSET, last);
+        buf.putLong(offset + LAST_LOCAL_OFFSET, lastLocal);
+        buf.putLong(offset + LAST_ALL_OFFSET, lastAll);
+        buf.putLong(offset + LAST_ORIG_OFFSET, lastOrig);
+        buf.putInt(offset + CURRENCY_OFFSET, currency.ordinal());
+        buf.putInt(offset + CHECKSUM_OFFSET, checksum(buf, offset));
+    }
+
+    /**
+     * Read the record at offset of buf into this holder, if it is intact.
+     * The buffer must be little-endian.
+     * 
+     * @param buf
+     *            the buffer to read from
+     * @param offset
+     *            the absolute offset of the record
+     * @return false, leaving this holder untouched, if the slot holds no
+     *         complete record
+     */
+    public boolean read(final ByteBuffer buf, final int offset) {
+        if (!isValid(buf, offset)) {
+            return false;
+        }
+
+        load(buf, offset);
+        return true;
+    }
+
+    /**
+     * Read the record at offset of buf without validating it.
+     */
+    void load(final ByteBuffer buf, final int offset) {
+        now = buf.getLong(offset + NOW_OFFSET);
+        buy = buf.getLong(offset + BUY_OFFSET);
+        sell = buf.getLong(offset + SELL_OFFSET);
+        last = buf.getLong(offset + LAST_OFFSET);
+        lastLocal = buf.getLong(offset + LAST_LOCAL_OFFSET);
+        lastAll = buf.getLong(offset + LAST_ALL_OFFSET);
+        lastOrig = buf.getLong(offset + LAST_ORIG_OFFSET);
+        currency = CURRENCIES[buf.getInt(offset + CURRENCY_OFFSET)];
+    }
+
+    /**
+     * @return true if the slot at offset of buf holds a complete record
+     */
+    static boolean isValid(final ByteBuffer buf, final int offset) {
+        final int ordinal = buf.getInt(offset + CURRENCY_OFFSET);
+        return ordinal >= 0 && ordinal < CURRENCIES.length
+                && buf.getInt(offset + CHECKSUM_OFFSET) == checksum(buf, offset);
+    }
+
+    private static int checksum(final ByteBuffer buf, final int offset) {
+        long hash = CHECKSUM_SEED;
+        for (int i = 0; i < CURRENCY_OFFSET; i += 8) {
+            hash = (hash ^ buf.getLong(offset + i)) * CHECKSUM_MULTIPLIER;
+        }
+        hash = (hash ^ buf.getInt(offset + CURRENCY_OFFSET))
+                * CHECKSUM_MULTIPLIER;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static long valueOf(final TickerFastInnerData inner) {
+        return null == inner ? 0L : inner.getFixedValue();
+    }
+
+//@formatter:off
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("now", now)
+                .add("currency", null == currency ? null : currency.name())
+                .add("buy", buy)
+                .add("sell", sell)
+                .add("last", last)
+                .add("last_local", lastLocal)
+                .add("last_all", lastAll)
+                .add("last_orig", lastOrig)
+                .toString();
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.json;
+
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.DeserializationContext;
+import org.codehaus.jackson.map.JsonDeserializer;
+
+import com.relish.mtgox4j.model.ECurrency;
+
+/**
+ * Databinds a currency code straight to {@link ECurrency} from the parser's
+ * buffer. Unlike Jackson's own enum handling no String is created, and
+ * codes that are not an {@link ECurrency} become null instead of failing the
+ * whole response.
+ */
+public final class CurrencyCodeDeserializer extends
+        JsonDeserializer<ECurrency> {
+    @Override
+    public ECurrency deserialize(final JsonParser parser,
+            final DeserializationContext context) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+            throw context.mappingException(ECurrency.class);
+        }
+        return JsonReading.readCurrency(parser);
+    }
+}
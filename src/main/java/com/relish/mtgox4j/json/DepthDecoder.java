@@ -0,0 +1,182 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.json;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.relish.mtgox4j.json.JsonReading.expect;
+import static com.relish.mtgox4j.json.JsonReading.readLong;
+import static com.relish.mtgox4j.json.JsonReading.textEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import com.relish.mtgox4j.model.OrderBook;
+
+/**
+ * Decodes the money/depth/fetch response in a single pass over Jackson's
+ * streaming {@link JsonParser}, loading each level straight into an
+ * {@link OrderBook} as a snapshot.
+ * 
+ * <p>
+ * Only price_int and amount_int of each level are read; the float, stamp and
+ * filter fields are skipped. Instances are stateless and thread-safe; books
+ * are not.
+ * </p>
+ */
+public final class DepthDecoder {
+    private static final String RESULT = "result";
+    private static final String DATA = "data";
+    private static final String SUCCESS = "success";
+    private static final String NOW = "now";
+    private static final String ASKS = "asks";
+    private static final String BIDS = "bids";
+    private static final String PRICE_INT = "price_int";
+    private static final String AMOUNT_INT = "amount_int";
+
+    private final JsonFactory jsonFactory;
+
+    /**
+     * Creates a decoder with its own {@link JsonFactory}.
+     */
+    public DepthDecoder() {
+        this(new JsonFactory());
+    }
+
+    /**
+     * @param jsonFactory
+     *            the factory used to create parsers
+     * @throws NullPointerException
+     *             if jsonFactory is null
+     */
+    public DepthDecoder(final JsonFactory jsonFactory) {
+        this.jsonFactory = checkNotNull(jsonFactory);
+    }
+
+    /**
+     * Decode a depth/fetch response from the given stream.
+     * 
+     * @param in
+     *            the response body
+     * @param into
+     *            the book to load, cleared before decoding
+     * @return true if MtGox reported a result of "success"
+     * @throws IOException
+     *             if the stream could not be read or was not a valid
+     *             depth/fetch response
+     */
+    public boolean decode(final InputStream in, final OrderBook into)
+            throws IOException {
+        final JsonParser parser = jsonFactory.createJsonParser(checkNotNull(in));
+        try {
+            return decode(parser, into);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Decode the next depth/fetch object available from parser. The parser is
+     * left positioned on the closing brace of the object.
+     * 
+     * @param parser
+     *            the parser, positioned before the object's opening brace
+     * @param into
+     *            the book to load, cleared before decoding
+     * @return true if MtGox reported a result of "success"
+     * @throws IOException
+     *             if the parser could not be read or did not contain a valid
+     *             depth/fetch response
+     */
+    public boolean decode(final JsonParser parser, final OrderBook into)
+            throws IOException {
+        checkNotNull(into).beginSnapshot(0L);
+
+        boolean success = false;
+        try {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                final JsonToken token = parser.nextToken();
+
+                if (RESULT.equals(name)) {
+                    success = token == JsonToken.VALUE_STRING
+                            && textEquals(parser, SUCCESS);
+                } else if (DATA.equals(name)) {
+                    expect(parser, token, JsonToken.START_OBJECT);
+                    decodeData(parser, into);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+        } finally {
+            into.endSnapshot();
+        }
+
+        return success;
+    }
+
+    private static void decodeData(final JsonParser parser,
+            final OrderBook into) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+
+            if (NOW.equals(name)) {
+                into.setSnapshotNow(readLong(parser, token));
+            } else if (ASKS.equals(name)) {
+                expect(parser, token, JsonToken.START_ARRAY);
+                decodeLevels(parser, into, true);
+            } else if (BIDS.equals(name)) {
+                expect(parser, token, JsonToken.START_ARRAY);
+                decodeLevels(parser, into, false);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+    }
+
+    private static void decodeLevels(final JsonParser parser,
+            final OrderBook into, final boolean ask) throws IOException {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            long priceInt = 0L;
+            long amountInt = 0L;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                final JsonToken token = parser.nextToken();
+
+                if (PRICE_INT.equals(name)) {
+                    priceInt = readLong(parser, token);
+                } else if (AMOUNT_INT.equals(name)) {
+                    amountInt = readLong(parser, token);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+
+            into.addSnapshotLevel(ask, priceInt, amountInt);
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_ARRAY);
+    }
+}
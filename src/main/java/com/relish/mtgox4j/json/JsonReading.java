@@ -0,0 +1,122 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.json;
+
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.FixedPoint;
+
+/**
+ * Allocation-free token helpers shared by the streaming decoders.
+ */
+final class JsonReading {
+    private static final String VALUE_INT = "value_int";
+
+    private JsonReading() {
+    }
+
+    /**
+     * Resolve the current string token to a currency straight from the
+     * parser's buffer, without creating a String.
+     * 
+     * @return the currency, or null if the code is not an {@link ECurrency}
+     */
+    static ECurrency readCurrency(final JsonParser parser) throws IOException {
+        return ECurrency.fromCode(parser.getTextCharacters(),
+                parser.getTextOffset(), parser.getTextLength());
+    }
+
+    /**
+     * MtGox quotes its integers, so accept both JSON numbers and strings and
+     * parse the latter straight out of the parser's buffer.
+     */
+    static long readLong(final JsonParser parser, final JsonToken token)
+            throws IOException {
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getLongValue();
+        }
+        expect(parser, token, JsonToken.VALUE_STRING);
+
+        final char[] buf = parser.getTextCharacters();
+        final int offset = parser.getTextOffset();
+        final int len = parser.getTextLength();
+        try {
+            return FixedPoint.parseLong(buf, offset, len);
+        } catch (NumberFormatException e) {
+            throw new JsonParseException("Expected an integer for '"
+                    + parser.getCurrentName() + "' but was '"
+                    + new String(buf, offset, len) + "'",
+                    parser.getCurrentLocation(), e);
+        }
+    }
+
+    /**
+     * Read value_int out of an amount object such as
+     * {"value":"1.5","value_int":"150000000","currency":"BTC",...}, skipping
+     * its other fields.
+     * 
+     * @param parser
+     *            the parser, positioned on the object's opening brace
+     * @return value_int, 0 if absent
+     */
+    static long readValueInt(final JsonParser parser) throws IOException {
+        long valueInt = 0L;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+
+            if (VALUE_INT.equals(name)) {
+                valueInt = readLong(parser, token);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+        return valueInt;
+    }
+
+    static boolean textEquals(final JsonParser parser,
+            final String expected) throws IOException {
+        final int len = parser.getTextLength();
+        if (len != expected.length()) {
+            return false;
+        }
+
+        final char[] buf = parser.getTextCharacters();
+        final int offset = parser.getTextOffset();
+        for (int i = 0; i < len; i++) {
+            if (buf[offset + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void expect(final JsonParser parser, final JsonToken actual,
+            final JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException("Expected " + expected + " but was "
+                    + actual, parser.getCurrentLocation());
+        }
+    }
+}
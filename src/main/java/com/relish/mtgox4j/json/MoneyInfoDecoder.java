@@ -0,0 +1,222 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.json;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.relish.mtgox4j.json.JsonReading.expect;
+import static com.relish.mtgox4j.json.JsonReading.readValueInt;
+import static com.relish.mtgox4j.json.JsonReading.textEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.MoneyInfo;
+
+/**
+ * Decodes the money/info response in a single pass over Jackson's streaming
+ * {@link JsonParser}, straight into a reusable {@link MoneyInfo}.
+ * 
+ * <pre>
+ * {"result":"success","data":{"Login":"...","Trade_Fee":0.6,"Wallets":{
+ *   "BTC":{"Balance":{"value_int":"1250000000",...},"Open_Orders":{...},...},
+ *   ...}}}
+ * </pre>
+ * 
+ * <p>
+ * Wallet keys are resolved to {@link ECurrency} from Jackson's canonicalized
+ * field names and amounts are read as value_int from the parser's buffer, so
+ * no Strings or boxed values are created. Wallets in unknown currencies and
+ * other fields are skipped. Instances are stateless and thread-safe; holders
+ * are not.
+ * </p>
+ */
+public final class MoneyInfoDecoder {
+    private static final String RESULT = "result";
+    private static final String DATA = "data";
+    private static final String SUCCESS = "success";
+
+    private static final String LOGIN = "Login";
+    private static final String TRADE_FEE = "Trade_Fee";
+    private static final String WALLETS = "Wallets";
+    private static final String BALANCE = "Balance";
+    private static final String OPEN_ORDERS = "Open_Orders";
+
+    private final JsonFactory jsonFactory;
+
+    /**
+     * Creates a decoder with its own {@link JsonFactory}.
+     */
+    public MoneyInfoDecoder() {
+        this(new JsonFactory());
+    }
+
+    /**
+     * @param jsonFactory
+     *            the factory used to create parsers
+     * @throws NullPointerException
+     *             if jsonFactory is null
+     */
+    public MoneyInfoDecoder(final JsonFactory jsonFactory) {
+        this.jsonFactory = checkNotNull(jsonFactory);
+    }
+
+    /**
+     * Decode a money/info response from the given stream.
+     * 
+     * @param in
+     *            the response body
+     * @param into
+     *            the holder to fill, reset before decoding
+     * @return into
+     * @throws IOException
+     *             if the stream could not be read or was not a valid
+     *             money/info response
+     */
+    public MoneyInfo decode(final InputStream in, final MoneyInfo into)
+            throws IOException {
+        final JsonParser parser = jsonFactory.createJsonParser(checkNotNull(in));
+        try {
+            return decode(parser, into);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Decode a money/info response held in a byte array.
+     * 
+     * @param buf
+     *            the buffer holding the UTF-8 response body
+     * @param offset
+     *            the offset of the body within buf
+     * @param len
+     *            the length of the body
+     * @param into
+     *            the holder to fill, reset before decoding
+     * @return into
+     * @throws IOException
+     *             if the bytes were not a valid money/info response
+     */
+    public MoneyInfo decode(final byte[] buf, final int offset, final int len,
+            final MoneyInfo into) throws IOException {
+        final JsonParser parser = jsonFactory.createJsonParser(
+                checkNotNull(buf), offset, len);
+        try {
+            return decode(parser, into);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Decode the next money/info object available from parser. The parser is
+     * left positioned on the closing brace of the object.
+     * 
+     * @param parser
+     *            the parser, positioned before the object's opening brace
+     * @param into
+     *            the holder to fill, reset before decoding
+     * @return into
+     * @throws IOException
+     *             if the parser could not be read or did not contain a valid
+     *             money/info response
+     */
+    public MoneyInfo decode(final JsonParser parser, final MoneyInfo into)
+            throws IOException {
+        checkNotNull(into).reset();
+
+        expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+
+            if (RESULT.equals(name)) {
+                into.setSuccess(token == JsonToken.VALUE_STRING
+                        && textEquals(parser, SUCCESS));
+            } else if (DATA.equals(name)) {
+                expect(parser, token, JsonToken.START_OBJECT);
+                decodeData(parser, into);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+
+        return into;
+    }
+
+    private static void decodeData(final JsonParser parser,
+            final MoneyInfo into) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+
+            if (token == JsonToken.VALUE_STRING && LOGIN.equals(name)) {
+                into.setLogin(parser.getTextCharacters(),
+                        parser.getTextOffset(), parser.getTextLength());
+            } else if (token.isNumeric() && TRADE_FEE.equals(name)) {
+                into.setTradeFee(parser.getDoubleValue());
+            } else if (token == JsonToken.START_OBJECT && WALLETS.equals(name)) {
+                decodeWallets(parser, into);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+    }
+
+    private static void decodeWallets(final JsonParser parser,
+            final MoneyInfo into) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final ECurrency currency = ECurrency.fromCode(parser
+                    .getCurrentName());
+            final JsonToken token = parser.nextToken();
+
+            if (null == currency || token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+            } else {
+                decodeWallet(parser, currency, into);
+            }
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+    }
+
+    private static void decodeWallet(final JsonParser parser,
+            final ECurrency currency, final MoneyInfo into) throws IOException {
+        into.setBalanceInt(currency, 0L);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+
+            if (token == JsonToken.START_OBJECT && BALANCE.equals(name)) {
+                into.setBalanceInt(currency, readValueInt(parser));
+            } else if (token == JsonToken.START_OBJECT
+                    && OPEN_ORDERS.equals(name)) {
+                into.setOpenOrdersInt(currency, readValueInt(parser));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+    }
+}
@@ -0,0 +1,314 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.json;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.relish.mtgox4j.json.JsonReading.expect;
+import static com.relish.mtgox4j.json.JsonReading.readCurrency;
+import static com.relish.mtgox4j.json.JsonReading.readLong;
+import static com.relish.mtgox4j.json.JsonReading.readValueInt;
+import static com.relish.mtgox4j.json.JsonReading.textEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import com.relish.mtgox4j.model.EOrderStatus;
+import com.relish.mtgox4j.model.EOrderType;
+import com.relish.mtgox4j.model.MutableOrder;
+import com.relish.mtgox4j.model.OpenOrders;
+
+/**
+ * Decodes the responses of MtGox's order resources in a single pass over
+ * Jackson's streaming {@link JsonParser}:
+ * 
+ * <pre>
+ * money/order/add     {"result":"success","data":"oid"}
+ * money/order/cancel  {"result":"success","data":{"oid":"...","qid":"..."}}
+ * money/orders        {"result":"success","data":[{"oid":"...","type":"bid",
+ *                       "amount":{...},"price":{...},"status":"open",...},...]}
+ * </pre>
+ * 
+ * <p>
+ * Orders are decoded into a reusable {@link OpenOrders}, with amounts read as
+ * value_int from the parser's buffer and types, statuses and currencies
+ * resolved without creating Strings. An order's oid String is only created
+ * when it differs from the one its holder already has. Unknown fields are
+ * skipped. Instances are stateless and thread-safe; holders are not.
+ * </p>
+ */
+public final class OrderDecoder {
+    private static final EOrderType[] TYPES = EOrderType.values();
+    private static final EOrderStatus[] STATUSES = EOrderStatus.values();
+
+    private static final String RESULT = "result";
+    private static final String DATA = "data";
+    private static final String SUCCESS = "success";
+
+    private static final String OID = "oid";
+    private static final String CURRENCY = "currency";
+    private static final String TYPE = "type";
+    private static final String STATUS = "status";
+    private static final String AMOUNT = "amount";
+    private static final String EFFECTIVE_AMOUNT = "effective_amount";
+    private static final String PRICE = "price";
+    private static final String DATE = "date";
+
+    private final JsonFactory jsonFactory;
+
+    /**
+     * Creates a decoder with its own {@link JsonFactory}.
+     */
+    public OrderDecoder() {
+        this(new JsonFactory());
+    }
+
+    /**
+     * @param jsonFactory
+     *            the factory used to create parsers
+     * @throws NullPointerException
+     *             if jsonFactory is null
+     */
+    public OrderDecoder(final JsonFactory jsonFactory) {
+        this.jsonFactory = checkNotNull(jsonFactory);
+    }
+
+    /**
+     * Decode the oid of a money/order/add or money/order/cancel response from
+     * the given stream.
+     * 
+     * @param in
+     *            the response body
+     * @return the oid of the order added or cancelled, null if MtGox did not
+     *         report success
+     * @throws IOException
+     *             if the stream could not be read or was not valid JSON
+     */
+    public String decodeOid(final InputStream in) throws IOException {
+        final JsonParser parser = jsonFactory.createJsonParser(checkNotNull(in));
+        try {
+            return decodeOid(parser);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Decode the oid of the next money/order/add or money/order/cancel
+     * response available from parser. The parser is left positioned on the
+     * closing brace of the response.
+     * 
+     * @param parser
+     *            the parser, positioned before the response's opening brace
+     * @return the oid of the order added or cancelled, null if MtGox did not
+     *         report success
+     * @throws IOException
+     *             if the parser could not be read or did not contain a valid
+     *             response
+     */
+    public String decodeOid(final JsonParser parser) throws IOException {
+        boolean success = false;
+        String oid = null;
+
+        expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+
+            if (RESULT.equals(name)) {
+                success = token == JsonToken.VALUE_STRING
+                        && textEquals(parser, SUCCESS);
+            } else if (token == JsonToken.VALUE_STRING && DATA.equals(name)) {
+                oid = parser.getText();
+            } else if (token == JsonToken.START_OBJECT && DATA.equals(name)) {
+                oid = decodeCancelled(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+
+        return success ? oid : null;
+    }
+
+    /**
+     * Decode a money/orders response from the given stream.
+     * 
+     * @param in
+     *            the response body
+     * @param into
+     *            the holder to fill, reset before decoding
+     * @return into
+     * @throws IOException
+     *             if the stream could not be read or was not a valid
+     *             money/orders response
+     */
+    public OpenOrders decode(final InputStream in, final OpenOrders into)
+            throws IOException {
+        final JsonParser parser = jsonFactory.createJsonParser(checkNotNull(in));
+        try {
+            return decode(parser, into);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Decode a money/orders response held in a byte array.
+     * 
+     * @param buf
+     *            the buffer holding the UTF-8 response body
+     * @param offset
+     *            the offset of the body within buf
+     * @param len
+     *            the length of the body
+     * @param into
+     *            the holder to fill, reset before decoding
+     * @return into
+     * @throws IOException
+     *             if the bytes were not a valid money/orders response
+     */
+    public OpenOrders decode(final byte[] buf, final int offset,
+            final int len, final OpenOrders into) throws IOException {
+        final JsonParser parser = jsonFactory.createJsonParser(
+                checkNotNull(buf), offset, len);
+        try {
+            return decode(parser, into);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Decode the next money/orders object available from parser. The parser
+     * is left positioned on the closing brace of the object.
+     * 
+     * @param parser
+     *            the parser, positioned before the object's opening brace
+     * @param into
+     *            the holder to fill, reset before decoding
+     * @return into
+     * @throws IOException
+     *             if the parser could not be read or did not contain a valid
+     *             money/orders response
+     */
+    public OpenOrders decode(final JsonParser parser, final OpenOrders into)
+            throws IOException {
+        checkNotNull(into).reset();
+
+        expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+
+            if (RESULT.equals(name)) {
+                into.setSuccess(token == JsonToken.VALUE_STRING
+                        && textEquals(parser, SUCCESS));
+            } else if (token == JsonToken.START_ARRAY && DATA.equals(name)) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    decodeOrder(parser, into.add());
+                }
+                expect(parser, parser.getCurrentToken(), JsonToken.END_ARRAY);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+
+        return into;
+    }
+
+    private static String decodeCancelled(final JsonParser parser)
+            throws IOException {
+        String oid = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+
+            if (token == JsonToken.VALUE_STRING && OID.equals(name)) {
+                oid = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+        return oid;
+    }
+
+    private static void decodeOrder(final JsonParser parser,
+            final MutableOrder into) throws IOException {
+        boolean hasOid = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+
+            if (token == JsonToken.VALUE_STRING && OID.equals(name)) {
+                if (null == into.getOid() || !textEquals(parser, into.getOid())) {
+                    into.setOid(parser.getText());
+                }
+                hasOid = true;
+            } else if (token == JsonToken.VALUE_STRING && TYPE.equals(name)) {
+                into.setType(readType(parser));
+            } else if (token == JsonToken.VALUE_STRING && STATUS.equals(name)) {
+                into.setStatus(readStatus(parser));
+            } else if (token == JsonToken.VALUE_STRING
+                    && CURRENCY.equals(name)) {
+                into.setCurrency(readCurrency(parser));
+            } else if (token == JsonToken.START_OBJECT && AMOUNT.equals(name)) {
+                into.setAmountInt(readValueInt(parser));
+            } else if (token == JsonToken.START_OBJECT
+                    && EFFECTIVE_AMOUNT.equals(name)) {
+                into.setEffectiveAmountInt(readValueInt(parser));
+            } else if (token == JsonToken.START_OBJECT && PRICE.equals(name)) {
+                into.setPriceInt(readValueInt(parser));
+            } else if (DATE.equals(name)) {
+                into.setDate(readLong(parser, token));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+
+        if (!hasOid) {
+            into.setOid(null);
+        }
+    }
+
+    private static EOrderType readType(final JsonParser parser)
+            throws IOException {
+        for (EOrderType type : TYPES) {
+            if (textEquals(parser, type.getCode())) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private static EOrderStatus readStatus(final JsonParser parser)
+            throws IOException {
+        for (EOrderStatus status : STATUSES) {
+            if (textEquals(parser, status.getCode())) {
+                return status;
+            }
+        }
+        return null;
+    }
+}
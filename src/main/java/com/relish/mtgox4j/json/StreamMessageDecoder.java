@@ -0,0 +1,255 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.json;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.relish.mtgox4j.json.JsonReading.expect;
+import static com.relish.mtgox4j.json.JsonReading.readCurrency;
+import static com.relish.mtgox4j.json.JsonReading.readLong;
+import static com.relish.mtgox4j.json.JsonReading.textEquals;
+
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.EStreamChannel;
+import com.relish.mtgox4j.model.MutableDepthUpdate;
+import com.relish.mtgox4j.model.MutableTickerFast;
+import com.relish.mtgox4j.model.MutableTrade;
+
+/**
+ * Decodes messages of MtGox's streaming API in a single pass over Jackson's
+ * streaming {@link JsonParser}, into holders owned by the decoder.
+ * 
+ * <p>
+ * A message carries its payload under a key naming the channel type:
+ * </p>
+ * 
+ * <pre>
+ * {"channel":"...","op":"private","origin":"broadcast","private":"ticker","ticker":{...}}
+ * {"channel":"...","op":"private","origin":"broadcast","private":"trade","trade":{...}}
+ * {"channel":"...","op":"private","origin":"broadcast","private":"depth","depth":{...}}
+ * </pre>
+ * 
+ * <p>
+ * The ticker payload has the same shape as the data of a ticker_fast
+ * response. Other messages (subscription acknowledgements, remarks) are
+ * skipped. Each connection should have its own decoder; instances are not
+ * thread-safe and the holders are overwritten by the next message.
+ * </p>
+ */
+public final class StreamMessageDecoder {
+    private static final String TID = "tid";
+    private static final String DATE = "date";
+    private static final String AMOUNT_INT = "amount_int";
+    private static final String PRICE_INT = "price_int";
+    private static final String PRICE_CURRENCY = "price_currency";
+    private static final String TRADE_TYPE = "trade_type";
+    private static final String PRIMARY = "primary";
+    private static final String BID = "bid";
+    private static final String YES = "Y";
+
+    private static final String NOW = "now";
+    private static final String CURRENCY = "currency";
+    private static final String TYPE = "type";
+    private static final String TYPE_STR = "type_str";
+    private static final String ASK = "ask";
+    private static final String VOLUME_INT = "volume_int";
+    private static final String TOTAL_VOLUME_INT = "total_volume_int";
+
+
+    private final JsonFactory jsonFactory;
+    private final MutableTickerFast ticker = new MutableTickerFast();
+    private final MutableTrade trade = new MutableTrade();
+    private final MutableDepthUpdate depth = new MutableDepthUpdate();
+    private ECurrency currency;
+
+    /**
+     * Creates a decoder with its own {@link JsonFactory}.
+     */
+    public StreamMessageDecoder() {
+        this(new JsonFactory());
+    }
+
+    /**
+     * @param jsonFactory
+     *            the factory used to create parsers
+     * @throws NullPointerException
+     *             if jsonFactory is null
+     */
+    public StreamMessageDecoder(final JsonFactory jsonFactory) {
+        this.jsonFactory = checkNotNull(jsonFactory);
+    }
+
+    /**
+     * Decode one complete message.
+     * 
+     * @param message
+     *            the text of the message
+     * @return the channel type of the message, null if it was not a ticker,
+     *         trade or depth message
+     * @throws IOException
+     *             if the message was not valid
+     */
+    public EStreamChannel decode(final String message) throws IOException {
+        final JsonParser parser = jsonFactory
+                .createJsonParser(checkNotNull(message));
+        try {
+            return decode(parser);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Decode the next message available from parser. The parser is left
+     * positioned on the closing brace of the message.
+     * 
+     * @param parser
+     *            the parser, positioned before the message's opening brace
+     * @return the channel type of the message, null if it was not a ticker,
+     *         trade or depth message
+     * @throws IOException
+     *             if the message was not valid
+     */
+    public EStreamChannel decode(final JsonParser parser) throws IOException {
+        EStreamChannel channel = null;
+        currency = null;
+
+        expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+
+            if (token == JsonToken.START_OBJECT
+                    && EStreamChannel.TICKER.getPrefix().equals(name)) {
+                ticker.reset();
+                TickerFastDecoder.decodeData(parser, ticker);
+                ticker.setSuccess(true);
+                currency = ticker.getBuy().getCurrency();
+                channel = EStreamChannel.TICKER;
+            } else if (token == JsonToken.START_OBJECT
+                    && EStreamChannel.TRADE.getPrefix().equals(name)) {
+                decodeTrade(parser);
+                currency = trade.getPriceCurrency();
+                channel = EStreamChannel.TRADE;
+            } else if (token == JsonToken.START_OBJECT
+                    && EStreamChannel.DEPTH.getPrefix().equals(name)) {
+                decodeDepth(parser);
+                currency = depth.getCurrency();
+                channel = EStreamChannel.DEPTH;
+            } else {
+                parser.skipChildren();
+            }
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+
+        return channel;
+    }
+
+    /**
+     * @return the currency of the last message's pair, null if unknown
+     */
+    public ECurrency getCurrency() {
+        return currency;
+    }
+
+    /**
+     * @return the last ticker decoded
+     */
+    public MutableTickerFast getTicker() {
+        return ticker;
+    }
+
+    /**
+     * @return the last trade decoded
+     */
+    public MutableTrade getTrade() {
+        return trade;
+    }
+
+    /**
+     * @return the last depth update decoded
+     */
+    public MutableDepthUpdate getDepth() {
+        return depth;
+    }
+
+    private void decodeTrade(final JsonParser parser) throws IOException {
+        trade.reset();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+
+            if (TID.equals(name)) {
+                trade.setTid(readLong(parser, token));
+            } else if (DATE.equals(name)) {
+                trade.setDate(readLong(parser, token));
+            } else if (AMOUNT_INT.equals(name)) {
+                trade.setAmountInt(readLong(parser, token));
+            } else if (PRICE_INT.equals(name)) {
+                trade.setPriceInt(readLong(parser, token));
+            } else if (token == JsonToken.VALUE_STRING
+                    && PRICE_CURRENCY.equals(name)) {
+                trade.setPriceCurrency(readCurrency(parser));
+            } else if (token == JsonToken.VALUE_STRING
+                    && TRADE_TYPE.equals(name)) {
+                trade.setBid(textEquals(parser, BID));
+            } else if (token == JsonToken.VALUE_STRING
+                    && PRIMARY.equals(name)) {
+                trade.setPrimary(textEquals(parser, YES));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+    }
+
+    private void decodeDepth(final JsonParser parser) throws IOException {
+        depth.reset();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+
+            if (NOW.equals(name)) {
+                depth.setNow(readLong(parser, token));
+            } else if (PRICE_INT.equals(name)) {
+                depth.setPriceInt(readLong(parser, token));
+            } else if (VOLUME_INT.equals(name)) {
+                depth.setVolumeInt(readLong(parser, token));
+            } else if (TOTAL_VOLUME_INT.equals(name)) {
+                depth.setTotalVolumeInt(readLong(parser, token));
+            } else if (token == JsonToken.VALUE_STRING
+                    && CURRENCY.equals(name)) {
+                depth.setCurrency(readCurrency(parser));
+            } else if (token == JsonToken.VALUE_STRING
+                    && TYPE_STR.equals(name)) {
+                depth.setAsk(textEquals(parser, ASK));
+            } else if (token == JsonToken.VALUE_NUMBER_INT && TYPE.equals(name)) {
+                // 1 is ask, 2 is bid; type_str says the same when present
+                depth.setAsk(1 == parser.getIntValue());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.json;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.relish.mtgox4j.json.JsonReading.expect;
+import static com.relish.mtgox4j.json.JsonReading.readCurrency;
+import static com.relish.mtgox4j.json.JsonReading.readLong;
+import static com.relish.mtgox4j.json.JsonReading.textEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import com.relish.mtgox4j.model.MutableTickerFast;
+import com.relish.mtgox4j.model.MutableTickerFastInnerData;
+import com.relish.mtgox4j.model.json.TickerFast;
+
+/**
+ * Decodes the money/ticker_fast response in a single pass over Jackson's
+ * streaming {@link JsonParser}, straight into a reusable
+ * {@link MutableTickerFast}.
+ * 
+ * <p>
+ * Unlike databinding into {@link TickerFast}, no model objects or value
+ * Strings are created: field names are canonicalized by Jackson, numbers are
+ * read from the parser's character buffer, currency codes are resolved
+ * straight to {@link com.relish.mtgox4j.model.ECurrency} and text is copied
+ * into the holder's own buffers. Unknown fields are skipped. Instances are stateless
+ * and thread-safe; holders are not.
+ * </p>
+ */
+public final class TickerFastDecoder {
+    private static final String RESULT = "result";
+    private static final String DATA = "data";
+    private static final String SUCCESS = "success";
+    private static final String NOW = "now";
+
+    private static final String LAST_LOCAL = "last_local";
+    private static final String LAST = "last";
+    private static final String LAST_ORIG = "last_orig";
+    private static final String LAST_ALL = "last_all";
+    private static final String BUY = "buy";
+    private static final String SELL = "sell";
+
+    private static final String VALUE = "value";
+    private static final String VALUE_INT = "value_int";
+    private static final String DISPLAY = "display";
+    private static final String DISPLAY_SHORT = "display_short";
+    private static final String CURRENCY = "currency";
+
+    private final JsonFactory jsonFactory;
+
+    /**
+     * Creates a decoder with its own {@link JsonFactory}.
+     */
+    public TickerFastDecoder() {
+        this(new JsonFactory());
+    }
+
+    /**
+     * @param jsonFactory
+     *            the factory used to create parsers
+     * @throws NullPointerException
+     *             if jsonFactory is null
+     */
+    public TickerFastDecoder(final JsonFactory jsonFactory) {
+        this.jsonFactory = checkNotNull(jsonFactory);
+    }
+
+    /**
+     * Decode a ticker_fast response from the given stream.
+     * 
+     * @param in
+     *            the response body
+     * @param into
+     *            the holder to fill, reset before decoding
+     * @return into
+     * @throws IOException
+     *             if the stream could not be read or was not a valid
+     *             ticker_fast response
+     */
+    public MutableTickerFast decode(final InputStream in,
+            final MutableTickerFast into) throws IOException {
+        final JsonParser parser = jsonFactory.createJsonParser(checkNotNull(in));
+        try {
+            return decode(parser, into);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Decode a ticker_fast response held in a byte array.
+     * 
+     * @param buf
+     *            the buffer holding the UTF-8 response body
+     * @param offset
+     *            the offset of the body within buf
+     * @param len
+     *            the length of the body
+     * @param into
+     *            the holder to fill, reset before decoding
+     * @return into
+     * @throws IOException
+     *             if the bytes were not a valid ticker_fast response
+     */
+    public MutableTickerFast decode(final byte[] buf, final int offset,
+            final int len, final MutableTickerFast into) throws IOException {
+        final JsonParser parser = jsonFactory.createJsonParser(
+                checkNotNull(buf), offset, len);
+        try {
+            return decode(parser, into);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Decode the next ticker_fast object available from parser. The parser is
+     * left positioned on the closing brace of the object.
+     * 
+     * @param parser
+     *            the parser, positioned before the object's opening brace
+     * @param into
+     *            the holder to fill, reset before decoding
+     * @return into
+     * @throws IOException
+     *             if the parser could not be read or did not contain a valid
+     *             ticker_fast response
+     */
+    public MutableTickerFast decode(final JsonParser parser,
+            final MutableTickerFast into) throws IOException {
+        checkNotNull(into).reset();
+
+        expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+
+            if (RESULT.equals(name)) {
+                into.setSuccess(token == JsonToken.VALUE_STRING
+                        && textEquals(parser, SUCCESS));
+            } else if (DATA.equals(name)) {
+                expect(parser, token, JsonToken.START_OBJECT);
+                decodeData(parser, into);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+
+        return into;
+    }
+
+    /**
+     * Decode the ticker object found under "data" in ticker_fast responses and
+     * under "ticker" in streamed ticker messages.
+     * 
+     * @param parser
+     *            the parser, positioned on the object's opening brace
+     * @param into
+     *            the holder to fill (not reset)
+     * @throws IOException
+     *             if the object could not be read or decoded
+     */
+    static void decodeData(final JsonParser parser,
+            final MutableTickerFast into) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+
+            if (NOW.equals(name)) {
+                into.setNow(readLong(parser, token));
+                continue;
+            }
+
+            final MutableTickerFastInnerData inner = innerFor(name, into);
+            if (null == inner) {
+                parser.skipChildren();
+            } else {
+                expect(parser, token, JsonToken.START_OBJECT);
+                decodeInnerData(parser, inner);
+            }
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+    }
+
+    private static void decodeInnerData(final JsonParser parser,
+            final MutableTickerFastInnerData into) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+
+            if (VALUE_INT.equals(name)) {
+                into.setValueInt(readLong(parser, token));
+            } else if (token.isScalarValue() && VALUE.equals(name)) {
+                into.setValue(parser.getTextCharacters(),
+                        parser.getTextOffset(), parser.getTextLength());
+            } else if (token.isScalarValue() && DISPLAY.equals(name)) {
+                into.setDisplay(parser.getTextCharacters(),
+                        parser.getTextOffset(), parser.getTextLength());
+            } else if (token.isScalarValue() && DISPLAY_SHORT.equals(name)) {
+                into.setDisplayShort(parser.getTextCharacters(),
+                        parser.getTextOffset(), parser.getTextLength());
+            } else if (token == JsonToken.VALUE_STRING
+                    && CURRENCY.equals(name)) {
+                into.setCurrency(readCurrency(parser));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+    }
+
+    private static MutableTickerFastInnerData innerFor(final String name,
+            final MutableTickerFast into) {
+        if (LAST_LOCAL.equals(name)) {
+            return into.getLastLocal();
+        } else if (LAST.equals(name)) {
+            return into.getLast();
+        } else if (LAST_ORIG.equals(name)) {
+            return into.getLastOrig();
+        } else if (LAST_ALL.equals(name)) {
+            return into.getLastAll();
+        } else if (BUY.equals(name)) {
+            return into.getBuy();
+        } else if (SELL.equals(name)) {
+            return into.getSell();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.metrics;
+
+/**
+ * The phases of a call timed by a {@link MetricsSink}. Phases do not overlap;
+ * {@link #TOTAL} spans SEND through DECODE.
+ */
+public enum EPhase {
+    /**
+     * Waiting in the {@link com.relish.mtgox4j.http.RequestScheduler}.
+     */
+    QUEUE,
+
+    /**
+     * Signing a secured request and taking its nonce.
+     */
+    SIGN,
+
+    /**
+     * From handing the request to the client until it was written, including
+     * any connection and TLS setup. Blocking calls report it as part of
+     * {@link #WAIT}.
+     */
+    SEND,
+
+    /**
+     * From the request being written until the response status arrived:
+     * the network round trip plus the time MtGox took.
+     */
+    WAIT,
+
+    /**
+     * Receiving the rest of the response. Blocking calls read the body while
+     * decoding and report it as part of {@link #DECODE}.
+     */
+    RECEIVE,
+
+    /**
+     * Decoding the response body, e.g. Jackson databinding.
+     */
+    DECODE,
+
+    /**
+     * The whole call once signed, successful or not.
+     */
+    TOTAL;
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Objects;
+
+/**
+ * The {@link HistogramMetrics} of one endpoint.
+ */
+public final class EndpointMetrics implements EndpointRecorder {
+    private static final EPhase[] PHASES = EPhase.values();
+
+    private final String endpoint;
+    private final Histogram[] phases = new Histogram[PHASES.length];
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    EndpointMetrics(final String endpoint) {
+        this.endpoint = endpoint;
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new Histogram();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void record(final EPhase phase, final long nanos) {
+        phases[phase.ordinal()].record(nanos);
+    }
+
+    @Override
+    public void recordBytesSent(final long bytes) {
+        bytesSent.addAndGet(bytes);
+    }
+
+    @Override
+    public void recordBytesReceived(final long bytes) {
+        bytesReceived.addAndGet(bytes);
+    }
+
+    @Override
+    public void recordError(final Throwable cause) {
+        errors.incrementAndGet();
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @param phase
+     *            the phase
+     * @return the nanoseconds spent in phase per call
+     */
+    public Histogram getHistogram(final EPhase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    /**
+     * @return the number of calls that completed, successfully or not
+     */
+    public long getCalls() {
+        return phases[EPhase.TOTAL.ordinal()].getCount();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+//@formatter:off
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("endpoint", endpoint)
+                .add("total", getHistogram(EPhase.TOTAL))
+                .add("bytesSent", getBytesSent())
+                .add("bytesReceived", getBytesReceived())
+                .add("errors", getErrors())
+                .toString();
+    }
+//@formatter:on
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.metrics;
+
+/**
+ * Records the calls to one endpoint. Obtained once per endpoint from a
+ * {@link MetricsSink} and kept, so recording does no lookups.
+ * 
+ * <p>
+ * Implementations must be thread-safe and cheap: they are called on I/O
+ * threads for every request. Callers skip reading the clock altogether when
+ * {@link #isEnabled()} is false.
+ * </p>
+ */
+public interface EndpointRecorder {
+    /**
+     * @return false if every other method is a no-op
+     */
+    boolean isEnabled();
+
+    /**
+     * @param phase
+     *            the phase of the call
+     * @param nanos
+     *            the time it took
+     */
+    void record(EPhase phase, long nanos);
+
+    /**
+     * @param bytes
+     *            the size of a request body sent
+     */
+    void recordBytesSent(long bytes);
+
+    /**
+     * @param bytes
+     *            the size of a response body received
+     */
+    void recordBytesReceived(long bytes);
+
+    /**
+     * @param cause
+     *            why a call failed
+     */
+    void recordError(Throwable cause);
+}
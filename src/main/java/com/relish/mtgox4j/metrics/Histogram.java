@@ -0,0 +1,165 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.metrics;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Objects;
+
+/**
+ * A lock-free histogram of non-negative longs, e.g. latencies in
+ * nanoseconds.
+ * 
+ * <p>
+ * Values are counted in log-linear buckets: each power of two is split into
+ * {@link #SUB_BUCKETS} equal buckets, so a reported percentile is within
+ * 1/{@link #SUB_BUCKETS} of the true value, while the whole range of a long
+ * fits in {@value #BUCKETS} counters. Recording a value is an index
+ * computation and three atomic updates, with no allocation and no locks.
+ * </p>
+ * 
+ * <p>
+ * Reads are not atomic with respect to concurrent recording, so a percentile
+ * may reflect a few more or fewer values than {@link #getCount()}.
+ * </p>
+ */
+public final class Histogram {
+    static final int SUB_BUCKET_BITS = 4;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value
+     *            the value to count; negative values count as 0
+     */
+    public void record(final long value) {
+        final long v = Math.max(0L, value);
+        counts.incrementAndGet(indexOf(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+
+        long current;
+        while (v > (current = max.get()) && !max.compareAndSet(current, v)) {
+            // retry
+        }
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the sum of the values recorded
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * @return the largest value recorded, 0 if none
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the values recorded, 0 if none
+     */
+    public long getMean() {
+        final long n = count.get();
+        return 0 == n ? 0L : sum.get() / n;
+    }
+
+    /**
+     * @param percentile
+     *            between 0 and 1, e.g. 0.99
+     * @return the smallest bucket bound at or below which that share of the
+     *         values fall, 0 if none were recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        checkArgument(percentile >= 0 && percentile <= 1,
+                "percentile must be between 0 and 1");
+
+        long total = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (0 == total) {
+            return 0L;
+        }
+
+        final long rank = Math.max(1L, (long) Math.ceil(percentile * total));
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int indexOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS))
+                & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the largest value counted in bucket index
+     */
+    static long highestOf(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        final int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+//@formatter:off
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("count", getCount())
+                .add("mean", getMean())
+                .add("p50", getValueAtPercentile(0.5))
+                .add("p99", getValueAtPercentile(0.99))
+                .add("max", getMax())
+                .toString();
+    }
+//@formatter:on
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.metrics;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSortedMap;
+
+/**
+ * A {@link MetricsSink} keeping a {@link Histogram} per endpoint and phase,
+ * plus byte and error counters, in memory.
+ * 
+ * @see JmxMetricsExporter
+ */
+public final class HistogramMetrics implements MetricsSink {
+    private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+
+    @Override
+    public EndpointMetrics endpoint(final String endpoint) {
+        final EndpointMetrics existing = endpoints.get(checkNotNull(endpoint));
+        if (null != existing) {
+            return existing;
+        }
+
+        final EndpointMetrics created = new EndpointMetrics(endpoint);
+        final EndpointMetrics raced = endpoints.putIfAbsent(endpoint, created);
+        return null == raced ? created : raced;
+    }
+
+    /**
+     * @param endpoint
+     *            the endpoint
+     * @return its metrics, absent if it has not been called
+     */
+    public Optional<EndpointMetrics> getEndpoint(final String endpoint) {
+        return Optional.fromNullable(endpoints.get(checkNotNull(endpoint)));
+    }
+
+    /**
+     * @return the metrics of every endpoint called so far, by endpoint
+     */
+    public ImmutableSortedMap<String, EndpointMetrics> getEndpoints() {
+        return ImmutableSortedMap.copyOf(endpoints);
+    }
+}
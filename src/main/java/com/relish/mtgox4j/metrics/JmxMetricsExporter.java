@@ -0,0 +1,272 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.metrics;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import com.google.common.base.Optional;
+
+//@formatter:off
+/**
+ * Publishes {@link HistogramMetrics} as an MBean, e.g. for jconsole or a
+ * JMX-to-monitoring bridge.
+ * 
+ * <p>
+ * The MBean is named com.relish.mtgox4j:type=Metrics,name={name} and has
+ * read-only long attributes for every endpoint called so far, named
+ * {endpoint}.{attribute}:
+ * </p>
+ * 
+ * <pre>
+ * money/ticker_fast.calls               calls completed
+ * money/ticker_fast.errors              calls failed
+ * money/ticker_fast.bytesSent           request body bytes
+ * money/ticker_fast.bytesReceived       response body bytes
+ * money/ticker_fast.TOTAL.meanMicros    mean, median, 99th percentile and 
+ * money/ticker_fast.TOTAL.p50Micros     maximum time per call of each 
+ * money/ticker_fast.TOTAL.p99Micros     {@link EPhase}
+ * money/ticker_fast.TOTAL.maxMicros
+ * </pre>
+ * 
+ * <p>
+ * Endpoints called after the MBean was registered appear the next time a
+ * JMX client reads its attribute list.
+ * </p>
+ */
+//@formatter:on
+public final class JmxMetricsExporter implements Closeable {
+    public static final String DOMAIN = "com.relish.mtgox4j";
+
+    private static final String CALLS = "calls";
+    private static final String ERRORS = "errors";
+    private static final String BYTES_SENT = "bytesSent";
+    private static final String BYTES_RECEIVED = "bytesReceived";
+    private static final String MEAN = "meanMicros";
+    private static final String P50 = "p50Micros";
+    private static final String P99 = "p99Micros";
+    private static final String MAX = "maxMicros";
+
+    private final HistogramMetrics metrics;
+    private final MBeanServer server;
+    private final ObjectName objectName;
+
+    /**
+     * Register with the platform MBean server.
+     * 
+     * @param metrics
+     *            the metrics to publish
+     * @param name
+     *            the name key of the MBean, e.g. the name of the application
+     * @throws IllegalStateException
+     *             if the MBean could not be registered, e.g. because the name
+     *             is taken
+     */
+    public JmxMetricsExporter(final HistogramMetrics metrics, final String name) {
+        this(metrics, name, ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * @param metrics
+     *            the metrics to publish
+     * @param name
+     *            the name key of the MBean, e.g. the name of the application
+     * @param server
+     *            the MBean server to register with
+     * @throws IllegalStateException
+     *             if the MBean could not be registered, e.g. because the name
+     *             is taken
+     */
+    public JmxMetricsExporter(final HistogramMetrics metrics,
+            final String name, final MBeanServer server) {
+        this.metrics = checkNotNull(metrics);
+        this.server = checkNotNull(server);
+
+        try {
+            objectName = new ObjectName(DOMAIN + ":type=Metrics,name="
+                    + ObjectName.quote(checkNotNull(name)));
+            server.registerMBean(new MetricsMBean(), objectName);
+        } catch (JMException e) {
+            // TODO: Log registration failure
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Unregister the MBean.
+     */
+    @Override
+    public void close() {
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            // TODO: Log ignored unregistration failure
+        }
+    }
+
+    /**
+     * @return the value of attribute, null if it names no endpoint attribute
+     */
+    private Long valueOf(final String attribute) {
+        final int dot = attribute.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        final Optional<EndpointMetrics> found = metrics.getEndpoint(attribute
+                .substring(0, dot));
+        if (!found.isPresent()) {
+            return null;
+        }
+        final EndpointMetrics endpoint = found.get();
+
+        final String key = attribute.substring(dot + 1);
+        if (CALLS.equals(key)) {
+            return endpoint.getCalls();
+        } else if (ERRORS.equals(key)) {
+            return endpoint.getErrors();
+        } else if (BYTES_SENT.equals(key)) {
+            return endpoint.getBytesSent();
+        } else if (BYTES_RECEIVED.equals(key)) {
+            return endpoint.getBytesReceived();
+        }
+
+        final int phaseDot = key.indexOf('.');
+        if (phaseDot < 0) {
+            return null;
+        }
+        final Histogram histogram;
+        try {
+            histogram = endpoint.getHistogram(EPhase.valueOf(key.substring(0,
+                    phaseDot)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        final String statistic = key.substring(phaseDot + 1);
+        final long nanos;
+        if (MEAN.equals(statistic)) {
+            nanos = histogram.getMean();
+        } else if (P50.equals(statistic)) {
+            nanos = histogram.getValueAtPercentile(0.5);
+        } else if (P99.equals(statistic)) {
+            nanos = histogram.getValueAtPercentile(0.99);
+        } else if (MAX.equals(statistic)) {
+            nanos = histogram.getMax();
+        } else {
+            return null;
+        }
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * The read-only MBean, its attributes listed afresh on every request.
+     */
+    private final class MetricsMBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(final String attribute)
+                throws AttributeNotFoundException {
+            final Long value = valueOf(attribute);
+            if (null == value) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(final String[] attributes) {
+            final AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                final Long value = valueOf(attribute);
+                if (null != value) {
+                    list.add(new Attribute(attribute, value));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(final Attribute attribute)
+                throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName()
+                    + " is read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(final AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(final String actionName, final Object[] params,
+                final String[] signature) throws ReflectionException {
+            // the MBean exposes no operations
+            throw new ReflectionException(new NoSuchMethodException(
+                    actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            final List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+            for (Map.Entry<String, EndpointMetrics> endpoint : metrics
+                    .getEndpoints().entrySet()) {
+                final String prefix = endpoint.getKey() + ".";
+                for (String key : new String[] { CALLS, ERRORS, BYTES_SENT,
+                        BYTES_RECEIVED }) {
+                    attributes.add(attribute(prefix + key));
+                }
+                for (EPhase phase : EPhase.values()) {
+                    for (String statistic : new String[] { MEAN, P50, P99, MAX }) {
+                        attributes.add(attribute(prefix + phase.name() + "."
+                                + statistic));
+                    }
+                }
+            }
+
+            return new MBeanInfo(HistogramMetrics.class.getName(),
+                    "mtgox4j per-endpoint call metrics",
+                    attributes.toArray(new MBeanAttributeInfo[attributes
+                            .size()]), null, null, null);
+        }
+
+        private MBeanAttributeInfo attribute(final String name) {
+            return new MBeanAttributeInfo(name, "long", name, true, false,
+                    false);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.metrics;
+
+/**
+ * Where {@link com.relish.mtgox4j.MtGoxClient},
+ * {@link com.relish.mtgox4j.security.MtGoxSecurity} and the clients built on
+ * a {@link com.relish.mtgox4j.http.Transport} report the latency, size and
+ * failures of their calls.
+ * 
+ * <p>
+ * Install one by building the transport with it. Unless one is, calls report
+ * to {@link NoOpMetrics}, which costs nothing. {@link HistogramMetrics} keeps
+ * per-endpoint histograms and {@link JmxMetricsExporter} publishes them.
+ * </p>
+ */
+public interface MetricsSink {
+    /**
+     * @param endpoint
+     *            a resource path without BTC{currency}/, e.g.
+     *            money/ticker_fast
+     * @return the recorder for endpoint, the same one on every call
+     */
+    EndpointRecorder endpoint(String endpoint);
+}
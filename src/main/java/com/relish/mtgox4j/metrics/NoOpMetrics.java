@@ -0,0 +1,56 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.metrics;
+
+/**
+ * The {@link MetricsSink} used unless another is configured. It records
+ * nothing, and since {@link #isEnabled()} is false callers do not even read
+ * the clock.
+ */
+public final class NoOpMetrics implements MetricsSink, EndpointRecorder {
+    public static final NoOpMetrics INSTANCE = new NoOpMetrics();
+
+    private NoOpMetrics() {
+    }
+
+    @Override
+    public EndpointRecorder endpoint(final String endpoint) {
+        return this;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+    @Override
+    public void record(final EPhase phase, final long nanos) {
+    }
+
+    @Override
+    public void recordBytesSent(final long bytes) {
+    }
+
+    @Override
+    public void recordBytesReceived(final long bytes) {
+    }
+
+    @Override
+    public void recordError(final Throwable cause) {
+    }
+}
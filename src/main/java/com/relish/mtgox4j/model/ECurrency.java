@@ -17,6 +17,9 @@
  */
 package com.relish.mtgox4j.model;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import com.google.common.base.Objects;
 
 //@formatter:off
@@ -158,6 +161,15 @@ public enum ECurrency {
     THB("Thai Baht",           100000);
 //@formatter:on
 
+    /**
+     * Perfect hash of the three-letter codes: the packed code times
+     * CODE_MULTIPLIER, shifted down to CODE_BITS, indexes CODES without
+     * collisions. The multiplier is searched for once, when the class loads.
+     */
+    private static final int CODE_BITS = 6;
+    private static final ECurrency[] CODES = new ECurrency[1 << CODE_BITS];
+    private static final int CODE_MULTIPLIER = findCodeMultiplier();
+
     private final String name;
     private final int divisions;
 
@@ -180,6 +192,101 @@ public enum ECurrency {
         return divisions;
     }
 
+    /**
+     * Resolve a currency code without creating a String.
+     * 
+     * @param buf
+     *            the buffer holding the code, e.g. a JSON parser's text
+     * @param offset
+     *            the offset of the code within buf
+     * @param len
+     *            the length of the code
+     * @return the currency, or null if the code is not one of these
+     */
+    public static ECurrency fromCode(final char[] buf, final int offset,
+            final int len) {
+        if (3 != len) {
+            return null;
+        }
+        return lookup(buf[offset], buf[offset + 1], buf[offset + 2]);
+    }
+
+    /**
+     * Resolve a currency code held as ASCII bytes without creating a String.
+     * 
+     * @param buf
+     *            the buffer holding the code
+     * @param offset
+     *            the absolute offset of the code within buf
+     * @param len
+     *            the length of the code in bytes
+     * @return the currency, or null if the code is not one of these
+     */
+    public static ECurrency fromCode(final ByteBuffer buf, final int offset,
+            final int len) {
+        if (3 != len) {
+            return null;
+        }
+        return lookup((char) buf.get(offset), (char) buf.get(offset + 1),
+                (char) buf.get(offset + 2));
+    }
+
+    /**
+     * Like {@link #valueOf(String)} for codes, but returns null rather than
+     * throwing for unknown or null codes.
+     * 
+     * @param code
+     *            the currency code, e.g. "USD"
+     * @return the currency, or null if the code is not one of these
+     */
+    public static ECurrency fromCode(final CharSequence code) {
+        if (null == code || 3 != code.length()) {
+            return null;
+        }
+        return lookup(code.charAt(0), code.charAt(1), code.charAt(2));
+    }
+
+    private static ECurrency lookup(final char c0, final char c1,
+            final char c2) {
+        final ECurrency candidate = CODES[slotOf(c0 << 16 | c1 << 8 | c2,
+                CODE_MULTIPLIER)];
+        if (null == candidate) {
+            return null;
+        }
+
+        final String code = candidate.name();
+        return code.charAt(0) == c0 && code.charAt(1) == c1
+                && code.charAt(2) == c2 ? candidate : null;
+    }
+
+    private static int slotOf(final int packed, final int multiplier) {
+        return (packed * multiplier) >>> (Integer.SIZE - CODE_BITS);
+    }
+
+    private static int packed(final ECurrency currency) {
+        final String code = currency.name();
+        return code.charAt(0) << 16 | code.charAt(1) << 8 | code.charAt(2);
+    }
+
+    private static int findCodeMultiplier() {
+        for (int multiplier = 0x9E3779B9;; multiplier += 2) {
+            Arrays.fill(CODES, null);
+
+            boolean collided = false;
+            for (ECurrency currency : values()) {
+                final int slot = slotOf(packed(currency), multiplier);
+                if (null != CODES[slot]) {
+                    collided = true;
+                    break;
+                }
+                CODES[slot] = currency;
+            }
+            if (!collided) {
+                return multiplier;
+            }
+        }
+    }
+
 //@formatter:off
     /*
      * (non-Javadoc)
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+/**
+ * The states of an order reported by money/orders.
+ */
+public enum EOrderStatus {
+//@formatter:off
+    /**
+     * Accepted but not processed yet.
+     */
+    PENDING("pending"), 
+    /**
+     * Being matched against the book.
+     */
+    EXECUTING("executing"), 
+    /**
+     * Matched, waiting for the book to settle.
+     */
+    POST_PENDING("post-pending"), 
+    /**
+     * Resting in the book.
+     */
+    OPEN("open"), 
+    /**
+     * A stop order waiting for its trigger.
+     */
+    STOP("stop"), 
+    /**
+     * Not executable, e.g. for lack of funds.
+     */
+    INVALID("invalid");
+//@formatter:on
+
+    private final String code;
+
+    /**
+     * @param code
+     *            the value MtGox sends for the status
+     */
+    private EOrderStatus(final String code) {
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+}
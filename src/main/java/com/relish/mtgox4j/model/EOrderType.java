@@ -0,0 +1,48 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+/**
+ * The sides of an order.
+ */
+public enum EOrderType {
+//@formatter:off
+    /**
+     * An order to buy BTC.
+     */
+    BID("bid"), 
+    /**
+     * An order to sell BTC.
+     */
+    ASK("ask");
+//@formatter:on
+
+    private final String code;
+
+    /**
+     * @param code
+     *            the value MtGox sends and expects for the type
+     */
+    private EOrderType(final String code) {
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+/**
+ * The per-pair channels of MtGox's streaming API.
+ */
+public enum EStreamChannel {
+//@formatter:off
+    TICKER("ticker"), 
+    TRADE("trade"), 
+    DEPTH("depth");
+//@formatter:on
+
+    private final String prefix;
+
+    /**
+     * @param prefix
+     *            the channel name prefix, also the key of the message payload
+     */
+    private EStreamChannel(final String prefix) {
+        this.prefix = prefix;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @param currency
+     *            the currency of the BTC{currency} pair
+     * @return the channel name, e.g. ticker.BTCUSD
+     */
+    public String channelName(final ECurrency currency) {
+        return prefix + ".BTC" + currency.name();
+    }
+}
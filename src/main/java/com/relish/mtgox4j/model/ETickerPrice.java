@@ -0,0 +1,46 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+/**
+ * The prices reported by money/ticker_fast.
+ */
+public enum ETickerPrice {
+//@formatter:off
+    BUY("buy"), 
+    SELL("sell"), 
+    LAST("last"), 
+    LAST_LOCAL("last_local"), 
+    LAST_ALL("last_all"), 
+    LAST_ORIG("last_orig");
+//@formatter:on
+
+    private final String jsonName;
+
+    /**
+     * @param jsonName
+     *            the key of the price object in the response
+     */
+    private ETickerPrice(final String jsonName) {
+        this.jsonName = jsonName;
+    }
+
+    public String getJsonName() {
+        return jsonName;
+    }
+}
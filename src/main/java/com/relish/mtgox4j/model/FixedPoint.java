@@ -0,0 +1,352 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import com.google.common.math.IntMath;
+import com.google.common.math.LongMath;
+import com.google.common.primitives.Longs;
+
+/**
+ * Primitive fixed-point arithmetic on MtGox integer amounts.
+ * 
+ * <p>
+ * An amount is a plain long counting units of 1 / divisions of its currency,
+ * exactly like the value_int fields MtGox returns (see {@link ECurrency}). So
+ * 9797038 USD is $97.97038 and 69655509977 BTC is 696.55509977 BTC. None of
+ * the operations here allocate; operations that would overflow a long throw
+ * {@link ArithmeticException} rather than silently wrapping.
+ * </p>
+ */
+public final class FixedPoint {
+    private FixedPoint() {
+    }
+
+    /**
+     * Parse an integer amount such as value_int.
+     * 
+     * @param s
+     *            the decimal digits, optionally preceded by '-'
+     * @return the parsed amount
+     * @throws NumberFormatException
+     *             if s is not a valid long
+     */
+    public static long parseLong(final CharSequence s) {
+        checkNotNull(s);
+
+        final int len = s.length();
+        if (len < 1) {
+            throw new NumberFormatException("Empty amount");
+        }
+
+        int i = 0;
+        final boolean negative = s.charAt(0) == '-';
+        if (negative && ++i == len) {
+            throw new NumberFormatException("Invalid amount: " + s);
+        }
+
+        long result = 0L;
+        for (; i < len; i++) {
+            result = accumulate(result, s.charAt(i));
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parse an integer amount such as value_int out of a character buffer.
+     * 
+     * @param buf
+     *            the buffer
+     * @param offset
+     *            the offset of the first character
+     * @param len
+     *            the number of characters
+     * @return the parsed amount
+     * @throws NumberFormatException
+     *             if the characters are not a valid long
+     */
+    public static long parseLong(final char[] buf, final int offset,
+            final int len) {
+        if (len < 1) {
+            throw new NumberFormatException("Empty amount");
+        }
+
+        int i = offset;
+        final int end = offset + len;
+        final boolean negative = buf[i] == '-';
+        if (negative && ++i == end) {
+            throw new NumberFormatException("Invalid amount: -");
+        }
+
+        long result = 0L;
+        for (; i < end; i++) {
+            result = accumulate(result, buf[i]);
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parse a decimal amount such as "97.97038" into the fixed-point scale of
+     * the given currency.
+     * 
+     * @param s
+     *            the decimal amount
+     * @param currency
+     *            the currency the amount is in
+     * @return the amount in units of 1 / currency divisions
+     * @throws NumberFormatException
+     *             if s is not a valid decimal, has more significant decimal
+     *             places than the currency supports or does not fit a long
+     */
+    public static long parseDecimal(final CharSequence s,
+            final ECurrency currency) {
+        checkNotNull(s);
+
+        final int divisions = currency.getDivisions();
+        final int scale = scaleOf(divisions);
+        final int len = s.length();
+        int i = 0;
+        final boolean negative = len > 0 && s.charAt(0) == '-';
+        if (negative) {
+            i++;
+        }
+
+        final int start = i;
+        long whole = 0L;
+        for (; i < len && s.charAt(i) != '.'; i++) {
+            whole = accumulate(whole, s.charAt(i));
+        }
+        boolean digits = i > start;
+
+        long fraction = 0L;
+        int places = 0;
+        if (i < len) {
+            for (i++; i < len; i++) {
+                final int digit = digit(s.charAt(i));
+                if (places < scale) {
+                    fraction = fraction * 10 + digit;
+                    places++;
+                } else if (digit != 0) {
+                    throw new NumberFormatException(currency.name()
+                            + " supports " + scale + " decimal places: " + s);
+                }
+                digits = true;
+            }
+        }
+        if (!digits) {
+            throw new NumberFormatException("Invalid amount: " + s);
+        }
+        for (; places < scale; places++) {
+            fraction *= 10;
+        }
+
+        if (whole > (Long.MAX_VALUE - fraction) / divisions) {
+            throw new NumberFormatException("Amount out of range: " + s);
+        }
+        final long result = whole * divisions + fraction;
+        return negative ? -result : result;
+    }
+
+    /**
+     * @return a + b
+     * @throws ArithmeticException
+     *             on overflow
+     */
+    public static long add(final long a, final long b) {
+        return LongMath.checkedAdd(a, b);
+    }
+
+    /**
+     * @return a - b
+     * @throws ArithmeticException
+     *             on overflow
+     */
+    public static long subtract(final long a, final long b) {
+        return LongMath.checkedSubtract(a, b);
+    }
+
+    /**
+     * Compare two amounts of the same currency.
+     * 
+     * @return a negative value, zero or a positive value as a is less than,
+     *         equal to or greater than b
+     */
+    public static int compare(final long a, final long b) {
+        return Longs.compare(a, b);
+    }
+
+    /**
+     * The cost of quantity BTC at price, i.e. price * quantity with the result
+     * in the scale of price.
+     * 
+     * @param price
+     *            the price of one BTC, in units of its currency
+     * @param quantity
+     *            the quantity, in units of 1 / {@link ECurrency#BTC} divisions
+     * @param mode
+     *            how to round sub-unit remainders
+     * @return the total in the scale of price
+     * @throws ArithmeticException
+     *             on overflow, or if mode is UNNECESSARY and rounding is
+     *             required
+     */
+    public static long multiply(final long price, final long quantity,
+            final RoundingMode mode) {
+        return multiply(price, quantity, ECurrency.BTC.getDivisions(), mode);
+    }
+
+    /**
+     * The cost of quantity at price, i.e. price * quantity with the result in
+     * the scale of price.
+     * 
+     * @param price
+     *            the price of one whole unit of quantity's currency
+     * @param quantity
+     *            the quantity, in units of 1 / quantityDivisions
+     * @param quantityDivisions
+     *            the divisions of quantity's currency
+     * @param mode
+     *            how to round sub-unit remainders
+     * @return the total in the scale of price
+     * @throws ArithmeticException
+     *             on overflow, or if mode is UNNECESSARY and rounding is
+     *             required
+     */
+    public static long multiply(final long price, final long quantity,
+            final int quantityDivisions, final RoundingMode mode) {
+        // Split quantity into whole and fractional units so the intermediate
+        // product stays within a long for any realistic price. Both parts
+        // share quantity's sign, so the exact total is quotient + remainder /
+        // quantityDivisions with the remainder of the same sign.
+        final long whole = quantity / quantityDivisions;
+        final long fraction = quantity % quantityDivisions;
+        final long partial = LongMath.checkedMultiply(price, fraction);
+        final long quotient = LongMath.checkedAdd(
+                LongMath.checkedMultiply(price, whole), partial
+                        / quantityDivisions);
+        final long remainder = partial % quantityDivisions;
+
+        // Rounding commutes with adding an even number in every mode, so round
+        // the quotient's parity bit together with the remainder; this keeps
+        // HALF_EVEN ties right without the full product.
+        final long odd = quotient % 2;
+        return LongMath.checkedAdd(quotient - odd, LongMath.divide(odd
+                * quantityDivisions + remainder, quantityDivisions, mode));
+    }
+
+    /**
+     * Convert an amount from the scale of one currency to another's, e.g. to
+     * compare a JPY amount (1e3) against a USD one (1e5). This only changes
+     * the scale; it does not apply an exchange rate.
+     * 
+     * @param value
+     *            the amount in units of 1 / from divisions
+     * @param from
+     *            the currency scale value is in
+     * @param to
+     *            the currency scale to convert to
+     * @param mode
+     *            how to round when to has fewer divisions than from
+     * @return the amount in units of 1 / to divisions
+     * @throws ArithmeticException
+     *             on overflow, or if mode is UNNECESSARY and rounding is
+     *             required
+     */
+    public static long convert(final long value, final ECurrency from,
+            final ECurrency to, final RoundingMode mode) {
+        return convert(value, from.getDivisions(), to.getDivisions(), mode);
+    }
+
+    /**
+     * @see #convert(long, ECurrency, ECurrency, RoundingMode)
+     */
+    public static long convert(final long value, final int fromDivisions,
+            final int toDivisions, final RoundingMode mode) {
+        if (fromDivisions == toDivisions) {
+            return value;
+        } else if (toDivisions > fromDivisions) {
+            return LongMath.checkedMultiply(value, toDivisions / fromDivisions);
+        }
+        return LongMath.divide(value, fromDivisions / toDivisions, mode);
+    }
+
+    /**
+     * Append the decimal form of an amount, e.g. 9797038 USD as "97.97038".
+     * 
+     * @param sb
+     *            the builder to append to
+     * @param value
+     *            the amount
+     * @param currency
+     *            the currency the amount is in
+     * @return sb
+     */
+    public static StringBuilder appendTo(final StringBuilder sb,
+            final long value, final ECurrency currency) {
+        final int divisions = currency.getDivisions();
+        long whole = value / divisions;
+        long fraction = value % divisions;
+        if (value < 0) {
+            sb.append('-');
+            whole = -whole;
+            fraction = -fraction;
+        }
+
+        sb.append(whole);
+        if (divisions > 1) {
+            sb.append('.');
+            for (long p = divisions / 10; p > fraction && p > 1; p /= 10) {
+                sb.append('0');
+            }
+            sb.append(fraction);
+        }
+        return sb;
+    }
+
+    /**
+     * @return the amount as a {@link BigDecimal}, e.g. 9797038 USD as 97.97038
+     */
+    public static BigDecimal toBigDecimal(final long value,
+            final ECurrency currency) {
+        return BigDecimal.valueOf(value, scaleOf(currency.getDivisions()));
+    }
+
+    private static int scaleOf(final int divisions) {
+        return IntMath.log10(divisions, RoundingMode.UNNECESSARY);
+    }
+
+    private static long accumulate(final long result, final char c) {
+        final int digit = digit(c);
+        if (result > (Long.MAX_VALUE - digit) / 10) {
+            throw new NumberFormatException("Amount out of range");
+        }
+        return result * 10 + digit;
+    }
+
+    private static int digit(final char c) {
+        final int digit = c - '0';
+        if (digit < 0 || digit > 9) {
+            throw new NumberFormatException("Invalid digit '" + c + "'");
+        }
+        return digit;
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+import java.util.Arrays;
+
+import com.google.common.base.Objects;
+
+/**
+ * Reusable, mutable holder of a money/info response, filled in place by
+ * {@link com.relish.mtgox4j.json.MoneyInfoDecoder}.
+ * 
+ * <p>
+ * Wallets are held in primitive arrays indexed by {@link ECurrency#ordinal()},
+ * with amounts as value_int in divisions of their currency, so reading a
+ * balance is an array load and decoding into the same instance over and over
+ * does not allocate. Instances are not thread-safe.
+ * </p>
+ */
+public final class MoneyInfo {
+    private static final ECurrency[] CURRENCIES = ECurrency.values();
+
+    private boolean success;
+    private final StringBuilder login = new StringBuilder(16);
+    private double tradeFee;
+    private final boolean[] wallets = new boolean[CURRENCIES.length];
+    private final long[] balances = new long[CURRENCIES.length];
+    private final long[] openOrders = new long[CURRENCIES.length];
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(final boolean success) {
+        this.success = success;
+    }
+
+    public CharSequence getLogin() {
+        return login;
+    }
+
+    public void setLogin(final char[] buf, final int offset, final int len) {
+        login.setLength(0);
+        login.append(buf, offset, len);
+    }
+
+    /**
+     * @return the trading fee in percent, e.g. 0.6
+     */
+    public double getTradeFee() {
+        return tradeFee;
+    }
+
+    public void setTradeFee(final double tradeFee) {
+        this.tradeFee = tradeFee;
+    }
+
+    /**
+     * @return true if the account has a wallet in currency
+     */
+    public boolean hasWallet(final ECurrency currency) {
+        return wallets[currency.ordinal()];
+    }
+
+    /**
+     * @return the balance of the wallet in divisions of currency, 0 if there
+     *         is no such wallet
+     * @see FixedPoint
+     */
+    public long getBalanceInt(final ECurrency currency) {
+        return balances[currency.ordinal()];
+    }
+
+    /**
+     * Set the balance of the wallet in currency, marking the wallet present.
+     */
+    public void setBalanceInt(final ECurrency currency, final long balanceInt) {
+        wallets[currency.ordinal()] = true;
+        balances[currency.ordinal()] = balanceInt;
+    }
+
+    /**
+     * @return the amount of the wallet committed to open orders, in divisions
+     *         of currency, 0 if there is no such wallet
+     */
+    public long getOpenOrdersInt(final ECurrency currency) {
+        return openOrders[currency.ordinal()];
+    }
+
+    /**
+     * Set the amount of the wallet in currency committed to open orders,
+     * marking the wallet present.
+     */
+    public void setOpenOrdersInt(final ECurrency currency,
+            final long openOrdersInt) {
+        wallets[currency.ordinal()] = true;
+        openOrders[currency.ordinal()] = openOrdersInt;
+    }
+
+    /**
+     * Clears all fields so the holder can be reused.
+     */
+    public void reset() {
+        success = false;
+        login.setLength(0);
+        tradeFee = 0.0;
+        Arrays.fill(wallets, false);
+        Arrays.fill(balances, 0L);
+        Arrays.fill(openOrders, 0L);
+    }
+
+//@formatter:off
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        final Objects.ToStringHelper helper = Objects.toStringHelper(this)
+                .add("success", success)
+                .add("login", login)
+                .add("trade_fee", tradeFee);
+        for (ECurrency currency : CURRENCIES) {
+            if (wallets[currency.ordinal()]) {
+                helper.add(currency.name(), balances[currency.ordinal()]
+                        + " (open orders " + openOrders[currency.ordinal()] + ")");
+            }
+        }
+        return helper.toString();
+    }
+}
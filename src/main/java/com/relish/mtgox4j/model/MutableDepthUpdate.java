@@ -0,0 +1,131 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+import com.google.common.base.Objects;
+
+/**
+ * Reusable, mutable holder of a streamed change to one price level of the
+ * order book, filled in place by
+ * {@link com.relish.mtgox4j.json.StreamMessageDecoder}. Instances are not
+ * thread-safe.
+ */
+public final class MutableDepthUpdate {
+    private long now;
+    private ECurrency currency;
+    private boolean ask;
+    private long priceInt;
+    private long volumeInt;
+    private long totalVolumeInt;
+
+    /**
+     * @return the unix timestamp of the change with microsecond resolution
+     */
+    public long getNow() {
+        return now;
+    }
+
+    public void setNow(final long now) {
+        this.now = now;
+    }
+
+    /**
+     * @return the currency of the price, null if unknown
+     */
+    public ECurrency getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(final ECurrency currency) {
+        this.currency = currency;
+    }
+
+    /**
+     * @return true for the ask side, false for the bid side
+     */
+    public boolean isAsk() {
+        return ask;
+    }
+
+    public void setAsk(final boolean ask) {
+        this.ask = ask;
+    }
+
+    /**
+     * @return the price of the level in divisions of {@link #getCurrency()}
+     */
+    public long getPriceInt() {
+        return priceInt;
+    }
+
+    public void setPriceInt(final long priceInt) {
+        this.priceInt = priceInt;
+    }
+
+    /**
+     * @return the signed change of the level's volume in BTC divisions (1e8)
+     */
+    public long getVolumeInt() {
+        return volumeInt;
+    }
+
+    public void setVolumeInt(final long volumeInt) {
+        this.volumeInt = volumeInt;
+    }
+
+    /**
+     * @return the level's volume after the change in BTC divisions (1e8)
+     */
+    public long getTotalVolumeInt() {
+        return totalVolumeInt;
+    }
+
+    public void setTotalVolumeInt(final long totalVolumeInt) {
+        this.totalVolumeInt = totalVolumeInt;
+    }
+
+    /**
+     * Clears all fields so the holder can be reused.
+     */
+    public void reset() {
+        now = 0L;
+        currency = null;
+        ask = false;
+        priceInt = 0L;
+        volumeInt = 0L;
+        totalVolumeInt = 0L;
+    }
+
+//@formatter:off
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("now", now)
+                .add("currency", currency)
+                .add("ask", ask)
+                .add("price_int", priceInt)
+                .add("volume_int", volumeInt)
+                .add("total_volume_int", totalVolumeInt)
+                .toString();
+    }
+}
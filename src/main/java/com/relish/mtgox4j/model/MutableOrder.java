@@ -0,0 +1,161 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+import com.google.common.base.Objects;
+
+/**
+ * Reusable, mutable holder of one of the account's orders, filled in place by
+ * {@link com.relish.mtgox4j.json.OrderDecoder}. Instances are not
+ * thread-safe.
+ */
+public final class MutableOrder {
+    private String oid;
+    private EOrderType type;
+    private EOrderStatus status;
+    private ECurrency currency;
+    private long amountInt;
+    private long effectiveAmountInt;
+    private long priceInt;
+    private long date;
+
+    /**
+     * @return the order id, to pass to cancel the order
+     */
+    public String getOid() {
+        return oid;
+    }
+
+    public void setOid(final String oid) {
+        this.oid = oid;
+    }
+
+    /**
+     * @return the side of the order, null if unknown
+     */
+    public EOrderType getType() {
+        return type;
+    }
+
+    public void setType(final EOrderType type) {
+        this.type = type;
+    }
+
+    /**
+     * @return the state of the order, null if unknown
+     */
+    public EOrderStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(final EOrderStatus status) {
+        this.status = status;
+    }
+
+    /**
+     * @return the currency of the price, null if unknown
+     */
+    public ECurrency getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(final ECurrency currency) {
+        this.currency = currency;
+    }
+
+    /**
+     * @return the amount still to be filled in BTC divisions (1e8)
+     */
+    public long getAmountInt() {
+        return amountInt;
+    }
+
+    public void setAmountInt(final long amountInt) {
+        this.amountInt = amountInt;
+    }
+
+    /**
+     * @return the part of the amount the account's funds cover, in BTC
+     *         divisions (1e8)
+     */
+    public long getEffectiveAmountInt() {
+        return effectiveAmountInt;
+    }
+
+    public void setEffectiveAmountInt(final long effectiveAmountInt) {
+        this.effectiveAmountInt = effectiveAmountInt;
+    }
+
+    /**
+     * @return the limit price in divisions of {@link #getCurrency()}, 0 for a
+     *         market order
+     */
+    public long getPriceInt() {
+        return priceInt;
+    }
+
+    public void setPriceInt(final long priceInt) {
+        this.priceInt = priceInt;
+    }
+
+    /**
+     * @return the unix timestamp of the order in seconds
+     */
+    public long getDate() {
+        return date;
+    }
+
+    public void setDate(final long date) {
+        this.date = date;
+    }
+
+    /**
+     * Clears all fields except the oid so the holder can be reused. The oid
+     * is kept for the decoder to compare with, so polling the same orders
+     * does not create their oid Strings again.
+     */
+    public void reset() {
+        type = null;
+        status = null;
+        currency = null;
+        amountInt = 0L;
+        effectiveAmountInt = 0L;
+        priceInt = 0L;
+        date = 0L;
+    }
+
+//@formatter:off
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("oid", oid)
+                .add("type", type)
+                .add("status", status)
+                .add("currency", currency)
+                .add("amount_int", amountInt)
+                .add("effective_amount_int", effectiveAmountInt)
+                .add("price_int", priceInt)
+                .add("date", date)
+                .toString();
+    }
+}
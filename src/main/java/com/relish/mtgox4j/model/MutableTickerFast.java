@@ -0,0 +1,145 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+import com.google.common.base.Objects;
+import com.relish.mtgox4j.model.json.TickerFast;
+import com.relish.mtgox4j.model.json.TickerFastData;
+
+/**
+ * Reusable, mutable equivalent of {@link TickerFast} meant to be filled in
+ * place by {@link com.relish.mtgox4j.json.TickerFastDecoder}.
+ * 
+ * <p>
+ * A single instance can be handed to every poll of a tight loop; all nested
+ * holders are created up front and simply overwritten. Instances are not
+ * thread-safe.
+ * </p>
+ */
+public final class MutableTickerFast {
+    private boolean success;
+    private long now;
+    private final MutableTickerFastInnerData lastLocal = new MutableTickerFastInnerData();
+    private final MutableTickerFastInnerData last = new MutableTickerFastInnerData();
+    private final MutableTickerFastInnerData lastOrig = new MutableTickerFastInnerData();
+    private final MutableTickerFastInnerData lastAll = new MutableTickerFastInnerData();
+    private final MutableTickerFastInnerData buy = new MutableTickerFastInnerData();
+    private final MutableTickerFastInnerData sell = new MutableTickerFastInnerData();
+
+    /**
+     * @return true if MtGox reported a result of "success"
+     */
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(final boolean success) {
+        this.success = success;
+    }
+
+    /**
+     * @return the unix timestamp of the ticker with microsecond resolution
+     */
+    public long getNow() {
+        return now;
+    }
+
+    public void setNow(final long now) {
+        this.now = now;
+    }
+
+    public MutableTickerFastInnerData getLastLocal() {
+        return lastLocal;
+    }
+
+    public MutableTickerFastInnerData getLast() {
+        return last;
+    }
+
+    public MutableTickerFastInnerData getLastOrig() {
+        return lastOrig;
+    }
+
+    public MutableTickerFastInnerData getLastAll() {
+        return lastAll;
+    }
+
+    public MutableTickerFastInnerData getBuy() {
+        return buy;
+    }
+
+    public MutableTickerFastInnerData getSell() {
+        return sell;
+    }
+
+    /**
+     * Clears all fields so the holder can be reused.
+     */
+    public void reset() {
+        success = false;
+        now = 0L;
+        lastLocal.reset();
+        last.reset();
+        lastOrig.reset();
+        lastAll.reset();
+        buy.reset();
+        sell.reset();
+    }
+
+    /**
+     * Copies the current state into a new {@link TickerFast} for callers that
+     * want the databinding model.
+     * 
+     * @return the model equivalent of this holder
+     */
+    public TickerFast toTickerFast() {
+        final TickerFastData data = new TickerFastData();
+        data.setLast_local(lastLocal.toTickerFastInnerData());
+        data.setLast(last.toTickerFastInnerData());
+        data.setLast_orig(lastOrig.toTickerFastInnerData());
+        data.setLast_all(lastAll.toTickerFastInnerData());
+        data.setBuy(buy.toTickerFastInnerData());
+        data.setSell(sell.toTickerFastInnerData());
+        data.setNow(now);
+
+        final TickerFast tickerFast = new TickerFast();
+        tickerFast.setResult(success ? "success" : "error");
+        tickerFast.setData(data);
+        return tickerFast;
+    }
+
+//@formatter:off
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("success", success)
+                .add("buy", buy)
+                .add("last", last)
+                .add("last_all", lastAll)
+                .add("last_local", lastLocal)
+                .add("last_orig", lastOrig)
+                .add("now", now)
+                .add("sell", sell)
+                .toString();
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+import com.google.common.base.Objects;
+import com.relish.mtgox4j.model.json.TickerFastInnerData;
+
+/**
+ * Reusable, mutable equivalent of {@link TickerFastInnerData}.
+ * 
+ * <p>
+ * value_int is held as a primitive and the textual fields are copied into
+ * buffers owned by this holder, so decoding into the same instance over and
+ * over does not allocate once the buffers have grown to fit. Instances are not
+ * thread-safe.
+ * </p>
+ */
+public final class MutableTickerFastInnerData {
+    private long valueInt;
+    private final StringBuilder value = new StringBuilder(16);
+    private final StringBuilder display = new StringBuilder(16);
+    private final StringBuilder displayShort = new StringBuilder(16);
+    private ECurrency currency;
+
+    /**
+     * @return value_int, a fixed-point amount in units of 1 / divisions of
+     *         currency
+     * @see FixedPoint
+     */
+    public long getValueInt() {
+        return valueInt;
+    }
+
+    public void setValueInt(final long valueInt) {
+        this.valueInt = valueInt;
+    }
+
+    public CharSequence getValue() {
+        return value;
+    }
+
+    public void setValue(final char[] buf, final int offset, final int len) {
+        copy(value, buf, offset, len);
+    }
+
+    public CharSequence getDisplay() {
+        return display;
+    }
+
+    public void setDisplay(final char[] buf, final int offset, final int len) {
+        copy(display, buf, offset, len);
+    }
+
+    public CharSequence getDisplayShort() {
+        return displayShort;
+    }
+
+    public void setDisplayShort(final char[] buf, final int offset,
+            final int len) {
+        copy(displayShort, buf, offset, len);
+    }
+
+    /**
+     * @return the currency of the value, null if absent or unknown
+     */
+    public ECurrency getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(final ECurrency currency) {
+        this.currency = currency;
+    }
+
+    /**
+     * Clears all fields so the holder can be reused.
+     */
+    public void reset() {
+        valueInt = 0L;
+        value.setLength(0);
+        display.setLength(0);
+        displayShort.setLength(0);
+        currency = null;
+    }
+
+    /**
+     * Copies the current state into a new {@link TickerFastInnerData}.
+     * 
+     * @return the immutable-style model equivalent of this holder
+     */
+    public TickerFastInnerData toTickerFastInnerData() {
+        final TickerFastInnerData data = new TickerFastInnerData();
+        data.setValue(value.toString());
+        data.setValue_int(Long.toString(valueInt));
+        data.setDisplay(display.toString());
+        data.setDisplay_short(displayShort.toString());
+        data.setCurrency(currency);
+        return data;
+    }
+
+    private static void copy(final StringBuilder dest, final char[] buf,
+            final int offset, final int len) {
+        dest.setLength(0);
+        dest.append(buf, offset, len);
+    }
+
+//@formatter:off
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("currency", null == currency ? null : currency.name())
+                .add("display", display)
+                .add("display_short", displayShort)
+                .add("value", value)
+                .add("value_int", valueInt)
+                .toString();
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+import com.google.common.base.Objects;
+
+/**
+ * Reusable, mutable holder of a streamed trade, filled in place by
+ * {@link com.relish.mtgox4j.json.StreamMessageDecoder}. Instances are not
+ * thread-safe.
+ */
+public final class MutableTrade {
+    private long tid;
+    private long date;
+    private long amountInt;
+    private long priceInt;
+    private ECurrency priceCurrency;
+    private boolean bid;
+    private boolean primary;
+
+    /**
+     * @return the trade id, a microsecond unix timestamp
+     */
+    public long getTid() {
+        return tid;
+    }
+
+    public void setTid(final long tid) {
+        this.tid = tid;
+    }
+
+    /**
+     * @return the unix timestamp of the trade in seconds
+     */
+    public long getDate() {
+        return date;
+    }
+
+    public void setDate(final long date) {
+        this.date = date;
+    }
+
+    /**
+     * @return the amount traded in BTC divisions (1e8)
+     */
+    public long getAmountInt() {
+        return amountInt;
+    }
+
+    public void setAmountInt(final long amountInt) {
+        this.amountInt = amountInt;
+    }
+
+    /**
+     * @return the price in divisions of {@link #getPriceCurrency()}
+     */
+    public long getPriceInt() {
+        return priceInt;
+    }
+
+    public void setPriceInt(final long priceInt) {
+        this.priceInt = priceInt;
+    }
+
+    /**
+     * @return the currency of the price, null if unknown
+     */
+    public ECurrency getPriceCurrency() {
+        return priceCurrency;
+    }
+
+    public void setPriceCurrency(final ECurrency priceCurrency) {
+        this.priceCurrency = priceCurrency;
+    }
+
+    /**
+     * @return true if a bid was filled (the taker sold), false for an ask
+     */
+    public boolean isBid() {
+        return bid;
+    }
+
+    public void setBid(final boolean bid) {
+        this.bid = bid;
+    }
+
+    /**
+     * @return true if this is the primary report of the trade rather than a
+     *         conversion into another currency
+     */
+    public boolean isPrimary() {
+        return primary;
+    }
+
+    public void setPrimary(final boolean primary) {
+        this.primary = primary;
+    }
+
+    /**
+     * Clears all fields so the holder can be reused.
+     */
+    public void reset() {
+        tid = 0L;
+        date = 0L;
+        amountInt = 0L;
+        priceInt = 0L;
+        priceCurrency = null;
+        bid = false;
+        primary = false;
+    }
+
+//@formatter:off
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("tid", tid)
+                .add("date", date)
+                .add("amount_int", amountInt)
+                .add("price_int", priceInt)
+                .add("price_currency", priceCurrency)
+                .add("bid", bid)
+                .add("primary", primary)
+                .toString();
+    }
+}
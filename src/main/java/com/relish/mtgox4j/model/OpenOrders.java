@@ -0,0 +1,109 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Objects;
+
+/**
+ * Reusable, mutable holder of a money/orders response, filled in place by
+ * {@link com.relish.mtgox4j.json.OrderDecoder}.
+ * 
+ * <p>
+ * The {@link MutableOrder}s are kept when the holder is reset and refilled
+ * by the next decode, so polling a steady set of orders into the same
+ * instance does not allocate. Instances are not thread-safe.
+ * </p>
+ */
+public final class OpenOrders {
+    private boolean success;
+    private final List<MutableOrder> orders = new ArrayList<MutableOrder>();
+    private int size;
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(final boolean success) {
+        this.success = success;
+    }
+
+    /**
+     * @return the number of orders
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    /**
+     * @param index
+     *            the index of the order, in the order MtGox listed them
+     * @return the order
+     * @throws IndexOutOfBoundsException
+     *             if index is not less than {@link #size()}
+     */
+    public MutableOrder get(final int index) {
+        return orders.get(checkElementIndex(index, size));
+    }
+
+    /**
+     * Append an order, reusing a holder left from before the last reset if
+     * there is one.
+     * 
+     * @return the appended order, reset but for its oid
+     */
+    public MutableOrder add() {
+        if (size == orders.size()) {
+            orders.add(new MutableOrder());
+        }
+
+        final MutableOrder order = orders.get(size++);
+        order.reset();
+        return order;
+    }
+
+    /**
+     * Clears all orders so the holder can be reused.
+     */
+    public void reset() {
+        success = false;
+        size = 0;
+    }
+
+//@formatter:off
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("success", success)
+                .add("orders", orders.subList(0, size))
+                .toString();
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Objects;
+
+/**
+ * In-memory order book of one currency pair, seeded from a money/depth/fetch
+ * snapshot and kept current by applying streamed {@link MutableDepthUpdate}s.
+ * 
+ * <p>
+ * Both ladders are {@link OrderBookSide}s on primitive arrays, so
+ * top-of-book reads are O(1), price lookups O(log n) and neither boxes. A
+ * snapshot is loaded with {@link #beginSnapshot(long)},
+ * {@link #addSnapshotLevel(boolean, long, long)} and {@link #endSnapshot()},
+ * which {@link com.relish.mtgox4j.json.DepthDecoder} does while it parses.
+ * Updates stamped before the snapshot are ignored, so updates buffered while
+ * the snapshot was in flight can be replayed afterwards.
+ * </p>
+ * 
+ * <p>
+ * Instances are not thread-safe: a book is meant to be owned by the thread
+ * that receives its updates, e.g. a {@link com.relish.mtgox4j.StreamListener}.
+ * </p>
+ */
+public final class OrderBook {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final ECurrency currency;
+    private final OrderBookSide bids;
+    private final OrderBookSide asks;
+    private long snapshotNow;
+    private long now;
+
+    /**
+     * @param currency
+     *            the currency BTC is priced in
+     * @throws NullPointerException
+     *             if currency is null
+     */
+    public OrderBook(final ECurrency currency) {
+        this(currency, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param currency
+     *            the currency BTC is priced in
+     * @param initialCapacity
+     *            the number of levels to size each ladder for
+     * @throws NullPointerException
+     *             if currency is null
+     * @throws IllegalArgumentException
+     *             if initialCapacity is not positive
+     */
+    public OrderBook(final ECurrency currency, final int initialCapacity) {
+        this.currency = checkNotNull(currency);
+        bids = new OrderBookSide(false, initialCapacity);
+        asks = new OrderBookSide(true, initialCapacity);
+    }
+
+    /**
+     * @return the currency prices are in, with {@link ECurrency#getDivisions()}
+     *         divisions per unit
+     */
+    public ECurrency getCurrency() {
+        return currency;
+    }
+
+    public OrderBookSide getBids() {
+        return bids;
+    }
+
+    public OrderBookSide getAsks() {
+        return asks;
+    }
+
+    /**
+     * @return the unix timestamp with microsecond resolution of the latest
+     *         snapshot or update applied, 0 if none
+     */
+    public long getNow() {
+        return now;
+    }
+
+    /**
+     * @return true if both ladders have at least one level
+     */
+    public boolean isTwoSided() {
+        return !bids.isEmpty() && !asks.isEmpty();
+    }
+
+    /**
+     * @return the best ask minus the best bid
+     * @throws IndexOutOfBoundsException
+     *             if either ladder is empty
+     */
+    public long getSpread() {
+        return asks.getBestPrice() - bids.getBestPrice();
+    }
+
+    /**
+     * Apply a streamed change to one level, setting it to the update's total
+     * volume.
+     * 
+     * @param update
+     *            the decoded depth message
+     * @return false if the update was ignored because it is for another
+     *         currency or older than the current snapshot
+     */
+    public boolean apply(final MutableDepthUpdate update) {
+        if (update.getCurrency() != currency
+                || update.getNow() < snapshotNow) {
+            return false;
+        }
+
+        (update.isAsk() ? asks : bids).set(update.getPriceInt(),
+                update.getTotalVolumeInt());
+        now = Math.max(now, update.getNow());
+        return true;
+    }
+
+    /**
+     * Set the volume of one level, removing it if volumeInt is not positive.
+     * 
+     * @param ask
+     *            true for the ask ladder, false for the bid ladder
+     * @param priceInt
+     *            the price of the level
+     * @param volumeInt
+     *            the level's new volume
+     */
+    public void set(final boolean ask, final long priceInt,
+            final long volumeInt) {
+        (ask ? asks : bids).set(priceInt, volumeInt);
+    }
+
+    /**
+     * Change the volume of one level by a signed amount, removing it if its
+     * volume drops to or below zero.
+     * 
+     * @param ask
+     *            true for the ask ladder, false for the bid ladder
+     * @param priceInt
+     *            the price of the level
+     * @param deltaInt
+     *            the change of the level's volume
+     */
+    public void add(final boolean ask, final long priceInt,
+            final long deltaInt) {
+        (ask ? asks : bids).add(priceInt, deltaInt);
+    }
+
+    /**
+     * Clear both ladders and start loading a snapshot.
+     * 
+     * @param snapshotNow
+     *            the snapshot's timestamp; older updates will be ignored
+     */
+    public void beginSnapshot(final long snapshotNow) {
+        bids.clear();
+        asks.clear();
+        this.snapshotNow = snapshotNow;
+        now = snapshotNow;
+    }
+
+    /**
+     * Add a level of the snapshot being loaded, in any order.
+     * 
+     * @param ask
+     *            true for the ask ladder, false for the bid ladder
+     * @param priceInt
+     *            the price of the level
+     * @param volumeInt
+     *            the level's volume; levels without volume are dropped
+     */
+    public void addSnapshotLevel(final boolean ask, final long priceInt,
+            final long volumeInt) {
+        (ask ? asks : bids).append(priceInt, volumeInt);
+    }
+
+    /**
+     * Finish loading a snapshot. The book must not be read or updated between
+     * {@link #beginSnapshot(long)} and this call.
+     */
+    public void endSnapshot() {
+        bids.sort();
+        asks.sort();
+    }
+
+    /**
+     * Set the snapshot timestamp, e.g. when the snapshot's "now" was only
+     * found after its levels.
+     * 
+     * @param snapshotNow
+     *            the snapshot's timestamp; older updates will be ignored
+     */
+    public void setSnapshotNow(final long snapshotNow) {
+        this.snapshotNow = snapshotNow;
+        now = Math.max(now, snapshotNow);
+    }
+
+    /**
+     * Remove every level and forget the snapshot.
+     */
+    public void clear() {
+        beginSnapshot(0L);
+    }
+
+//@formatter:off
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("currency", currency.name())
+                .add("now", now)
+                .add("bids", bids)
+                .add("asks", asks)
+                .toString();
+    }
+}
@@ -0,0 +1,330 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import java.util.Arrays;
+
+import com.google.common.base.Objects;
+
+/**
+ * One ladder (bids or asks) of an {@link OrderBook}: the aggregated volume at
+ * each price, ordered from the best price outwards.
+ * 
+ * <p>
+ * Levels live in two parallel primitive arrays sorted by a key that grows
+ * towards the best price (the price for bids, the negated price for asks),
+ * so the best level is the last element. Reading level n is a plain array
+ * access, finding a price is a binary search, and because most changes
+ * happen close to the touch an insert or removal usually shifts only a few
+ * elements. Nothing is boxed and the arrays only grow when the ladder
+ * outgrows them.
+ * </p>
+ * 
+ * <p>
+ * Prices are in divisions of the book's currency and volumes in BTC
+ * divisions (see {@link ECurrency#getDivisions()}). Instances are not
+ * thread-safe.
+ * </p>
+ */
+public final class OrderBookSide {
+    private final boolean ask;
+    private long[] keys;
+    private long[] volumes;
+    private int size;
+
+    /**
+     * @param ask
+     *            true for the ask ladder, false for the bid ladder
+     * @param initialCapacity
+     *            the number of levels to size the arrays for
+     */
+    OrderBookSide(final boolean ask, final int initialCapacity) {
+        checkArgument(initialCapacity > 0, "initialCapacity must be positive");
+
+        this.ask = ask;
+        keys = new long[initialCapacity];
+        volumes = new long[initialCapacity];
+    }
+
+    /**
+     * @return true for the ask ladder, false for the bid ladder
+     */
+    public boolean isAsk() {
+        return ask;
+    }
+
+    /**
+     * @return the number of price levels
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    /**
+     * @param level
+     *            0 for the best price, 1 for the next and so on
+     * @return the price of the level
+     * @throws IndexOutOfBoundsException
+     *             if level is not below {@link #size()}
+     */
+    public long getPrice(final int level) {
+        checkElementIndex(level, size);
+        return priceOf(keys[size - 1 - level]);
+    }
+
+    /**
+     * @param level
+     *            0 for the best price, 1 for the next and so on
+     * @return the volume of the level
+     * @throws IndexOutOfBoundsException
+     *             if level is not below {@link #size()}
+     */
+    public long getVolume(final int level) {
+        checkElementIndex(level, size);
+        return volumes[size - 1 - level];
+    }
+
+    /**
+     * @return the best price
+     * @throws IndexOutOfBoundsException
+     *             if the ladder is empty
+     */
+    public long getBestPrice() {
+        return getPrice(0);
+    }
+
+    /**
+     * @return the volume at the best price
+     * @throws IndexOutOfBoundsException
+     *             if the ladder is empty
+     */
+    public long getBestVolume() {
+        return getVolume(0);
+    }
+
+    /**
+     * @param priceInt
+     *            the price to look up
+     * @return the volume at priceInt, 0 if there is no such level
+     */
+    public long getVolumeAt(final long priceInt) {
+        final int index = Arrays.binarySearch(keys, 0, size, keyOf(priceInt));
+        return index < 0 ? 0L : volumes[index];
+    }
+
+    /**
+     * @param priceInt
+     *            the price to look up
+     * @return the level of priceInt (0 being the best), or -1 if there is no
+     *         such level
+     */
+    public int levelOf(final long priceInt) {
+        final int index = Arrays.binarySearch(keys, 0, size, keyOf(priceInt));
+        return index < 0 ? -1 : size - 1 - index;
+    }
+
+    /**
+     * @param levels
+     *            the number of levels from the best price to include
+     * @return the total volume of the best levels, or of all levels if there
+     *         are fewer
+     */
+    public long getTotalVolume(final int levels) {
+        checkArgument(levels >= 0, "levels must not be negative");
+
+        long total = 0L;
+        for (int i = size - 1, end = size - Math.min(levels, size); i >= end; i--) {
+            total += volumes[i];
+        }
+        return total;
+    }
+
+    /**
+     * Copy the best levels into caller-owned arrays, best first.
+     * 
+     * @param prices
+     *            receives the prices
+     * @param volumes
+     *            receives the volumes, at least as long as prices
+     * @return the number of levels copied, the smaller of prices.length and
+     *         {@link #size()}
+     */
+    public int copyTop(final long[] prices, final long[] volumes) {
+        checkArgument(volumes.length >= prices.length,
+                "volumes must be at least as long as prices");
+
+        final int n = Math.min(prices.length, size);
+        for (int level = 0; level < n; level++) {
+            prices[level] = priceOf(keys[size - 1 - level]);
+            volumes[level] = this.volumes[size - 1 - level];
+        }
+        return n;
+    }
+
+    /**
+     * Set the volume at priceInt, removing the level if volume is not
+     * positive.
+     * 
+     * @param priceInt
+     *            the price of the level
+     * @param volumeInt
+     *            the level's new volume
+     */
+    void set(final long priceInt, final long volumeInt) {
+        final long key = keyOf(priceInt);
+        final int index = Arrays.binarySearch(keys, 0, size, key);
+
+        if (index >= 0) {
+            if (volumeInt > 0) {
+                volumes[index] = volumeInt;
+            } else {
+                remove(index);
+            }
+        } else if (volumeInt > 0) {
+            insert(-index - 1, key, volumeInt);
+        }
+    }
+
+    /**
+     * Change the volume at priceInt by a signed amount, removing the level if
+     * its volume drops to or below zero.
+     * 
+     * @param priceInt
+     *            the price of the level
+     * @param deltaInt
+     *            the change of the level's volume
+     */
+    void add(final long priceInt, final long deltaInt) {
+        set(priceInt, getVolumeAt(priceInt) + deltaInt);
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Append a level without keeping the ladder sorted, for bulk loads. Must
+     * be followed by {@link #sort()} before the ladder is read or updated.
+     */
+    void append(final long priceInt, final long volumeInt) {
+        if (volumeInt <= 0) {
+            return;
+        }
+
+        ensureCapacity(size + 1);
+        keys[size] = keyOf(priceInt);
+        volumes[size] = volumeInt;
+        size++;
+    }
+
+    /**
+     * Restore the order after {@link #append}ing, summing duplicate prices.
+     * Snapshots arrive sorted one way or the other, so a reversed run is
+     * flipped first and an insertion sort finishes the job in linear time
+     * for sorted input.
+     */
+    void sort() {
+        if (size > 1 && keys[0] > keys[size - 1]) {
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                swap(i, j);
+            }
+        }
+
+        for (int i = 1; i < size; i++) {
+            for (int j = i; j > 0 && keys[j - 1] > keys[j]; j--) {
+                swap(j - 1, j);
+            }
+        }
+
+        int last = 0;
+        for (int i = 1; i < size; i++) {
+            if (keys[i] == keys[last]) {
+                volumes[last] += volumes[i];
+            } else {
+                last++;
+                keys[last] = keys[i];
+                volumes[last] = volumes[i];
+            }
+        }
+        size = Math.min(size, last + 1);
+    }
+
+    private void insert(final int index, final long key, final long volumeInt) {
+        ensureCapacity(size + 1);
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(volumes, index, volumes, index + 1, size - index);
+        keys[index] = key;
+        volumes[index] = volumeInt;
+        size++;
+    }
+
+    private void remove(final int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(volumes, index + 1, volumes, index, size - index - 1);
+        size--;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > keys.length) {
+            final int grown = Math.max(capacity, keys.length * 2);
+            keys = Arrays.copyOf(keys, grown);
+            volumes = Arrays.copyOf(volumes, grown);
+        }
+    }
+
+    private void swap(final int i, final int j) {
+        final long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+
+        final long volume = volumes[i];
+        volumes[i] = volumes[j];
+        volumes[j] = volume;
+    }
+
+    private long keyOf(final long priceInt) {
+        return ask ? -priceInt : priceInt;
+    }
+
+    private long priceOf(final long key) {
+        return ask ? -key : key;
+    }
+
+//@formatter:off
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("ask", ask)
+                .add("levels", size)
+                .add("best_price", isEmpty() ? null : getBestPrice())
+                .add("best_volume", isEmpty() ? null : getBestVolume())
+                .toString();
+    }
+}
@@ -0,0 +1,553 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.relish.mtgox4j.journal.TickRecord;
+
+/**
+ * Flyweight, read-only view of a ticker that reads its fields straight out of
+ * a {@link ByteBuffer}, either a binary {@link TickRecord} (e.g. a slot of a
+ * mapped {@link com.relish.mtgox4j.journal.TickJournal} segment) or the raw
+ * UTF-8 bytes of a money/ticker_fast response.
+ * 
+ * <p>
+ * Wrapping a record is just remembering the buffer and offset. Wrapping a
+ * response makes one pass over its bytes to note where each field's value
+ * starts and ends, in arrays owned by the view. Either way prices and
+ * timestamps are then read as primitives on access, and the textual fields
+ * of a response are only turned into Strings when asked for, or appended to
+ * a caller's {@link StringBuilder} without creating one. A single view can be
+ * re-wrapped for every tick, so handing ticks to in-process consumers creates
+ * no objects.
+ * </p>
+ * 
+ * <p>
+ * The view does not copy: the wrapped bytes must not change while it is in
+ * use. Instances are not thread-safe.
+ * </p>
+ */
+public final class TickerFastView {
+    private static final ETickerPrice[] PRICES = ETickerPrice.values();
+    private static final ECurrency[] CURRENCIES = ECurrency.values();
+
+    private static final byte[] RESULT = ascii("result");
+    private static final byte[] DATA = ascii("data");
+    private static final byte[] NOW = ascii("now");
+    private static final byte[] SUCCESS = ascii("success");
+    private static final byte[][] PRICE_NAMES = new byte[PRICES.length][];
+
+    private static final byte[][] INNER_NAMES = { ascii("value"),
+            ascii("value_int"), ascii("display"), ascii("display_short"),
+            ascii("currency") };
+    private static final int VALUE = 0;
+    private static final int VALUE_INT = 1;
+    private static final int DISPLAY = 2;
+    private static final int DISPLAY_SHORT = 3;
+    private static final int CURRENCY = 4;
+
+    private static final int RESULT_SLOT = PRICES.length * INNER_NAMES.length;
+    private static final int NOW_SLOT = RESULT_SLOT + 1;
+    private static final int SLOTS = NOW_SLOT + 1;
+
+    private static final int[] RECORD_OFFSETS = { TickRecord.BUY_OFFSET,
+            TickRecord.SELL_OFFSET, TickRecord.LAST_OFFSET,
+            TickRecord.LAST_LOCAL_OFFSET, TickRecord.LAST_ALL_OFFSET,
+            TickRecord.LAST_ORIG_OFFSET };
+
+    static {
+        for (ETickerPrice price : PRICES) {
+            PRICE_NAMES[price.ordinal()] = ascii(price.getJsonName());
+        }
+    }
+
+    private final int[] starts = new int[SLOTS];
+    private final int[] ends = new int[SLOTS];
+    private ByteBuffer buf;
+    private int offset;
+    private int limit;
+    private boolean record;
+
+    /**
+     * View the {@link TickRecord} at offset of buf. The record is not
+     * validated; {@link com.relish.mtgox4j.journal.TickJournalReader} only
+     * hands out intact ones.
+     * 
+     * @param buf
+     *            a little-endian buffer
+     * @param offset
+     *            the absolute offset of the record
+     * @return this
+     * @throws IllegalArgumentException
+     *             if buf is not little-endian
+     * @throws IndexOutOfBoundsException
+     *             if the record does not fit within buf's limit
+     */
+    public TickerFastView wrapRecord(final ByteBuffer buf, final int offset) {
+        checkArgument(buf.order() == ByteOrder.LITTLE_ENDIAN,
+                "Records are little-endian");
+        checkPositionIndexes(offset, offset + TickRecord.SIZE, buf.limit());
+
+        this.buf = buf;
+        this.offset = offset;
+        limit = offset + TickRecord.SIZE;
+        record = true;
+        return this;
+    }
+
+    /**
+     * View the ticker_fast response held in len bytes of buf from offset.
+     * 
+     * @param buf
+     *            the buffer holding the UTF-8 response body
+     * @param offset
+     *            the absolute offset of the body
+     * @param len
+     *            the length of the body
+     * @return this
+     * @throws IllegalArgumentException
+     *             if the bytes are not a JSON object
+     * @throws IndexOutOfBoundsException
+     *             if the body does not fit within buf's limit
+     */
+    public TickerFastView wrapResponse(final ByteBuffer buf, final int offset,
+            final int len) {
+        checkPositionIndexes(offset, offset + len, checkNotNull(buf).limit());
+
+        this.buf = buf;
+        this.offset = offset;
+        limit = offset + len;
+        record = false;
+        Arrays.fill(starts, -1);
+        Arrays.fill(ends, -1);
+        scanObject(skipWhitespace(offset), 0, -1);
+        return this;
+    }
+
+    /**
+     * @return true if a binary record is wrapped, false for a response
+     */
+    public boolean isRecord() {
+        return record;
+    }
+
+    /**
+     * @return true if MtGox reported a result of "success"; records are only
+     *         written for successful responses
+     */
+    public boolean isSuccess() {
+        return record || bytesEqual(RESULT_SLOT, SUCCESS);
+    }
+
+    /**
+     * @return the unix timestamp of the ticker with microsecond resolution, 0
+     *         if absent
+     */
+    public long getNow() {
+        return record ? buf.getLong(offset + TickRecord.NOW_OFFSET)
+                : parseLong(NOW_SLOT);
+    }
+
+    /**
+     * @return the currency of the prices, null if absent or unknown
+     */
+    public ECurrency getCurrency() {
+        if (record) {
+            return CURRENCIES[buf.getInt(offset + TickRecord.CURRENCY_OFFSET)];
+        }
+
+        for (ETickerPrice price : PRICES) {
+            final int slot = slotOf(price, CURRENCY);
+            if (starts[slot] >= 0) {
+                return ECurrency.fromCode(buf, starts[slot], ends[slot]
+                        - starts[slot]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param price
+     *            the price to read
+     * @return value_int of price in units of 1 /
+     *         {@link ECurrency#getDivisions()} of the currency, 0 if absent
+     * @throws NumberFormatException
+     *             if a response holds a value_int that is not a long
+     */
+    public long getValueInt(final ETickerPrice price) {
+        return record ? buf.getLong(offset + RECORD_OFFSETS[price.ordinal()])
+                : parseLong(slotOf(price, VALUE_INT));
+    }
+
+    public long getBuy() {
+        return getValueInt(ETickerPrice.BUY);
+    }
+
+    public long getSell() {
+        return getValueInt(ETickerPrice.SELL);
+    }
+
+    /**
+     * @return the decimal value of price, decoded now, or null if absent or
+     *         a record is wrapped
+     */
+    public String getValue(final ETickerPrice price) {
+        return text(slotOf(price, VALUE));
+    }
+
+    /**
+     * @return the display text of price, decoded now, or null if absent or a
+     *         record is wrapped
+     */
+    public String getDisplay(final ETickerPrice price) {
+        return text(slotOf(price, DISPLAY));
+    }
+
+    /**
+     * @return the short display text of price, decoded now, or null if absent
+     *         or a record is wrapped
+     */
+    public String getDisplayShort(final ETickerPrice price) {
+        return text(slotOf(price, DISPLAY_SHORT));
+    }
+
+    /**
+     * Append the display text of price without creating a String.
+     * 
+     * @param price
+     *            the price
+     * @param to
+     *            the builder to append to
+     * @return false if there is no display text, e.g. a record is wrapped
+     */
+    public boolean appendDisplay(final ETickerPrice price,
+            final StringBuilder to) {
+        return appendText(slotOf(price, DISPLAY), checkNotNull(to));
+    }
+
+    private int slotOf(final ETickerPrice price, final int field) {
+        return price.ordinal() * INNER_NAMES.length + field;
+    }
+
+    private String text(final int slot) {
+        if (record || starts[slot] < 0) {
+            return null;
+        }
+
+        final StringBuilder to = new StringBuilder(ends[slot] - starts[slot]);
+        appendText(slot, to);
+        return to.toString();
+    }
+
+    /**
+     * Append a JSON string's content, unescaping it and decoding UTF-8.
+     */
+    private boolean appendText(final int slot, final StringBuilder to) {
+        if (record || starts[slot] < 0) {
+            return false;
+        }
+
+        int pos = starts[slot];
+        final int end = ends[slot];
+        while (pos < end) {
+            final int b = buf.get(pos++);
+            if ('\\' == b) {
+                final int escaped = buf.get(pos++);
+                switch (escaped) {
+                case 'b':
+                    to.append('\b');
+                    break;
+                case 'f':
+                    to.append('\f');
+                    break;
+                case 'n':
+                    to.append('\n');
+                    break;
+                case 'r':
+                    to.append('\r');
+                    break;
+                case 't':
+                    to.append('\t');
+                    break;
+                case 'u':
+                    to.append((char) Integer.parseInt(ascii(pos, pos + 4), 16));
+                    pos += 4;
+                    break;
+                default:
+                    to.append((char) escaped);
+                }
+            } else if (b >= 0) {
+                to.append((char) b);
+            } else if ((b & 0xE0) == 0xC0) {
+                to.append((char) ((b & 0x1F) << 6 | buf.get(pos++) & 0x3F));
+            } else if ((b & 0xF0) == 0xE0) {
+                to.append((char) ((b & 0x0F) << 12
+                        | (buf.get(pos++) & 0x3F) << 6 | buf.get(pos++) & 0x3F));
+            } else {
+                to.appendCodePoint((b & 0x07) << 18
+                        | (buf.get(pos++) & 0x3F) << 12
+                        | (buf.get(pos++) & 0x3F) << 6 | buf.get(pos++) & 0x3F);
+            }
+        }
+        return true;
+    }
+
+    private long parseLong(final int slot) {
+        if (record || starts[slot] < 0) {
+            return 0L;
+        }
+
+        int pos = starts[slot];
+        final int end = ends[slot];
+        final boolean negative = pos < end && '-' == buf.get(pos);
+        if (negative) {
+            pos++;
+        }
+        if (pos == end) {
+            throw new NumberFormatException("Expected an integer but was '"
+                    + ascii(starts[slot], end) + "'");
+        }
+
+        // accumulate negatively so Long.MIN_VALUE parses
+        long result = 0L;
+        while (pos < end) {
+            final int digit = buf.get(pos++) - '0';
+            if (digit < 0 || digit > 9 || result < (Long.MIN_VALUE + digit) / 10) {
+                throw new NumberFormatException("Expected an integer but was '"
+                        + ascii(starts[slot], end) + "'");
+            }
+            result = result * 10 - digit;
+        }
+        if (!negative && Long.MIN_VALUE == result) {
+            throw new NumberFormatException("Expected an integer but was '"
+                    + ascii(starts[slot], end) + "'");
+        }
+        return negative ? result : -result;
+    }
+
+    private boolean bytesEqual(final int slot, final byte[] expected) {
+        return !record && starts[slot] >= 0
+                && rangeEquals(starts[slot], ends[slot], expected);
+    }
+
+    private boolean rangeEquals(final int start, final int end,
+            final byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (buf.get(start + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scan an object, noting the fields of interest: result and data at level
+     * 0, now and the prices at level 1, and the fields of price at level 2.
+     * 
+     * @return the position after the closing brace
+     */
+    private int scanObject(int pos, final int level, final int price) {
+        pos = skipWhitespace(expect(pos, '{'));
+        if ('}' == byteAt(pos)) {
+            return pos + 1;
+        }
+
+        while (true) {
+            final int keyStart = expect(pos, '"');
+            final int keyEnd = endOfString(keyStart);
+            pos = skipWhitespace(expect(skipWhitespace(keyEnd + 1), ':'));
+            pos = skipWhitespace(scanValue(pos, level, price, keyStart, keyEnd));
+            if ('}' == byteAt(pos)) {
+                return pos + 1;
+            }
+            pos = skipWhitespace(expect(pos, ','));
+        }
+    }
+
+    private int scanValue(final int pos, final int level, final int price,
+            final int keyStart, final int keyEnd) {
+        int slot = -1;
+        if (0 == level) {
+            if ('{' == byteAt(pos) && rangeEquals(keyStart, keyEnd, DATA)) {
+                return scanObject(pos, 1, -1);
+            } else if (rangeEquals(keyStart, keyEnd, RESULT)) {
+                slot = RESULT_SLOT;
+            }
+        } else if (1 == level) {
+            final int found = indexOf(keyStart, keyEnd, PRICE_NAMES);
+            if (found >= 0 && '{' == byteAt(pos)) {
+                return scanObject(pos, 2, found);
+            } else if (rangeEquals(keyStart, keyEnd, NOW)) {
+                slot = NOW_SLOT;
+            }
+        } else {
+            final int field = indexOf(keyStart, keyEnd, INNER_NAMES);
+            if (field >= 0) {
+                slot = price * INNER_NAMES.length + field;
+            }
+        }
+
+        final int end = skipValue(pos);
+        if (slot >= 0) {
+            final boolean quoted = '"' == byteAt(pos);
+            starts[slot] = quoted ? pos + 1 : pos;
+            ends[slot] = quoted ? end - 1 : end;
+        }
+        return end;
+    }
+
+    private int indexOf(final int start, final int end, final byte[][] names) {
+        for (int i = 0; i < names.length; i++) {
+            if (rangeEquals(start, end, names[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the position after the value starting at pos
+     */
+    private int skipValue(int pos) {
+        final int start = pos;
+        final byte b = byteAt(pos);
+        if ('"' == b) {
+            return endOfString(pos + 1) + 1;
+        }
+
+        if ('{' == b || '[' == b) {
+            int depth = 0;
+            do {
+                final byte c = byteAt(pos);
+                if ('"' == c) {
+                    pos = endOfString(pos + 1) + 1;
+                    continue;
+                }
+                if ('{' == c || '[' == c) {
+                    depth++;
+                } else if ('}' == c || ']' == c) {
+                    depth--;
+                }
+                pos++;
+            } while (depth > 0);
+            return pos;
+        }
+
+        while (pos < limit && !isDelimiter(buf.get(pos))) {
+            pos++;
+        }
+        if (pos == start) {
+            throw malformed(pos);
+        }
+        return pos;
+    }
+
+    /**
+     * @return the position of the closing quote of the string whose content
+     *         starts at pos
+     */
+    private int endOfString(int pos) {
+        while (true) {
+            final byte b = byteAt(pos);
+            if ('"' == b) {
+                return pos;
+            }
+            pos += '\\' == b ? 2 : 1;
+        }
+    }
+
+    private int skipWhitespace(int pos) {
+        while (pos < limit && isWhitespace(buf.get(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private int expect(final int pos, final char expected) {
+        if (expected != byteAt(pos)) {
+            throw malformed(pos);
+        }
+        return pos + 1;
+    }
+
+    private byte byteAt(final int pos) {
+        if (pos >= limit) {
+            throw malformed(pos);
+        }
+        return buf.get(pos);
+    }
+
+    private IllegalArgumentException malformed(final int pos) {
+        return new IllegalArgumentException(
+                "Malformed ticker_fast response at byte " + (pos - offset));
+    }
+
+    private String ascii(final int start, final int end) {
+        final char[] chars = new char[Math.max(0, Math.min(end, limit) - start)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) buf.get(start + i);
+        }
+        return new String(chars);
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return ' ' == b || '\n' == b || '\r' == b || '\t' == b;
+    }
+
+    private static boolean isDelimiter(final byte b) {
+        return ',' == b || '}' == b || ']' == b || isWhitespace(b);
+    }
+
+    private static byte[] ascii(final String s) {
+        return s.getBytes(Charsets.US_ASCII);
+    }
+
+//@formatter:off
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        if (null == buf) {
+            return Objects.toStringHelper(this).toString();
+        }
+
+        final ECurrency currency = getCurrency();
+        return Objects.toStringHelper(this)
+                .add("record", record)
+                .add("now", getNow())
+                .add("currency", null == currency ? null : currency.name())
+                .add("buy", getBuy())
+                .add("sell", getSell())
+                .toString();
+    }
+}
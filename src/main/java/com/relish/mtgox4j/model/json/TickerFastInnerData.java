@@ -19,7 +19,13 @@ package com.relish.mtgox4j.model.json;
 
 import java.io.Serializable;
 
+import org.codehaus.jackson.annotate.JsonIgnore;
+import org.codehaus.jackson.map.annotate.JsonDeserialize;
+
 import com.google.common.base.Objects;
+import com.relish.mtgox4j.json.CurrencyCodeDeserializer;
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.FixedPoint;
 
 //@formatter:off
 /**
@@ -77,13 +83,14 @@ import com.google.common.base.Objects;
 */
 //@formatter:on
 public class TickerFastInnerData implements Serializable {
-    private static final long serialVersionUID = -8095785773908549233L;
+    private static final long serialVersionUID = 2870533125364182641L;
 
     private String value;
     private String value_int;
     private String display;
     private String display_short;
-    private String currency;
+    private ECurrency currency;
+    private long fixedValue;
 
     public String getValue() {
         return value;
@@ -99,6 +106,21 @@ public class TickerFastInnerData implements Serializable {
 
     public void setValue_int(final String value_int) {
         this.value_int = value_int;
+        this.fixedValue = null == value_int ? 0L : FixedPoint
+                .parseLong(value_int);
+    }
+
+    /**
+     * value_int parsed once when it is set, so consumers can compare and do
+     * arithmetic on prices without re-parsing the String.
+     * 
+     * @return value_int as a fixed-point amount in units of 1 /
+     *         {@link ECurrency#getDivisions()} of currency
+     * @see FixedPoint
+     */
+    @JsonIgnore
+    public long getFixedValue() {
+        return fixedValue;
     }
 
     public String getDisplay() {
@@ -117,11 +139,18 @@ public class TickerFastInnerData implements Serializable {
         this.display_short = display_short;
     }
 
-    public String getCurrency() {
+    /**
+     * Resolved from the code while decoding, without an intermediate String.
+     * 
+     * @return the currency of the value, null if absent or not an
+     *         {@link ECurrency}
+     */
+    public ECurrency getCurrency() {
         return currency;
     }
 
-    public void setCurrency(final String currency) {
+    @JsonDeserialize(using = CurrencyCodeDeserializer.class)
+    public void setCurrency(final ECurrency currency) {
         this.currency = currency;
     }
 
@@ -168,7 +197,7 @@ public class TickerFastInnerData implements Serializable {
     @Override
     public String toString() {
         return Objects.toStringHelper(this)
-                .add("currency", currency)
+                .add("currency", null == currency ? null : currency.name())
                 .add("display", display)
                 .add("display_short", display_short)
                 .add("value", value)
@@ -25,11 +25,27 @@ import javax.crypto.spec.SecretKeySpec;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.base.Optional;
+
 /**
  * Utility class for creating HMAC hashes.
+ * 
+ * <p>
+ * Instances are thread-safe without locking: a {@link Mac} is initialized once
+ * as a prototype and each call hashes with a clone of it taken from a small
+ * pool, so threads sharing one {@link HmacUtility} never contend with or
+ * corrupt each other, and clones are reused even by short-lived threads.
+ * </p>
  */
 public class HmacUtility {
-    private final Mac mac;
+    private final Mac prototype;
+    private final SecretKeySpec keySpec;
+    private final ObjectPool<Mac> macs = new ObjectPool<Mac>() {
+        @Override
+        protected Mac create() {
+            return newMac();
+        }
+    };
 
     /**
      * Initializes this {@link HmacUtility} with the given algorithm and secret.
@@ -46,11 +62,11 @@ public class HmacUtility {
      */
     public HmacUtility(final String algorithm, final byte[] secret)
             throws NoSuchAlgorithmException, InvalidKeyException {
-        mac = Mac.getInstance(checkNotNull(algorithm));
+        prototype = Mac.getInstance(checkNotNull(algorithm));
 
-        final SecretKeySpec keySpec = new SecretKeySpec(checkNotNull(secret),
-                mac.getAlgorithm());
-        mac.init(keySpec);
+        keySpec = new SecretKeySpec(checkNotNull(secret),
+                prototype.getAlgorithm());
+        prototype.init(keySpec);
     }
 
     /**
@@ -61,6 +77,88 @@ public class HmacUtility {
      * @return the HMAC hash
      */
     public byte[] createHmac(final String msg) {
-        return mac.doFinal(checkNotNull(msg).getBytes());
+        return createHmac(checkNotNull(msg).getBytes());
+    }
+
+    /**
+     * Create an HMAC hash of the provided msg.
+     * 
+     * @param msg
+     *            the msg to hash
+     * @return the HMAC hash
+     */
+    public byte[] createHmac(final byte[] msg) {
+        checkNotNull(msg);
+
+        final Mac mac = macs.take();
+        final byte[] hmac = mac.doFinal(msg);
+        macs.give(mac);
+        return hmac;
+    }
+
+    /**
+     * @return the length in bytes of the hashes this utility creates
+     */
+    public int getMacLength() {
+        return prototype.getMacLength();
+    }
+
+    /**
+     * @return a reset {@link Mac} from the pool, to {@link #giveMac(Mac)} back
+     *         once reset again
+     */
+    Mac takeMac() {
+        return macs.take();
+    }
+
+    /**
+     * @param mac
+     *            a reset {@link Mac} from {@link #takeMac()}
+     */
+    void giveMac(final Mac mac) {
+        macs.give(mac);
+    }
+
+    /**
+     * Creates a {@link Mac} that has already absorbed the keyed inner pad and
+     * prefix. Cloning it restores that midstate without hashing either again.
+     * 
+     * @param prefix
+     *            the bytes every message hashed with the midstate starts with
+     * @return the midstate, or absent if the provider cannot clone a
+     *         {@link Mac}
+     */
+    Optional<Mac> midstate(final byte[] prefix) {
+        try {
+            final Mac mac = (Mac) prototype.clone();
+            mac.update(checkNotNull(prefix));
+            return Optional.of(mac);
+        } catch (CloneNotSupportedException e) {
+            return Optional.absent();
+        }
+    }
+
+    /**
+     * Creates a {@link Mac} equivalent to the prototype for the pool.
+     * Cloning skips re-deriving the keyed pads; providers that cannot clone
+     * get a freshly initialized instance instead.
+     */
+    private Mac newMac() {
+        try {
+            return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            try {
+                final Mac mac = Mac.getInstance(prototype.getAlgorithm(),
+                        prototype.getProvider());
+                mac.init(keySpec);
+                return mac;
+            } catch (NoSuchAlgorithmException nsae) {
+                // already succeeded once in the constructor
+                throw new IllegalStateException(nsae);
+            } catch (InvalidKeyException ike) {
+                // already succeeded once in the constructor
+                throw new IllegalStateException(ike);
+            }
+        }
     }
 }
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.security;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.MapMaker;
+
+/**
+ * Lock-free {@link NonceSource} based on microsecond unix time.
+ * 
+ * <p>
+ * Each nonce is the larger of the current time in microseconds and the
+ * previous nonce plus one, published with a compare-and-set. Calls in the same
+ * microsecond therefore still get distinct, increasing nonces. Time is read
+ * from a monotonic clock anchored to the wall clock when the source is
+ * created, so stepping the system clock backwards can never make the nonce
+ * decrease.
+ * </p>
+ * 
+ * <p>
+ * Every {@link MtGoxSecurity} sharing an API key must share one source; use
+ * {@link #forApiKey(String)} to get the process-wide instance for a key.
+ * </p>
+ */
+public class MonotonicNonceSource implements NonceSource {
+    private static final ConcurrentMap<String, MonotonicNonceSource> API_KEY_SOURCES = new MapMaker()
+            .makeMap();
+
+    private final Ticker ticker;
+    private final long anchorMicros;
+    private final long anchorNanos;
+    private final AtomicLong last;
+
+    /**
+     * Creates a source starting from the current time.
+     */
+    public MonotonicNonceSource() {
+        this(0L);
+    }
+
+    /**
+     * Creates a source whose nonces are all larger than floor, e.g. the last
+     * nonce used by a previous process.
+     * 
+     * @param floor
+     *            the value every nonce must exceed
+     */
+    public MonotonicNonceSource(final long floor) {
+        this(Ticker.systemTicker(), TimeUnit.MILLISECONDS
+                .toMicros(System.currentTimeMillis()), floor);
+    }
+
+    /**
+     * @param ticker
+     *            the monotonic nanosecond clock
+     * @param anchorMicros
+     *            the unix time in microseconds at the ticker's current reading
+     * @param floor
+     *            the value every nonce must exceed
+     */
+    MonotonicNonceSource(final Ticker ticker, final long anchorMicros,
+            final long floor) {
+        this.ticker = checkNotNull(ticker);
+        this.anchorMicros = anchorMicros;
+        this.anchorNanos = ticker.read();
+        this.last = new AtomicLong(floor);
+    }
+
+    /**
+     * Get the shared source for an API key, creating it on first use.
+     * 
+     * @param apiKey
+     *            the MtGox api key
+     * @return the process-wide source for apiKey
+     */
+    public static MonotonicNonceSource forApiKey(final String apiKey) {
+        final MonotonicNonceSource existing = API_KEY_SOURCES
+                .get(checkNotNull(apiKey));
+        if (null != existing) {
+            return existing;
+        }
+
+        final MonotonicNonceSource created = new MonotonicNonceSource();
+        final MonotonicNonceSource raced = API_KEY_SOURCES.putIfAbsent(apiKey,
+                created);
+        return null == raced ? created : raced;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.relish.mtgox4j.security.NonceSource#nextNonce()
+     */
+    @Override
+    public long nextNonce() {
+        for (;;) {
+            final long previous = last.get();
+            final long next = Math.max(previous + 1, currentMicros());
+            if (last.compareAndSet(previous, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * @return the largest nonce handed out so far, or the floor if none
+     */
+    public long lastNonce() {
+        return last.get();
+    }
+
+    private long currentMicros() {
+        return anchorMicros
+                + TimeUnit.NANOSECONDS.toMicros(ticker.read() - anchorNanos);
+    }
+}
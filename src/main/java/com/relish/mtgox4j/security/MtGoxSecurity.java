@@ -17,17 +17,35 @@
  */
 package com.relish.mtgox4j.security;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.InputStream;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Callable;
 
 import javax.ws.rs.core.MediaType;
 
 import com.google.common.base.Optional;
 import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClient.BoundRequestBuilder;
 import com.relish.mtgox4j.MtGoxClient;
+import com.relish.mtgox4j.http.AsyncResponses;
+import com.relish.mtgox4j.http.BlockingResponses;
+import com.relish.mtgox4j.http.BoundEndpoint;
+import com.relish.mtgox4j.http.ERequestPriority;
+import com.relish.mtgox4j.http.RequestScheduler;
+import com.relish.mtgox4j.http.ResponseDecoder;
+import com.relish.mtgox4j.http.Transport;
+import com.relish.mtgox4j.metrics.EPhase;
+import com.relish.mtgox4j.metrics.EndpointRecorder;
+import com.relish.mtgox4j.metrics.NoOpMetrics;
 import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.WebResource;
 
 /**
  * Performs secure POSTs to MtGox.
@@ -75,19 +93,37 @@ public class MtGoxSecurity {
     private static final BaseEncoding BASE_64_CODEC = BaseEncoding.base64();
     private static final String HMAC_SHA_512_ALGORITHM = "HmacSHA512";
 
-    private final HmacUtility hmacUtility;
+    private final RequestSigner requestSigner;
     private final String apiKey;
+    private final NonceSource nonceSource;
 
     /**
+     * Uses the process-wide {@link MonotonicNonceSource} for apiKey.
+     * 
      * @param apiKey
      *            your MtGox api key
      * @param apiSecret
      *            your MtGox api secret (still encoded)
      */
     public MtGoxSecurity(final String apiKey, final String apiSecret) {
+        this(apiKey, apiSecret, MonotonicNonceSource.forApiKey(apiKey));
+    }
+
+    /**
+     * @param apiKey
+     *            your MtGox api key
+     * @param apiSecret
+     *            your MtGox api secret (still encoded)
+     * @param nonceSource
+     *            the source of nonces for apiKey, shared by everything using
+     *            apiKey
+     */
+    public MtGoxSecurity(final String apiKey, final String apiSecret,
+            final NonceSource nonceSource) {
         try {
-            hmacUtility = new HmacUtility(HMAC_SHA_512_ALGORITHM,
-                    BASE_64_CODEC.decode(checkNotNull(apiSecret)));
+            requestSigner = new RequestSigner(new HmacUtility(
+                    HMAC_SHA_512_ALGORITHM,
+                    BASE_64_CODEC.decode(checkNotNull(apiSecret))));
         } catch (NoSuchAlgorithmException e) {
             // TODO: Log internal error
             throw new RuntimeException(e);
@@ -97,6 +133,7 @@ public class MtGoxSecurity {
         }
 
         this.apiKey = checkNotNull(apiKey);
+        this.nonceSource = checkNotNull(nonceSource);
     }
 
     /**
@@ -124,6 +161,11 @@ public class MtGoxSecurity {
      * submitted using url form encoding.
      * </p>
      * 
+     * <p>
+     * Nonces are taken from this instance's {@link NonceSource}. The post data
+     * is sent and signed as UTF-8 by a {@link RequestSigner}.
+     * </p>
+     * 
      * @param restClient
      *            the {@link Client} to use for the POST
      * @param path
@@ -137,19 +179,403 @@ public class MtGoxSecurity {
      */
     public <T> T sendSecurePost(final Client restClient, final String path,
             final Class<T> responseType, final Optional<String> postData) {
-        final String nonce = "nonce=" + System.currentTimeMillis();
-        final String postDataWithNonce = postData.isPresent() ? postData.get()
-                + "&" + nonce : nonce;
-        final String toBeHashed = checkNotNull(path) + "\0" + postDataWithNonce;
-        final byte[] hash = hmacUtility.createHmac(toBeHashed);
-        final String encodedHash = BASE_64_CODEC.encode(hash);
-
-        return restClient
-                .resource(MtGoxClient.BASE_URL + path)
-                .header("Rest-Key", apiKey)
-                .header("Rest-Sign", encodedHash)
-                .entity(postDataWithNonce,
-                        MediaType.APPLICATION_FORM_URLENCODED)
-                .post(checkNotNull(responseType));
+        final SignedRequest request = requestSigner.sign(checkNotNull(path),
+                postData, nonceSource.nextNonce());
+
+        return post(restClient.resource(MtGoxClient.BASE_URL + path),
+                request, checkNotNull(responseType));
+    }
+
+    private <T> T post(final WebResource resource,
+            final SignedRequest request, final Class<T> responseType) {
+        final String signature = request.getSignature();
+        final byte[] body = request.copyBody();
+        requestSigner.release(request);
+
+        return resource.header("Rest-Key", apiKey)
+                .header("Rest-Sign", signature)
+                .entity(body, MediaType.APPLICATION_FORM_URLENCODED)
+                .post(responseType);
+    }
+
+    /**
+     * Send a secured POST to MtGox through transport's blocking client, once
+     * transport's {@link RequestScheduler}, if any, lets an
+     * {@link ERequestPriority#ACCOUNT} request through. The nonce is taken
+     * after that wait. The call is reported to transport's
+     * {@link Transport#getMetrics() metrics}, with the response's decoding
+     * counted in {@link EPhase#WAIT}.
+     * 
+     * @see #sendSecurePost(Client, String, Class, Optional)
+     * @see #sendSecurePost(SecuredEndpoint, ERequestPriority, PostForm, Class)
+     */
+    public <T> T sendSecurePost(final Transport transport, final String path,
+            final Class<T> responseType, final Optional<String> postData) {
+        return sendSecurePost(endpoint(transport, path),
+                ERequestPriority.ACCOUNT, form(postData), responseType);
+    }
+
+    /**
+     * As {@link #sendSecurePost(Transport, String, Class, Optional)}, streaming
+     * the response body through decoder instead of databinding it, so
+     * {@link EPhase#WAIT} and {@link EPhase#DECODE} are reported separately.
+     * 
+     * @throws ClientHandlerException
+     *             if the response could not be read or decoded
+     * @see BlockingResponses#decode
+     */
+    public <T> T sendSecurePost(final Transport transport, final String path,
+            final ResponseDecoder<T> decoder, final Optional<String> postData) {
+        return sendSecurePost(endpoint(transport, path),
+                ERequestPriority.ACCOUNT, form(postData), decoder);
+    }
+
+    /**
+     * Bind path for repeated secured POSTs through transport. The URL, Jersey
+     * resource and metrics come from the transport's
+     * {@link Transport#getEndpoints() registry} and the signing midstate from
+     * this instance's, so both are built once per path.
+     * 
+     * @param transport
+     *            the HTTP clients to send requests with
+     * @param path
+     *            the resource path (don't include the base URL)
+     * @return the bound endpoint
+     */
+    public SecuredEndpoint endpoint(final Transport transport,
+            final String path) {
+        return endpoint(transport.getEndpoints().get(checkNotNull(path)));
+    }
+
+    /**
+     * Prepare a bound path for repeated secured POSTs with this instance's
+     * secret.
+     * 
+     * @param bound
+     *            the path bound to the transport to send through
+     * @return the bound endpoint
+     */
+    public SecuredEndpoint endpoint(final BoundEndpoint bound) {
+        return new SecuredEndpoint(this, checkNotNull(bound),
+                requestSigner.signingPath(bound.getPath()));
+    }
+
+    /**
+     * Send a secured POST to a bound endpoint through its transport's
+     * blocking client, once the transport's {@link RequestScheduler}, if any,
+     * lets a request of priority through. The nonce is taken after that wait
+     * and form is written straight into the signed body. The call is reported
+     * to the transport's {@link Transport#getMetrics() metrics}, with the
+     * response's decoding counted in {@link EPhase#WAIT}.
+     * 
+     * @param endpoint
+     *            the endpoint, from {@link #endpoint(BoundEndpoint)} of this
+     *            instance
+     * @param priority
+     *            the priority to schedule the request with, e.g.
+     *            {@link ERequestPriority#TRADING} for order entry
+     * @param form
+     *            writes the arguments to POST
+     * @param responseType
+     *            the type of response
+     * @return the response
+     * @throws IllegalArgumentException
+     *             if endpoint was prepared by another instance
+     */
+    public <T> T sendSecurePost(final SecuredEndpoint endpoint,
+            final ERequestPriority priority, final PostForm form,
+            final Class<T> responseType) {
+        checkNotNull(responseType);
+        final EndpointRecorder recorder = endpoint.getBound().getRecorder();
+        final SignedRequest request = acquireAndSign(endpoint, priority, form);
+
+        final boolean enabled = recorder.isEnabled();
+        final long start = enabled ? System.nanoTime() : 0L;
+        try {
+            // Jersey reads and databinds the response within post
+            final T response = post(endpoint.getBound().getResource(),
+                    request, responseType);
+            if (enabled) {
+                recorder.record(EPhase.WAIT, System.nanoTime() - start);
+            }
+            return response;
+        } catch (RuntimeException e) {
+            if (enabled) {
+                recorder.recordError(e);
+            }
+            throw e;
+        } finally {
+            if (enabled) {
+                recorder.record(EPhase.TOTAL, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * As
+     * {@link #sendSecurePost(SecuredEndpoint, ERequestPriority, PostForm, Class)}
+     * , streaming the response body through decoder instead of databinding it,
+     * so {@link EPhase#WAIT} and {@link EPhase#DECODE} are reported
+     * separately.
+     * 
+     * @param decoder
+     *            decodes the response body
+     * @return the decoded response
+     * @throws IllegalArgumentException
+     *             if endpoint was prepared by another instance
+     * @throws ClientHandlerException
+     *             if the response could not be read or decoded
+     */
+    public <T> T sendSecurePost(final SecuredEndpoint endpoint,
+            final ERequestPriority priority, final PostForm form,
+            final ResponseDecoder<T> decoder) {
+        checkNotNull(decoder);
+        final EndpointRecorder recorder = endpoint.getBound().getRecorder();
+        final SignedRequest request = acquireAndSign(endpoint, priority, form);
+
+        final boolean enabled = recorder.isEnabled();
+        final long start = enabled ? System.nanoTime() : 0L;
+        try {
+            final InputStream in = post(endpoint.getBound().getResource(),
+                    request, InputStream.class);
+            if (enabled) {
+                recorder.record(EPhase.WAIT, System.nanoTime() - start);
+            }
+            return BlockingResponses.decode(in, decoder, recorder);
+        } catch (RuntimeException e) {
+            if (enabled) {
+                recorder.recordError(e);
+            }
+            throw e;
+        } finally {
+            if (enabled) {
+                recorder.record(EPhase.TOTAL, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Non-blocking variant of
+     * {@link #sendSecurePost(SecuredEndpoint, ERequestPriority, PostForm, ResponseDecoder)}
+     * . The request is signed and its nonce taken when the scheduler lets it
+     * through, so nonces increase in the order requests are sent. If the
+     * transport has a {@link Transport#getBlockingExecutor() blocking
+     * executor}, the blocking variant runs on it instead.
+     * 
+     * @return the future response
+     * @throws IllegalArgumentException
+     *             if endpoint was prepared by another instance
+     * @see AsyncResponses#execute
+     */
+    public <T> ListenableFuture<T> sendSecurePostAsync(
+            final SecuredEndpoint endpoint, final ERequestPriority priority,
+            final PostForm form, final ResponseDecoder<T> decoder) {
+        checkEndpoint(endpoint);
+        checkNotNull(priority);
+        checkNotNull(form);
+        checkNotNull(decoder);
+
+        final BoundEndpoint bound = endpoint.getBound();
+        final Transport transport = bound.getTransport();
+        if (transport.getBlockingExecutor().isPresent()) {
+            return BlockingResponses.submit(transport.getBlockingExecutor()
+                    .get(), new Callable<T>() {
+                @Override
+                public T call() {
+                    return sendSecurePost(endpoint, priority, form, decoder);
+                }
+            });
+        }
+
+        final EndpointRecorder recorder = bound.getRecorder();
+        final boolean enabled = recorder.isEnabled();
+        final long queued = enabled ? System.nanoTime() : 0L;
+
+        return RequestScheduler.schedule(transport.getScheduler(), priority,
+                bound.getName(), new Callable<ListenableFuture<T>>() {
+                    @Override
+                    public ListenableFuture<T> call() {
+                        final long signing = enabled ? System.nanoTime() : 0L;
+                        if (enabled && transport.getScheduler().isPresent()) {
+                            recorder.record(EPhase.QUEUE, signing - queued);
+                        }
+                        final SignedRequest request = signed(recorder,
+                                signing, requestSigner.sign(
+                                        endpoint.getSigningPath(), form,
+                                        nonceSource.nextNonce()));
+                        return AsyncResponses.execute(
+                                bind(transport.getAsyncClient().preparePost(
+                                        bound.getUrl()), request), decoder,
+                                recorder);
+                    }
+                });
+    }
+
+    /**
+     * Wait for the endpoint's {@link RequestScheduler}, if any, then sign the
+     * request with the next nonce, reporting both to the endpoint's recorder.
+     */
+    private SignedRequest acquireAndSign(final SecuredEndpoint endpoint,
+            final ERequestPriority priority, final PostForm form) {
+        checkEndpoint(endpoint);
+        checkNotNull(priority);
+        checkNotNull(form);
+
+        final BoundEndpoint bound = endpoint.getBound();
+        final Transport transport = bound.getTransport();
+        final EndpointRecorder recorder = bound.getRecorder();
+        final boolean enabled = recorder.isEnabled();
+
+        final long queued = enabled ? System.nanoTime() : 0L;
+        RequestScheduler.acquire(transport.getScheduler(), priority,
+                bound.getName());
+        final long signing = enabled ? System.nanoTime() : 0L;
+        if (enabled && transport.getScheduler().isPresent()) {
+            recorder.record(EPhase.QUEUE, signing - queued);
+        }
+
+        return signed(recorder, signing, requestSigner.sign(
+                endpoint.getSigningPath(), form, nonceSource.nextNonce()));
+    }
+
+    /**
+     * Report the signing of request, begun at signing, to recorder if it is
+     * enabled.
+     * 
+     * @return request
+     */
+    private static SignedRequest signed(final EndpointRecorder recorder,
+            final long signing, final SignedRequest request) {
+        if (recorder.isEnabled()) {
+            recorder.record(EPhase.SIGN, System.nanoTime() - signing);
+            recorder.recordBytesSent(request.getBodyLength());
+        }
+        return request;
+    }
+
+    private void checkEndpoint(final SecuredEndpoint endpoint) {
+        checkArgument(checkNotNull(endpoint).getSecurity() == this,
+                "The endpoint %s was prepared by another MtGoxSecurity",
+                endpoint.getPath());
+    }
+
+    /**
+     * @return a form writing the already url-encoded postData, if any
+     */
+    private static PostForm form(final Optional<String> postData) {
+        if (!postData.isPresent()) {
+            return PostForm.EMPTY;
+        }
+
+        final String data = postData.get();
+        return new PostForm() {
+            @Override
+            public void writeTo(final SignedRequest request) {
+                request.appendUtf8(data);
+            }
+        };
+    }
+
+
+    /**
+     * Send a secured POST to MtGox through transport's non-blocking client,
+     * once transport's {@link RequestScheduler}, if any, lets an
+     * {@link ERequestPriority#ACCOUNT} request through. The request is signed
+     * and its nonce taken when it is sent rather than when it is queued, so
+     * nonces increase in the order requests reach MtGox. The call is
+     * reported to transport's {@link Transport#getMetrics() metrics}.
+     * 
+     * @see #sendSecurePostAsync(AsyncHttpClient, String, ResponseDecoder,
+     *      Optional)
+     */
+    public <T> ListenableFuture<T> sendSecurePostAsync(
+            final Transport transport, final String path,
+            final ResponseDecoder<T> decoder, final Optional<String> postData) {
+        return sendSecurePostAsync(endpoint(transport, path),
+                ERequestPriority.ACCOUNT, form(postData), decoder);
+    }
+
+    /**
+     * Send a secured POST to MtGox without blocking the calling thread.
+     * 
+     * <p>
+     * The request is signed and its nonce taken on the calling thread, so
+     * requests sent one after another by a thread carry increasing nonces. See
+     * {@link #sendSecurePost(Client, String, Class, Optional)} for the request
+     * format.
+     * </p>
+     * 
+     * @param asyncClient
+     *            the {@link AsyncHttpClient} to use for the POST
+     * @param path
+     *            the resource path (don't include MtGoxClient.BASE_URL or
+     *            currency)
+     * @param decoder
+     *            decodes the response body
+     * @param postData
+     *            the data to POST to MtGox if required
+     * @return the future response
+     * @see AsyncResponses#execute
+     */
+    public <T> ListenableFuture<T> sendSecurePostAsync(
+            final AsyncHttpClient asyncClient, final String path,
+            final ResponseDecoder<T> decoder, final Optional<String> postData) {
+        return AsyncResponses.execute(
+                prepareSecurePost(asyncClient, MtGoxClient.BASE_URL, path,
+                        postData), decoder);
+    }
+
+    /**
+     * Sign a POST to baseUrl + path with the next nonce.
+     */
+    BoundRequestBuilder prepareSecurePost(final AsyncHttpClient asyncClient,
+            final String baseUrl, final String path,
+            final Optional<String> postData) {
+        return prepareSecurePost(asyncClient, baseUrl, path, postData,
+                NoOpMetrics.INSTANCE);
+    }
+
+    /**
+     * Sign a POST to baseUrl + path with the next nonce, reporting the time
+     * taken and the size of the body to recorder.
+     */
+    BoundRequestBuilder prepareSecurePost(final AsyncHttpClient asyncClient,
+            final String baseUrl, final String path,
+            final Optional<String> postData, final EndpointRecorder recorder) {
+        final long signing = recorder.isEnabled() ? System.nanoTime() : 0L;
+        final SignedRequest request = signed(recorder, signing,
+                requestSigner.sign(checkNotNull(path), postData,
+                        nonceSource.nextNonce()));
+
+        return bind(asyncClient.preparePost(baseUrl + path), request);
+    }
+
+    /**
+     * Sign a POST to a bound endpoint with the next nonce, reporting the time
+     * taken and the size of the body to the endpoint's recorder.
+     */
+    BoundRequestBuilder prepareSecurePost(final SecuredEndpoint endpoint,
+            final Optional<String> postData) {
+        final BoundEndpoint bound = endpoint.getBound();
+        final EndpointRecorder recorder = bound.getRecorder();
+        final long signing = recorder.isEnabled() ? System.nanoTime() : 0L;
+        final SignedRequest request = signed(recorder, signing,
+                requestSigner.sign(endpoint.getSigningPath(), form(postData),
+                        nonceSource.nextNonce()));
+
+        return bind(bound.getTransport().getAsyncClient()
+                .preparePost(bound.getUrl()), request);
+    }
+
+    private BoundRequestBuilder bind(final BoundRequestBuilder post,
+            final SignedRequest request) {
+        final String signature = request.getSignature();
+        final byte[] body = request.copyBody();
+        requestSigner.release(request);
+
+        return post.addHeader("Rest-Key", apiKey)
+                .addHeader("Rest-Sign", signature)
+                .addHeader("Content-Type",
+                        MediaType.APPLICATION_FORM_URLENCODED).setBody(body);
     }
 }
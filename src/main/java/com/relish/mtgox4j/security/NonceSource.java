@@ -0,0 +1,37 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.security;
+
+/**
+ * Supplies the nonce sent with every secured request.
+ * 
+ * <p>
+ * MtGox rejects any request whose nonce is not larger than every nonce
+ * previously sent with the same API key, so implementations must be strictly
+ * increasing across all threads using the key and safe for concurrent use.
+ * </p>
+ * 
+ * @see MonotonicNonceSource
+ * @see PersistentNonceSource
+ */
+public interface NonceSource {
+    /**
+     * @return a nonce strictly larger than any previously returned
+     */
+    long nextNonce();
+}
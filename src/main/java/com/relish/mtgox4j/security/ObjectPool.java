@@ -0,0 +1,105 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.security;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A small lock-free pool of reusable scratch objects, used where a
+ * {@link ThreadLocal} would be defeated by short-lived threads, e.g. a
+ * virtual thread per call, which would create an object per call instead of
+ * reusing one.
+ * 
+ * <p>
+ * {@link #take()} empties a slot, or creates an object if the slots near the
+ * calling thread's are empty; {@link #give(Object)} refills one, or drops the
+ * object if they are full. An object that is never given back is simply
+ * garbage collected. Threads start probing at a slot picked from their id,
+ * so concurrent callers rarely touch the same slot.
+ * </p>
+ */
+abstract class ObjectPool<T> {
+    private static final int PROBES = 4;
+
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+
+    /**
+     * Pool up to four objects per processor.
+     */
+    ObjectPool() {
+        this(Integer.highestOneBit(Math.max(PROBES, 4 * Runtime.getRuntime()
+                .availableProcessors()) - 1) << 1);
+    }
+
+    /**
+     * @param size
+     *            the number of slots, a power of two
+     */
+    ObjectPool(final int size) {
+        checkArgument(size > 0 && Integer.bitCount(size) == 1,
+                "size must be a power of two");
+        slots = new AtomicReferenceArray<T>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * @return a pooled object, or a new one if none is at hand
+     */
+    T take() {
+        final int start = start();
+        for (int i = 0; i < PROBES; i++) {
+            final int slot = (start + i) & mask;
+            if (null != slots.get(slot)) {
+                final T pooled = slots.getAndSet(slot, null);
+                if (null != pooled) {
+                    return pooled;
+                }
+            }
+        }
+        return create();
+    }
+
+    /**
+     * Hand back an object from {@link #take()} once the caller no longer
+     * uses it.
+     */
+    void give(final T object) {
+        checkNotNull(object);
+
+        final int start = start();
+        for (int i = 0; i < PROBES; i++) {
+            if (slots.compareAndSet((start + i) & mask, null, object)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return a new object for the pool
+     */
+    protected abstract T create();
+
+    private static int start() {
+        // spread sequential thread ids over the slots
+        return (int) Thread.currentThread().getId() * 0x9E3779B9;
+    }
+}
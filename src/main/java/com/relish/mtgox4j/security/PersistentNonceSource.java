@@ -0,0 +1,166 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.security;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Charsets;
+
+/**
+ * {@link NonceSource} that survives restarts by persisting a high-water mark
+ * to a file.
+ * 
+ * <p>
+ * Rather than writing every nonce, the source reserves a window ahead of the
+ * current nonce and only writes (and syncs) the end of that window when a
+ * nonce crosses it. On startup it resumes above the persisted value, which is
+ * never lower than any nonce handed out before a crash. Nonces inside the
+ * reserved window are issued lock-free by a {@link MonotonicNonceSource}; only
+ * the occasional reservation takes a lock.
+ * </p>
+ * 
+ * <p>
+ * Like {@link MonotonicNonceSource}, one instance should be shared by
+ * everything using the same API key, and no two instances may use the same
+ * file.
+ * </p>
+ */
+public class PersistentNonceSource implements NonceSource {
+    /**
+     * One minute of microsecond nonces.
+     */
+    public static final long DEFAULT_RESERVATION = TimeUnit.MINUTES
+            .toMicros(1);
+
+    private final File file;
+    private final long reservation;
+    private final MonotonicNonceSource delegate;
+    private final Lock reservationLock = new ReentrantLock();
+    private volatile long reservedUpTo;
+
+    /**
+     * @param file
+     *            the file holding the high-water mark, created if missing
+     * @throws IOException
+     *             if an existing file could not be read
+     */
+    public PersistentNonceSource(final File file) throws IOException {
+        this(file, DEFAULT_RESERVATION);
+    }
+
+    /**
+     * @param file
+     *            the file holding the high-water mark, created if missing
+     * @param reservation
+     *            how far ahead of the current nonce to reserve on each write;
+     *            larger values mean fewer writes but a bigger jump after a
+     *            restart
+     * @throws IOException
+     *             if an existing file could not be read
+     * @throws IllegalArgumentException
+     *             if reservation is not positive
+     */
+    public PersistentNonceSource(final File file, final long reservation)
+            throws IOException {
+        checkArgument(reservation > 0, "reservation must be positive");
+
+        this.file = checkNotNull(file);
+        this.reservation = reservation;
+
+        final long persisted = read(file);
+        delegate = new MonotonicNonceSource(persisted);
+        reservedUpTo = persisted;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @throws IllegalStateException
+     *             if a new reservation could not be persisted; the nonce is
+     *             not handed out in that case
+     */
+    @Override
+    public long nextNonce() {
+        final long nonce = delegate.nextNonce();
+        if (nonce > reservedUpTo) {
+            reserve(nonce);
+        }
+        return nonce;
+    }
+
+    private void reserve(final long nonce) {
+        reservationLock.lock();
+        try {
+            if (nonce > reservedUpTo) {
+                final long upTo = nonce + reservation;
+                write(file, upTo);
+                reservedUpTo = upTo;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(
+                    "Unable to persist nonce reservation to " + file, e);
+        } finally {
+            reservationLock.unlock();
+        }
+    }
+
+    private static long read(final File file) throws IOException {
+        if (!file.exists()) {
+            return 0L;
+        }
+
+        final String persisted = new String(Files.readAllBytes(file.toPath()),
+                Charsets.UTF_8).trim();
+        try {
+            return Long.parseLong(persisted);
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt nonce file " + file + ": '"
+                    + persisted + "'", e);
+        }
+    }
+
+    /**
+     * Write to a sibling file, sync it and atomically rename it over the old
+     * one so a crash mid-write leaves the previous mark intact.
+     */
+    private static void write(final File file, final long upTo)
+            throws IOException {
+        final File tmp = new File(file.getPath() + ".tmp");
+        final FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(Long.toString(upTo).getBytes(Charsets.UTF_8));
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
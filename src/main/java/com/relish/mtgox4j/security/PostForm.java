@@ -0,0 +1,49 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.security;
+
+/**
+ * The arguments of a secured POST, written straight into the signing
+ * thread's body buffer by {@link RequestSigner#sign(SigningPath, PostForm, long)}
+ * rather than concatenated into a String first.
+ * 
+ * <p>
+ * Implementations should be cheap, immutable snapshots of the arguments, e.g.
+ * primitive fixed-point amounts, since they may be written again when a
+ * request is re-signed.
+ * </p>
+ */
+public interface PostForm {
+    /**
+     * A form without arguments; the body is just the nonce.
+     */
+    PostForm EMPTY = new PostForm() {
+        @Override
+        public void writeTo(final SignedRequest request) {
+        }
+    };
+
+    /**
+     * Append the arguments with {@link SignedRequest#appendParam}. The nonce
+     * is appended afterwards by the signer.
+     * 
+     * @param request
+     *            the request being signed
+     */
+    void writeTo(SignedRequest request);
+}
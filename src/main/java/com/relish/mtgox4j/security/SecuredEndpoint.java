@@ -0,0 +1,81 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.security;
+
+import com.google.common.base.Objects;
+import com.relish.mtgox4j.http.BoundEndpoint;
+
+/**
+ * A secured resource bound once to a transport and a signing secret, for
+ * sending many POSTs to it with as little per-request work as possible: the
+ * {@link BoundEndpoint} with the URL, Jersey resource and metrics of the
+ * path, and the {@link SigningPath} with its HMAC midstate.
+ * 
+ * <p>
+ * Obtain instances from {@link MtGoxSecurity#endpoint(BoundEndpoint)}; they
+ * are immutable and thread-safe.
+ * </p>
+ */
+public final class SecuredEndpoint {
+    private final MtGoxSecurity security;
+    private final BoundEndpoint bound;
+    private final SigningPath signingPath;
+
+    SecuredEndpoint(final MtGoxSecurity security, final BoundEndpoint bound,
+            final SigningPath signingPath) {
+        this.security = security;
+        this.bound = bound;
+        this.signingPath = signingPath;
+    }
+
+    /**
+     * @return the resource path (without the transport's base URL)
+     */
+    public String getPath() {
+        return bound.getPath();
+    }
+
+    /**
+     * @return the path bound to its transport
+     */
+    public BoundEndpoint getBound() {
+        return bound;
+    }
+
+    MtGoxSecurity getSecurity() {
+        return security;
+    }
+
+    SigningPath getSigningPath() {
+        return signingPath;
+    }
+
+//@formatter:off
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("bound", bound)
+                .add("signing_path", signingPath)
+                .toString();
+    }
+}
@@ -0,0 +1,392 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.security;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.relish.mtgox4j.http.AsyncResponses;
+import com.relish.mtgox4j.http.BoundEndpoint;
+import com.relish.mtgox4j.http.ERequestPriority;
+import com.relish.mtgox4j.http.HttpStatusException;
+import com.relish.mtgox4j.http.RequestScheduler;
+import com.relish.mtgox4j.http.ResponseDecoder;
+import com.relish.mtgox4j.http.Transport;
+
+/**
+ * Sends the secured POSTs of one API key in order, several at a time.
+ * 
+ * <p>
+ * MtGox rejects a request whose nonce is not larger than every nonce it has
+ * seen for the key, so secured requests sent independently from several
+ * threads fail whenever they overtake each other on the way. A pipeline
+ * queues them instead and sends them one after another: a request is signed
+ * and takes its nonce only when its turn comes, and the next one is not
+ * written until the previous one is on the wire. Responses are not waited
+ * for, so up to maxInFlight requests are outstanding at once, each on its
+ * own pooled connection.
+ * </p>
+ * 
+ * <p>
+ * Requests written in order on different connections can still, rarely,
+ * reach MtGox out of order. MtGox rejects the late one without acting on
+ * it, so a request rejected for its nonce is signed again with a fresh
+ * nonce and sent next, up to nonceRetries times.
+ * </p>
+ * 
+ * <p>
+ * Requests go through the transport's {@link RequestScheduler}, if it has
+ * one, at the pipeline's priority. Nonces still follow the order requests
+ * are written, since a request only takes its nonce once the scheduler has
+ * let it through.
+ * </p>
+ * 
+ * <p>
+ * Everything else using the same API key, in this process or another, must
+ * go through the same pipeline or share its {@link NonceSource} and accept
+ * that requests sent outside the pipeline may be rejected.
+ * </p>
+ */
+public final class SecuredPipeline implements Closeable {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+    public static final int DEFAULT_NONCE_RETRIES = 2;
+
+    private final MtGoxSecurity security;
+    private final Transport transport;
+    private final Optional<RequestScheduler> scheduler;
+    private final ERequestPriority priority;
+    private final int maxInFlight;
+    private final int nonceRetries;
+    private final Deque<Submission<?>> queue = new ConcurrentLinkedDeque<Submission<?>>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ReentrantLock sendLock = new ReentrantLock();
+    private final AtomicInteger sendRequests = new AtomicInteger();
+    private final AtomicReference<Submission<?>> writing = new AtomicReference<Submission<?>>();
+    private volatile boolean closed;
+
+    private SecuredPipeline(final Builder builder,
+            final MtGoxSecurity security, final Transport transport) {
+        this.security = checkNotNull(security);
+        this.transport = transport;
+        scheduler = transport.getScheduler();
+        priority = builder.priority;
+        maxInFlight = builder.maxInFlight;
+        nonceRetries = builder.nonceRetries;
+    }
+
+    /**
+     * Queue a secured POST. Cancelling the returned future before the
+     * request is sent drops it without using a nonce; cancelling it after
+     * aborts the request.
+     * 
+     * @param endpoint
+     *            the endpoint, from {@link MtGoxSecurity#endpoint} of the
+     *            pipeline's security bound to the pipeline's transport
+     * @param decoder
+     *            decodes the response body
+     * @param postData
+     *            the data to POST to MtGox if required
+     * @return the future response
+     * @throws IllegalArgumentException
+     *             if endpoint was prepared by another {@link MtGoxSecurity}
+     *             or bound to another transport
+     * @throws IllegalStateException
+     *             if the pipeline is closed
+     * @see MtGoxSecurity#sendSecurePost(com.sun.jersey.api.client.Client,
+     *      String, Class, Optional)
+     */
+    public <T> ListenableFuture<T> submit(final SecuredEndpoint endpoint,
+            final ResponseDecoder<T> decoder, final Optional<String> postData) {
+        checkArgument(checkNotNull(endpoint).getSecurity() == security,
+                "The endpoint %s was prepared by another MtGoxSecurity",
+                endpoint.getPath());
+        checkArgument(endpoint.getBound().getTransport() == transport,
+                "The endpoint %s is bound to another transport",
+                endpoint.getPath());
+        checkState(!closed, "SecuredPipeline is closed");
+
+        final Submission<T> submission = new Submission<T>(endpoint,
+                checkNotNull(decoder), checkNotNull(postData));
+        queued.incrementAndGet();
+        queue.add(submission);
+        send();
+        return submission.result;
+    }
+
+    /**
+     * @return the number of requests waiting for their turn
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * @return the number of requests sent, or being sent, whose response has
+     *         not arrived yet
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Stop accepting requests and cancel the ones not sent yet. Requests in
+     * flight complete as usual.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        Submission<?> submission;
+        while (null != (submission = queue.poll())) {
+            queued.decrementAndGet();
+            submission.result.cancel(false);
+        }
+    }
+
+    /**
+     * Send whatever may go next unless another thread is already at it; see
+     * {@link RequestScheduler} for the tryLock hand-off.
+     */
+    private void send() {
+        sendRequests.incrementAndGet();
+        if (sendLock.isHeldByCurrentThread()) {
+            // a request completed synchronously while being sent
+            return;
+        }
+        while (sendLock.tryLock()) {
+            final int seen = sendRequests.get();
+            try {
+                sendReady();
+            } finally {
+                sendLock.unlock();
+            }
+
+            if (sendRequests.get() == seen) {
+                return;
+            }
+        }
+    }
+
+    private void sendReady() {
+        while (null == writing.get() && inFlight.get() < maxInFlight) {
+            final Submission<?> next = queue.poll();
+            if (null == next) {
+                return;
+            }
+            queued.decrementAndGet();
+            if (next.result.isDone()) {
+                // cancelled while queued
+                continue;
+            }
+
+            writing.set(next);
+            inFlight.incrementAndGet();
+            next.start();
+        }
+    }
+
+    /**
+     * MtGox answers a request whose nonce is too small with an error naming
+     * the nonce, e.g. {"result":"error","error":"Invalid request nonce"}.
+     */
+    private static boolean isNonceRejection(final Throwable t) {
+        return t instanceof HttpStatusException
+                && ((HttpStatusException) t).getBody().toLowerCase(Locale.ROOT)
+                        .contains("nonce");
+    }
+
+    /**
+     * A queued request and the future handed to its caller.
+     */
+    private final class Submission<T> {
+        private final SecuredEndpoint endpoint;
+        private final ResponseDecoder<T> decoder;
+        private final Optional<String> postData;
+        private final SettableFuture<T> result = SettableFuture.create();
+        private volatile ListenableFuture<T> sent;
+        private int attempts;
+
+        private Submission(final SecuredEndpoint endpoint,
+                final ResponseDecoder<T> decoder,
+                final Optional<String> postData) {
+            this.endpoint = endpoint;
+            this.decoder = decoder;
+            this.postData = postData;
+
+            result.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    final ListenableFuture<T> current = sent;
+                    if (result.isCancelled() && null != current) {
+                        current.cancel(true);
+                    }
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
+
+        private void start() {
+            final Runnable written = new Runnable() {
+                @Override
+                public void run() {
+                    released();
+                }
+            };
+
+            final BoundEndpoint bound = endpoint.getBound();
+            ListenableFuture<T> response;
+            try {
+                response = RequestScheduler.schedule(scheduler, priority,
+                        bound.getName(), new Callable<ListenableFuture<T>>() {
+                            @Override
+                            public ListenableFuture<T> call() {
+                                return AsyncResponses.execute(security
+                                        .prepareSecurePost(endpoint, postData),
+                                        decoder, written, bound.getRecorder());
+                            }
+                        });
+            } catch (RuntimeException e) {
+                // e.g. the scheduler is closed
+                response = Futures.immediateFailedFuture(e);
+            }
+
+            final ListenableFuture<T> started = response;
+            Futures.addCallback(started, new FutureCallback<T>() {
+                @Override
+                public void onSuccess(final T value) {
+                    finished();
+                    result.set(value);
+                }
+
+                @Override
+                public void onFailure(final Throwable t) {
+                    if (!closed && attempts < nonceRetries
+                            && isNonceRejection(t) && !result.isDone()) {
+                        attempts++;
+                        queued.incrementAndGet();
+                        queue.addFirst(Submission.this);
+                        finished();
+                        return;
+                    }
+
+                    finished();
+                    if (started.isCancelled()) {
+                        result.cancel(false);
+                    } else {
+                        result.setException(t);
+                    }
+                }
+
+                private void finished() {
+                    inFlight.decrementAndGet();
+                    // the request may never have got as far as being written
+                    released();
+                }
+            });
+            sent = started;
+            if (result.isCancelled()) {
+                started.cancel(true);
+            }
+        }
+
+        /**
+         * Let the next request be written, if this one still held it back.
+         */
+        private void released() {
+            writing.compareAndSet(this, null);
+            send();
+        }
+    }
+
+    /**
+     * Builds {@link SecuredPipeline}s. By default
+     * {@link SecuredPipeline#DEFAULT_MAX_IN_FLIGHT} requests are in flight at
+     * once, at {@link ERequestPriority#ACCOUNT}, and rejected nonces are
+     * retried {@link SecuredPipeline#DEFAULT_NONCE_RETRIES} times.
+     */
+    public static final class Builder {
+        private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+        private ERequestPriority priority = ERequestPriority.ACCOUNT;
+        private int nonceRetries = DEFAULT_NONCE_RETRIES;
+
+        /**
+         * @param maxInFlight
+         *            the most requests awaiting their response at once;
+         *            also the most connections the pipeline uses
+         * @return this builder
+         */
+        public Builder maxInFlight(final int maxInFlight) {
+            checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * @param nonceRetries
+         *            how often a request rejected for its nonce is sent
+         *            again with a fresh one
+         * @return this builder
+         */
+        public Builder nonceRetries(final int nonceRetries) {
+            checkArgument(nonceRetries >= 0, "nonceRetries must not be negative");
+            this.nonceRetries = nonceRetries;
+            return this;
+        }
+
+        /**
+         * @param priority
+         *            the priority requests are scheduled at if the transport
+         *            has a {@link RequestScheduler}
+         * @return this builder
+         */
+        public Builder priority(final ERequestPriority priority) {
+            this.priority = checkNotNull(priority);
+            return this;
+        }
+
+        /**
+         * @param security
+         *            signs the requests and supplies their nonces
+         * @param transport
+         *            the transport whose non-blocking client sends the
+         *            requests, and which their endpoints are bound to; the
+         *            caller keeps ownership
+         * @return a pipeline for security's API key
+         */
+        public SecuredPipeline build(final MtGoxSecurity security,
+                final Transport transport) {
+            return new SecuredPipeline(this, security, checkNotNull(transport));
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.security;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+/**
+ * The form body and Rest-Sign value of a secured request, written by
+ * {@link RequestSigner} into reusable buffers.
+ * 
+ * <p>
+ * Instances are pooled by the signer: copy out what you need, then hand the
+ * instance back with {@link RequestSigner#release(SignedRequest)} and do not
+ * touch it again. Instances must not be shared between threads.
+ * </p>
+ */
+public final class SignedRequest {
+    private static final char[] BASE_64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .toCharArray();
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private byte[] body = new byte[256];
+    private int bodyLength;
+    private final byte[] hash;
+    private final char[] encodedHash;
+    private String signature;
+
+    SignedRequest(final int macLength) {
+        hash = new byte[macLength];
+        encodedHash = new char[(macLength + 2) / 3 * 4];
+    }
+
+    /**
+     * @return the buffer holding the UTF-8 form body, valid up to
+     *         {@link #getBodyLength()}
+     */
+    public byte[] getBodyBuffer() {
+        return body;
+    }
+
+    /**
+     * @return the length of the form body
+     */
+    public int getBodyLength() {
+        return bodyLength;
+    }
+
+    /**
+     * @return a right-sized copy of the form body, e.g. to hand to a transport
+     *         that outlives this request
+     */
+    public byte[] copyBody() {
+        return Arrays.copyOf(body, bodyLength);
+    }
+
+    /**
+     * @return the base-64 encoded HMAC to send as Rest-Sign
+     */
+    public String getSignature() {
+        return signature;
+    }
+
+    /**
+     * Append name=value to the form body, preceded by '&amp;' unless it is the
+     * first argument. For {@link PostForm}s.
+     * 
+     * @param name
+     *            the argument's name, url-safe ASCII
+     * @param value
+     *            the argument's value, e.g. a fixed-point amount
+     * @throws IllegalArgumentException
+     *             if value is negative
+     */
+    public void appendParam(final String name, final long value) {
+        checkArgument(value >= 0, "%s must not be negative", name);
+
+        appendName(name);
+        appendDigits(value);
+    }
+
+    /**
+     * Append name=value to the form body, preceded by '&amp;' unless it is the
+     * first argument, url-encoding value. For {@link PostForm}s.
+     * 
+     * @param name
+     *            the argument's name, url-safe ASCII
+     * @param value
+     *            the argument's value, e.g. an oid
+     * @throws IllegalArgumentException
+     *             if value is not ASCII
+     */
+    public void appendParam(final String name, final CharSequence value) {
+        appendName(name);
+
+        final int len = value.length();
+        for (int i = 0; i < len; i++) {
+            final char c = value.charAt(i);
+            checkArgument(c < 0x80, "%s must be ASCII", name);
+            if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0'
+                    && c <= '9' || c == '-' || c == '_' || c == '.' || c == '*') {
+                appendByte(c);
+            } else if (c == ' ') {
+                appendByte('+');
+            } else {
+                appendByte('%');
+                appendByte(HEX_DIGITS[c >> 4]);
+                appendByte(HEX_DIGITS[c & 0xf]);
+            }
+        }
+    }
+
+    private void appendName(final String name) {
+        if (bodyLength > 0) {
+            appendByte('&');
+        }
+        appendUtf8(name);
+        appendByte('=');
+    }
+
+    void reset() {
+        bodyLength = 0;
+        signature = null;
+    }
+
+    byte[] hashBuffer() {
+        return hash;
+    }
+
+    void appendByte(final int b) {
+        ensureCapacity(1);
+        body[bodyLength++] = (byte) b;
+    }
+
+    void appendAscii(final byte[] ascii) {
+        ensureCapacity(ascii.length);
+        System.arraycopy(ascii, 0, body, bodyLength, ascii.length);
+        bodyLength += ascii.length;
+    }
+
+    /**
+     * Append a non-negative long as decimal digits without creating a String.
+     */
+    void appendDigits(final long value) {
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+
+        ensureCapacity(digits);
+        long v = value;
+        for (int i = bodyLength + digits - 1; i >= bodyLength; i--) {
+            body[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        bodyLength += digits;
+    }
+
+    /**
+     * Append s encoded as UTF-8 without going through String.getBytes().
+     */
+    void appendUtf8(final CharSequence s) {
+        final int len = s.length();
+        ensureCapacity(len);
+
+        for (int i = 0; i < len; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                ensureCapacity(1);
+                body[bodyLength++] = (byte) c;
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                body[bodyLength++] = (byte) (0xc0 | c >> 6);
+                body[bodyLength++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < len
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, s.charAt(++i));
+                ensureCapacity(4);
+                body[bodyLength++] = (byte) (0xf0 | cp >> 18);
+                body[bodyLength++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                body[bodyLength++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                body[bodyLength++] = (byte) (0x80 | cp & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, encoded as '?' like String.getBytes()
+                ensureCapacity(1);
+                body[bodyLength++] = '?';
+            } else {
+                ensureCapacity(3);
+                body[bodyLength++] = (byte) (0xe0 | c >> 12);
+                body[bodyLength++] = (byte) (0x80 | c >> 6 & 0x3f);
+                body[bodyLength++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+    }
+
+    /**
+     * Base-64 encode the hash buffer into the reusable character buffer and
+     * create the signature String from it.
+     */
+    void encodeSignature() {
+        int out = 0;
+        int i = 0;
+        for (; i + 2 < hash.length; i += 3) {
+            final int bits = (hash[i] & 0xff) << 16 | (hash[i + 1] & 0xff) << 8
+                    | hash[i + 2] & 0xff;
+            encodedHash[out++] = BASE_64_ALPHABET[bits >>> 18];
+            encodedHash[out++] = BASE_64_ALPHABET[bits >>> 12 & 0x3f];
+            encodedHash[out++] = BASE_64_ALPHABET[bits >>> 6 & 0x3f];
+            encodedHash[out++] = BASE_64_ALPHABET[bits & 0x3f];
+        }
+        if (i < hash.length) {
+            final boolean two = i + 1 < hash.length;
+            final int bits = (hash[i] & 0xff) << 16
+                    | (two ? (hash[i + 1] & 0xff) << 8 : 0);
+            encodedHash[out++] = BASE_64_ALPHABET[bits >>> 18];
+            encodedHash[out++] = BASE_64_ALPHABET[bits >>> 12 & 0x3f];
+            encodedHash[out++] = two ? BASE_64_ALPHABET[bits >>> 6 & 0x3f]
+                    : '=';
+            encodedHash[out++] = '=';
+        }
+
+        signature = new String(encodedHash, 0, out);
+    }
+
+    private void ensureCapacity(final int additional) {
+        if (bodyLength + additional > body.length) {
+            body = Arrays.copyOf(body,
+                    Math.max(body.length * 2, bodyLength + additional));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.security;
+
+import javax.crypto.Mac;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+
+/**
+ * A secured resource path prepared for signing with one secret: the UTF-8
+ * bytes of "path\0" and, where the provider allows, an HMAC midstate that has
+ * already absorbed them.
+ * 
+ * <p>
+ * Obtain instances from {@link RequestSigner#signingPath(String)}. They are
+ * immutable and thread-safe.
+ * </p>
+ */
+public final class SigningPath {
+    private final String path;
+    private final byte[] prefix;
+    private final Optional<Mac> midstate;
+
+    SigningPath(final String path, final HmacUtility hmacUtility) {
+        this.path = path;
+
+        final byte[] pathBytes = path.getBytes(Charsets.UTF_8);
+        prefix = new byte[pathBytes.length + 1];
+        System.arraycopy(pathBytes, 0, prefix, 0, pathBytes.length);
+
+        midstate = hmacUtility.midstate(prefix);
+    }
+
+    /**
+     * @return the resource path (without MtGoxClient.BASE_URL)
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Get a {@link Mac} positioned just after "path\0", ready for the post
+     * data. This is a clone of the cached midstate, or a pooled {@link Mac}
+     * with the prefix re-absorbed if cloning is unsupported; hand it to
+     * {@link #releaseMac(HmacUtility, Mac)} once it is reset.
+     */
+    Mac newMac(final HmacUtility hmacUtility) {
+        if (midstate.isPresent()) {
+            try {
+                return (Mac) midstate.get().clone();
+            } catch (CloneNotSupportedException e) {
+                // midstate() only succeeds for cloneable providers
+                throw new IllegalStateException(e);
+            }
+        }
+
+        final Mac mac = hmacUtility.takeMac();
+        mac.update(prefix);
+        return mac;
+    }
+
+    /**
+     * Return a reset {@link Mac} from {@link #newMac(HmacUtility)} to the
+     * pool it came from, if any.
+     */
+    void releaseMac(final HmacUtility hmacUtility, final Mac mac) {
+        if (!midstate.isPresent()) {
+            hmacUtility.giveMac(mac);
+        }
+    }
+
+//@formatter:off
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("path", path)
+                .add("midstate", midstate.isPresent())
+                .toString();
+    }
+}
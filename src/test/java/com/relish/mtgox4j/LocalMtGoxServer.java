@@ -0,0 +1,649 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.base.Strings;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Resources;
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.FixedPoint;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local stand-in for MtGox's v2 API, for exercising the client over real
+ * HTTP, from single requests to load tests. Point a
+ * {@link com.relish.mtgox4j.http.PooledTransport} at {@link #getBaseUrl()}
+ * through {@link com.relish.mtgox4j.http.TransportConfig.Builder#baseUrl}.
+ * 
+ * <p>
+ * It serves:
+ * </p>
+ * <ul>
+ * <li>GET BTC{currency}/money/ticker_fast, from TickerFast.json with its
+ * currency replaced</li>
+ * <li>POST money/info and BTC{currency}/money/info, from MoneyInfo.json</li>
+ * <li>POST BTC{currency}/money/order/add, /money/order/cancel and
+ * /money/orders, against a book of the orders placed so far; limit orders
+ * rest in it as open, market orders are taken as filled at once</li>
+ * </ul>
+ * 
+ * <p>
+ * Like MtGox, it answers a secured POST with 403 and an error unless the
+ * Rest-Key is known, the Rest-Sign is the base-64 HMAC-SHA512 of
+ * "path\0body" under the key's secret, and the body's nonce is larger than
+ * any the key sent before. Latency, failures and a rate limit can be
+ * injected, and changed while clients are running. Delayed responses are
+ * sent from a scheduler, and held ones once released, so they hold no thread
+ * while waiting.
+ * </p>
+ */
+public final class LocalMtGoxServer implements Closeable {
+    private static final String API_PREFIX = "/api/2/";
+    private static final String HMAC_SHA_512 = "HmacSHA512";
+    private static final String TICKER_FAST = "money/ticker_fast";
+    private static final String MONEY_INFO = "money/info";
+    private static final String ORDER_ADD = "money/order/add";
+    private static final String ORDER_CANCEL = "money/order/cancel";
+    private static final String ORDERS = "money/orders";
+    private static final String NONCE = "nonce=";
+
+    private static final byte[] NOT_FOUND = error("Method not found",
+            "method_not_found");
+    private static final byte[] INVALID_KEY = error(
+            "Identification required", "login_error_invalid_rest_key");
+    private static final byte[] INVALID_SIGNATURE = error(
+            "Invalid signature", "login_error_invalid_rest_sign");
+    private static final byte[] INVALID_NONCE = error("Invalid request nonce",
+            "login_error_invalid_nonce");
+    private static final byte[] THROTTLED = error(
+            "Too many requests, slow down", "throttled");
+    private static final byte[] INJECTED = error("Internal error",
+            "internal_error");
+    private static final byte[] INVALID_ORDER = error("Invalid order",
+            "trade_error_invalid_order");
+    private static final byte[] ORDER_NOT_FOUND = error("Order not found",
+            "order_not_found");
+
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ScheduledExecutorService responder = Executors
+            .newSingleThreadScheduledExecutor();
+    private final byte[][] tickers = new byte[ECurrency.values().length][];
+    private final byte[] moneyInfo;
+    private final ConcurrentMap<String, ApiKey> apiKeys = new ConcurrentHashMap<String, ApiKey>();
+    private final Map<String, String> orders = Collections
+            .synchronizedMap(new LinkedHashMap<String, String>());
+
+    private final Queue<Runnable> held = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicInteger heldCount = new AtomicInteger();
+
+    private volatile long latencyNanos;
+    private volatile boolean holding;
+    private volatile double errorRate;
+    private volatile int errorStatus = 500;
+    private final AtomicInteger failNext = new AtomicInteger();
+    private volatile int maxPerSecond;
+    private final AtomicLong window = new AtomicLong();
+    private final AtomicInteger windowCount = new AtomicInteger();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong nonceRejections = new AtomicLong();
+    private final AtomicLong signatureRejections = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong injectedFailures = new AtomicLong();
+
+    /**
+     * Start on an ephemeral port of the loopback interface, handling
+     * requests on two threads per processor.
+     * 
+     * @throws IOException
+     *             if the server could not be started
+     */
+    public LocalMtGoxServer() throws IOException {
+        this(2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Start on an ephemeral port of the loopback interface.
+     * 
+     * @param threads
+     *            the number of threads handling requests
+     * @throws IOException
+     *             if the server could not be started
+     */
+    public LocalMtGoxServer(final int threads) throws IOException {
+        checkArgument(threads > 0, "threads must be positive");
+
+        final String ticker = Resources.toString(
+                Resources.getResource("TickerFast.json"), Charsets.UTF_8);
+        for (ECurrency currency : ECurrency.values()) {
+            tickers[currency.ordinal()] = ticker.replace("\"USD\"",
+                    "\"" + currency.name() + "\"").getBytes(Charsets.UTF_8);
+        }
+        moneyInfo = Resources.toByteArray(Resources
+                .getResource("MoneyInfo.json"));
+
+        handlers = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0),
+                1024);
+        server.createContext(API_PREFIX, new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                LocalMtGoxServer.this.handle(exchange);
+            }
+        });
+        server.setExecutor(handlers);
+        server.start();
+    }
+
+    /**
+     * @return the URL the API's resource paths are relative to, ending with a
+     *         slash
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort()
+                + API_PREFIX;
+    }
+
+    /**
+     * Accept secured requests from apiKey.
+     * 
+     * @param apiKey
+     *            the Rest-Key clients send
+     * @param apiSecret
+     *            the secret, base-64 encoded as MtGox hands it out
+     */
+    public void addApiKey(final String apiKey, final String apiSecret) {
+        apiKeys.put(checkNotNull(apiKey), new ApiKey(BaseEncoding.base64()
+                .decode(apiSecret)));
+    }
+
+    /**
+     * @param latency
+     *            how long to hold every response back; 0 to answer at once
+     * @param unit
+     *            the unit of latency
+     */
+    public void setLatency(final long latency, final TimeUnit unit) {
+        checkArgument(latency >= 0, "latency must not be negative");
+        latencyNanos = unit.toNanos(latency);
+    }
+
+    /**
+     * Hold every response back until {@link #releaseResponses()}, e.g. to keep
+     * a known number of calls in flight.
+     */
+    public void holdResponses() {
+        holding = true;
+    }
+
+    /**
+     * Send the responses held back, then answer as usual again.
+     */
+    public void releaseResponses() {
+        holding = false;
+        sendHeld();
+    }
+
+    /**
+     * Fail a random share of requests.
+     * 
+     * @param rate
+     *            the probability of failing a request, 0 for none
+     * @param status
+     *            the status to fail with, e.g. 502
+     */
+    public void setErrorRate(final double rate, final int status) {
+        checkArgument(rate >= 0 && rate <= 1, "rate must be between 0 and 1");
+        errorStatus = status;
+        errorRate = rate;
+    }
+
+    /**
+     * Fail the next count requests.
+     * 
+     * @param count
+     *            the number of requests to fail
+     * @param status
+     *            the status to fail with, e.g. 502
+     */
+    public void failNext(final int count, final int status) {
+        errorStatus = status;
+        failNext.set(count);
+    }
+
+    /**
+     * Answer requests beyond maxPerSecond in each second with 429.
+     * 
+     * @param maxPerSecond
+     *            the requests allowed per second, 0 for no limit
+     */
+    public void setRateLimit(final int maxPerSecond) {
+        checkArgument(maxPerSecond >= 0, "maxPerSecond must not be negative");
+        this.maxPerSecond = maxPerSecond;
+    }
+
+    /**
+     * @return the number of requests received
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of requests received and not yet answered because
+     *         responses are held
+     */
+    public int getHeld() {
+        return heldCount.get();
+    }
+
+    /**
+     * @return the number of secured requests rejected for their nonce
+     */
+    public long getNonceRejections() {
+        return nonceRejections.get();
+    }
+
+    /**
+     * @return the number of secured requests rejected for their key or
+     *         signature
+     */
+    public long getSignatureRejections() {
+        return signatureRejections.get();
+    }
+
+    /**
+     * @return the number of requests answered with 429
+     */
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    /**
+     * @return the number of requests failed on purpose
+     */
+    public long getInjectedFailures() {
+        return injectedFailures.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        handlers.shutdownNow();
+        responder.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+
+        final InputStream in = exchange.getRequestBody();
+        final byte[] body = ByteStreams.toByteArray(in);
+        in.close();
+
+        final String path = exchange.getRequestURI().getPath()
+                .substring(API_PREFIX.length());
+        final boolean post = "POST".equals(exchange.getRequestMethod());
+
+        if (isThrottled()) {
+            throttled.incrementAndGet();
+            respond(exchange, 429, THROTTLED);
+        } else if (isInjectedFailure()) {
+            injectedFailures.incrementAndGet();
+            respond(exchange, errorStatus, INJECTED);
+        } else if (!post && path.endsWith(TICKER_FAST)) {
+            final ECurrency currency = currencyOf(path, TICKER_FAST);
+            if (null == currency) {
+                respond(exchange, 404, NOT_FOUND);
+            } else {
+                respond(exchange, 200, tickers[currency.ordinal()]);
+            }
+        } else if (post && (isResource(path, MONEY_INFO)
+                || isResource(path, ORDER_ADD)
+                || isResource(path, ORDER_CANCEL) || isResource(path, ORDERS))) {
+            final byte[] rejection = authenticate(exchange, path, body);
+            if (null == rejection) {
+                handleSecured(exchange, path,
+                        formOf(new String(body, Charsets.UTF_8)));
+            } else {
+                respond(exchange, 403, rejection);
+            }
+        } else {
+            respond(exchange, 404, NOT_FOUND);
+        }
+    }
+
+    private void handleSecured(final HttpExchange exchange,
+            final String path, final Map<String, String> form) {
+        if (isResource(path, MONEY_INFO)) {
+            respond(exchange, 200, moneyInfo);
+        } else if (isResource(path, ORDER_ADD)) {
+            final String oid = addOrder(
+                    Objects.firstNonNull(currencyOf(path, ORDER_ADD),
+                            ECurrency.USD), form);
+            if (null == oid) {
+                respond(exchange, 400, INVALID_ORDER);
+            } else {
+                respond(exchange, 200, ("{\"result\":\"success\",\"data\":\""
+                        + oid + "\"}").getBytes(Charsets.UTF_8));
+            }
+        } else if (isResource(path, ORDER_CANCEL)) {
+            final String oid = form.get("oid");
+            if (null == oid || null == orders.remove(oid)) {
+                respond(exchange, 404, ORDER_NOT_FOUND);
+            } else {
+                respond(exchange, 200, ("{\"result\":\"success\",\"data\":{"
+                        + "\"oid\":\"" + oid + "\",\"qid\":\""
+                        + UUID.randomUUID() + "\"}}").getBytes(Charsets.UTF_8));
+            }
+        } else {
+            final StringBuilder json = new StringBuilder(
+                    "{\"result\":\"success\",\"data\":[");
+            synchronized (orders) {
+                Joiner.on(',').appendTo(json, orders.values());
+            }
+            respond(exchange, 200, json.append("]}").toString()
+                    .getBytes(Charsets.UTF_8));
+        }
+    }
+
+    /**
+     * Rest a limit order in the book; market orders are taken as filled.
+     * 
+     * @return the new order's oid, null if the form is not a valid order
+     */
+    private String addOrder(final ECurrency currency,
+            final Map<String, String> form) {
+        final String type = form.get("type");
+        final long amountInt;
+        final long priceInt;
+        try {
+            amountInt = Long.parseLong(Strings.nullToEmpty(form
+                    .get("amount_int")));
+            priceInt = form.containsKey("price_int") ? Long.parseLong(form
+                    .get("price_int")) : 0L;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (!("bid".equals(type) || "ask".equals(type)) || amountInt <= 0
+                || priceInt < 0) {
+            return null;
+        }
+
+        final String oid = UUID.randomUUID().toString();
+        if (priceInt > 0) {
+            orders.put(oid, "{\"oid\":\"" + oid + "\",\"currency\":\""
+                    + currency.name() + "\",\"item\":\"BTC\",\"type\":\""
+                    + type + "\",\"amount\":" + amount(amountInt, ECurrency.BTC)
+                    + ",\"effective_amount\":"
+                    + amount(amountInt, ECurrency.BTC) + ",\"price\":"
+                    + amount(priceInt, currency)
+                    + ",\"status\":\"open\",\"date\":"
+                    + TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis())
+                    + ",\"priority\":\"" + System.nanoTime() / 1000
+                    + "\",\"actions\":[]}");
+        }
+        return oid;
+    }
+
+    /**
+     * @return the error to answer with, null if the request is genuine
+     */
+    private byte[] authenticate(final HttpExchange exchange,
+            final String path, final byte[] body) {
+        final String apiKey = exchange.getRequestHeaders().getFirst(
+                "Rest-Key");
+        final String sign = exchange.getRequestHeaders().getFirst("Rest-Sign");
+        final ApiKey key = null == apiKey ? null : apiKeys.get(apiKey);
+        if (null == key || null == sign) {
+            signatureRejections.incrementAndGet();
+            return INVALID_KEY;
+        }
+
+        final Mac mac = key.mac.get();
+        mac.update(path.getBytes(Charsets.UTF_8));
+        mac.update((byte) 0);
+        final byte[] expected = mac.doFinal(body);
+        final byte[] actual;
+        try {
+            actual = BaseEncoding.base64().decode(sign);
+        } catch (IllegalArgumentException e) {
+            signatureRejections.incrementAndGet();
+            return INVALID_SIGNATURE;
+        }
+        if (!MessageDigest.isEqual(expected, actual)) {
+            signatureRejections.incrementAndGet();
+            return INVALID_SIGNATURE;
+        }
+
+        final long nonce = nonceOf(new String(body, Charsets.UTF_8));
+        long last;
+        do {
+            last = key.lastNonce.get();
+            if (nonce <= last) {
+                nonceRejections.incrementAndGet();
+                return INVALID_NONCE;
+            }
+        } while (!key.lastNonce.compareAndSet(last, nonce));
+        return null;
+    }
+
+    private boolean isThrottled() {
+        final int limit = maxPerSecond;
+        if (0 == limit) {
+            return false;
+        }
+
+        final long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        final long current = window.get();
+        if (second != current && window.compareAndSet(current, second)) {
+            windowCount.set(0);
+        }
+        return windowCount.incrementAndGet() > limit;
+    }
+
+    private boolean isInjectedFailure() {
+        if (failNext.get() > 0 && failNext.getAndDecrement() > 0) {
+            return true;
+        }
+        final double rate = errorRate;
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private void respond(final HttpExchange exchange, final int status,
+            final byte[] body) {
+        if (holding) {
+            heldCount.incrementAndGet();
+            held.add(new Runnable() {
+                @Override
+                public void run() {
+                    send(exchange, status, body);
+                }
+            });
+            if (!holding) {
+                // released while this one was being added
+                sendHeld();
+            }
+            return;
+        }
+
+        final long delay = latencyNanos;
+        if (0 == delay) {
+            send(exchange, status, body);
+            return;
+        }
+
+        responder.schedule(new Runnable() {
+            @Override
+            public void run() {
+                send(exchange, status, body);
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private void sendHeld() {
+        for (Runnable response = held.poll(); null != response; response = held
+                .poll()) {
+            heldCount.decrementAndGet();
+            response.run();
+        }
+    }
+
+    private static void send(final HttpExchange exchange, final int status,
+            final byte[] body) {
+        try {
+            exchange.getResponseHeaders().set("Content-Type",
+                    "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            final OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        } catch (IOException e) {
+            // the client went away
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return the currency of a path "BTC{currency}/" + resource, null if it
+     *         has none
+     */
+    private static ECurrency currencyOf(final String path,
+            final String resource) {
+        if (path.length() != 7 + resource.length() || !path.startsWith("BTC")
+                || '/' != path.charAt(6)) {
+            return null;
+        }
+        return ECurrency.fromCode(path.subSequence(3, 6));
+    }
+
+    /**
+     * @return the nonce form parameter of body, -1 if it has none
+     */
+    private static long nonceOf(final String body) {
+        for (String param : body.split("&")) {
+            if (param.startsWith(NONCE)) {
+                try {
+                    return Long.parseLong(param.substring(NONCE.length()));
+                } catch (NumberFormatException e) {
+                    return -1L;
+                }
+            }
+        }
+        return -1L;
+    }
+
+    /**
+     * @return the url-decoded form parameters of body
+     */
+    private static Map<String, String> formOf(final String body) {
+        final Map<String, String> form = new HashMap<String, String>();
+        for (String param : body.split("&")) {
+            final int eq = param.indexOf('=');
+            if (eq > 0) {
+                try {
+                    form.put(URLDecoder.decode(param.substring(0, eq), "UTF-8"),
+                            URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return form;
+    }
+
+    private static String amount(final long valueInt, final ECurrency currency) {
+        return "{\"value\":\""
+                + FixedPoint.appendTo(new StringBuilder(), valueInt, currency) + "\",\"value_int\":\""
+                + valueInt + "\",\"currency\":\"" + currency.name() + "\"}";
+    }
+
+    private static boolean isResource(final String path, final String resource) {
+        return resource.equals(path) || null != currencyOf(path, resource);
+    }
+
+    private static byte[] error(final String error, final String token) {
+        return ("{\"result\":\"error\",\"error\":\"" + error
+                + "\",\"token\":\"" + token + "\"}").getBytes(Charsets.UTF_8);
+    }
+
+    /**
+     * A registered API key: its per-thread keyed {@link Mac} and the last
+     * nonce it was accepted with.
+     */
+    private static final class ApiKey {
+        private final AtomicLong lastNonce = new AtomicLong();
+        private final ThreadLocal<Mac> mac;
+
+        private ApiKey(final byte[] secret) {
+            mac = new ThreadLocal<Mac>() {
+                @Override
+                protected Mac initialValue() {
+                    try {
+                        final Mac created = Mac.getInstance(HMAC_SHA_512);
+                        created.init(new SecretKeySpec(secret, HMAC_SHA_512));
+                        return created;
+                    } catch (NoSuchAlgorithmException e) {
+                        throw new IllegalStateException(e);
+                    } catch (InvalidKeyException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.relish.mtgox4j.http.PooledTransport;
+import com.relish.mtgox4j.http.TransportConfig;
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.MoneyInfo;
+import com.relish.mtgox4j.security.MtGoxSecurity;
+
+/**
+ * Tests of the client at scale against a {@link LocalMtGoxServer}, run with
+ * the scaling profile. The load is set with the system properties
+ * mtgox4j.scaling.calls and mtgox4j.scaling.connections.
+ */
+@Category(ScalingTests.class)
+public class LocalMtGoxServerScalingTest {
+    private static final String API_KEY = "key";
+    private static final String SECRET = "dGhpcyBpcyBub3QgYSByZWFsIE10R294IGFwaSBzZWNyZXQ=";
+    private static final int CALLS = Integer.getInteger(
+            "mtgox4j.scaling.calls", 10000);
+    private static final int CONNECTIONS = Integer.getInteger(
+            "mtgox4j.scaling.connections", CALLS);
+
+    private LocalMtGoxServer server;
+
+    @Before
+    public void setup() throws IOException {
+        server = new LocalMtGoxServer();
+    }
+
+    @After
+    public void teardown() {
+        server.close();
+    }
+
+    /**
+     * Thousands of accounts, each with its own security context, make a
+     * blocking call each on a thread per call, sharing one connection pool.
+     * Responses are held until the server has received a request on every
+     * pooled connection, so as many calls as there are connections are in
+     * flight at the server at once, with the rest waiting for a connection.
+     * 
+     * @throws Exception
+     *             if a request failed
+     */
+    @Test
+    public void blockingExecutorScales() throws Exception {
+        final int atServer = Math.min(CALLS, CONNECTIONS);
+        final AtomicInteger inFlight = new AtomicInteger();
+        final Executor threads = threadPerCall();
+        final Executor counting = new Executor() {
+            @Override
+            public void execute(final Runnable call) {
+                threads.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        inFlight.incrementAndGet();
+                        try {
+                            call.run();
+                        } finally {
+                            inFlight.decrementAndGet();
+                        }
+                    }
+                });
+            }
+        };
+        final PooledTransport transport = new PooledTransport.Builder()
+                .blockingExecutor(counting).build(
+                        new TransportConfig.Builder()
+                                .baseUrl(server.getBaseUrl())
+                                .maxConnections(CONNECTIONS)
+                                .maxConnectionsPerRoute(CONNECTIONS)
+                                .poolTimeoutMillis(0)
+                                .readTimeoutMillis(120000).build());
+
+        try {
+            final List<ListenableFuture<MoneyInfo>> responses = new ArrayList<ListenableFuture<MoneyInfo>>(
+                    CALLS);
+            server.holdResponses();
+            for (int i = 0; i < CALLS; i++) {
+                final String apiKey = API_KEY + i;
+                server.addApiKey(apiKey, SECRET);
+                final MtGoxClient client = new MtGoxClient(ECurrency.USD,
+                        Optional.of(new MtGoxSecurity(apiKey, SECRET)),
+                        transport);
+                responses.add(client.getMoneyInfoAsync(new MoneyInfo()));
+            }
+
+            final long deadline = System.nanoTime()
+                    + TimeUnit.SECONDS.toNanos(120);
+            while (server.getHeld() < atServer && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(atServer, server.getHeld());
+            assertEquals(CALLS, inFlight.get());
+            server.releaseResponses();
+
+            for (MoneyInfo info : Futures.allAsList(responses).get(120,
+                    TimeUnit.SECONDS)) {
+                assertTrue(info.isSuccess());
+            }
+            assertEquals(CALLS, server.getRequests());
+            assertEquals(0, server.getNonceRejections());
+        } finally {
+            transport.close();
+            if (threads instanceof ExecutorService) {
+                ((ExecutorService) threads).shutdown();
+            }
+        }
+    }
+
+    /**
+     * @return an executor running each call on a virtual thread of its own
+     *         where the JDK has them, else on a platform thread of its own
+     */
+    private static Executor threadPerCall() {
+        try {
+            return (Executor) Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return new Executor() {
+                @Override
+                public void execute(final Runnable call) {
+                    new Thread(null, call, "account-call", 256 * 1024).start();
+                }
+            };
+        }
+    }
+}
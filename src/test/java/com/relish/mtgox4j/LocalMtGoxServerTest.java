@@ -0,0 +1,330 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.relish.mtgox4j.http.HttpStatusException;
+import com.relish.mtgox4j.http.PooledTransport;
+import com.relish.mtgox4j.http.ResponseDecoders;
+import com.relish.mtgox4j.http.TransportConfig;
+import com.relish.mtgox4j.metrics.EndpointMetrics;
+import com.relish.mtgox4j.metrics.HistogramMetrics;
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.EOrderStatus;
+import com.relish.mtgox4j.model.EOrderType;
+import com.relish.mtgox4j.model.MoneyInfo;
+import com.relish.mtgox4j.model.OpenOrders;
+import com.relish.mtgox4j.model.json.TickerFast;
+import com.relish.mtgox4j.security.MonotonicNonceSource;
+import com.relish.mtgox4j.security.MtGoxSecurity;
+import com.relish.mtgox4j.security.NonceSource;
+import com.relish.mtgox4j.security.SecuredEndpoint;
+import com.relish.mtgox4j.security.SecuredPipeline;
+import com.sun.jersey.api.client.UniformInterfaceException;
+
+/**
+ * Tests of the client against a {@link LocalMtGoxServer} over real HTTP,
+ * including the server's checks and injected faults.
+ */
+public class LocalMtGoxServerTest {
+    private static final String API_KEY = "key";
+    private static final String SECRET = "dGhpcyBpcyBub3QgYSByZWFsIE10R294IGFwaSBzZWNyZXQ=";
+    private static final int CONNECTIONS = 64;
+
+    private LocalMtGoxServer server;
+    private PooledTransport transport;
+
+    @Before
+    public void setup() throws IOException {
+        server = new LocalMtGoxServer();
+        server.addApiKey(API_KEY, SECRET);
+        transport = new PooledTransport(new TransportConfig.Builder()
+                .baseUrl(server.getBaseUrl()).maxConnections(CONNECTIONS)
+                .maxConnectionsPerRoute(CONNECTIONS).build());
+    }
+
+    @After
+    public void teardown() {
+        transport.close();
+        server.close();
+    }
+
+    @Test
+    public void tickerFast() {
+        final MtGoxClient client = new MtGoxClient(ECurrency.EUR,
+                Optional.<MtGoxSecurity> absent(), transport);
+
+        final TickerFast ticker = client.getTickerFast();
+        assertEquals(ECurrency.EUR, ticker.getData().getBuy().getCurrency());
+        assertEquals(1, server.getRequests());
+    }
+
+    /**
+     * Tickers loaded by a cache or a multi-currency client are reported to
+     * the transport's metrics like direct ones.
+     */
+    @Test
+    public void cachedAndMultiCurrencyTickersAreMeasured() {
+        final HistogramMetrics metrics = new HistogramMetrics();
+        final PooledTransport measured = new PooledTransport.Builder()
+                .metrics(metrics).build(
+                        new TransportConfig.Builder().baseUrl(
+                                server.getBaseUrl()).build());
+        try {
+            final MtGoxClient client = new MtGoxClient(ECurrency.USD,
+                    Optional.<MtGoxSecurity> absent(), measured,
+                    new TickerCache.Builder().build(measured));
+            client.getTickerFast();
+            client.getTickerFast();
+            new MultiCurrencyClient(measured, 2).getTickerFast(EnumSet.of(
+                    ECurrency.EUR, ECurrency.GBP));
+
+            final EndpointMetrics ticker = metrics.getEndpoint(
+                    "money/ticker_fast").get();
+            assertEquals(3, ticker.getCalls());
+            assertTrue(ticker.getBytesReceived() > 0);
+            assertEquals(0, ticker.getErrors());
+        } finally {
+            measured.close();
+        }
+    }
+
+    @Test
+    public void moneyInfo() throws Exception {
+        final MtGoxClient client = new MtGoxClient(ECurrency.USD,
+                Optional.of(new MtGoxSecurity(API_KEY, SECRET,
+                        new MonotonicNonceSource())), transport);
+
+        assertTrue(client.getMoneyInfo().contains("\"Wallets\""));
+        assertTrue(client.getMoneyInfoAsync().get(5, TimeUnit.SECONDS)
+                .contains("\"Wallets\""));
+
+        final MoneyInfo holder = new MoneyInfo();
+        assertSame(holder, client.getMoneyInfo(holder));
+        assertEquals(1250000000L, holder.getBalanceInt(ECurrency.BTC));
+        assertSame(holder, client.getMoneyInfoAsync(holder).get(5,
+                TimeUnit.SECONDS));
+        assertEquals(123456789L, holder.getBalanceInt(ECurrency.USD));
+        assertEquals(0, server.getSignatureRejections());
+    }
+
+    @Test
+    public void orders() throws Exception {
+        final MtGoxClient client = new MtGoxClient(ECurrency.USD,
+                Optional.of(new MtGoxSecurity(API_KEY, SECRET,
+                        new MonotonicNonceSource())), transport);
+        final OpenOrders orders = new OpenOrders();
+
+        final String bid = client.addOrder(EOrderType.BID, 150000000L,
+                9500000L);
+        final String ask = client.addOrderAsync(EOrderType.ASK, 20000000L,
+                12000000L).get(5, TimeUnit.SECONDS);
+        client.addMarketOrder(EOrderType.BID, 10000000L);
+
+        assertSame(orders, client.getOrders(orders));
+        assertEquals(2, orders.size());
+        assertEquals(bid, orders.get(0).getOid());
+        assertSame(EOrderType.BID, orders.get(0).getType());
+        assertSame(EOrderStatus.OPEN, orders.get(0).getStatus());
+        assertEquals(150000000L, orders.get(0).getAmountInt());
+        assertEquals(9500000L, orders.get(0).getPriceInt());
+        assertSame(ECurrency.USD, orders.get(0).getCurrency());
+        assertEquals(ask, orders.get(1).getOid());
+
+        assertEquals(bid, client.cancelOrder(bid));
+        assertEquals(ask, client.cancelOrderAsync(ask).get(5, TimeUnit.SECONDS));
+        assertTrue(client.getOrdersAsync(orders).get(5, TimeUnit.SECONDS)
+                .isEmpty());
+
+        try {
+            client.cancelOrder(bid);
+            fail();
+        } catch (UniformInterfaceException e) {
+            assertEquals(404, e.getResponse().getStatus());
+        }
+        assertEquals(0, server.getSignatureRejections());
+        assertEquals(0, server.getNonceRejections());
+    }
+
+    @Test
+    public void wrongSecretRejected() {
+        final MtGoxClient client = new MtGoxClient(ECurrency.USD,
+                Optional.of(new MtGoxSecurity(API_KEY,
+                        "bm90IHRoZSBzZWNyZXQ=", new MonotonicNonceSource())),
+                transport);
+
+        try {
+            client.getMoneyInfo();
+            fail();
+        } catch (UniformInterfaceException e) {
+            assertEquals(403, e.getResponse().getStatus());
+        }
+        assertEquals(1, server.getSignatureRejections());
+    }
+
+    @Test
+    public void repeatedNonceRejected() {
+        final MtGoxClient client = new MtGoxClient(ECurrency.USD,
+                Optional.of(new MtGoxSecurity(API_KEY, SECRET,
+                        new NonceSource() {
+                            @Override
+                            public long nextNonce() {
+                                return 42L;
+                            }
+                        })), transport);
+
+        client.getMoneyInfo();
+        try {
+            client.getMoneyInfo();
+            fail();
+        } catch (UniformInterfaceException e) {
+            assertEquals(403, e.getResponse().getStatus());
+            assertTrue(e.getResponse().getEntity(String.class)
+                    .contains("nonce"));
+        }
+        assertEquals(1, server.getNonceRejections());
+    }
+
+    @Test
+    public void injectedFailures() throws Exception {
+        final MtGoxClient client = new MtGoxClient(ECurrency.USD,
+                Optional.<MtGoxSecurity> absent(), transport);
+        server.failNext(1, 502);
+
+        try {
+            client.getTickerFastAsync().get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(502,
+                    ((HttpStatusException) e.getCause()).getStatus());
+        }
+        client.getTickerFastAsync().get(5, TimeUnit.SECONDS);
+        assertEquals(1, server.getInjectedFailures());
+    }
+
+    @Test
+    public void injectedLatency() throws Exception {
+        final MtGoxClient client = new MtGoxClient(ECurrency.USD,
+                Optional.<MtGoxSecurity> absent(), transport);
+        server.setLatency(200, TimeUnit.MILLISECONDS);
+
+        final long start = System.nanoTime();
+        client.getTickerFastAsync().get(5, TimeUnit.SECONDS);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS
+                .toNanos(200));
+    }
+
+    @Test
+    public void throttling() throws Exception {
+        final MtGoxClient client = new MtGoxClient(ECurrency.USD,
+                Optional.<MtGoxSecurity> absent(), transport);
+        server.setRateLimit(5);
+
+        int rejected = 0;
+        for (int i = 0; i < 20; i++) {
+            try {
+                client.getTickerFastAsync().get(5, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertEquals(429,
+                        ((HttpStatusException) e.getCause()).getStatus());
+                rejected++;
+            }
+        }
+        assertTrue(rejected > 0);
+        assertEquals(rejected, server.getThrottled());
+    }
+
+    /**
+     * Thousands of public requests, with as many in flight as there are
+     * connections, and hundreds of secured ones interleaved with them all
+     * complete with no nonce rejected.
+     * 
+     * @throws Exception
+     *             if a request failed
+     */
+    @Test
+    public void load() throws Exception {
+        final int publicRequests = 5000;
+        final int securedRequests = 500;
+        final MtGoxClient client = new MtGoxClient(ECurrency.USD,
+                Optional.<MtGoxSecurity> absent(), transport);
+        // the server's handler threads reorder requests that arrive on
+        // different connections at once, so pipelined nonces can be rejected
+        final MtGoxSecurity security = new MtGoxSecurity(API_KEY, SECRET,
+                new MonotonicNonceSource());
+        final SecuredPipeline pipeline = new SecuredPipeline.Builder()
+                .maxInFlight(1).build(security, transport);
+        final SecuredEndpoint info = security.endpoint(transport,
+                "BTCUSD/money/info");
+
+        final Semaphore permits = new Semaphore(CONNECTIONS);
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final FutureCallback<Object> callback = new FutureCallback<Object>() {
+            @Override
+            public void onSuccess(final Object result) {
+                succeeded.incrementAndGet();
+                permits.release();
+            }
+
+            @Override
+            public void onFailure(final Throwable t) {
+                failure.compareAndSet(null, t);
+                permits.release();
+            }
+        };
+
+        for (int i = 0; i < publicRequests + securedRequests; i++) {
+            permits.acquire();
+            final ListenableFuture<?> response = i % 11 == 10 ? pipeline
+                    .submit(info, ResponseDecoders.string(),
+                            Optional.<String> absent()) : client
+                    .getTickerFastAsync();
+            Futures.addCallback(response, callback);
+        }
+        assertTrue(permits.tryAcquire(CONNECTIONS, 30, TimeUnit.SECONDS));
+        pipeline.close();
+
+        if (null != failure.get()) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(publicRequests + securedRequests, succeeded.get());
+        assertEquals(publicRequests + securedRequests, server.getRequests());
+        assertEquals(0, server.getNonceRejections());
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * A minimal RFC 6455 server for tests: accepts connections, records the text
+ * messages clients send and broadcasts text messages to them.
+ */
+final class LocalWebSocketServer implements Closeable {
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private final ServerSocket serverSocket;
+    private final List<Socket> connections = new CopyOnWriteArrayList<Socket>();
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<String>();
+    private final BlockingQueue<Socket> accepted = new LinkedBlockingQueue<Socket>();
+
+    LocalWebSocketServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        final Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket socket = serverSocket.accept();
+                        handshake(socket);
+                        connections.add(socket);
+                        accepted.add(socket);
+                        startReader(socket);
+                    }
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        }, "local-websocket-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    String getUrl() {
+        return "ws://127.0.0.1:" + serverSocket.getLocalPort() + "/mtgox";
+    }
+
+    /**
+     * @return text messages received from clients, in order
+     */
+    BlockingQueue<String> getReceived() {
+        return received;
+    }
+
+    /**
+     * @return connections in the order they were accepted
+     */
+    BlockingQueue<Socket> getAccepted() {
+        return accepted;
+    }
+
+    void broadcast(final String text) throws IOException {
+        for (Socket socket : connections) {
+            sendFrame(socket, 0x81, text.getBytes(Charsets.UTF_8));
+        }
+    }
+
+    /**
+     * Send text to every client split into a first frame and a continuation.
+     */
+    void broadcastFragmented(final String text, final int split)
+            throws IOException {
+        final byte[] bytes = text.getBytes(Charsets.UTF_8);
+        final byte[] first = new byte[split];
+        final byte[] rest = new byte[bytes.length - split];
+        System.arraycopy(bytes, 0, first, 0, split);
+        System.arraycopy(bytes, split, rest, 0, rest.length);
+        for (Socket socket : connections) {
+            sendFrame(socket, 0x01, first);
+            sendFrame(socket, 0x80, rest);
+        }
+    }
+
+    /**
+     * Drop every connection without a close handshake.
+     */
+    void dropConnections() throws IOException {
+        for (Socket socket : connections) {
+            connections.remove(socket);
+            socket.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+    }
+
+    private static void handshake(final Socket socket) throws IOException {
+        final InputStream in = socket.getInputStream();
+        final StringBuilder request = new StringBuilder();
+        while (request.indexOf("\r\n\r\n") < 0) {
+            final int b = in.read();
+            if (b < 0) {
+                throw new IOException("handshake truncated");
+            }
+            request.append((char) b);
+        }
+
+        String key = null;
+        for (String line : request.toString().split("\r\n")) {
+            if (line.toLowerCase().startsWith("sec-websocket-key:")) {
+                key = line.substring(line.indexOf(':') + 1).trim();
+            }
+        }
+
+        final String accept;
+        try {
+            accept = BaseEncoding.base64().encode(
+                    MessageDigest.getInstance("SHA-1").digest(
+                            (key + GUID).getBytes(Charsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        final OutputStream out = socket.getOutputStream();
+        out.write(("HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\nConnection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n")
+                .getBytes(Charsets.US_ASCII));
+        out.flush();
+    }
+
+    private void startReader(final Socket socket) {
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final DataInputStream in = new DataInputStream(socket
+                            .getInputStream());
+                    final ByteArrayOutputStream message = new ByteArrayOutputStream();
+                    while (true) {
+                        final int head = in.readUnsignedByte();
+                        final int second = in.readUnsignedByte();
+                        long len = second & 0x7f;
+                        if (126 == len) {
+                            len = in.readUnsignedShort();
+                        } else if (127 == len) {
+                            len = in.readLong();
+                        }
+                        final byte[] mask = new byte[4];
+                        if (0 != (second & 0x80)) {
+                            in.readFully(mask);
+                        }
+                        final byte[] payload = new byte[(int) len];
+                        in.readFully(payload);
+                        for (int i = 0; i < payload.length; i++) {
+                            payload[i] ^= mask[i & 3];
+                        }
+
+                        final int opcode = head & 0x0f;
+                        if (8 == opcode) {
+                            sendFrame(socket, 0x88, new byte[0]);
+                            connections.remove(socket);
+                            socket.close();
+                            return;
+                        } else if (9 == opcode) {
+                            sendFrame(socket, 0x8a, payload);
+                        } else if (1 == opcode || 0 == opcode) {
+                            message.write(payload);
+                            if (0 != (head & 0x80)) {
+                                received.add(new String(message.toByteArray(),
+                                        Charsets.UTF_8));
+                                message.reset();
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    connections.remove(socket);
+                }
+            }
+        }, "local-websocket-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private static void sendFrame(final Socket socket, final int head,
+            final byte[] payload) throws IOException {
+        final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write(head);
+        if (payload.length < 126) {
+            frame.write(payload.length);
+        } else {
+            frame.write(126);
+            frame.write(payload.length >>> 8);
+            frame.write(payload.length & 0xff);
+        }
+        frame.write(payload);
+
+        synchronized (socket) {
+            final OutputStream out = socket.getOutputStream();
+            out.write(frame.toByteArray());
+            out.flush();
+        }
+    }
+}
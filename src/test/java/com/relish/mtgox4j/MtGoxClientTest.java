@@ -21,6 +21,8 @@ import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 
 import org.codehaus.jackson.JsonParseException;
 import org.codehaus.jackson.map.JsonMappingException;
@@ -31,6 +33,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
@@ -46,6 +49,7 @@ import com.sun.jersey.api.client.config.DefaultClientConfig;
  */
 @RunWith(PowerMockRunner.class)
 @PrepareForTest(Client.class)
+@PowerMockIgnore("jdk.internal.reflect.*")
 public class MtGoxClientTest {
     @Mock
     private Client client;
@@ -56,7 +60,8 @@ public class MtGoxClientTest {
     private TickerFast tFast;
 
     /**
-     * Mock out Jersey {@link Client} to return stubbed {@link TickerFast}.
+     * Mock out Jersey {@link Client} to return the stubbed json file as the
+     * response body, which the client decodes into {@link TickerFast}.
      * 
      * @throws JsonParseException
      *             if there was a problem parsing the stubbed json file
@@ -76,9 +81,12 @@ public class MtGoxClientTest {
         tFast = mapper.readValue(this.getClass().getClassLoader()
                 .getResourceAsStream("TickerFast.json"), TickerFast.class);
 
-        when(resource.get(TickerFast.class)).thenReturn(tFast);
+        when(resource.get(InputStream.class)).thenReturn(
+                this.getClass().getClassLoader()
+                        .getResourceAsStream("TickerFast.json"));
         when(
-                client.resource("https://data.mtgox.com/api/2/BTCUSD/money/ticker_fast"))
+                client.resource(URI
+                        .create("https://data.mtgox.com/api/2/BTCUSD/money/ticker_fast")))
                 .thenReturn(resource);
     }
 
@@ -0,0 +1,193 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.ning.http.client.AsyncHttpClient;
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.EStreamChannel;
+import com.relish.mtgox4j.model.MutableDepthUpdate;
+import com.relish.mtgox4j.model.MutableTickerFast;
+import com.relish.mtgox4j.model.MutableTrade;
+
+/**
+ * Unit tests for {@link MtGoxStreamClient} against a
+ * {@link LocalWebSocketServer}.
+ */
+public class MtGoxStreamClientTest {
+    private static final String TICKER = "{\"channel\":\"d5f06780\",\"op\":\"private\",\"origin\":\"broadcast\",\"private\":\"ticker\","
+            + "\"ticker\":{\"buy\":{\"value\":\"98.53741\",\"value_int\":\"9853741\",\"display\":\"$98.54\",\"display_short\":\"$98.54\",\"currency\":\"USD\"},"
+            + "\"sell\":{\"value_int\":\"9869847\",\"currency\":\"USD\"},\"now\":\"1367550485692271\"}}";
+    private static final String TRADE = "{\"op\":\"private\",\"private\":\"trade\",\"trade\":{\"type\":\"trade\",\"date\":1367550485,"
+            + "\"amount\":0.5,\"price\":98.6,\"tid\":\"1367550485123456\",\"amount_int\":\"50000000\",\"price_int\":\"9860000\","
+            + "\"item\":\"BTC\",\"price_currency\":\"USD\",\"trade_type\":\"bid\",\"primary\":\"Y\",\"properties\":\"limit\"}}";
+    private static final String DEPTH = "{\"op\":\"private\",\"private\":\"depth\",\"depth\":{\"price\":\"98.7\",\"type\":1,\"type_str\":\"ask\","
+            + "\"volume\":\"-1.5\",\"price_int\":\"9870000\",\"volume_int\":\"-150000000\",\"item\":\"BTC\",\"currency\":\"USD\","
+            + "\"now\":\"1367550485700000\",\"total_volume_int\":\"250000000\"}}";
+
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+    private LocalWebSocketServer server;
+    private AsyncHttpClient asyncClient;
+    private MtGoxStreamClient client;
+
+    @Before
+    public void setup() throws IOException {
+        server = new LocalWebSocketServer();
+        asyncClient = new AsyncHttpClient();
+        client = new MtGoxStreamClient.Builder().url(server.getUrl())
+                .reconnectBackoff(10, 100, TimeUnit.MILLISECONDS)
+                .build(asyncClient);
+        client.addListener(new StreamListener() {
+            @Override
+            public void onTicker(final ECurrency currency,
+                    final MutableTickerFast ticker) {
+                events.add("ticker " + currency.name() + " " + ticker.getNow() + " "
+                        + ticker.getBuy().getValueInt());
+            }
+
+            @Override
+            public void onTrade(final ECurrency currency,
+                    final MutableTrade trade) {
+                events.add("trade " + currency.name() + " " + trade.getTid() + " "
+                        + trade.getPriceInt() + " " + trade.isBid());
+            }
+
+            @Override
+            public void onDepth(final ECurrency currency,
+                    final MutableDepthUpdate depth) {
+                events.add("depth " + currency.name() + " " + depth.getPriceInt()
+                        + " " + depth.getVolumeInt() + " " + depth.isAsk());
+            }
+
+            @Override
+            public void onConnected() {
+                events.add("connected");
+            }
+
+            @Override
+            public void onDisconnected(final Throwable cause) {
+                events.add("disconnected");
+            }
+        });
+    }
+
+    @After
+    public void teardown() throws IOException {
+        client.close();
+        asyncClient.close();
+        server.close();
+    }
+
+    @Test
+    public void subscribesAndDecodes() throws Exception {
+        client.subscribe(EStreamChannel.TICKER, ECurrency.USD);
+        client.start();
+        assertEquals("connected", events.poll(5, TimeUnit.SECONDS));
+        assertEquals(
+                "{\"op\":\"mtgox.subscribe\",\"channel\":\"ticker.BTCUSD\"}",
+                server.getReceived().poll(5, TimeUnit.SECONDS));
+
+        client.subscribe(EStreamChannel.TRADE, ECurrency.USD);
+        assertEquals(
+                "{\"op\":\"mtgox.subscribe\",\"channel\":\"trade.BTCUSD\"}",
+                server.getReceived().poll(5, TimeUnit.SECONDS));
+
+        server.broadcast(TICKER);
+        server.broadcast(TRADE);
+        server.broadcast(DEPTH);
+        server.broadcast("{\"op\":\"subscribe\",\"channel\":\"d5f06780\"}");
+        server.broadcastFragmented(TICKER, 40);
+
+        assertEquals("ticker USD 1367550485692271 9853741",
+                events.poll(5, TimeUnit.SECONDS));
+        assertEquals("trade USD 1367550485123456 9860000 true",
+                events.poll(5, TimeUnit.SECONDS));
+        assertEquals("depth USD 9870000 -150000000 true",
+                events.poll(5, TimeUnit.SECONDS));
+        assertEquals("ticker USD 1367550485692271 9853741",
+                events.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void unsubscribe() throws Exception {
+        client.subscribe(EStreamChannel.DEPTH, ECurrency.EUR);
+        client.start();
+        server.getReceived().poll(5, TimeUnit.SECONDS);
+
+        client.unsubscribe(EStreamChannel.DEPTH, ECurrency.EUR);
+        assertEquals(
+                "{\"op\":\"mtgox.unsubscribe\",\"channel\":\"depth.BTCEUR\"}",
+                server.getReceived().poll(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * A dropped connection is re-established and every subscription is sent
+     * again.
+     * 
+     * @throws Exception
+     *             if the server failed
+     */
+    @Test
+    public void reconnectsAndResubscribes() throws Exception {
+        client.subscribe(EStreamChannel.TICKER,
+                ImmutableSet.of(ECurrency.USD, ECurrency.EUR));
+        client.start();
+        assertEquals("connected", events.poll(5, TimeUnit.SECONDS));
+        assertNotNull(server.getAccepted().poll(5, TimeUnit.SECONDS));
+        assertEquals(2, subscribed().size());
+
+        server.dropConnections();
+        assertEquals("disconnected", events.poll(5, TimeUnit.SECONDS));
+        assertEquals("connected", events.poll(5, TimeUnit.SECONDS));
+        assertNotNull(server.getAccepted().poll(5, TimeUnit.SECONDS));
+        assertEquals(
+                ImmutableSet.of(
+                        "{\"op\":\"mtgox.subscribe\",\"channel\":\"ticker.BTCUSD\"}",
+                        "{\"op\":\"mtgox.subscribe\",\"channel\":\"ticker.BTCEUR\"}"),
+                subscribed());
+        assertTrue(client.isConnected());
+
+        server.broadcast(TICKER);
+        assertEquals("ticker USD 1367550485692271 9853741",
+                events.poll(5, TimeUnit.SECONDS));
+    }
+
+    private Set<String> subscribed() throws InterruptedException {
+        final Set<String> messages = new HashSet<String>();
+        for (int i = 0; i < 2; i++) {
+            messages.add(server.getReceived().poll(5, TimeUnit.SECONDS));
+        }
+        return messages;
+    }
+}
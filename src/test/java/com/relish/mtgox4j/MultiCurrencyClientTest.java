@@ -0,0 +1,198 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.relish.mtgox4j.http.HttpStatusException;
+import com.relish.mtgox4j.http.PooledTransport;
+import com.relish.mtgox4j.http.TransportConfig;
+import com.relish.mtgox4j.model.ECurrency;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests for {@link MultiCurrencyClient} against a local HTTP server that
+ * serves TickerFast.json for every pair except BTCJPY.
+ */
+public class MultiCurrencyClientTest {
+    private static final int MAX_PARALLEL = 3;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    private HttpServer server;
+    private PooledTransport transport;
+    private MultiCurrencyClient client;
+    private byte[] tickerFast;
+
+    @Before
+    public void setup() throws IOException {
+        tickerFast = ByteStreams.toByteArray(getClass().getClassLoader()
+                .getResourceAsStream("TickerFast.json"));
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final int now = active.incrementAndGet();
+                while (true) {
+                    final int max = maxActive.get();
+                    if (now <= max || maxActive.compareAndSet(max, now)) {
+                        break;
+                    }
+                }
+
+                try {
+                    Thread.sleep(20L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                active.decrementAndGet();
+                if (exchange.getRequestURI().getPath()
+                        .equals("/BTCJPY/money/ticker_fast")) {
+                    exchange.sendResponseHeaders(503, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.sendResponseHeaders(200, tickerFast.length);
+                final OutputStream out = exchange.getResponseBody();
+                try {
+                    out.write(tickerFast);
+                } finally {
+                    out.close();
+                }
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        transport = new PooledTransport(new TransportConfig.Builder().baseUrl(
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/")
+                .build());
+        client = new MultiCurrencyClient(transport, MAX_PARALLEL);
+    }
+
+    @After
+    public void teardown() {
+        client.close();
+        transport.close();
+        server.stop(0);
+    }
+
+    /**
+     * Every pair is fetched, the failing pair is recorded rather than failing
+     * the snapshot and no more than maxParallel requests are in flight.
+     */
+    @Test
+    public void allPairsWithPartialFailure() {
+        final TickerSnapshot snapshot = client
+                .getTickerFast(MultiCurrencyClient.ALL_PAIRS);
+
+        assertEquals(MultiCurrencyClient.ALL_PAIRS, snapshot.getRequested());
+        assertEquals(EnumSet.of(ECurrency.JPY), snapshot.getFailed());
+        assertEquals(
+                EnumSet.complementOf(EnumSet.of(ECurrency.BTC, ECurrency.JPY)),
+                snapshot.getSucceeded());
+        assertFalse(snapshot.isComplete());
+        assertEquals(503, ((HttpStatusException) snapshot.getFailure(
+                ECurrency.JPY).get()).getStatus());
+        assertEquals("success", snapshot.getTicker(ECurrency.USD).get()
+                .getResult());
+        assertFalse(snapshot.getTicker(ECurrency.BTC).isPresent());
+
+        assertTrue(maxActive.get() <= MAX_PARALLEL);
+        assertEquals(0, client.getInFlight());
+    }
+
+    /**
+     * The parallelism bound holds across concurrent calls.
+     * 
+     * @throws Exception
+     *             if a snapshot could not be fetched
+     */
+    @Test
+    public void boundSharedAcrossCalls() throws Exception {
+        final List<ListenableFuture<TickerSnapshot>> futures = ImmutableList
+                .of(client.getTickerFastAsync(EnumSet.of(ECurrency.USD,
+                        ECurrency.EUR, ECurrency.GBP)), client
+                        .getTickerFastAsync(EnumSet.of(ECurrency.USD,
+                                ECurrency.AUD, ECurrency.CAD)), client
+                        .getTickerFastAsync(EnumSet.of(ECurrency.CHF,
+                                ECurrency.CNY)));
+
+        for (TickerSnapshot snapshot : Futures.allAsList(futures).get(10,
+                TimeUnit.SECONDS)) {
+            assertTrue(snapshot.isComplete());
+        }
+        assertTrue(maxActive.get() <= MAX_PARALLEL);
+    }
+
+    /**
+     * A long queue of cancelled fetches is skipped in a loop, not by
+     * recursing once per fetch, and the client stays usable.
+     * 
+     * @throws Exception
+     *             if a snapshot could not be fetched
+     */
+    @Test
+    public void cancelledBacklog() throws Exception {
+        final ListenableFuture<TickerSnapshot> running = client
+                .getTickerFastAsync(EnumSet.of(ECurrency.USD, ECurrency.EUR,
+                        ECurrency.GBP));
+        for (int i = 0; i < 5000; i++) {
+            client.getTickerFastAsync(MultiCurrencyClient.ALL_PAIRS).cancel(
+                    true);
+        }
+
+        assertTrue(running.get(10, TimeUnit.SECONDS).isComplete());
+        assertTrue(client.getTickerFast(EnumSet.of(ECurrency.USD))
+                .isComplete());
+        assertEquals(0, client.getInFlight());
+    }
+
+    @Test
+    public void empty() {
+        final TickerSnapshot snapshot = client.getTickerFast(EnumSet
+                .noneOf(ECurrency.class));
+
+        assertTrue(snapshot.isComplete());
+        assertTrue(snapshot.getSucceeded().isEmpty());
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.json.TickerFast;
+
+/**
+ * Unit tests for {@link TickerCache} with a manual clock and loader.
+ */
+public class TickerCacheTest {
+    private final List<SettableFuture<TickerFast>> requests = new ArrayList<SettableFuture<TickerFast>>();
+    private final long[] nanos = { 0L };
+
+    private TickerCache cache;
+
+    @Before
+    public void setup() {
+        cache = new TickerCache.Builder()
+                .defaultTtl(1, TimeUnit.SECONDS)
+                .ttl(ECurrency.JPY, 10, TimeUnit.SECONDS)
+                .staleWhileRevalidate(5, TimeUnit.SECONDS)
+                .ticker(new Ticker() {
+                    @Override
+                    public long read() {
+                        return nanos[0];
+                    }
+                }).build(new AsyncFunction<ECurrency, TickerFast>() {
+                    @Override
+                    public ListenableFuture<TickerFast> apply(
+                            final ECurrency currency) {
+                        final SettableFuture<TickerFast> request = SettableFuture
+                                .create();
+                        requests.add(request);
+                        return request;
+                    }
+                });
+    }
+
+    /**
+     * Concurrent misses share one request.
+     * 
+     * @throws Exception
+     *             if the load failed
+     */
+    @Test
+    public void singleFlight() throws Exception {
+        final ListenableFuture<TickerFast> first = cache.getAsync(ECurrency.USD);
+        final ListenableFuture<TickerFast> second = cache
+                .getAsync(ECurrency.USD);
+        assertEquals(1, requests.size());
+        assertFalse(first.isDone());
+
+        final TickerFast ticker = new TickerFast();
+        requests.get(0).set(ticker);
+        assertSame(ticker, first.get());
+        assertSame(ticker, second.get());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getLoadCount());
+    }
+
+    /**
+     * A caller giving up on a shared load leaves it running for the others.
+     * 
+     * @throws Exception
+     *             if the load failed
+     */
+    @Test
+    public void cancelOneCaller() throws Exception {
+        final ListenableFuture<TickerFast> first = cache.getAsync(ECurrency.USD);
+        final ListenableFuture<TickerFast> second = cache
+                .getAsync(ECurrency.USD);
+        assertTrue(first.cancel(true));
+        assertFalse(requests.get(0).isCancelled());
+        assertFalse(second.isDone());
+
+        final TickerFast ticker = new TickerFast();
+        requests.get(0).set(ticker);
+        assertSame(ticker, second.get());
+        assertSame(ticker, cache.get(ECurrency.USD));
+        assertEquals(1, cache.getLoadCount());
+    }
+
+    @Test
+    public void freshWithinTtl() {
+        final TickerFast ticker = load(ECurrency.USD);
+
+        nanos[0] += TimeUnit.MILLISECONDS.toNanos(999);
+        assertSame(ticker, cache.get(ECurrency.USD));
+        assertEquals(1, requests.size());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void perCurrencyTtl() {
+        final TickerFast ticker = load(ECurrency.JPY);
+
+        nanos[0] += TimeUnit.SECONDS.toNanos(9);
+        assertSame(ticker, cache.get(ECurrency.JPY));
+        assertEquals(1, requests.size());
+    }
+
+    /**
+     * A stale value is served at once while a single refresh runs.
+     */
+    @Test
+    public void staleWhileRevalidate() {
+        final TickerFast stale = load(ECurrency.USD);
+
+        nanos[0] += TimeUnit.SECONDS.toNanos(2);
+        assertSame(stale, cache.get(ECurrency.USD));
+        assertSame(stale, cache.get(ECurrency.USD));
+        assertEquals(2, requests.size());
+        assertEquals(2, cache.getStaleHitCount());
+
+        final TickerFast fresh = new TickerFast();
+        requests.get(1).set(fresh);
+        assertSame(fresh, cache.get(ECurrency.USD));
+    }
+
+    /**
+     * A failed refresh keeps the stale value; once it expires the caller sees
+     * the failure.
+     * 
+     * @throws Exception
+     *             if the future was interrupted
+     */
+    @Test
+    public void failedRefresh() throws Exception {
+        final TickerFast stale = load(ECurrency.USD);
+
+        nanos[0] += TimeUnit.SECONDS.toNanos(2);
+        assertSame(stale, cache.get(ECurrency.USD));
+        requests.get(1).setException(new IOException("down"));
+        assertSame(stale, cache.get(ECurrency.USD));
+        assertEquals(3, requests.size());
+
+        nanos[0] += TimeUnit.SECONDS.toNanos(10);
+        requests.get(2).setException(new IOException("down"));
+        final ListenableFuture<TickerFast> expired = cache
+                .getAsync(ECurrency.USD);
+        requests.get(3).setException(new IOException("still down"));
+        try {
+            expired.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("still down", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void invalidate() {
+        load(ECurrency.USD);
+        cache.invalidate(ECurrency.USD);
+
+        assertFalse(cache.getAsync(ECurrency.USD).isDone());
+        assertTrue(requests.size() == 2);
+    }
+
+    private TickerFast load(final ECurrency currency) {
+        final ListenableFuture<TickerFast> future = cache.getAsync(currency);
+        final TickerFast ticker = new TickerFast();
+        requests.get(requests.size() - 1).set(ticker);
+        assertTrue(future.isDone());
+        return ticker;
+    }
+}
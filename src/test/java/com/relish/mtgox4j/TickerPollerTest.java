@@ -0,0 +1,224 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.MutableTickerFast;
+
+/**
+ * Unit tests for {@link TickerPoller} with a scripted fetcher.
+ */
+public class TickerPollerTest {
+    private final List<Long> fetchNanos = new CopyOnWriteArrayList<Long>();
+    private final BlockingQueue<Long> updates = new LinkedBlockingQueue<Long>();
+    private final BlockingQueue<Throwable> errors = new LinkedBlockingQueue<Throwable>();
+
+    private TickerPoller poller;
+
+    @After
+    public void teardown() {
+        if (null != poller) {
+            poller.close();
+        }
+    }
+
+    @Test
+    public void sameValues() {
+        final MutableTickerFast a = new MutableTickerFast();
+        final MutableTickerFast b = new MutableTickerFast();
+        a.setNow(5L);
+        b.setNow(5L);
+        a.getSell().setValueInt(100L);
+        b.getSell().setValueInt(100L);
+        assertTrue(TickerPoller.sameValues(a, b));
+
+        b.getSell().setValueInt(101L);
+        assertFalse(TickerPoller.sameValues(a, b));
+
+        b.getSell().setValueInt(100L);
+        b.setNow(6L);
+        assertFalse(TickerPoller.sameValues(a, b));
+    }
+
+    /**
+     * Listeners only hear about responses that differ from the previous one.
+     * 
+     * @throws Exception
+     *             if interrupted
+     */
+    @Test
+    public void suppressesUnchanged() throws Exception {
+        final long[] script = { 1L, 1L, 1L, 2L, 2L, 3L };
+        start(new TickerPoller.Builder().fixedDelay(1, TimeUnit.MILLISECONDS),
+                new TickerFetcher() {
+                    @Override
+                    public void fetch(final ECurrency currency,
+                            final MutableTickerFast holder) {
+                        final int i = fetchNanos.size();
+                        fetchNanos.add(System.nanoTime());
+                        holder.setSuccess(true);
+                        holder.setNow(script[Math.min(i, script.length - 1)]);
+                    }
+                });
+
+        assertEquals(Long.valueOf(1L), updates.poll(5, TimeUnit.SECONDS));
+        assertEquals(Long.valueOf(2L), updates.poll(5, TimeUnit.SECONDS));
+        assertEquals(Long.valueOf(3L), updates.poll(5, TimeUnit.SECONDS));
+        assertEquals(null, updates.poll(50, TimeUnit.MILLISECONDS));
+        assertTrue(errors.isEmpty());
+    }
+
+    /**
+     * Consecutive errors back off towards the maximum.
+     * 
+     * @throws Exception
+     *             if interrupted
+     */
+    @Test
+    public void backsOffOnErrors() throws Exception {
+        start(new TickerPoller.Builder().fixedDelay(1, TimeUnit.MILLISECONDS)
+                .errorBackoff(20, 80, TimeUnit.MILLISECONDS),
+                new TickerFetcher() {
+                    @Override
+                    public void fetch(final ECurrency currency,
+                            final MutableTickerFast holder) throws IOException {
+                        fetchNanos.add(System.nanoTime());
+                        throw new IOException("down");
+                    }
+                });
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("down", errors.poll(5, TimeUnit.SECONDS).getMessage());
+        }
+        // backoffs 20, 40, 80, 80 ms with up to half taken off as jitter
+        assertTrue(gapMillis(1) >= 10);
+        assertTrue(gapMillis(3) >= 40);
+        assertTrue(gapMillis(4) >= 40);
+        assertTrue(updates.isEmpty());
+    }
+
+    /**
+     * An adaptive schedule slows down while nothing changes.
+     * 
+     * @throws Exception
+     *             if interrupted
+     */
+    @Test
+    public void adaptiveSlowsDown() throws Exception {
+        start(new TickerPoller.Builder().adaptiveDelay(10, 80,
+                TimeUnit.MILLISECONDS), new TickerFetcher() {
+            @Override
+            public void fetch(final ECurrency currency,
+                    final MutableTickerFast holder) {
+                fetchNanos.add(System.nanoTime());
+                holder.setSuccess(true);
+                holder.setNow(1L);
+            }
+        });
+
+        while (fetchNanos.size() < 5) {
+            Thread.sleep(10L);
+        }
+        // delays 10 ms after the first response, then 20, 40 and 80 ms
+        assertTrue(gapMillis(3) >= 35);
+        assertTrue(gapMillis(4) >= 70);
+        assertEquals(1, updates.size());
+    }
+
+    /**
+     * An Error from the fetcher or a listener is reported or dropped, and
+     * polling carries on.
+     * 
+     * @throws Exception
+     *             if interrupted
+     */
+    @Test
+    public void survivesErrors() throws Exception {
+        start(new TickerPoller.Builder().fixedDelay(1, TimeUnit.MILLISECONDS)
+                .errorBackoff(1, 1, TimeUnit.MILLISECONDS),
+                new TickerFetcher() {
+                    @Override
+                    public void fetch(final ECurrency currency,
+                            final MutableTickerFast holder) {
+                        final int i = fetchNanos.size();
+                        fetchNanos.add(System.nanoTime());
+                        if (0 == i) {
+                            throw new LinkageError("fetch");
+                        }
+                        holder.setSuccess(true);
+                        holder.setNow(i);
+                    }
+                });
+        poller.addListener(new TickerListener() {
+            @Override
+            public void onTicker(final ECurrency currency,
+                    final MutableTickerFast ticker) {
+                throw new LinkageError("listener");
+            }
+
+            @Override
+            public void onError(final ECurrency currency,
+                    final Throwable failure) {
+            }
+        });
+
+        assertEquals("fetch", errors.poll(5, TimeUnit.SECONDS).getMessage());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(null != updates.poll(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private void start(final TickerPoller.Builder builder,
+            final TickerFetcher fetcher) {
+        poller = builder.currencies(EnumSet.of(ECurrency.USD)).build(fetcher);
+        poller.addListener(new TickerListener() {
+            @Override
+            public void onTicker(final ECurrency currency,
+                    final MutableTickerFast ticker) {
+                updates.add(ticker.getNow());
+            }
+
+            @Override
+            public void onError(final ECurrency currency,
+                    final Throwable failure) {
+                errors.add(failure);
+            }
+        });
+        poller.start();
+    }
+
+    private long gapMillis(final int i) {
+        return TimeUnit.NANOSECONDS.toMillis(fetchNanos.get(i)
+                - fetchNanos.get(i - 1));
+    }
+}
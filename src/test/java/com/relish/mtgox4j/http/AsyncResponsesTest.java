@@ -0,0 +1,261 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.relish.mtgox4j.metrics.EPhase;
+import com.relish.mtgox4j.metrics.EndpointMetrics;
+import com.relish.mtgox4j.metrics.HistogramMetrics;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests for {@link AsyncResponses} against a local HTTP server.
+ */
+public class AsyncResponsesTest {
+    private static final int CONCURRENT_REQUESTS = 200;
+    private static final long SLOW_MILLIS = 200L;
+
+    private HttpServer server;
+    private String baseUrl;
+    private AsyncHttpClient asyncClient;
+    private CountDownLatch release;
+
+    @Before
+    public void setup() throws IOException {
+        release = new CountDownLatch(1);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                respond(exchange, 200, "ok");
+            }
+        });
+        server.createContext("/slow", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(SLOW_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                respond(exchange, 200, exchange.getRequestURI().getQuery());
+            }
+        });
+        server.createContext("/hang", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                respond(exchange, 200, "late");
+            }
+        });
+        server.createContext("/missing", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                respond(exchange, 404, "no such resource");
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        asyncClient = new AsyncHttpClient(new AsyncHttpClientConfig.Builder()
+                .setMaximumConnectionsTotal(-1)
+                .setMaximumConnectionsPerHost(-1).build());
+    }
+
+    @After
+    public void teardown() {
+        release.countDown();
+        asyncClient.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void decodesSuccess() throws Exception {
+        assertEquals(
+                "ok",
+                AsyncResponses.execute(asyncClient.prepareGet(baseUrl + "/ok"),
+                        ResponseDecoders.string()).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failsOnErrorStatus() throws Exception {
+        try {
+            AsyncResponses.execute(
+                    asyncClient.prepareGet(baseUrl + "/missing"),
+                    ResponseDecoders.string()).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof HttpStatusException);
+            assertEquals(404, ((HttpStatusException) e.getCause()).getStatus());
+        }
+    }
+
+    @Test
+    public void failsOnDecodeError() throws Exception {
+        final IOException failure = new IOException("bad body");
+        try {
+            AsyncResponses.execute(asyncClient.prepareGet(baseUrl + "/ok"),
+                    new ResponseDecoder<String>() {
+                        @Override
+                        public String decode(final InputStream body)
+                                throws IOException {
+                            throw failure;
+                        }
+                    }).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(failure, e.getCause());
+        }
+    }
+
+    /**
+     * Each phase of a call is timed, and the phases add up to the whole.
+     * 
+     * @throws Exception
+     *             if the request failed
+     */
+    @Test
+    public void recordsPhases() throws Exception {
+        final HistogramMetrics metrics = new HistogramMetrics();
+        final EndpointMetrics slow = metrics.endpoint("slow");
+
+        assertEquals(
+                "q",
+                AsyncResponses.execute(
+                        asyncClient.prepareGet(baseUrl + "/slow?q"),
+                        ResponseDecoders.string(), slow).get(5,
+                        TimeUnit.SECONDS));
+
+        assertEquals(1, slow.getCalls());
+        assertEquals(0, slow.getErrors());
+        assertEquals(1, slow.getBytesReceived());
+        for (EPhase phase : EnumSet.of(EPhase.SEND, EPhase.WAIT,
+                EPhase.RECEIVE, EPhase.DECODE)) {
+            assertEquals(phase.name(), 1, slow.getHistogram(phase).getCount());
+        }
+        assertEquals(0, slow.getHistogram(EPhase.QUEUE).getCount());
+        assertTrue(slow.getHistogram(EPhase.WAIT).getMax() >= TimeUnit.MILLISECONDS
+                .toNanos(SLOW_MILLIS));
+        assertTrue(slow.getHistogram(EPhase.TOTAL).getMax() >= slow
+                .getHistogram(EPhase.WAIT).getMax());
+    }
+
+    @Test
+    public void recordsErrors() throws Exception {
+        final HistogramMetrics metrics = new HistogramMetrics();
+        final EndpointMetrics missing = metrics.endpoint("missing");
+
+        try {
+            AsyncResponses.execute(
+                    asyncClient.prepareGet(baseUrl + "/missing"),
+                    ResponseDecoders.string(), missing).get(5,
+                    TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof HttpStatusException);
+        }
+
+        assertEquals(1, missing.getCalls());
+        assertEquals(1, missing.getErrors());
+        assertEquals(0, missing.getHistogram(EPhase.DECODE).getCount());
+    }
+
+    @Test(expected = CancellationException.class)
+    public void cancel() throws Exception {
+        final ListenableFuture<String> future = AsyncResponses.execute(
+                asyncClient.prepareGet(baseUrl + "/hang"),
+                ResponseDecoders.string());
+
+        assertTrue(future.cancel(true));
+        future.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Many slow requests are in flight at once without a caller thread per
+     * request: all of them complete in far less than their serial time.
+     * 
+     * @throws Exception
+     *             if a request failed
+     */
+    @Test
+    public void concurrentRequests() throws Exception {
+        final List<ListenableFuture<String>> futures = new ArrayList<ListenableFuture<String>>();
+        final long start = System.nanoTime();
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+            futures.add(AsyncResponses.execute(
+                    asyncClient.prepareGet(baseUrl + "/slow?" + i),
+                    ResponseDecoders.string()));
+        }
+
+        final List<String> results = Futures.allAsList(futures).get(30,
+                TimeUnit.SECONDS);
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System
+                .nanoTime() - start);
+
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+            assertEquals(Integer.toString(i), results.get(i));
+        }
+        assertTrue("took " + elapsedMillis + "ms",
+                elapsedMillis < CONCURRENT_REQUESTS * SLOW_MILLIS / 4);
+    }
+
+    private static void respond(final HttpExchange exchange, final int status,
+            final String body) throws IOException {
+        final byte[] bytes = body.getBytes(Charsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        final OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+}
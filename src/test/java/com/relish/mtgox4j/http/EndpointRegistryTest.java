@@ -0,0 +1,71 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.relish.mtgox4j.MtGoxClient;
+
+/**
+ * Unit tests for {@link EndpointRegistry}.
+ */
+public class EndpointRegistryTest {
+    private Transport transport;
+
+    @Before
+    public void setup() {
+        transport = new DefaultTransport();
+    }
+
+    @After
+    public void teardown() {
+        transport.close();
+    }
+
+    @Test
+    public void samePathSameEndpoint() {
+        final EndpointRegistry endpoints = transport.getEndpoints();
+
+        final BoundEndpoint ticker = endpoints.get("BTCUSD/money/ticker_fast");
+        assertSame(ticker, endpoints.get("BTCUSD/money/ticker_fast"));
+        assertSame(ticker.getResource(),
+                endpoints.get("BTCUSD/money/ticker_fast").getResource());
+        assertNotSame(ticker, endpoints.get("BTCEUR/money/ticker_fast"));
+    }
+
+    @Test
+    public void boundToTransport() {
+        final BoundEndpoint info = transport.getEndpoints().get(
+                "BTCUSD/money/info");
+
+        assertSame(transport, info.getTransport());
+        assertEquals("BTCUSD/money/info", info.getPath());
+        assertEquals("money/info", info.getName());
+        assertEquals(MtGoxClient.BASE_URL + "BTCUSD/money/info", info.getUrl());
+        assertEquals(info.getUrl(), info.getUri().toString());
+        assertEquals(info.getUri(), info.getResource().getURI());
+        assertSame(transport.getMetrics().endpoint("money/info"),
+                info.getRecorder());
+    }
+}
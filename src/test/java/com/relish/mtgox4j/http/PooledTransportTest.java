@@ -0,0 +1,196 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests for {@link PooledTransport} against a local HTTP server.
+ */
+public class PooledTransportTest {
+    private static final int ROUTE_LIMIT = 2;
+
+    private final Set<Integer> clientPorts = Sets
+            .newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    private HttpServer server;
+    private URI baseUri;
+    private PooledTransport transport;
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                final int now = active.incrementAndGet();
+                while (true) {
+                    final int max = maxActive.get();
+                    if (now <= max || maxActive.compareAndSet(max, now)) {
+                        break;
+                    }
+                }
+
+                final String query = exchange.getRequestURI().getQuery();
+                try {
+                    Thread.sleep(null == query ? 0L : Long.parseLong(query));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                active.decrementAndGet();
+                final byte[] body = "ok".getBytes(Charsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                final OutputStream out = exchange.getResponseBody();
+                try {
+                    out.write(body);
+                } finally {
+                    out.close();
+                }
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        baseUri = URI.create("http://127.0.0.1:"
+                + server.getAddress().getPort() + "/");
+
+        transport = new PooledTransport(new TransportConfig.Builder()
+                .routeLimit(baseUri, ROUTE_LIMIT).readTimeoutMillis(500)
+                .build());
+    }
+
+    @After
+    public void teardown() {
+        transport.close();
+        server.stop(0);
+    }
+
+    /**
+     * Sequential requests reuse one kept-alive connection.
+     */
+    @Test
+    public void keepAlive() {
+        for (int i = 0; i < 10; i++) {
+            assertEquals("ok", transport.getRestClient().resource(baseUri)
+                    .get(String.class));
+        }
+
+        assertEquals(1, clientPorts.size());
+        final ConnectionPoolStats stats = transport.getPoolStats(baseUri);
+        assertEquals(0, stats.getLeased());
+        assertEquals(1, stats.getAvailable());
+        assertEquals(ROUTE_LIMIT, stats.getMax());
+        assertEquals(1, transport.getPoolStats().get().getAvailable());
+    }
+
+    /**
+     * Concurrent blocking requests never open more connections than the
+     * route's limit.
+     * 
+     * @throws Exception
+     *             if a request failed
+     */
+    @Test
+    public void routeLimit() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return transport.getRestClient()
+                                .resource(baseUri.resolve("/?20"))
+                                .get(String.class);
+                    }
+                }));
+            }
+            for (Future<String> result : results) {
+                assertEquals("ok", result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(maxActive.get() <= ROUTE_LIMIT);
+        assertTrue(clientPorts.size() <= ROUTE_LIMIT);
+    }
+
+    @Test
+    public void readTimeout() {
+        try {
+            transport.getRestClient().resource(baseUri.resolve("/?2000"))
+                    .get(String.class);
+            fail();
+        } catch (ClientHandlerException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+    }
+
+    /**
+     * The non-blocking client is pooled as well.
+     * 
+     * @throws Exception
+     *             if a request failed
+     */
+    @Test
+    public void asyncKeepAlive() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(
+                    "ok",
+                    AsyncResponses.execute(
+                            transport.getAsyncClient().prepareGet(
+                                    baseUri.toString()),
+                            ResponseDecoders.string()).get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, clientPorts.size());
+    }
+}
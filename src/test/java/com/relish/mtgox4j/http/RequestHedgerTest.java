@@ -0,0 +1,302 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Unit tests for {@link RequestHedger} with requests the test completes by
+ * hand.
+ */
+public class RequestHedgerTest {
+    private static final String ENDPOINT = "money/ticker_fast";
+
+    private final BlockingQueue<SettableFuture<String>> sent = new LinkedBlockingQueue<SettableFuture<String>>();
+    private final Callable<ListenableFuture<String>> request = new Callable<ListenableFuture<String>>() {
+        @Override
+        public ListenableFuture<String> call() {
+            final SettableFuture<String> response = SettableFuture.create();
+            sent.add(response);
+            return response;
+        }
+    };
+
+    private RequestHedger hedger;
+
+    @After
+    public void teardown() {
+        hedger.close();
+    }
+
+    @Test
+    public void fastRequestIsNotHedged() throws Exception {
+        hedger = newHedger().build();
+
+        final ListenableFuture<String> result = hedger.execute(ENDPOINT,
+                request);
+        sent.take().set("first");
+        assertEquals("first", result.get());
+        assertNull(sent.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, hedger.getRequests());
+        assertEquals(0, hedger.getHedges());
+    }
+
+    @Test
+    public void hedgeWins() throws Exception {
+        hedger = newHedger().build();
+
+        final ListenableFuture<String> result = hedger.execute(ENDPOINT,
+                request);
+        final SettableFuture<String> primary = sent.take();
+        final SettableFuture<String> hedge = sent.poll(5, TimeUnit.SECONDS);
+        assertFalse(result.isDone());
+
+        hedge.set("hedge");
+        assertEquals("hedge", result.get());
+        assertCancelled(primary);
+        assertEquals(1, hedger.getHedges());
+        assertEquals(1, hedger.getHedgeWins());
+    }
+
+    @Test
+    public void primaryWinsAfterHedge() throws Exception {
+        hedger = newHedger().build();
+
+        final ListenableFuture<String> result = hedger.execute(ENDPOINT,
+                request);
+        final SettableFuture<String> primary = sent.take();
+        final SettableFuture<String> hedge = sent.poll(5, TimeUnit.SECONDS);
+
+        primary.set("primary");
+        assertEquals("primary", result.get());
+        assertCancelled(hedge);
+        assertEquals(0, hedger.getHedgeWins());
+    }
+
+    /**
+     * A failure only fails the call once no other copy is outstanding.
+     * 
+     * @throws Exception
+     *             if the call failed
+     */
+    @Test
+    public void failureWaitsForOtherCopy() throws Exception {
+        hedger = newHedger().build();
+
+        final ListenableFuture<String> result = hedger.execute(ENDPOINT,
+                request);
+        final SettableFuture<String> primary = sent.take();
+        final SettableFuture<String> hedge = sent.poll(5, TimeUnit.SECONDS);
+
+        primary.setException(new HttpStatusException(502, "Bad Gateway"));
+        assertFalse(result.isDone());
+        hedge.set("hedge");
+        assertEquals("hedge", result.get());
+    }
+
+    @Test
+    public void failureBeforeHedge() throws Exception {
+        hedger = newHedger().build();
+
+        final ListenableFuture<String> result = hedger.execute(ENDPOINT,
+                request);
+        sent.take().setException(new HttpStatusException(502, "Bad Gateway"));
+        try {
+            result.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(502, ((HttpStatusException) e.getCause()).getStatus());
+        }
+        assertNull(sent.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, hedger.getHedges());
+    }
+
+    @Test
+    public void cancelCancelsEveryCopy() throws Exception {
+        hedger = newHedger().build();
+
+        final ListenableFuture<String> result = hedger.execute(ENDPOINT,
+                request);
+        final SettableFuture<String> primary = sent.take();
+        final SettableFuture<String> hedge = sent.poll(5, TimeUnit.SECONDS);
+
+        assertTrue(result.cancel(true));
+        assertCancelled(primary);
+        assertCancelled(hedge);
+    }
+
+    /**
+     * Once enough latencies are known, the hedge delay is their percentile,
+     * within the configured bounds.
+     */
+    @Test
+    public void delayFollowsPercentile() {
+        final AtomicLong nanos = new AtomicLong();
+        hedger = new RequestHedger.Builder().percentile(0.5).window(32, 32)
+                .delay(5, 20, TimeUnit.MILLISECONDS).ticker(new Ticker() {
+                    @Override
+                    public long read() {
+                        return nanos.get();
+                    }
+                }).build();
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20),
+                hedger.getHedgeDelayNanos(ENDPOINT));
+        for (int i = 1; i <= 32; i++) {
+            final long millis = i;
+            hedger.execute(ENDPOINT, new Callable<ListenableFuture<String>>() {
+                @Override
+                public ListenableFuture<String> call() {
+                    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+                    return Futures.immediateFuture("done");
+                }
+            });
+        }
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(17),
+                hedger.getHedgeDelayNanos(ENDPOINT));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20),
+                hedger.getHedgeDelayNanos("money/depth/fetch"));
+    }
+
+    /**
+     * A primary beaten by its hedge is sampled with its time so far, so the
+     * window keeps the slow tail. Each read of the ticker moves it on 10ms,
+     * so the hedge's callbacks, which may run on the timer thread, must be
+     * done before the next call reads it.
+     * 
+     * @throws Exception
+     *             if the call failed
+     */
+    @Test
+    public void slowLoserIsSampled() throws Exception {
+        final AtomicLong nanos = new AtomicLong();
+        final ScheduledExecutorService timer = Executors
+                .newSingleThreadScheduledExecutor();
+        hedger = new RequestHedger.Builder().percentile(0.5).window(32, 16)
+                .delay(5, 50, TimeUnit.MILLISECONDS).timer(timer)
+                .ticker(new Ticker() {
+                    @Override
+                    public long read() {
+                        return nanos.getAndAdd(TimeUnit.MILLISECONDS
+                                .toNanos(10));
+                    }
+                }).build();
+
+        for (int i = 0; i < 16; i++) {
+            // primary starts at 0, hedge at 10, hedge wins at 20, primary is
+            // cancelled at 30
+            final ListenableFuture<String> result = hedger.execute(ENDPOINT,
+                    request);
+            final SettableFuture<String> primary = sent.take();
+            sent.poll(5, TimeUnit.SECONDS).set("hedge");
+            assertEquals("hedge", result.get());
+            assertCancelled(primary);
+            // wait out whatever of the hedge still runs on the timer thread
+            timer.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get(5, TimeUnit.SECONDS);
+        }
+        timer.shutdown();
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(30),
+                hedger.getHedgeDelayNanos(ENDPOINT));
+    }
+
+    /**
+     * Time spent waiting for the scheduler doesn't count towards the hedge
+     * delay, so a throttled request is not hedged.
+     * 
+     * @throws Exception
+     *             if the call failed
+     */
+    @Test
+    public void hedgedOnceScheduled() throws Exception {
+        hedger = newHedger().build();
+        final RequestScheduler scheduler = new RequestScheduler.Builder()
+                .rate(4.0, 1).build();
+        try {
+            for (int i = 0; i < 2; i++) {
+                // the second waits about 250ms for its token
+                final ListenableFuture<String> result = RequestHedger.hedge(
+                        Optional.of(scheduler), Optional.of(hedger),
+                        ERequestPriority.PUBLIC, ENDPOINT, request);
+                sent.take().set("once");
+                assertEquals("once", result.get());
+            }
+        } finally {
+            scheduler.close();
+        }
+        assertNull(sent.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(2, hedger.getRequests());
+        assertEquals(0, hedger.getHedges());
+    }
+
+    @Test
+    public void withoutHedger() throws Exception {
+        hedger = newHedger().build();
+
+        final ListenableFuture<String> result = RequestHedger.hedge(
+                Optional.<RequestHedger> absent(), ENDPOINT, request);
+        sent.take().set("once");
+        assertEquals("once", result.get());
+        assertEquals(0, hedger.getRequests());
+    }
+
+    /**
+     * Losers are cancelled by listeners that may still be running on another
+     * thread when the result is seen, so wait for the cancellation.
+     */
+    private static void assertCancelled(final ListenableFuture<String> copy)
+            throws Exception {
+        try {
+            copy.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (CancellationException e) {
+            // expected
+        }
+    }
+
+    private static RequestHedger.Builder newHedger() {
+        return new RequestHedger.Builder().delay(10, 50,
+                TimeUnit.MILLISECONDS);
+    }
+}
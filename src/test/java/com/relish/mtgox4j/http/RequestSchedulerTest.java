@@ -0,0 +1,273 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Unit tests for {@link RequestScheduler} with a manual clock. Requests that
+ * wait for tokens are dispatched by a real timer once the clock has been
+ * moved on.
+ */
+public class RequestSchedulerTest {
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(101);
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final BlockingQueue<String> started = new LinkedBlockingQueue<String>();
+    private final List<SettableFuture<String>> requests = Collections
+            .synchronizedList(new ArrayList<SettableFuture<String>>());
+
+    private ScheduledExecutorService timer;
+    private RequestScheduler scheduler;
+
+    @Before
+    public void setup() {
+        timer = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void teardown() {
+        if (null != scheduler) {
+            scheduler.close();
+        }
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void burstThenRate() throws Exception {
+        scheduler = newScheduler().rate(10, 2).build();
+
+        submit(ERequestPriority.PUBLIC, "money/ticker_fast", "a");
+        submit(ERequestPriority.PUBLIC, "money/ticker_fast", "b");
+        submit(ERequestPriority.PUBLIC, "money/ticker_fast", "c");
+        assertEquals("a", started.poll());
+        assertEquals("b", started.poll());
+        assertEquals(null, started.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, scheduler.getQueueDepth());
+
+        nanos.addAndGet(TICK);
+        assertEquals("c", started.poll(5, TimeUnit.SECONDS));
+        assertEquals(0, scheduler.getQueueDepth());
+    }
+
+    /**
+     * Once tokens are scarce, queued requests are sent strictly by priority.
+     * 
+     * @throws Exception
+     *             if interrupted
+     */
+    @Test
+    public void priorityOrder() throws Exception {
+        scheduler = newScheduler().rate(10, 1).build();
+
+        submit(ERequestPriority.PUBLIC, "money/ticker_fast", "first");
+        submit(ERequestPriority.PUBLIC, "money/ticker_fast", "public");
+        submit(ERequestPriority.ACCOUNT, "money/info", "account");
+        submit(ERequestPriority.TRADING, "money/order/add", "trading");
+        assertEquals("first", started.poll());
+
+        for (String expected : new String[] { "trading", "account", "public" }) {
+            assertEquals(null, started.poll(50, TimeUnit.MILLISECONDS));
+            nanos.addAndGet(TICK);
+            assertEquals(expected, started.poll(5, TimeUnit.SECONDS));
+        }
+
+        final RequestSchedulerStats stats = scheduler
+                .getStats(ERequestPriority.PUBLIC);
+        assertEquals(0, stats.getQueued());
+        assertEquals(2, stats.getDispatched());
+        assertEquals(3 * TICK, stats.getMaxWaitNanos());
+        assertEquals(3 * TICK, stats.getTotalWaitNanos());
+        assertEquals(TICK,
+                scheduler.getStats(ERequestPriority.TRADING).getMaxWaitNanos());
+    }
+
+    /**
+     * A request held back by its endpoint's budget does not hold back
+     * requests to other endpoints.
+     * 
+     * @throws Exception
+     *             if interrupted
+     */
+    @Test
+    public void endpointBudget() throws Exception {
+        scheduler = newScheduler().rate(100, 10)
+                .endpointRate("money/depth/fetch", 10, 1).build();
+
+        submit(ERequestPriority.PUBLIC, "money/depth/fetch", "depth1");
+        submit(ERequestPriority.PUBLIC, "money/depth/fetch", "depth2");
+        submit(ERequestPriority.PUBLIC, "money/ticker_fast", "ticker");
+        assertEquals("depth1", started.poll());
+        assertEquals("ticker", started.poll());
+        assertEquals(null, started.poll(200, TimeUnit.MILLISECONDS));
+
+        nanos.addAndGet(TICK);
+        assertEquals("depth2", started.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void resultAndCancellation() throws Exception {
+        scheduler = newScheduler().rate(10, 1).build();
+
+        final ListenableFuture<String> sent = submit(ERequestPriority.PUBLIC,
+                "money/ticker_fast", "sent");
+        final ListenableFuture<String> queued = submit(
+                ERequestPriority.PUBLIC, "money/ticker_fast", "queued");
+        assertEquals("sent", started.poll());
+
+        requests.get(0).set("response");
+        assertEquals("response", sent.get(5, TimeUnit.SECONDS));
+
+        // cancelled while queued: never sent
+        assertTrue(queued.cancel(false));
+        nanos.addAndGet(TICK);
+        final ListenableFuture<String> next = submit(ERequestPriority.PUBLIC,
+                "money/ticker_fast", "next");
+        assertEquals("next", started.poll(5, TimeUnit.SECONDS));
+        assertEquals(0, scheduler.getQueueDepth());
+
+        // cancelled after being sent: the request is cancelled too
+        assertTrue(next.cancel(true));
+        assertTrue(requests.get(1).isCancelled());
+    }
+
+    @Test
+    public void failure() throws Exception {
+        scheduler = newScheduler().build();
+
+        final ListenableFuture<String> failed = scheduler.submit(
+                ERequestPriority.PUBLIC, "money/ticker_fast",
+                new Callable<ListenableFuture<String>>() {
+                    @Override
+                    public ListenableFuture<String> call() {
+                        throw new IllegalStateException("refused");
+                    }
+                });
+        assertTrue(failed.isDone());
+        try {
+            failed.get();
+            fail();
+        } catch (java.util.concurrent.ExecutionException e) {
+            assertEquals("refused", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void acquire() {
+        scheduler = newScheduler().rate(10, 1).build();
+
+        scheduler.acquire(ERequestPriority.ACCOUNT, "money/info");
+        submit(ERequestPriority.PUBLIC, "money/ticker_fast", "after");
+        assertEquals(null, started.poll());
+        assertEquals(1, scheduler.getStats(ERequestPriority.ACCOUNT)
+                .getDispatched());
+    }
+
+    @Test
+    public void close() {
+        scheduler = newScheduler().rate(10, 1).build();
+
+        submit(ERequestPriority.PUBLIC, "money/ticker_fast", "sent");
+        final ListenableFuture<String> queued = submit(
+                ERequestPriority.PUBLIC, "money/ticker_fast", "queued");
+        scheduler.close();
+        assertTrue(queued.isCancelled());
+        assertEquals(0, scheduler.getQueueDepth());
+
+        try {
+            submit(ERequestPriority.PUBLIC, "money/ticker_fast", "closed");
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void withoutScheduler() {
+        RequestScheduler.schedule(Optional.<RequestScheduler> absent(),
+                ERequestPriority.PUBLIC, "money/ticker_fast",
+                request("direct"));
+        assertEquals("direct", started.poll());
+    }
+
+    @Test
+    public void endpointOf() {
+        assertEquals("money/info", RequestScheduler.endpointOf("BTCUSD/money/info"));
+        assertEquals("money/info", RequestScheduler.endpointOf("money/info"));
+        assertEquals("BTCUSD/", RequestScheduler.endpointOf("BTCUSD/"));
+    }
+
+    @Test
+    public void stats() {
+        final RequestSchedulerStats stats = new RequestSchedulerStats(1, 4,
+                100, 60);
+        assertEquals(25, stats.getMeanWaitNanos());
+        assertEquals(0, new RequestSchedulerStats(0, 0, 0, 0)
+                .getMeanWaitNanos());
+        assertFalse(stats.toString().isEmpty());
+    }
+
+    private RequestScheduler.Builder newScheduler() {
+        return new RequestScheduler.Builder().ticker(new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        }).timer(timer);
+    }
+
+    private ListenableFuture<String> submit(final ERequestPriority priority,
+            final String endpoint, final String name) {
+        return scheduler.submit(priority, endpoint, request(name));
+    }
+
+    private Callable<ListenableFuture<String>> request(final String name) {
+        return new Callable<ListenableFuture<String>>() {
+            @Override
+            public ListenableFuture<String> call() {
+                final SettableFuture<String> request = SettableFuture.create();
+                requests.add(request);
+                started.add(name);
+                return request;
+            }
+        };
+    }
+}
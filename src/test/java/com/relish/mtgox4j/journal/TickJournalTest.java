@@ -0,0 +1,251 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.ETickerPrice;
+import com.relish.mtgox4j.model.MutableTickerFast;
+import com.relish.mtgox4j.model.TickerFastView;
+
+/**
+ * Unit tests for {@link TickJournal} and {@link TickJournalReader}.
+ */
+public class TickJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private final TickRecord record = new TickRecord();
+
+    @Before
+    public void setup() {
+        dir = new File(folder.getRoot(), "journal");
+    }
+
+    @Test
+    public void appendAndReplay() throws IOException {
+        final MutableTickerFast ticker = new MutableTickerFast();
+        ticker.setNow(1367550485692271L);
+        ticker.getBuy().setValueInt(9853741L);
+        ticker.getSell().setValueInt(9869847L);
+        ticker.getLast().setValueInt(1L);
+        ticker.getLastLocal().setValueInt(2L);
+        ticker.getLastAll().setValueInt(3L);
+        ticker.getLastOrig().setValueInt(4L);
+
+        final TickJournal journal = new TickJournal.Builder().build(dir);
+        assertEquals(0L, journal.append(ECurrency.EUR, ticker));
+        assertEquals(1L, journal.size());
+        journal.close();
+
+        final TickJournalReader reader = new TickJournalReader(dir);
+        assertTrue(reader.next(record));
+        assertSame(ECurrency.EUR, record.getCurrency());
+        assertEquals(1367550485692271L, record.getNow());
+        assertEquals(9853741L, record.getBuy());
+        assertEquals(9869847L, record.getSell());
+        assertEquals(1L, record.getLast());
+        assertEquals(2L, record.getLastLocal());
+        assertEquals(3L, record.getLastAll());
+        assertEquals(4L, record.getLastOrig());
+        assertFalse(reader.next(record));
+    }
+
+    /**
+     * Records spread over several segments replay in order, and a reader
+     * positioned at the end picks up records appended later.
+     * 
+     * @throws IOException
+     *             if the journal could not be accessed
+     */
+    @Test
+    public void rollsAndTails() throws IOException {
+        final TickJournal journal = new TickJournal.Builder().segmentRecords(
+                3).build(dir);
+        append(journal, 0, 7);
+        assertEquals(3, Segment.list(dir).length);
+
+        final TickJournalReader reader = new TickJournalReader(dir);
+        expect(reader, 0, 7);
+        assertFalse(reader.next(record));
+
+        append(journal, 7, 10);
+        expect(reader, 7, 10);
+        assertFalse(reader.next(record));
+        journal.close();
+
+        final TickJournalReader fromMiddle = new TickJournalReader(dir, 5L);
+        expect(fromMiddle, 5, 10);
+        assertEquals(10L, fromMiddle.getNextIndex());
+    }
+
+    /**
+     * A reopened journal resumes after the last intact record, dropping a
+     * torn one and anything behind it.
+     * 
+     * @throws IOException
+     *             if the journal could not be accessed
+     */
+    @Test
+    public void recoversAfterTornRecord() throws IOException {
+        final TickJournal journal = new TickJournal.Builder().segmentRecords(
+                8).build(dir);
+        append(journal, 0, 5);
+        journal.close();
+
+        // corrupt the fourth record as if the crash had torn it
+        final RandomAccessFile raf = new RandomAccessFile(new File(dir,
+                Segment.nameOf(0L)), "rw");
+        try {
+            raf.seek(Segment.offsetOf(3) + TickRecord.BUY_OFFSET);
+            raf.write(0xFF);
+        } finally {
+            raf.close();
+        }
+
+        final TickJournal reopened = new TickJournal.Builder()
+                .segmentRecords(8).build(dir);
+        assertEquals(3L, reopened.size());
+        append(reopened, 3, 4);
+        reopened.close();
+
+        final TickJournalReader reader = new TickJournalReader(dir);
+        expect(reader, 0, 4);
+        assertFalse("record 4 was cleared", reader.next(record));
+    }
+
+    /**
+     * A segment whose header was never completed is created again.
+     * 
+     * @throws IOException
+     *             if the journal could not be accessed
+     */
+    @Test
+    public void recoversUnfinishedSegment() throws IOException {
+        final TickJournal journal = new TickJournal.Builder().segmentRecords(
+                2).build(dir);
+        append(journal, 0, 2);
+        journal.close();
+        assertTrue(new File(dir, Segment.nameOf(2L)).createNewFile());
+
+        final TickJournal reopened = new TickJournal.Builder()
+                .segmentRecords(2).build(dir);
+        assertEquals(2L, reopened.size());
+        append(reopened, 2, 3);
+        reopened.close();
+
+        expect(new TickJournalReader(dir), 0, 3);
+    }
+
+    /**
+     * A view handed out by the reader reads the mapped record in place.
+     * 
+     * @throws IOException
+     *             if the journal could not be accessed
+     */
+    @Test
+    public void replayIntoView() throws IOException {
+        final TickJournal journal = new TickJournal.Builder().segmentRecords(
+                2).build(dir);
+        append(journal, 0, 3);
+        journal.close();
+
+        final TickJournalReader reader = new TickJournalReader(dir);
+        final TickerFastView view = new TickerFastView();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(reader.next(view));
+            assertEquals(i, view.getNow());
+            assertEquals(i * 10L, view.getBuy());
+            assertEquals(-i, view.getValueInt(ETickerPrice.LAST_ORIG));
+        }
+        assertFalse(reader.next(view));
+    }
+
+    @Test
+    public void emptySlotIsInvalid() throws IOException {
+        new TickJournal.Builder().build(dir).close();
+        assertFalse(new TickJournalReader(dir).next(record));
+    }
+
+    /**
+     * A second journal on the same directory fails until the first is closed.
+     * 
+     * @throws IOException
+     *             if the journal could not be accessed
+     */
+    @Test
+    public void oneJournalPerDirectory() throws IOException {
+        final TickJournal journal = new TickJournal.Builder().build(dir);
+        try {
+            new TickJournal.Builder().build(dir);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        journal.close();
+
+        new TickJournal.Builder().build(dir).close();
+        assertEquals(1, Segment.list(dir).length);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closed() throws IOException {
+        final TickJournal journal = new TickJournal.Builder().build(dir);
+        journal.close();
+        append(journal, 0, 1);
+    }
+
+    private void append(final TickJournal journal, final int from,
+            final int to) throws IOException {
+        final TickRecord tick = new TickRecord();
+        for (int i = from; i < to; i++) {
+            tick.setCurrency(ECurrency.values()[i % ECurrency.values().length]);
+            tick.setNow(i);
+            tick.setBuy(i * 10L);
+            tick.setLastOrig(-i);
+            assertEquals(i, journal.append(tick));
+        }
+    }
+
+    private void expect(final TickJournalReader reader, final int from,
+            final int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            assertTrue("record " + i, reader.next(record));
+            assertEquals(i, record.getNow());
+            assertEquals(i * 10L, record.getBuy());
+            assertEquals(-i, record.getLastOrig());
+            assertSame(ECurrency.values()[i % ECurrency.values().length],
+                    record.getCurrency());
+        }
+    }
+}
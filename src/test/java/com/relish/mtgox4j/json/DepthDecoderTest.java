@@ -0,0 +1,101 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.codehaus.jackson.JsonParseException;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.OrderBook;
+
+/**
+ * Unit tests for {@link DepthDecoder}.
+ */
+public class DepthDecoderTest {
+    private DepthDecoder decoder;
+    private OrderBook book;
+
+    @Before
+    public void setup() {
+        decoder = new DepthDecoder();
+        book = new OrderBook(ECurrency.USD, 2);
+    }
+
+    @Test
+    public void snapshot() throws IOException {
+        assertTrue(decoder.decode(resource("DepthFetch.json"), book));
+
+        assertEquals(1367550485692271L, book.getNow());
+        assertEquals(3, book.getAsks().size());
+        assertEquals(9870000L, book.getAsks().getBestPrice());
+        assertEquals(150000000L, book.getAsks().getBestVolume());
+        assertEquals(9900000L, book.getAsks().getPrice(2));
+        assertEquals(3, book.getBids().size());
+        assertEquals(9860000L, book.getBids().getBestPrice());
+        assertEquals(9810000L, book.getBids().getPrice(2));
+        assertEquals(400000000L, book.getBids().getVolume(2));
+        assertEquals(10000L, book.getSpread());
+    }
+
+    /**
+     * A reloaded book must not keep levels from the previous snapshot.
+     * 
+     * @throws IOException
+     *             if there was a problem decoding
+     */
+    @Test
+    public void reloadClears() throws IOException {
+        decoder.decode(resource("DepthFetch.json"), book);
+        assertTrue(decode("{\"result\":\"success\",\"data\":{\"asks\":[{\"price_int\":1,\"amount_int\":2}],\"bids\":[],\"now\":5}}"));
+
+        assertEquals(1, book.getAsks().size());
+        assertEquals(1L, book.getAsks().getBestPrice());
+        assertTrue(book.getBids().isEmpty());
+        assertEquals(5L, book.getNow());
+    }
+
+    @Test
+    public void error() throws IOException {
+        assertFalse(decode("{\"result\":\"error\",\"error\":\"Not available\"}"));
+        assertTrue(book.getAsks().isEmpty());
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void notAnArray() throws IOException {
+        decode("{\"data\":{\"asks\":{}}}");
+    }
+
+    private boolean decode(final String json) throws IOException {
+        return decoder.decode(
+                new ByteArrayInputStream(json.getBytes(Charsets.UTF_8)), book);
+    }
+
+    private InputStream resource(final String name) {
+        return this.getClass().getClassLoader().getResourceAsStream(name);
+    }
+}
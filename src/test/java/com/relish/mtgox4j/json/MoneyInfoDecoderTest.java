@@ -0,0 +1,122 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.codehaus.jackson.JsonParseException;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.MoneyInfo;
+
+/**
+ * Unit tests for {@link MoneyInfoDecoder}.
+ */
+public class MoneyInfoDecoderTest {
+    private MoneyInfoDecoder decoder;
+    private MoneyInfo holder;
+
+    @Before
+    public void setup() {
+        decoder = new MoneyInfoDecoder();
+        holder = new MoneyInfo();
+    }
+
+    @Test
+    public void wallets() throws IOException {
+        assertSame(holder, decoder.decode(resource("MoneyInfo.json"), holder));
+
+        assertTrue(holder.isSuccess());
+        assertEquals("mtgox4j", holder.getLogin().toString());
+        assertEquals(0.6, holder.getTradeFee(), 0.0);
+
+        assertTrue(holder.hasWallet(ECurrency.BTC));
+        assertEquals(1250000000L, holder.getBalanceInt(ECurrency.BTC));
+        assertEquals(50000000L, holder.getOpenOrdersInt(ECurrency.BTC));
+        assertTrue(holder.hasWallet(ECurrency.USD));
+        assertEquals(123456789L, holder.getBalanceInt(ECurrency.USD));
+        assertEquals(0L, holder.getOpenOrdersInt(ECurrency.USD));
+        assertTrue(holder.hasWallet(ECurrency.JPY));
+        assertEquals(5000000L, holder.getBalanceInt(ECurrency.JPY));
+
+        assertFalse(holder.hasWallet(ECurrency.EUR));
+        assertEquals(0L, holder.getBalanceInt(ECurrency.EUR));
+    }
+
+    /**
+     * Decoding into a used holder should leave nothing of the previous
+     * response behind.
+     * 
+     * @throws IOException
+     *             if there was a problem reading the stubbed json file
+     */
+    @Test
+    public void reuseHolder() throws IOException {
+        decoder.decode(resource("MoneyInfo.json"), holder);
+        decode("{\"result\":\"success\",\"data\":{\"Wallets\":{"
+                + "\"EUR\":{\"Balance\":{\"value_int\":\"42\"}}}}}");
+
+        assertTrue(holder.isSuccess());
+        assertEquals(0, holder.getLogin().length());
+        assertFalse(holder.hasWallet(ECurrency.BTC));
+        assertEquals(0L, holder.getBalanceInt(ECurrency.BTC));
+        assertTrue(holder.hasWallet(ECurrency.EUR));
+        assertEquals(42L, holder.getBalanceInt(ECurrency.EUR));
+    }
+
+    @Test
+    public void unknownWalletsAndFields() throws IOException {
+        decode("{\"result\":\"error\",\"extra\":[1,{\"a\":2}],\"data\":{"
+                + "\"Rights\":[\"get_info\"],\"Wallets\":{"
+                + "\"XYZ\":{\"Balance\":{\"value_int\":\"7\"}},"
+                + "\"USD\":{\"Balance\":{\"value\":\"1.00\",\"value_int\":100000},"
+                + "\"Monthly_Withdraw_Limit\":null,\"Operations\":3}}}}");
+
+        assertFalse(holder.isSuccess());
+        assertEquals(100000L, holder.getBalanceInt(ECurrency.USD));
+        assertTrue(holder.hasWallet(ECurrency.USD));
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void fractionalValueInt() throws IOException {
+        decode("{\"data\":{\"Wallets\":{\"BTC\":{\"Balance\":{\"value_int\":\"1.5\"}}}}}");
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void notAnObject() throws IOException {
+        decode("[]");
+    }
+
+    private void decode(final String json) throws IOException {
+        final byte[] bytes = json.getBytes(Charsets.UTF_8);
+        decoder.decode(bytes, 0, bytes.length, holder);
+    }
+
+    private InputStream resource(final String name) {
+        return this.getClass().getClassLoader().getResourceAsStream(name);
+    }
+}
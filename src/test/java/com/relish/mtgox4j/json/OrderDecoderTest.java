@@ -0,0 +1,155 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonParseException;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.EOrderStatus;
+import com.relish.mtgox4j.model.EOrderType;
+import com.relish.mtgox4j.model.MutableOrder;
+import com.relish.mtgox4j.model.OpenOrders;
+
+/**
+ * Unit tests for {@link OrderDecoder}.
+ */
+public class OrderDecoderTest {
+    private static final String ORDERS = "{\"result\":\"success\",\"data\":["
+            + "{\"oid\":\"7c6d2237-52fb-4af5-b4e4-ee2a3fe48f3e\",\"currency\":\"USD\","
+            + "\"item\":\"BTC\",\"type\":\"bid\","
+            + "\"amount\":{\"value\":\"1.50000000\",\"value_int\":\"150000000\",\"currency\":\"BTC\"},"
+            + "\"effective_amount\":{\"value\":\"1.00000000\",\"value_int\":\"100000000\",\"currency\":\"BTC\"},"
+            + "\"price\":{\"value\":\"95.00000\",\"value_int\":\"9500000\",\"currency\":\"USD\"},"
+            + "\"status\":\"open\",\"date\":1367550485,\"priority\":\"1367550485692271\",\"actions\":[]},"
+            + "{\"oid\":\"d3a7e3c4-86a2-4b4a-9d3b-8a6b0c8f6f11\",\"currency\":\"USD\","
+            + "\"item\":\"BTC\",\"type\":\"ask\","
+            + "\"amount\":{\"value_int\":\"20000000\"},\"price\":{\"value_int\":\"12000000\"},"
+            + "\"status\":\"post-pending\",\"date\":\"1367550490\"}]}";
+
+    private OrderDecoder decoder;
+    private OpenOrders holder;
+
+    @Before
+    public void setup() {
+        decoder = new OrderDecoder();
+        holder = new OpenOrders();
+    }
+
+    @Test
+    public void orders() throws IOException {
+        decode(ORDERS);
+
+        assertTrue(holder.isSuccess());
+        assertEquals(2, holder.size());
+
+        final MutableOrder bid = holder.get(0);
+        assertEquals("7c6d2237-52fb-4af5-b4e4-ee2a3fe48f3e", bid.getOid());
+        assertSame(EOrderType.BID, bid.getType());
+        assertSame(EOrderStatus.OPEN, bid.getStatus());
+        assertSame(ECurrency.USD, bid.getCurrency());
+        assertEquals(150000000L, bid.getAmountInt());
+        assertEquals(100000000L, bid.getEffectiveAmountInt());
+        assertEquals(9500000L, bid.getPriceInt());
+        assertEquals(1367550485L, bid.getDate());
+
+        final MutableOrder ask = holder.get(1);
+        assertSame(EOrderType.ASK, ask.getType());
+        assertSame(EOrderStatus.POST_PENDING, ask.getStatus());
+        assertEquals(20000000L, ask.getAmountInt());
+        assertEquals(0L, ask.getEffectiveAmountInt());
+        assertEquals(12000000L, ask.getPriceInt());
+        assertEquals(1367550490L, ask.getDate());
+    }
+
+    /**
+     * Polling the same orders again reuses their holders and oid Strings.
+     * 
+     * @throws IOException
+     *             if the orders could not be decoded
+     */
+    @Test
+    public void reuseHolder() throws IOException {
+        decode(ORDERS);
+        final MutableOrder first = holder.get(0);
+        final String oid = first.getOid();
+
+        decode(ORDERS);
+        assertSame(first, holder.get(0));
+        assertSame(oid, holder.get(0).getOid());
+
+        decode("{\"result\":\"success\",\"data\":[]}");
+        assertTrue(holder.isEmpty());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void beyondSize() throws IOException {
+        decode(ORDERS);
+        decode("{\"result\":\"success\",\"data\":[{\"oid\":\"x\"}]}");
+        holder.get(1);
+    }
+
+    @Test
+    public void addedOid() throws IOException {
+        assertEquals("7c6d2237-52fb-4af5-b4e4-ee2a3fe48f3e",
+                decodeOid("{\"result\":\"success\","
+                        + "\"data\":\"7c6d2237-52fb-4af5-b4e4-ee2a3fe48f3e\"}"));
+    }
+
+    @Test
+    public void cancelledOid() throws IOException {
+        assertEquals("7c6d2237-52fb-4af5-b4e4-ee2a3fe48f3e",
+                decodeOid("{\"result\":\"success\",\"data\":{"
+                        + "\"oid\":\"7c6d2237-52fb-4af5-b4e4-ee2a3fe48f3e\","
+                        + "\"qid\":\"0e3c2a07-1b8f-4c4b-a2a6-5e6b6fd5e6a1\"}}"));
+    }
+
+    @Test
+    public void errorHasNoOid() throws IOException {
+        assertNull(decodeOid("{\"result\":\"error\",\"error\":\"Invalid order\","
+                + "\"data\":\"x\"}"));
+        decode("{\"result\":\"error\",\"error\":\"Invalid order\"}");
+        assertFalse(holder.isSuccess());
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void notAnObject() throws IOException {
+        decode("[]");
+    }
+
+    private void decode(final String json) throws IOException {
+        final byte[] bytes = json.getBytes(Charsets.UTF_8);
+        decoder.decode(bytes, 0, bytes.length, holder);
+    }
+
+    private String decodeOid(final String json) throws IOException {
+        return decoder.decodeOid(new ByteArrayInputStream(json
+                .getBytes(Charsets.UTF_8)));
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.EStreamChannel;
+
+/**
+ * Unit tests for {@link StreamMessageDecoder}.
+ */
+public class StreamMessageDecoderTest {
+    private StreamMessageDecoder decoder;
+
+    @Before
+    public void setup() {
+        decoder = new StreamMessageDecoder();
+    }
+
+    @Test
+    public void ticker() throws IOException {
+        assertSame(EStreamChannel.TICKER, decoder.decode("{\"op\":\"private\",\"ticker\":{\"now\":\"12\","
+                + "\"buy\":{\"value_int\":\"9853741\",\"currency\":\"EUR\"}}}"));
+
+        assertSame(ECurrency.EUR, decoder.getCurrency());
+        assertEquals(12L, decoder.getTicker().getNow());
+        assertEquals(9853741L, decoder.getTicker().getBuy().getValueInt());
+    }
+
+    @Test
+    public void trade() throws IOException {
+        assertSame(EStreamChannel.TRADE, decoder.decode("{\"trade\":{\"tid\":\"7\",\"date\":3,"
+                + "\"amount_int\":\"50000000\",\"price_int\":\"9860000\",\"price_currency\":\"GBP\","
+                + "\"trade_type\":\"bid\",\"primary\":\"Y\",\"properties\":[\"limit\"]}}"));
+
+        assertSame(ECurrency.GBP, decoder.getCurrency());
+        assertEquals(7L, decoder.getTrade().getTid());
+        assertEquals(3L, decoder.getTrade().getDate());
+        assertEquals(50000000L, decoder.getTrade().getAmountInt());
+        assertEquals(9860000L, decoder.getTrade().getPriceInt());
+        assertTrue(decoder.getTrade().isBid());
+        assertTrue(decoder.getTrade().isPrimary());
+    }
+
+    /**
+     * A reused decoder must not carry trade state over between messages.
+     * 
+     * @throws IOException
+     *             if there was a problem decoding
+     */
+    @Test
+    public void tradeReset() throws IOException {
+        decoder.decode("{\"trade\":{\"tid\":\"7\",\"trade_type\":\"bid\",\"primary\":\"Y\",\"price_currency\":\"USD\"}}");
+        decoder.decode("{\"trade\":{\"trade_type\":\"ask\",\"primary\":\"N\",\"price_currency\":\"USD\"}}");
+
+        assertEquals(0L, decoder.getTrade().getTid());
+        assertFalse(decoder.getTrade().isBid());
+        assertFalse(decoder.getTrade().isPrimary());
+    }
+
+    @Test
+    public void depth() throws IOException {
+        assertSame(EStreamChannel.DEPTH, decoder.decode("{\"depth\":{\"type\":1,\"type_str\":\"ask\","
+                + "\"price_int\":\"9870000\",\"volume_int\":\"-150000000\",\"currency\":\"USD\","
+                + "\"now\":\"1367550485700000\",\"total_volume_int\":\"250000000\"}}"));
+
+        assertSame(ECurrency.USD, decoder.getCurrency());
+        assertTrue(decoder.getDepth().isAsk());
+        assertEquals(9870000L, decoder.getDepth().getPriceInt());
+        assertEquals(-150000000L, decoder.getDepth().getVolumeInt());
+        assertEquals(250000000L, decoder.getDepth().getTotalVolumeInt());
+        assertEquals(1367550485700000L, decoder.getDepth().getNow());
+    }
+
+    @Test
+    public void unknownMessage() throws IOException {
+        assertNull(decoder.decode("{\"op\":\"subscribe\",\"channel\":\"d5f06780\"}"));
+        assertNull(decoder.decode("{\"op\":\"remark\",\"message\":{\"a\":[1,2]}}"));
+    }
+
+    @Test
+    public void unknownCurrency() throws IOException {
+        assertSame(EStreamChannel.DEPTH, decoder.decode("{\"depth\":{\"currency\":\"XYZ\"}}"));
+
+        assertNull(decoder.getCurrency());
+    }
+}
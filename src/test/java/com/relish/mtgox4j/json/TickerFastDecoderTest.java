@@ -0,0 +1,153 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.relish.mtgox4j.model.ECurrency;
+import com.relish.mtgox4j.model.MutableTickerFast;
+import com.relish.mtgox4j.model.json.TickerFast;
+
+/**
+ * Unit tests for {@link TickerFastDecoder}.
+ */
+public class TickerFastDecoderTest {
+    private TickerFastDecoder decoder;
+    private MutableTickerFast holder;
+
+    @Before
+    public void setup() {
+        decoder = new TickerFastDecoder();
+        holder = new MutableTickerFast();
+    }
+
+    /**
+     * Streaming decode should produce exactly what databinding produces.
+     * 
+     * @throws IOException
+     *             if there was a problem reading the stubbed json file
+     */
+    @Test
+    public void matchesDatabinding() throws IOException {
+        final TickerFast expected = new ObjectMapper().readValue(
+                resource("TickerFast.json"), TickerFast.class);
+
+        assertSame(holder, decoder.decode(resource("TickerFast.json"), holder));
+        assertTrue(holder.isSuccess());
+        assertEquals(1367550485692271L, holder.getNow());
+        assertEquals(9853741L, holder.getBuy().getValueInt());
+        assertEquals(9869847L, holder.getSell().getValueInt());
+        assertSame(ECurrency.USD, holder.getLast().getCurrency());
+        assertEquals(expected, holder.toTickerFast());
+        assertEquals(holder.getBuy().getValueInt(), expected.getData()
+                .getBuy().getFixedValue());
+    }
+
+    /**
+     * A reused holder must not carry state over from a previous decode.
+     * 
+     * @throws IOException
+     *             if there was a problem decoding
+     */
+    @Test
+    public void reuseHolder() throws IOException {
+        decoder.decode(resource("TickerFast.json"), holder);
+        decode("{\"result\":\"error\",\"data\":{\"buy\":{\"value_int\":\"1\",\"currency\":\"EUR\"}}}");
+
+        assertFalse(holder.isSuccess());
+        assertEquals(0L, holder.getNow());
+        assertEquals(1L, holder.getBuy().getValueInt());
+        assertSame(ECurrency.EUR, holder.getBuy().getCurrency());
+        assertEquals(0L, holder.getSell().getValueInt());
+        assertEquals("", holder.getSell().getDisplay().toString());
+    }
+
+    /**
+     * Unknown fields, including nested ones, are skipped and numeric
+     * value_int/now are accepted as well as quoted ones.
+     * 
+     * @throws IOException
+     *             if there was a problem decoding
+     */
+    @Test
+    public void unknownFieldsAndNumbers() throws IOException {
+        decode("{\"extra\":[1,{\"a\":2}],\"result\":\"success\",\"data\":{\"vol\":{\"value_int\":\"5\"},"
+                + "\"sell\":{\"value_int\":-42,\"extra\":{}},\"now\":12}}");
+
+        assertTrue(holder.isSuccess());
+        assertEquals(12L, holder.getNow());
+        assertEquals(-42L, holder.getSell().getValueInt());
+    }
+
+    /**
+     * Currency codes resolve to {@link ECurrency} with and without
+     * databinding, and unknown codes become null rather than failing.
+     * 
+     * @throws IOException
+     *             if there was a problem decoding
+     */
+    @Test
+    public void currencies() throws IOException {
+        final String json = "{\"data\":{\"buy\":{\"currency\":\"JPY\"},\"sell\":{\"currency\":\"XYZ\"}}}";
+        decode(json);
+        assertSame(ECurrency.JPY, holder.getBuy().getCurrency());
+        assertNull(holder.getSell().getCurrency());
+
+        final TickerFast bound = new ObjectMapper().readValue(json,
+                TickerFast.class);
+        assertSame(ECurrency.JPY, bound.getData().getBuy().getCurrency());
+        assertNull(bound.getData().getSell().getCurrency());
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void invalidInteger() throws IOException {
+        decode("{\"data\":{\"buy\":{\"value_int\":\"98.5\"}}}");
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void overflowingInteger() throws IOException {
+        decode("{\"data\":{\"now\":\"9223372036854775808\"}}");
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void notAnObject() throws IOException {
+        decode("[]");
+    }
+
+    private void decode(final String json) throws IOException {
+        final byte[] bytes = json.getBytes(Charsets.UTF_8);
+        decoder.decode(bytes, 0, bytes.length, holder);
+    }
+
+    private InputStream resource(final String name) {
+        return this.getClass().getClassLoader().getResourceAsStream(name);
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Unit tests for {@link HistogramMetrics} and {@link EndpointMetrics}.
+ */
+public class HistogramMetricsTest {
+    @Test
+    public void endpointsAreShared() {
+        final HistogramMetrics metrics = new HistogramMetrics();
+        final EndpointMetrics ticker = metrics.endpoint("money/ticker_fast");
+
+        assertSame(ticker, metrics.endpoint("money/ticker_fast"));
+        assertSame(ticker, metrics.getEndpoint("money/ticker_fast").get());
+        assertFalse(metrics.getEndpoint("money/info").isPresent());
+        assertTrue(ticker.isEnabled());
+    }
+
+    @Test
+    public void endpointsSorted() {
+        final HistogramMetrics metrics = new HistogramMetrics();
+        metrics.endpoint("money/ticker_fast");
+        metrics.endpoint("money/depth/fetch");
+        metrics.endpoint("money/info");
+
+        assertEquals(ImmutableList.of("money/depth/fetch", "money/info",
+                "money/ticker_fast"), metrics.getEndpoints().keySet().asList());
+    }
+
+    @Test
+    public void recordsByPhase() {
+        final EndpointMetrics info = new HistogramMetrics()
+                .endpoint("money/info");
+        info.record(EPhase.SIGN, 3000);
+        info.record(EPhase.WAIT, 40000);
+        info.record(EPhase.TOTAL, 45000);
+        info.record(EPhase.TOTAL, 60000);
+        info.recordBytesSent(20);
+        info.recordBytesSent(22);
+        info.recordBytesReceived(512);
+        info.recordError(new IOException("reset"));
+
+        assertEquals("money/info", info.getEndpoint());
+        assertEquals(2, info.getCalls());
+        assertEquals(1, info.getErrors());
+        assertEquals(42, info.getBytesSent());
+        assertEquals(512, info.getBytesReceived());
+        assertEquals(3000, info.getHistogram(EPhase.SIGN).getMax());
+        assertEquals(0, info.getHistogram(EPhase.QUEUE).getCount());
+    }
+
+    @Test
+    public void noOpIsDisabled() {
+        final EndpointRecorder recorder = NoOpMetrics.INSTANCE
+                .endpoint("money/info");
+
+        assertFalse(recorder.isEnabled());
+        recorder.record(EPhase.TOTAL, 1);
+        recorder.recordError(new IOException());
+    }
+}
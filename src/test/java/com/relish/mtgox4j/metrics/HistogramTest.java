@@ -0,0 +1,127 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link Histogram}.
+ */
+public class HistogramTest {
+    @Test
+    public void empty() {
+        final Histogram histogram = new Histogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(0.99));
+    }
+
+    /**
+     * Every value falls in a bucket whose bounds contain it, and buckets are
+     * contiguous across the whole range of a long.
+     */
+    @Test
+    public void bucketsCoverRange() {
+        for (int index = 0; index < Histogram.BUCKETS - 1; index++) {
+            final long highest = Histogram.highestOf(index);
+            assertEquals(index, Histogram.indexOf(highest));
+            assertEquals(index + 1, Histogram.indexOf(highest + 1));
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.highestOf(Histogram.BUCKETS - 1));
+        assertEquals(Histogram.BUCKETS - 1, Histogram.indexOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesWithinPrecision() {
+        final Histogram histogram = new Histogram();
+        for (long v = 1; v <= 10000; v++) {
+            histogram.record(v * 1000);
+        }
+
+        assertEquals(10000, histogram.getCount());
+        assertEquals(5000500, histogram.getMean());
+        assertEquals(10000000, histogram.getMax());
+        assertWithin(5000000, histogram.getValueAtPercentile(0.5));
+        assertWithin(9900000, histogram.getValueAtPercentile(0.99));
+        assertEquals(10000000, histogram.getValueAtPercentile(1));
+        assertWithin(1000, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void smallValuesExact() {
+        final Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(3);
+        histogram.record(7);
+
+        assertEquals(0, histogram.getValueAtPercentile(0.3));
+        assertEquals(3, histogram.getValueAtPercentile(0.5));
+        assertEquals(7, histogram.getValueAtPercentile(0.9));
+        assertEquals(10, histogram.getSum());
+    }
+
+    @Test
+    public void concurrentRecording() throws Exception {
+        final Histogram histogram = new Histogram();
+        final int threads = 4;
+        final int perThread = 100000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> recorders = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final long value = 1L << (10 + t);
+            final Thread recorder = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        histogram.record(value);
+                    }
+                }
+            };
+            recorder.start();
+            recorders.add(recorder);
+        }
+        start.countDown();
+        for (Thread recorder : recorders) {
+            recorder.join();
+        }
+
+        assertEquals(threads * perThread, histogram.getCount());
+        assertEquals(1L << (10 + threads - 1), histogram.getMax());
+        assertEquals(perThread * ((1L << (10 + threads)) - (1L << 10)),
+                histogram.getSum());
+    }
+
+    private static void assertWithin(final long expected, final long actual) {
+        assertTrue(actual + " is not within precision of " + expected,
+                Math.abs(actual - expected) <= expected / Histogram.SUB_BUCKETS);
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ReflectionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link JmxMetricsExporter} on the platform MBean server.
+ */
+public class JmxMetricsExporterTest {
+    private final MBeanServer server = ManagementFactory
+            .getPlatformMBeanServer();
+    private HistogramMetrics metrics;
+    private JmxMetricsExporter exporter;
+
+    @Before
+    public void setup() {
+        metrics = new HistogramMetrics();
+        exporter = new JmxMetricsExporter(metrics, "test");
+    }
+
+    @After
+    public void teardown() {
+        exporter.close();
+    }
+
+    @Test
+    public void publishesEndpoints() throws Exception {
+        final EndpointMetrics ticker = metrics.endpoint("money/ticker_fast");
+        ticker.record(EPhase.WAIT, 2000000);
+        ticker.record(EPhase.TOTAL, 3000000);
+        ticker.recordBytesReceived(300);
+
+        final Set<String> names = new HashSet<String>();
+        for (MBeanAttributeInfo attribute : server.getMBeanInfo(
+                exporter.getObjectName()).getAttributes()) {
+            names.add(attribute.getName());
+        }
+        assertTrue(names.contains("money/ticker_fast.calls"));
+        assertTrue(names.contains("money/ticker_fast.WAIT.p99Micros"));
+
+        assertEquals(1L, server.getAttribute(exporter.getObjectName(),
+                "money/ticker_fast.calls"));
+        assertEquals(300L, server.getAttribute(exporter.getObjectName(),
+                "money/ticker_fast.bytesReceived"));
+        assertEquals(3000L, server.getAttribute(exporter.getObjectName(),
+                "money/ticker_fast.TOTAL.maxMicros"));
+    }
+
+    /**
+     * JMX clients expect a missing operation as a ReflectionException.
+     * 
+     * @throws Exception
+     *             if the MBean could not be reached
+     */
+    @Test
+    public void noOperations() throws Exception {
+        try {
+            server.invoke(exporter.getObjectName(), "reset", new Object[0],
+                    new String[0]);
+            fail();
+        } catch (ReflectionException e) {
+            assertTrue(e.getCause() instanceof NoSuchMethodException);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void nameTaken() {
+        new JmxMetricsExporter(metrics, "test");
+    }
+
+    @Test
+    public void closeUnregisters() {
+        exporter.close();
+        assertFalse(server.isRegistered(exporter.getObjectName()));
+    }
+}
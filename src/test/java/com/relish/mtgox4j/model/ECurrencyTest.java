@@ -0,0 +1,57 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Unit tests for {@link ECurrency}.
+ */
+public class ECurrencyTest {
+    @Test
+    public void fromCode() {
+        for (ECurrency currency : ECurrency.values()) {
+            final String code = currency.name();
+            final char[] chars = ("x" + code).toCharArray();
+            final ByteBuffer bytes = ByteBuffer.wrap(("xy" + code)
+                    .getBytes(Charsets.US_ASCII));
+
+            assertSame(currency, ECurrency.fromCode(code));
+            assertSame(currency, ECurrency.fromCode(chars, 1, 3));
+            assertSame(currency, ECurrency.fromCode(bytes, 2, 3));
+        }
+    }
+
+    @Test
+    public void unknownCodes() {
+        assertNull(ECurrency.fromCode((CharSequence) null));
+        assertNull(ECurrency.fromCode(""));
+        assertNull(ECurrency.fromCode("usd"));
+        assertNull(ECurrency.fromCode("USDT"));
+        assertNull(ECurrency.fromCode("XYZ"));
+        assertNull(ECurrency.fromCode("US\u0000"));
+        assertNull(ECurrency.fromCode(new char[] { 'U', 'S' }, 0, 2));
+    }
+}
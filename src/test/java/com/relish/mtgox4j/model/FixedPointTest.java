@@ -0,0 +1,156 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link FixedPoint}.
+ */
+public class FixedPointTest {
+    @Test
+    public void parseLong() {
+        assertEquals(9797038L, FixedPoint.parseLong("9797038"));
+        assertEquals(-5L, FixedPoint.parseLong("-5"));
+        assertEquals(Long.MAX_VALUE,
+                FixedPoint.parseLong(Long.toString(Long.MAX_VALUE)));
+        assertEquals(123L, FixedPoint.parseLong("x123x".toCharArray(), 1, 3));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseLongOverflow() {
+        FixedPoint.parseLong("9223372036854775808");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseLongInvalid() {
+        FixedPoint.parseLong("98.5");
+    }
+
+    @Test
+    public void parseDecimal() {
+        assertEquals(9797038L, FixedPoint.parseDecimal("97.97038", ECurrency.USD));
+        assertEquals(9700000L, FixedPoint.parseDecimal("97", ECurrency.USD));
+        assertEquals(9790000L, FixedPoint.parseDecimal("97.9", ECurrency.USD));
+        assertEquals(50000L, FixedPoint.parseDecimal(".5", ECurrency.USD));
+        assertEquals(-69655509977L,
+                FixedPoint.parseDecimal("-696.55509977", ECurrency.BTC));
+        assertEquals(12345L, FixedPoint.parseDecimal("12.3450000", ECurrency.JPY));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseDecimalTooPrecise() {
+        FixedPoint.parseDecimal("12.3456", ECurrency.JPY);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseDecimalEmpty() {
+        FixedPoint.parseDecimal("-.", ECurrency.USD);
+    }
+
+    @Test
+    public void arithmetic() {
+        assertEquals(9853741L + 9869847L, FixedPoint.add(9853741L, 9869847L));
+        assertEquals(-16106L, FixedPoint.subtract(9853741L, 9869847L));
+        assertTrue(FixedPoint.compare(9853741L, 9869847L) < 0);
+        assertTrue(FixedPoint.compare(9869847L, 9853741L) > 0);
+        assertEquals(0, FixedPoint.compare(1L, 1L));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void addOverflow() {
+        FixedPoint.add(Long.MAX_VALUE, 1L);
+    }
+
+    /**
+     * $98.53741 * 2.5 BTC = $246.3435250, rounded to USD's 5 places.
+     */
+    @Test
+    public void multiply() {
+        assertEquals(24634352L,
+                FixedPoint.multiply(9853741L, 250000000L, RoundingMode.DOWN));
+        assertEquals(24634353L,
+                FixedPoint.multiply(9853741L, 250000000L, RoundingMode.HALF_UP));
+        assertEquals(-24634353L,
+                FixedPoint.multiply(9853741L, -250000000L, RoundingMode.FLOOR));
+
+        // 21M BTC at $100,000 would overflow a naive price * quantity
+        assertEquals(210000000000000000L, FixedPoint.multiply(10000000000L,
+                2100000000000000L, RoundingMode.UNNECESSARY));
+    }
+
+    /**
+     * Ties round on the whole total, not only its fractional part: 1 * 1.5
+     * is 2 under HALF_EVEN, as is 1 * 2.5.
+     */
+    @Test
+    public void multiplyTies() {
+        assertEquals(2L,
+                FixedPoint.multiply(1L, 150000000L, RoundingMode.HALF_EVEN));
+        assertEquals(2L,
+                FixedPoint.multiply(1L, 250000000L, RoundingMode.HALF_EVEN));
+        assertEquals(-2L,
+                FixedPoint.multiply(1L, -150000000L, RoundingMode.HALF_EVEN));
+        assertEquals(1L,
+                FixedPoint.multiply(1L, 150000000L, RoundingMode.HALF_DOWN));
+        assertEquals(2L,
+                FixedPoint.multiply(1L, 150000000L, RoundingMode.HALF_UP));
+        assertEquals(-2L,
+                FixedPoint.multiply(1L, -150000000L, RoundingMode.FLOOR));
+        assertEquals(-1L,
+                FixedPoint.multiply(1L, -150000000L, RoundingMode.CEILING));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void multiplyUnnecessary() {
+        FixedPoint.multiply(3L, 150000000L, RoundingMode.UNNECESSARY);
+    }
+
+    @Test
+    public void convert() {
+        assertEquals(123400L,
+                FixedPoint.convert(1234L, ECurrency.JPY, ECurrency.USD,
+                        RoundingMode.UNNECESSARY));
+        assertEquals(1234L, FixedPoint.convert(123456L, ECurrency.USD,
+                ECurrency.JPY, RoundingMode.DOWN));
+        assertEquals(1235L, FixedPoint.convert(123456L, ECurrency.USD,
+                ECurrency.JPY, RoundingMode.HALF_EVEN));
+        assertEquals(100000000L, FixedPoint.convert(100000L, ECurrency.USD,
+                ECurrency.BTC, RoundingMode.UNNECESSARY));
+    }
+
+    @Test
+    public void appendTo() {
+        assertEquals("97.97038", FixedPoint.appendTo(new StringBuilder(),
+                9797038L, ECurrency.USD).toString());
+        assertEquals("0.00005", FixedPoint.appendTo(new StringBuilder(), 5L,
+                ECurrency.USD).toString());
+        assertEquals("-0.50000", FixedPoint.appendTo(new StringBuilder(),
+                -50000L, ECurrency.USD).toString());
+        assertEquals("696.55509977", FixedPoint.appendTo(new StringBuilder(),
+                69655509977L, ECurrency.BTC).toString());
+        assertEquals(new BigDecimal("97.97038"),
+                FixedPoint.toBigDecimal(9797038L, ECurrency.USD));
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link OrderBook} and {@link OrderBookSide}.
+ */
+public class OrderBookTest {
+    private OrderBook book;
+    private MutableDepthUpdate update;
+
+    @Before
+    public void setup() {
+        book = new OrderBook(ECurrency.USD, 1);
+        update = new MutableDepthUpdate();
+    }
+
+    @Test
+    public void laddersOrderedFromTheTouch() {
+        book.set(false, 100L, 1L);
+        book.set(false, 102L, 2L);
+        book.set(false, 101L, 3L);
+        book.set(true, 105L, 4L);
+        book.set(true, 103L, 5L);
+        book.set(true, 104L, 6L);
+
+        assertEquals(102L, book.getBids().getBestPrice());
+        assertEquals(101L, book.getBids().getPrice(1));
+        assertEquals(100L, book.getBids().getPrice(2));
+        assertEquals(103L, book.getAsks().getBestPrice());
+        assertEquals(104L, book.getAsks().getPrice(1));
+        assertEquals(105L, book.getAsks().getPrice(2));
+        assertEquals(1L, book.getSpread());
+        assertEquals(2, book.getAsks().levelOf(105L));
+        assertEquals(-1, book.getAsks().levelOf(106L));
+        assertEquals(11L, book.getAsks().getTotalVolume(2));
+        assertEquals(15L, book.getAsks().getTotalVolume(10));
+
+        final long[] prices = new long[2];
+        final long[] volumes = new long[2];
+        assertEquals(2, book.getBids().copyTop(prices, volumes));
+        assertArrayEquals(new long[] { 102L, 101L }, prices);
+        assertArrayEquals(new long[] { 2L, 3L }, volumes);
+    }
+
+    @Test
+    public void removeAndAdd() {
+        book.set(false, 100L, 1L);
+        book.set(false, 101L, 1L);
+        book.set(false, 101L, 0L);
+        assertEquals(1, book.getBids().size());
+        assertEquals(100L, book.getBids().getBestPrice());
+
+        book.add(false, 100L, 4L);
+        assertEquals(5L, book.getBids().getVolumeAt(100L));
+        book.add(false, 100L, -5L);
+        assertTrue(book.getBids().isEmpty());
+        assertFalse(book.isTwoSided());
+
+        book.add(true, 99L, -1L);
+        assertTrue(book.getAsks().isEmpty());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void emptyTopOfBook() {
+        book.getAsks().getBestPrice();
+    }
+
+    @Test
+    public void snapshotInAnyOrder() {
+        book.beginSnapshot(10L);
+        book.addSnapshotLevel(true, 103L, 1L);
+        book.addSnapshotLevel(true, 104L, 2L);
+        book.addSnapshotLevel(true, 105L, 3L);
+        book.addSnapshotLevel(false, 100L, 1L);
+        book.addSnapshotLevel(false, 98L, 2L);
+        book.addSnapshotLevel(false, 100L, 3L);
+        book.addSnapshotLevel(false, 99L, 0L);
+        book.addSnapshotLevel(false, 101L, 4L);
+        book.endSnapshot();
+
+        assertEquals(3, book.getAsks().size());
+        assertEquals(103L, book.getAsks().getBestPrice());
+        assertEquals(105L, book.getAsks().getPrice(2));
+        assertEquals(3, book.getBids().size());
+        assertEquals(101L, book.getBids().getBestPrice());
+        assertEquals(4L, book.getBids().getVolumeAt(100L));
+        assertEquals(98L, book.getBids().getPrice(2));
+    }
+
+    @Test
+    public void applyUpdates() {
+        book.beginSnapshot(10L);
+        book.addSnapshotLevel(true, 103L, 1L);
+        book.endSnapshot();
+
+        update.setCurrency(ECurrency.USD);
+        update.setAsk(true);
+        update.setPriceInt(103L);
+        update.setTotalVolumeInt(7L);
+        update.setNow(9L);
+        assertFalse("stamped before the snapshot", book.apply(update));
+
+        update.setNow(11L);
+        assertTrue(book.apply(update));
+        assertEquals(7L, book.getAsks().getBestVolume());
+        assertEquals(11L, book.getNow());
+
+        update.setTotalVolumeInt(0L);
+        update.setNow(12L);
+        assertTrue(book.apply(update));
+        assertTrue(book.getAsks().isEmpty());
+
+        update.setCurrency(ECurrency.EUR);
+        assertFalse(book.apply(update));
+    }
+
+    /**
+     * Random updates must leave the ladder matching a sorted map.
+     */
+    @Test
+    public void matchesTreeMap() {
+        final Random random = new Random(42L);
+        final TreeMap<Long, Long> expected = new TreeMap<Long, Long>();
+
+        for (int i = 0; i < 10000; i++) {
+            final long price = 1000L + random.nextInt(200);
+            final long volume = random.nextInt(4);
+            book.set(true, price, volume);
+            if (volume > 0) {
+                expected.put(price, volume);
+            } else {
+                expected.remove(price);
+            }
+        }
+
+        final OrderBookSide asks = book.getAsks();
+        assertEquals(expected.size(), asks.size());
+        int level = 0;
+        for (Long price : expected.keySet()) {
+            assertEquals(price.longValue(), asks.getPrice(level));
+            assertEquals(expected.get(price).longValue(), asks.getVolume(level));
+            level++;
+        }
+    }
+}
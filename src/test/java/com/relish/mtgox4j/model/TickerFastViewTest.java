@@ -0,0 +1,133 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.relish.mtgox4j.journal.TickRecord;
+
+/**
+ * Unit tests for {@link TickerFastView}.
+ */
+public class TickerFastViewTest {
+    private final TickerFastView view = new TickerFastView();
+
+    @Test
+    public void response() throws IOException {
+        final byte[] body = ByteStreams.toByteArray(this.getClass()
+                .getClassLoader().getResourceAsStream("TickerFast.json"));
+        final ByteBuffer buf = ByteBuffer.allocate(body.length + 10);
+        buf.position(10);
+        buf.put(body);
+
+        assertSame(view, view.wrapResponse(buf, 10, body.length));
+        assertFalse(view.isRecord());
+        assertTrue(view.isSuccess());
+        assertEquals(1367550485692271L, view.getNow());
+        assertSame(ECurrency.USD, view.getCurrency());
+        assertEquals(9853741L, view.getBuy());
+        assertEquals(9869847L, view.getSell());
+        assertEquals(9797038L, view.getValueInt(ETickerPrice.LAST_ORIG));
+        assertEquals("98.69847", view.getValue(ETickerPrice.SELL));
+        assertEquals("$98.54", view.getDisplay(ETickerPrice.BUY));
+        assertEquals("$97.97", view.getDisplayShort(ETickerPrice.LAST_ALL));
+
+        final StringBuilder display = new StringBuilder();
+        assertTrue(view.appendDisplay(ETickerPrice.SELL, display));
+        assertEquals("$98.70", display.toString());
+    }
+
+    /**
+     * Numbers, escapes, non-ASCII text and unknown nested fields are all
+     * handled, and a re-wrapped view forgets the previous response.
+     */
+    @Test
+    public void escapesAndRewrap() {
+        wrap("{\"result\":\"success\",\"extra\":[{\"a\":\"}\"},1],\"data\":{\"now\":12,"
+                + "\"buy\":{\"value_int\":-42,\"display\":\"\\u20ac1\\\"\",\"currency\":\"EUR\"},"
+                + "\"sell\":{\"display\":\"\u00a35\",\"value_int\":\"7\"}}}");
+        assertEquals(12L, view.getNow());
+        assertEquals(-42L, view.getBuy());
+        assertEquals("\u20ac1\"", view.getDisplay(ETickerPrice.BUY));
+        assertEquals("\u00a35", view.getDisplay(ETickerPrice.SELL));
+        assertSame(ECurrency.EUR, view.getCurrency());
+
+        wrap("{\"result\":\"error\"}");
+        assertFalse(view.isSuccess());
+        assertEquals(0L, view.getBuy());
+        assertNull(view.getDisplay(ETickerPrice.BUY));
+        assertNull(view.getCurrency());
+    }
+
+    @Test
+    public void record() {
+        final TickRecord tick = new TickRecord();
+        tick.setCurrency(ECurrency.JPY);
+        tick.setNow(5L);
+        tick.setBuy(6L);
+        tick.setSell(7L);
+        tick.setLastAll(8L);
+
+        final ByteBuffer buf = ByteBuffer.allocate(2 * TickRecord.SIZE).order(
+                ByteOrder.LITTLE_ENDIAN);
+        tick.write(buf, TickRecord.SIZE);
+
+        view.wrapRecord(buf, TickRecord.SIZE);
+        assertTrue(view.isRecord());
+        assertTrue(view.isSuccess());
+        assertEquals(5L, view.getNow());
+        assertSame(ECurrency.JPY, view.getCurrency());
+        assertEquals(6L, view.getBuy());
+        assertEquals(7L, view.getSell());
+        assertEquals(8L, view.getValueInt(ETickerPrice.LAST_ALL));
+        assertNull(view.getDisplay(ETickerPrice.BUY));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bigEndianRecord() {
+        view.wrapRecord(ByteBuffer.allocate(TickRecord.SIZE), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncated() {
+        wrap("{\"data\":{\"buy\":{\"value_int\":\"1\"");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void overflowingInteger() {
+        wrap("{\"data\":{\"buy\":{\"value_int\":\"9223372036854775808\"}}}");
+        view.getBuy();
+    }
+
+    private void wrap(final String json) {
+        final byte[] bytes = json.getBytes(Charsets.UTF_8);
+        view.wrapResponse(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+}
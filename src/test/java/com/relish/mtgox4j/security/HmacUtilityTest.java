@@ -0,0 +1,126 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.security;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Unit tests for {@link HmacUtility}.
+ */
+public class HmacUtilityTest {
+    private static final String ALGORITHM = "HmacSHA512";
+    private static final byte[] SECRET = "Jefe".getBytes(Charsets.UTF_8);
+
+    private static final int THREADS = 16;
+    private static final int MESSAGES = 256;
+    private static final int ROUNDS = 50;
+
+    private HmacUtility hmacUtility;
+
+    @Before
+    public void setup() throws NoSuchAlgorithmException, InvalidKeyException {
+        hmacUtility = new HmacUtility(ALGORITHM, SECRET);
+    }
+
+    /**
+     * RFC 4231 test case 2.
+     */
+    @Test
+    public void knownVector() {
+        assertEquals(
+                "164b7a7bfcf819e2e395fbe73b56e0a387bd64222e831fd610270cd7ea250554"
+                        + "9758bf75c05a994a6d034f65f8f0e6fdcaeab1a34d4a6b4b636e070a38bce737",
+                BaseEncoding.base16().lowerCase().encode(
+                        hmacUtility.createHmac("what do ya want for nothing?")));
+    }
+
+    /**
+     * Many threads hashing different messages through one shared
+     * {@link HmacUtility} must each get exactly the hash a private {@link Mac}
+     * produces.
+     * 
+     * @throws Exception
+     *             if a worker failed
+     */
+    @Test
+    public void concurrentSigning() throws Exception {
+        final Mac reference = Mac.getInstance(ALGORITHM);
+        reference.init(new SecretKeySpec(SECRET, ALGORITHM));
+
+        final String[] messages = new String[MESSAGES];
+        final byte[][] expected = new byte[MESSAGES][];
+        for (int i = 0; i < MESSAGES; i++) {
+            messages[i] = "BTCUSD/money/info\0nonce=" + (1367550485692271L + i)
+                    + "&pad=" + new String(new char[i]).replace('\0', 'x');
+            expected[i] = reference.doFinal(messages[i].getBytes());
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int t = 0; t < THREADS; t++) {
+                final int offset = t;
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        start.await();
+
+                        int verified = 0;
+                        for (int r = 0; r < ROUNDS; r++) {
+                            for (int i = 0; i < MESSAGES; i++) {
+                                final int m = (i + offset) % MESSAGES;
+                                assertArrayEquals(expected[m],
+                                        hmacUtility.createHmac(messages[m]));
+                                verified++;
+                            }
+                        }
+                        return verified;
+                    }
+                }));
+            }
+
+            start.countDown();
+            for (Future<Integer> result : results) {
+                assertEquals(ROUNDS * MESSAGES, result.get().intValue());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
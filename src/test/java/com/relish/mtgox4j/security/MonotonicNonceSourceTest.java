@@ -0,0 +1,152 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Unit tests for {@link MonotonicNonceSource}.
+ */
+public class MonotonicNonceSourceTest {
+    private static final int THREADS = 16;
+    private static final int NONCES = 50000;
+
+    /**
+     * Nonces follow microsecond unix time.
+     */
+    @Test
+    public void microsecondTime() {
+        final long before = TimeUnit.MILLISECONDS.toMicros(System
+                .currentTimeMillis());
+        final long nonce = new MonotonicNonceSource().nextNonce();
+        final long after = TimeUnit.MILLISECONDS.toMicros(System
+                .currentTimeMillis() + 1);
+
+        assertTrue(nonce >= before && nonce <= after);
+    }
+
+    /**
+     * A clock that stands still or steps backwards must still produce strictly
+     * increasing nonces.
+     */
+    @Test
+    public void clockStepsBackwards() {
+        final long[] nanos = { 5000L };
+        final Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos[0];
+            }
+        };
+        final MonotonicNonceSource source = new MonotonicNonceSource(ticker,
+                1000L, 0L);
+
+        assertEquals(1000L, source.nextNonce());
+        assertEquals(1001L, source.nextNonce());
+
+        nanos[0] = 10000L;
+        assertEquals(1005L, source.nextNonce());
+
+        nanos[0] = 0L;
+        assertEquals(1006L, source.nextNonce());
+        assertEquals(1006L, source.lastNonce());
+    }
+
+    @Test
+    public void floor() {
+        final long floor = Long.MAX_VALUE / 2;
+        assertEquals(floor + 1, new MonotonicNonceSource(floor).nextNonce());
+    }
+
+    @Test
+    public void sharedPerApiKey() {
+        assertSame(MonotonicNonceSource.forApiKey("key-a"),
+                MonotonicNonceSource.forApiKey("key-a"));
+        assertNotSame(MonotonicNonceSource.forApiKey("key-a"),
+                MonotonicNonceSource.forApiKey("key-b"));
+    }
+
+    /**
+     * Under heavy contention every nonce must be unique and each thread must
+     * see its own nonces strictly increase.
+     * 
+     * @throws Exception
+     *             if a worker failed
+     */
+    @Test
+    public void concurrentNonces() throws Exception {
+        final MonotonicNonceSource source = new MonotonicNonceSource();
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            final List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+            for (int t = 0; t < THREADS; t++) {
+                results.add(executor.submit(new Callable<long[]>() {
+                    @Override
+                    public long[] call() throws Exception {
+                        start.await();
+
+                        final long[] nonces = new long[NONCES];
+                        for (int i = 0; i < NONCES; i++) {
+                            nonces[i] = source.nextNonce();
+                        }
+                        return nonces;
+                    }
+                }));
+            }
+            start.countDown();
+
+            final long[] all = new long[THREADS * NONCES];
+            int n = 0;
+            for (Future<long[]> result : results) {
+                final long[] nonces = result.get();
+                for (int i = 0; i < NONCES; i++) {
+                    if (i > 0) {
+                        assertTrue(nonces[i] > nonces[i - 1]);
+                    }
+                    all[n++] = nonces[i];
+                }
+            }
+
+            Arrays.sort(all);
+            for (int i = 1; i < all.length; i++) {
+                assertTrue("duplicate nonce " + all[i], all[i] > all[i - 1]);
+            }
+            assertEquals(all[all.length - 1], source.lastNonce());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Unit tests for {@link PersistentNonceSource}.
+ */
+public class PersistentNonceSourceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setup() {
+        file = new File(folder.getRoot(), "nonce");
+    }
+
+    /**
+     * The first nonce persists a reservation ahead of itself and later nonces
+     * inside the window do not rewrite it.
+     * 
+     * @throws IOException
+     *             if the nonce file could not be accessed
+     */
+    @Test
+    public void reservesAhead() throws IOException {
+        final PersistentNonceSource source = new PersistentNonceSource(file,
+                1000000L);
+
+        final long first = source.nextNonce();
+        assertEquals(first + 1000000L, persisted());
+
+        source.nextNonce();
+        assertEquals(first + 1000000L, persisted());
+    }
+
+    /**
+     * A restarted source resumes above everything the previous one issued,
+     * even when the clock is behind the persisted mark.
+     * 
+     * @throws IOException
+     *             if the nonce file could not be accessed
+     */
+    @Test
+    public void survivesRestart() throws IOException {
+        final long future = Long.MAX_VALUE / 2;
+        Files.write(Long.toString(future), file, Charsets.US_ASCII);
+
+        PersistentNonceSource source = new PersistentNonceSource(file, 10L);
+        long last = 0L;
+        for (int i = 0; i < 25; i++) {
+            last = source.nextNonce();
+        }
+        assertTrue(last > future);
+
+        source = new PersistentNonceSource(file, 10L);
+        assertTrue(source.nextNonce() > last);
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptFile() throws IOException {
+        Files.write("not a nonce", file, Charsets.US_ASCII);
+        new PersistentNonceSource(file);
+    }
+
+    private long persisted() throws IOException {
+        return Long.parseLong(Files.toString(file, Charsets.US_ASCII));
+    }
+}
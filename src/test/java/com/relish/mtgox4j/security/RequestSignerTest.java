@@ -0,0 +1,184 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.security;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Unit tests for {@link RequestSigner}.
+ */
+public class RequestSignerTest {
+    private static final String ALGORITHM = "HmacSHA512";
+    private static final byte[] SECRET = BaseEncoding.base64().decode(
+            "dGhpcyBpcyBub3QgYSByZWFsIE10R294IGFwaSBzZWNyZXQ=");
+
+    private RequestSigner signer;
+    private Mac reference;
+
+    @Before
+    public void setup() throws NoSuchAlgorithmException, InvalidKeyException {
+        signer = new RequestSigner(new HmacUtility(ALGORITHM, SECRET));
+
+        reference = Mac.getInstance(ALGORITHM);
+        reference.init(new SecretKeySpec(SECRET, ALGORITHM));
+    }
+
+    @Test
+    public void withoutPostData() {
+        final SignedRequest request = signer.sign("BTCUSD/money/info",
+                Optional.<String> absent(), 1367550485692271L);
+
+        assertEquals("nonce=1367550485692271", body(request));
+        assertEquals(expected("BTCUSD/money/info", "nonce=1367550485692271"),
+                request.getSignature());
+    }
+
+    @Test
+    public void withPostData() {
+        final SignedRequest request = signer.sign("BTCUSD/money/order/add",
+                Optional.of("type=bid&amount_int=100000000"), 7L);
+
+        assertEquals("type=bid&amount_int=100000000&nonce=7", body(request));
+        assertEquals(
+                expected("BTCUSD/money/order/add",
+                        "type=bid&amount_int=100000000&nonce=7"),
+                request.getSignature());
+    }
+
+    @Test
+    public void withPostForm() {
+        final SignedRequest request = signer.sign(
+                signer.signingPath("BTCUSD/money/order/add"), new PostForm() {
+                    @Override
+                    public void writeTo(final SignedRequest request) {
+                        request.appendParam("type", "bid");
+                        request.appendParam("amount_int", 100000000L);
+                        request.appendParam("note", "a b&c");
+                    }
+                }, 7L);
+
+        assertEquals("type=bid&amount_int=100000000&note=a+b%26c&nonce=7",
+                body(request));
+        assertEquals(
+                expected("BTCUSD/money/order/add",
+                        "type=bid&amount_int=100000000&note=a+b%26c&nonce=7"),
+                request.getSignature());
+    }
+
+    @Test
+    public void emptyPostForm() {
+        final SignedRequest request = signer.sign(
+                signer.signingPath("BTCUSD/money/orders"), PostForm.EMPTY, 3L);
+
+        assertEquals("nonce=3", body(request));
+        assertEquals(expected("BTCUSD/money/orders", "nonce=3"),
+                request.getSignature());
+    }
+
+    /**
+     * Post data and paths are signed and sent as UTF-8 regardless of the
+     * platform charset.
+     */
+    @Test
+    public void utf8() {
+        final String postData = "note=caf\u00e9 \u20ac \ud83d\ude00";
+        final SignedRequest request = signer.sign("BTCEUR/money/info",
+                Optional.of(postData), 0L);
+
+        assertArrayEquals((postData + "&nonce=0").getBytes(Charsets.UTF_8),
+                request.copyBody());
+        assertEquals(expected("BTCEUR/money/info", postData + "&nonce=0"),
+                request.getSignature());
+    }
+
+    /**
+     * A released request is reused and grows for large bodies without
+     * leaking state between calls; paths longer than a hash block work too.
+     */
+    @Test
+    public void reuse() {
+        final String longPath = "BTCUSD/" + Strings.repeat("x", 300);
+        final String longData = "pad=" + Strings.repeat("y", 1000);
+
+        final SignedRequest first = signer.sign(longPath,
+                Optional.of(longData), 1L);
+        assertEquals(expected(longPath, longData + "&nonce=1"),
+                first.getSignature());
+        signer.release(first);
+
+        final SignedRequest second = signer.sign("BTCUSD/money/info",
+                Optional.<String> absent(), 2L);
+        assertSame(first, second);
+        assertEquals("nonce=2", body(second));
+        assertEquals(expected("BTCUSD/money/info", "nonce=2"),
+                second.getSignature());
+    }
+
+    /**
+     * Requests held at once never share buffers.
+     */
+    @Test
+    public void unreleased() {
+        final SignedRequest first = signer.sign("BTCUSD/money/info",
+                Optional.<String> absent(), 1L);
+        final SignedRequest second = signer.sign("BTCUSD/money/info",
+                Optional.<String> absent(), 2L);
+        assertNotSame(first, second);
+        assertEquals("nonce=1", body(first));
+        assertEquals("nonce=2", body(second));
+    }
+
+    @Test
+    public void cachedSigningPath() {
+        assertSame(signer.signingPath("BTCUSD/money/info"),
+                signer.signingPath("BTCUSD/money/info"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeNonce() {
+        signer.sign("BTCUSD/money/info", Optional.<String> absent(), -1L);
+    }
+
+    private String expected(final String path, final String body) {
+        return BaseEncoding.base64().encode(
+                reference.doFinal((path + "\0" + body)
+                        .getBytes(Charsets.UTF_8)));
+    }
+
+    private static String body(final SignedRequest request) {
+        return new String(request.getBodyBuffer(), 0,
+                request.getBodyLength(), Charsets.UTF_8);
+    }
+}
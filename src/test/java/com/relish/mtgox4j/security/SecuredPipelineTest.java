@@ -0,0 +1,297 @@
+/**
+ * Copyright 2013 Matt Carrier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Matt Carrier (mcarrieruri@gmail.com)
+ */
+package com.relish.mtgox4j.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.relish.mtgox4j.http.HttpStatusException;
+import com.relish.mtgox4j.http.PooledTransport;
+import com.relish.mtgox4j.http.ResponseDecoders;
+import com.relish.mtgox4j.http.Transport;
+import com.relish.mtgox4j.http.TransportConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests for {@link SecuredPipeline} against a local HTTP server that,
+ * like MtGox, rejects any nonce not larger than the last one it accepted,
+ * and answers after a delay.
+ */
+public class SecuredPipelineTest {
+    private static final String SECRET = "dGhpcyBpcyBub3QgYSByZWFsIE10R294IGFwaSBzZWNyZXQ=";
+    private static final int MAX_IN_FLIGHT = 3;
+
+    private static final String INVALID_NONCE = "{\"result\":\"error\",\"error\":\"Invalid request nonce\",\"token\":\"login_error_invalid_nonce\"}";
+
+    private final List<Long> nonces = new ArrayList<Long>();
+    private final AtomicInteger rejected = new AtomicInteger();
+    private long lastNonce;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger maxOutstanding = new AtomicInteger();
+    private final AtomicLong nextNonce = new AtomicLong(1000);
+
+    private HttpServer server;
+    private ScheduledExecutorService responder;
+    private Transport transport;
+    private MtGoxSecurity security;
+    private SecuredEndpoint info;
+    private SecuredPipeline pipeline;
+
+    @Before
+    public void setup() throws IOException {
+        responder = Executors.newScheduledThreadPool(MAX_IN_FLIGHT);
+
+        // the server's own dispatcher thread handles requests one at a time
+        // in the order they arrive; responses are sent later from responder
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final InputStream in = exchange.getRequestBody();
+                final String body = new String(ByteStreams.toByteArray(in),
+                        Charsets.UTF_8);
+                in.close();
+
+                final long nonce = Long.parseLong(body.substring(body
+                        .lastIndexOf("nonce=") + 6));
+                final String path = exchange.getRequestURI().getPath();
+                final int status;
+                synchronized (nonces) {
+                    if (nonce <= lastNonce || path.endsWith("stale")) {
+                        rejected.incrementAndGet();
+                        status = 403;
+                    } else {
+                        nonces.add(nonce);
+                        lastNonce = nonce;
+                        status = path.endsWith("fail") ? 500 : 200;
+                    }
+                }
+                final int now = outstanding.incrementAndGet();
+                while (now > maxOutstanding.get()) {
+                    maxOutstanding.set(now);
+                }
+
+                responder.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        outstanding.decrementAndGet();
+                        respond(exchange, status, 403 == status ? INVALID_NONCE
+                                : Long.toString(nonce));
+                    }
+                }, 50, TimeUnit.MILLISECONDS);
+            }
+        });
+        server.start();
+
+        transport = new PooledTransport(new TransportConfig.Builder()
+                .baseUrl("http://127.0.0.1:" + server.getAddress().getPort()
+                        + "/").build());
+        security = new MtGoxSecurity("key", SECRET, new NonceSource() {
+            @Override
+            public long nextNonce() {
+                return nextNonce.incrementAndGet();
+            }
+        });
+        info = security.endpoint(transport, "BTCUSD/money/info");
+        pipeline = new SecuredPipeline.Builder().maxInFlight(MAX_IN_FLIGHT)
+                .build(security, transport);
+    }
+
+    @After
+    public void teardown() {
+        pipeline.close();
+        transport.close();
+        server.stop(0);
+        responder.shutdownNow();
+    }
+
+    /**
+     * Requests submitted concurrently all go through, with several in flight
+     * at once but never more than allowed; the odd one overtaken on another
+     * connection is retried with a fresh nonce.
+     * 
+     * @throws Exception
+     *             if a request failed
+     */
+    @Test
+    public void ordersNoncesAndPipelines() throws Exception {
+        final int threads = 4;
+        final int perThread = 10;
+        final List<ListenableFuture<String>> responses = new ArrayList<ListenableFuture<String>>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> submitters = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final Thread submitter = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        final ListenableFuture<String> response = pipeline
+                                .submit(info, ResponseDecoders.string(),
+                                        Optional.<String> absent());
+                        synchronized (responses) {
+                            responses.add(response);
+                        }
+                    }
+                }
+            };
+            submitter.start();
+            submitters.add(submitter);
+        }
+        start.countDown();
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+
+        for (ListenableFuture<String> response : responses) {
+            assertTrue(Long.parseLong(response.get(10, TimeUnit.SECONDS)) > 1000);
+        }
+
+        synchronized (nonces) {
+            assertEquals(threads * perThread, nonces.size());
+        }
+        assertTrue(rejected.get() <= threads * perThread / 4);
+        assertTrue(maxOutstanding.get() > 1);
+        assertTrue(maxOutstanding.get() <= MAX_IN_FLIGHT);
+        assertEquals(0, pipeline.getInFlight());
+        assertEquals(0, pipeline.getQueued());
+    }
+
+    @Test
+    public void failureDoesNotStall() throws Exception {
+        final ListenableFuture<String> failed = pipeline.submit(
+                security.endpoint(transport, "BTCUSD/money/fail"),
+                ResponseDecoders.string(), Optional.<String> absent());
+        final ListenableFuture<String> next = pipeline.submit(info,
+                ResponseDecoders.string(), Optional.of("a=b"));
+
+        try {
+            failed.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(500,
+                    ((HttpStatusException) e.getCause()).getStatus());
+        }
+        assertEquals("1002", next.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void nonceRetriesExhausted() throws Exception {
+        final ListenableFuture<String> stale = pipeline.submit(
+                security.endpoint(transport, "BTCUSD/money/stale"),
+                ResponseDecoders.string(), Optional.<String> absent());
+
+        try {
+            stale.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            final HttpStatusException rejection = (HttpStatusException) e
+                    .getCause();
+            assertEquals(403, rejection.getStatus());
+            assertEquals(INVALID_NONCE, rejection.getBody());
+        }
+        assertEquals(1 + SecuredPipeline.DEFAULT_NONCE_RETRIES, rejected.get());
+        assertEquals(0, pipeline.getInFlight());
+    }
+
+    /**
+     * A request cancelled before its turn never takes a nonce.
+     * 
+     * @throws Exception
+     *             if a request failed
+     */
+    @Test
+    public void cancelWhileQueued() throws Exception {
+        final List<ListenableFuture<String>> responses = new ArrayList<ListenableFuture<String>>();
+        for (int i = 0; i < MAX_IN_FLIGHT + 2; i++) {
+            responses.add(pipeline.submit(info, ResponseDecoders.string(),
+                    Optional.<String> absent()));
+        }
+        final ListenableFuture<String> last = responses
+                .get(responses.size() - 1);
+        assertTrue(last.cancel(false));
+        assertEquals(Long.toString(1000 + responses.size() - 1), responses
+                .get(responses.size() - 2).get(10, TimeUnit.SECONDS));
+        synchronized (nonces) {
+            assertEquals(responses.size() - 1, nonces.size());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closed() {
+        pipeline.close();
+        pipeline.submit(info, ResponseDecoders.string(),
+                Optional.<String> absent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void endpointOfAnotherTransport() {
+        final Transport other = new PooledTransport(
+                new TransportConfig.Builder().build());
+        try {
+            pipeline.submit(security.endpoint(other, "BTCUSD/money/info"),
+                    ResponseDecoders.string(), Optional.<String> absent());
+        } finally {
+            other.close();
+        }
+    }
+
+    private static void respond(final HttpExchange exchange, final int status,
+            final String body) {
+        try {
+            final byte[] bytes = body.getBytes(Charsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            final OutputStream out = exchange.getResponseBody();
+            out.write(bytes);
+            out.close();
+        } catch (IOException e) {
+            // the client went away
+        } finally {
+            exchange.close();
+        }
+    }
+}